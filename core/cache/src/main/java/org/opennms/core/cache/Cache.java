@@ -28,6 +28,8 @@
 
 package org.opennms.core.cache;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ExecutionException;
 
@@ -37,6 +39,7 @@ import org.slf4j.LoggerFactory;
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheLoader.UnsupportedLoadingOperationException;
 import com.google.common.cache.LoadingCache;
 
 public class Cache<K, V> {
@@ -84,6 +87,28 @@ public class Cache<K, V> {
         }
     }
 
+    /**
+     * Returns the values of all given keys. Missing values are loaded at once using
+     * {@link CacheLoader#loadAll(Iterable)} if the loader supports bulk loading.
+     */
+    public Map<K, V> getAll(Iterable<? extends K> keys) throws ExecutionException {
+        Objects.requireNonNull(keys);
+        if (config.isEnabled()) {
+            return delegate.getAll(keys);
+        }
+        try {
+            return cacheLoader.loadAll(keys);
+        } catch (UnsupportedLoadingOperationException e) {
+            final Map<K, V> result = new LinkedHashMap<>();
+            for (K key : keys) {
+                result.put(key, get(key));
+            }
+            return result;
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
     public V getIfCached(K key)  {
         Objects.requireNonNull(key);
         if (!config.isEnabled()) {
@@ -53,6 +53,8 @@ public class Schedule {
     private final ScheduleTimer m_timer;
     private volatile int m_currentExpirationCode;
     private volatile boolean m_scheduled = false;
+    // The pending entry, if the timer supports cancelling it
+    private volatile TimingWheelScheduler.Timeout m_timeout;
 	
     
     class ScheduleEntry implements ReadyRunnable {
@@ -86,7 +88,7 @@ public class Schedule {
                     Schedule.this.run();
                 } catch (PostponeNecessary e) {
                     // Chose a random number of seconds between 5 and 14 to wait before trying again
-                    m_timer.schedule(random.nextInt(10) * 1000L + 5000L, this);
+                    scheduleEntry(random.nextInt(10) * 1000L + 5000L, this);
                     return;
                 }
             }
@@ -100,7 +102,7 @@ public class Schedule {
             
             long interval = m_interval.getInterval();
             if (interval >= 0 && m_scheduled)
-                m_timer.schedule(interval, this);
+                scheduleEntry(interval, this);
 
         }
         
@@ -131,8 +133,29 @@ public class Schedule {
     }
 
     private void schedule(long interval) {
-        if (interval >= 0 && m_scheduled)
-            m_timer.schedule(interval, new ScheduleEntry(++m_currentExpirationCode));
+        if (interval >= 0 && m_scheduled) {
+            cancelEntry();
+            scheduleEntry(interval, new ScheduleEntry(++m_currentExpirationCode));
+        }
+    }
+
+    private void scheduleEntry(long interval, ScheduleEntry entry) {
+        if (m_timer instanceof TimingWheelScheduler) {
+            m_timeout = ((TimingWheelScheduler)m_timer).newTimeout(interval, entry);
+        } else {
+            m_timer.schedule(interval, entry);
+        }
+    }
+
+    /**
+     * Removes the expired entry from the timer right away instead of
+     * waiting for it to become due.
+     */
+    private void cancelEntry() {
+        final TimingWheelScheduler.Timeout timeout = m_timeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
     }
 
     /**
@@ -155,6 +178,7 @@ public class Schedule {
     public void unschedule() {
         m_scheduled = false;
         m_currentExpirationCode++;
+        cancelEntry();
     }
 
 }
@@ -0,0 +1,524 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.core.fiber.PausableFiber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.SlidingTimeWindowArrayReservoir;
+import com.codahale.metrics.Snapshot;
+
+/**
+ * A scheduler based on a hierarchical timing wheel.
+ *
+ * Each scheduled runnable is placed into the bucket of the tick it is due at. Inserting
+ * and cancelling a runnable is O(1) and the wheel thread only visits the buckets which
+ * are due, regardless of the number of scheduled runnables. Runnables which are due are
+ * handed to the worker pool of the scheduler. Runnables which are due but not ready are
+ * checked again after {@link #READY_RETRY_MS}.
+ *
+ * The wheel has {@value #LEVELS} levels of {@value #BUCKETS} buckets each. A bucket of
+ * the first level spans one tick, a bucket of each following level spans a whole
+ * rotation of the level below. Buckets of the higher levels are cascaded into the lower
+ * levels once the wheel reaches them.
+ *
+ * The tick defaults to 100ms and can be changed with the
+ * <code>org.opennms.netmgt.scheduler.tickMs</code> system property.
+ *
+ * Runnables scheduled without a delay can be spread across a window given by the
+ * <code>org.opennms.netmgt.scheduler.jitterMs</code> system property, so the services of a
+ * daemon which is starting up do not all become due at the very same time. Only runnables
+ * without a delay are spread: the delays of the following runs are derived from the time of
+ * the previous run, so these stay spread without drifting away from their interval. The
+ * jitter is opt-in and disabled by default, as the daemons also schedule without a delay to
+ * poll or collect newly provisioned services right away, which a jitter would postpone.
+ */
+public class TimingWheelScheduler implements PausableFiber, Scheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimingWheelScheduler.class);
+
+    private static final int LEVELS = 4;
+    private static final int BITS = 8;
+    private static final int BUCKETS = 1 << BITS;
+    private static final int MASK = BUCKETS - 1;
+    // Due ticks beyond the last level are clamped
+    private static final long MAX_DELTA = (1L << (BITS * LEVELS)) - 1;
+
+    /** Delay before a runnable which is due but not ready is checked again. */
+    public static final long READY_RETRY_MS = 1000;
+
+    private final long m_tickNanos;
+    private final long m_jitterMs;
+    private final Bucket[][] m_wheel = new Bucket[LEVELS][BUCKETS];
+
+    /** Runnables which have been scheduled but not been placed into the wheel yet. */
+    private final Queue<Timeout> m_pending = new ConcurrentLinkedQueue<>();
+
+    /** Runnables which have been cancelled but not been removed from the wheel yet. */
+    private final Queue<Timeout> m_cancelled = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger m_scheduled = new AtomicInteger();
+
+    private final ExecutorService m_runner;
+
+    /** How late runnables start compared to the time they were scheduled for, in milliseconds. */
+    private final Histogram m_lateness = new Histogram(new SlidingTimeWindowArrayReservoir(5, TimeUnit.MINUTES));
+
+    private final String m_name;
+
+    private final long m_startNanos;
+
+    /** The last tick processed by the wheel thread. */
+    private long m_currentTick = -1;
+
+    private volatile int m_status;
+
+    private volatile Thread m_worker;
+
+    private volatile long m_numTasksExecuted = 0;
+
+    /**
+     * Constructs a new instance of the scheduler.
+     *
+     * @param parent
+     *            String prepended to "Scheduler" to create fiber name
+     * @param maxSize
+     *            The number of threads executing the scheduled runnables.
+     */
+    public TimingWheelScheduler(final String parent, final int maxSize) {
+        this(parent, maxSize, Long.getLong("org.opennms.netmgt.scheduler.tickMs", 100), Long.getLong("org.opennms.netmgt.scheduler.jitterMs", 0));
+    }
+
+    /**
+     * Constructs a new instance of the scheduler.
+     *
+     * @param parent
+     *            String prepended to "Scheduler" to create fiber name
+     * @param maxSize
+     *            The number of threads executing the scheduled runnables.
+     * @param tickMs
+     *            The resolution of the wheel.
+     * @param jitterMs
+     *            The window runnables scheduled without a delay are spread across, or 0 to
+     *            run these right away.
+     */
+    public TimingWheelScheduler(final String parent, final int maxSize, final long tickMs, final long jitterMs) {
+        Assert.isTrue(tickMs > 0, "tickMs must be positive");
+        Assert.isTrue(jitterMs >= 0, "jitterMs must not be negative");
+        m_status = START_PENDING;
+        m_tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+        m_jitterMs = jitterMs;
+        m_runner = Executors.newFixedThreadPool(maxSize, new LogPreservingThreadFactory(parent, maxSize));
+        m_name = parent + "-TimingWheelScheduler";
+        m_startNanos = System.nanoTime();
+        for (int level = 0; level < LEVELS; level++) {
+            for (int i = 0; i < BUCKETS; i++) {
+                m_wheel[level][i] = new Bucket();
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void schedule(long interval, final ReadyRunnable runnable) {
+        newTimeout(interval, runnable);
+    }
+
+    /**
+     * Schedules the runnable like {@link #schedule(long, ReadyRunnable)} does.
+     *
+     * @return a handle which can be used to cancel the runnable
+     */
+    public Timeout newTimeout(long interval, final ReadyRunnable runnable) {
+        long delayMs = Math.max(0, interval);
+        if (delayMs == 0 && m_jitterMs > 0) {
+            delayMs = ThreadLocalRandom.current().nextLong(m_jitterMs);
+        }
+        final Timeout timeout = new Timeout(runnable, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs));
+        LOG.debug("schedule: Adding ready runnable {} at interval {}", runnable, interval);
+        m_scheduled.incrementAndGet();
+        m_pending.add(timeout);
+        return timeout;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getCurrentTime() {
+        return System.currentTimeMillis();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void start() {
+        Assert.state(m_worker == null, "The fiber has already run or is running");
+
+        m_worker = new Thread(this::run, getName());
+        m_worker.setDaemon(true);
+        m_worker.start();
+        m_status = STARTING;
+
+        LOG.info("start: scheduler started");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void stop() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+
+        m_status = STOP_PENDING;
+        m_worker.interrupt();
+        m_runner.shutdown();
+
+        LOG.info("stop: scheduler stopped");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void pause() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+        Assert.state(m_status != STOPPED && m_status != STOP_PENDING, "The fiber is not running or a stop is pending");
+
+        if (m_status == PAUSED) {
+            return;
+        }
+
+        m_status = PAUSE_PENDING;
+        notifyAll();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void resume() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+        Assert.state(m_status != STOPPED && m_status != STOP_PENDING, "The fiber is not running or a stop is pending");
+
+        if (m_status == RUNNING) {
+            return;
+        }
+
+        m_status = RESUME_PENDING;
+        notifyAll();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized int getStatus() {
+        if (m_worker != null && m_worker.isAlive() == false) {
+            m_status = STOPPED;
+        }
+        return m_status;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getName() {
+        return m_name;
+    }
+
+    /**
+     * Returns total number of runnables currently scheduled.
+     *
+     * @return the number of runnables which are neither due nor cancelled
+     */
+    public int getScheduled() {
+        return m_scheduled.get();
+    }
+
+    /**
+     * Returns the pool of threads that are used to executed the runnable
+     * instances scheduled by the class' instance.
+     *
+     * @return thread pool
+     */
+    public ExecutorService getRunner() {
+        return m_runner;
+    }
+
+    /**
+     * Returns how late the runnables started during the last five minutes, in milliseconds.
+     *
+     * @return the lateness of the runnables
+     */
+    public Snapshot getLateness() {
+        return m_lateness.getSnapshot();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getNumTasksExecuted() {
+        return m_numTasksExecuted;
+    }
+
+    private void run() {
+        synchronized (this) {
+            m_status = RUNNING;
+        }
+
+        LOG.debug("run: scheduler running");
+
+        try {
+            for (;;) {
+                synchronized (this) {
+                    if (m_status != RUNNING && m_status != PAUSED && m_status != PAUSE_PENDING && m_status != RESUME_PENDING) {
+                        LOG.debug("run: status = {}, time to exit", m_status);
+                        break;
+                    }
+
+                    // if paused or pause pending then block
+                    while (m_status == PAUSE_PENDING || m_status == PAUSED) {
+                        if (m_status == PAUSE_PENDING) {
+                            LOG.debug("run: pausing.");
+                        }
+                        m_status = PAUSED;
+                        wait();
+                    }
+
+                    // if resume pending then change to running
+                    if (m_status == RESUME_PENDING) {
+                        LOG.debug("run: resuming.");
+                        m_status = RUNNING;
+                    }
+                }
+
+                // Process all of the ticks which have passed, the wheel catches up after a pause
+                final long now = System.nanoTime();
+                final long tick = (now - m_startNanos) / m_tickNanos;
+                while (m_currentTick < tick) {
+                    advance(m_currentTick + 1);
+                }
+
+                final long sleepNanos = m_startNanos + (m_currentTick + 1) * m_tickNanos - System.nanoTime();
+                if (sleepNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                }
+            }
+        } catch (InterruptedException e) {
+            // exit
+        } catch (RejectedExecutionException e) {
+            if (!m_runner.isShutdown()) {
+                LOG.error("run: failed to execute ready runnable", e);
+            }
+        }
+
+        LOG.debug("run: scheduler exiting, state = STOPPED");
+        synchronized (this) {
+            m_status = STOPPED;
+        }
+    }
+
+    private void advance(long tick) {
+        m_currentTick = tick;
+
+        // Remove the cancelled runnables before they are cascaded or expired
+        for (Timeout timeout; (timeout = m_cancelled.poll()) != null; ) {
+            if (timeout.m_bucket != null) {
+                timeout.m_bucket.remove(timeout);
+            }
+        }
+
+        // Move the runnables of the higher levels into the lower levels once the levels below completed a rotation
+        for (int level = 1; level < LEVELS && (tick & ((1L << (BITS * level)) - 1)) == 0; level++) {
+            final Bucket bucket = m_wheel[level][(int) (tick >>> (BITS * level)) & MASK];
+            for (Timeout timeout = bucket.clear(); timeout != null; ) {
+                final Timeout next = timeout.m_next;
+                timeout.m_next = null;
+                timeout.m_prev = null;
+                if (timeout.isPending()) {
+                    place(timeout);
+                }
+                timeout = next;
+            }
+        }
+
+        for (Timeout timeout; (timeout = m_pending.poll()) != null; ) {
+            if (timeout.isPending()) {
+                timeout.m_dueTick = toTick(timeout.m_deadlineNanos);
+                place(timeout);
+            }
+        }
+
+        final Bucket bucket = m_wheel[0][(int) tick & MASK];
+        for (Timeout timeout = bucket.clear(); timeout != null; ) {
+            final Timeout next = timeout.m_next;
+            timeout.m_next = null;
+            timeout.m_prev = null;
+            expire(timeout);
+            timeout = next;
+        }
+    }
+
+    private long toTick(long deadlineNanos) {
+        final long elapsed = deadlineNanos - m_startNanos;
+        // Round up, a runnable is never started before it is due
+        return elapsed <= 0 ? 0 : (elapsed + m_tickNanos - 1) / m_tickNanos;
+    }
+
+    private void place(Timeout timeout) {
+        final long delta = Math.min(Math.max(0, timeout.m_dueTick - m_currentTick), MAX_DELTA);
+        final long dueTick = m_currentTick + delta;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << (BITS * (level + 1)))) {
+            level++;
+        }
+        timeout.m_dueTick = dueTick;
+        m_wheel[level][(int) (dueTick >>> (BITS * level)) & MASK].add(timeout);
+    }
+
+    private void expire(Timeout timeout) {
+        if (!timeout.isPending()) {
+            return;
+        }
+        if (!timeout.m_runnable.isReady()) {
+            timeout.m_dueTick = m_currentTick + Math.max(1, TimeUnit.MILLISECONDS.toNanos(READY_RETRY_MS) / m_tickNanos);
+            place(timeout);
+            return;
+        }
+        if (!timeout.expire()) {
+            // Cancelled concurrently
+            return;
+        }
+        m_scheduled.decrementAndGet();
+        LOG.debug("run: found ready runnable {}", timeout.m_runnable);
+        m_runner.execute(timeout);
+        ++m_numTasksExecuted;
+    }
+
+    /**
+     * A doubly linked list of runnables, only accessed by the wheel thread.
+     */
+    private static final class Bucket {
+        private Timeout m_head;
+
+        private void add(Timeout timeout) {
+            timeout.m_bucket = this;
+            timeout.m_prev = null;
+            timeout.m_next = m_head;
+            if (m_head != null) {
+                m_head.m_prev = timeout;
+            }
+            m_head = timeout;
+        }
+
+        private void remove(Timeout timeout) {
+            if (timeout.m_prev != null) {
+                timeout.m_prev.m_next = timeout.m_next;
+            } else if (m_head == timeout) {
+                m_head = timeout.m_next;
+            }
+            if (timeout.m_next != null) {
+                timeout.m_next.m_prev = timeout.m_prev;
+            }
+            timeout.m_next = null;
+            timeout.m_prev = null;
+            timeout.m_bucket = null;
+        }
+
+        /**
+         * @return the first runnable of the removed list
+         */
+        private Timeout clear() {
+            final Timeout head = m_head;
+            m_head = null;
+            for (Timeout timeout = head; timeout != null; timeout = timeout.m_next) {
+                timeout.m_bucket = null;
+            }
+            return head;
+        }
+    }
+
+    /**
+     * A runnable scheduled by the scheduler.
+     */
+    public final class Timeout implements Runnable {
+        private static final int PENDING = 0;
+        private static final int EXPIRED = 1;
+        private static final int CANCELLED = 2;
+
+        private final ReadyRunnable m_runnable;
+        private final long m_deadlineNanos;
+        private final AtomicInteger m_state = new AtomicInteger(PENDING);
+
+        // Only accessed by the wheel thread
+        private long m_dueTick;
+        private Bucket m_bucket;
+        private Timeout m_prev;
+        private Timeout m_next;
+
+        private Timeout(ReadyRunnable runnable, long deadlineNanos) {
+            m_runnable = runnable;
+            m_deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * Cancels the runnable if it is not due yet.
+         *
+         * @return true if the runnable will not be run
+         */
+        public boolean cancel() {
+            if (!m_state.compareAndSet(PENDING, CANCELLED)) {
+                return false;
+            }
+            m_scheduled.decrementAndGet();
+            m_cancelled.add(this);
+            return true;
+        }
+
+        private boolean isPending() {
+            return m_state.get() == PENDING;
+        }
+
+        private boolean expire() {
+            return m_state.compareAndSet(PENDING, EXPIRED);
+        }
+
+        @Override
+        public void run() {
+            m_lateness.update(Math.max(0, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - m_deadlineNanos)));
+            m_runnable.run();
+        }
+
+        @Override
+        public String toString() {
+            return m_runnable.toString();
+        }
+    }
+}
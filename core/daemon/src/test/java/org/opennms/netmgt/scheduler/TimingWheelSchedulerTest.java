@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TimingWheelSchedulerTest {
+
+    private TimingWheelScheduler m_scheduler;
+
+    @Before
+    public void setUp() {
+        m_scheduler = new TimingWheelScheduler("TimingWheelSchedulerTest", 2, 10, 0);
+        m_scheduler.start();
+    }
+
+    @After
+    public void tearDown() {
+        m_scheduler.stop();
+    }
+
+    @Test
+    public void canRunInOrderOfDelay() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(3);
+        final StringBuffer order = new StringBuffer();
+        m_scheduler.schedule(300, runnable(() -> { order.append('c'); latch.countDown(); }));
+        m_scheduler.schedule(0, runnable(() -> { order.append('a'); latch.countDown(); }));
+        // Beyond a rotation of the first level, so it is cascaded
+        m_scheduler.schedule(2600, runnable(() -> { order.append('d'); latch.countDown(); }));
+        m_scheduler.schedule(100, runnable(() -> { order.append('b'); }));
+
+        final long start = System.nanoTime();
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 2600 - 10);
+        assertEquals("abcd", order.toString());
+        assertEquals(0, m_scheduler.getScheduled());
+        assertEquals(4, m_scheduler.getNumTasksExecuted());
+        assertEquals(4, m_scheduler.getLateness().size());
+    }
+
+    @Test
+    public void canCancel() throws InterruptedException {
+        final AtomicInteger runs = new AtomicInteger();
+        final TimingWheelScheduler.Timeout timeout = m_scheduler.newTimeout(100, runnable(runs::incrementAndGet));
+        final CountDownLatch latch = new CountDownLatch(1);
+        m_scheduler.schedule(200, runnable(latch::countDown));
+
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(0, runs.get());
+        assertEquals(0, m_scheduler.getScheduled());
+    }
+
+    @Test
+    public void canWaitUntilReady() throws InterruptedException {
+        final AtomicBoolean ready = new AtomicBoolean(false);
+        final CountDownLatch latch = new CountDownLatch(1);
+        m_scheduler.schedule(0, new ReadyRunnable() {
+            @Override
+            public boolean isReady() {
+                return ready.get();
+            }
+
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+
+        assertFalse(latch.await(500, TimeUnit.MILLISECONDS));
+        ready.set(true);
+        assertTrue(latch.await(TimingWheelScheduler.READY_RETRY_MS * 5, TimeUnit.MILLISECONDS));
+    }
+
+    private static ReadyRunnable runnable(Runnable runnable) {
+        return new ReadyRunnable() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void run() {
+                runnable.run();
+            }
+        };
+    }
+}
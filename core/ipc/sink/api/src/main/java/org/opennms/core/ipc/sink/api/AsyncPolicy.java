@@ -66,4 +66,18 @@ public interface AsyncPolicy {
      * should block when the queue is full
      */
     boolean isBlockWhenFull();
+
+    /**
+     * Maximum number of queued messages that a background thread
+     * will hand to the synchronous dispatcher at once.
+     *
+     * When greater than 1, the background threads drain the queue
+     * in batches, using {@link SyncDispatcher#sendBatch(java.util.List)},
+     * instead of running a separate task for every message.
+     *
+     * @return maximum number of messages per batch
+     */
+    default int getBatchSize() {
+        return 1;
+    }
 }
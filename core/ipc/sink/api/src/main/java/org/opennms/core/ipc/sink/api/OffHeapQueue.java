@@ -29,6 +29,8 @@
 package org.opennms.core.ipc.sink.api;
 
 import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.List;
 
 public interface OffHeapQueue {
 
@@ -52,6 +54,31 @@ public interface OffHeapQueue {
      */
     AbstractMap.SimpleImmutableEntry<String, byte[]> readNextMessage(String moduleName) throws InterruptedException;
 
+    /**
+     *
+     * Retrieves and removes up to maxMessages from the head of this queue, waiting if necessary
+     * until at least one element becomes available. Queues which persist their messages may
+     * keep them until they were acknowledged, see {@link #acknowledge(String, String)}.
+     *
+     * @return list of key, value pairs in the order they were written, empty if none became available.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    default List<AbstractMap.SimpleImmutableEntry<String, byte[]>> readNextMessages(String moduleName, int maxMessages) throws InterruptedException {
+        final AbstractMap.SimpleImmutableEntry<String, byte[]> entry = readNextMessage(moduleName);
+        return entry != null ? Collections.singletonList(entry) : Collections.emptyList();
+    }
+
+    /**
+     *
+     * Acknowledges that the message with the given key, which was previously read, was dispatched
+     * and doesn't need to be retained anymore.
+     *
+     * @param moduleName Sink Module Name.
+     * @param key unique id for the sink message.
+     */
+    default void acknowledge(String moduleName, String key) {
+    }
+
     /**
      *
      * @return size of OffHeap in bytes.
@@ -28,6 +28,8 @@
 
 package org.opennms.core.ipc.sink.api;
 
+import java.util.List;
+
 /**
  * Used to synchronously dispatch messages.
  *
@@ -36,4 +38,18 @@ package org.opennms.core.ipc.sink.api;
  * @author jwhite
  */
 public interface SyncDispatcher<S extends Message> extends MessageDispatcher<S> {
+
+    /**
+     * Dispatches the given messages, in order.
+     *
+     * Implementations may override this to avoid waiting for each
+     * message to be sent before sending the next one.
+     *
+     * @param messages messages to dispatch
+     */
+    default void sendBatch(List<S> messages) {
+        for (S message : messages) {
+            send(message);
+        }
+    }
 }
@@ -30,7 +30,9 @@ package org.opennms.core.ipc.sink.common;
 
 import java.util.Dictionary;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 import org.opennms.core.ipc.sink.aggregation.AggregatingSinkMessageProducer;
 import org.opennms.core.ipc.sink.api.AsyncDispatcher;
@@ -71,6 +73,19 @@ public abstract class AbstractMessageDispatcherFactory<W> implements MessageDisp
 
     public abstract <S extends Message, T extends Message> void dispatch(SinkModule<S, T> module, W metadata, T message);
 
+    /**
+     * Dispatches the given messages, in order.
+     *
+     * Messages are dispatched one at a time by default, implementations
+     * should override this if they can send several messages without
+     * waiting for each one to complete.
+     */
+    public <S extends Message, T extends Message> void dispatchBatch(SinkModule<S, T> module, W metadata, List<T> messages) {
+        for (T message : messages) {
+            dispatch(module, metadata, message);
+        }
+    }
+
     public abstract String getMetricDomain();
 
     public abstract BundleContext getBundleContext();
@@ -87,6 +102,22 @@ public abstract class AbstractMessageDispatcherFactory<W> implements MessageDisp
         }
     }
 
+    /**
+     * Invokes dispatchBatch, the time spent is spread evenly across the messages
+     * of the batch so that the dispatch timer keeps tracking individual messages.
+     */
+    private <S extends Message, T extends Message> void timedDispatch(DispatcherState<W, S,T> state, List<T> messages) {
+        final long start = System.nanoTime();
+        try (Scope scope = getTracer().buildSpan(state.getModule().getId()).startActive(true)) {
+            dispatchBatch(state.getModule(), state.getMetaData(), messages);
+        } finally {
+            final long durationPerMessage = (System.nanoTime() - start) / Math.max(1, messages.size());
+            for (int i = 0; i < messages.size(); i++) {
+                state.getDispatchTimer().update(durationPerMessage, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
     /**
      * Optionally build meta-data or state information for the module which will
      * be passed on all the calls to {@link #dispatch}.
@@ -154,6 +185,13 @@ public abstract class AbstractMessageDispatcherFactory<W> implements MessageDisp
             AbstractMessageDispatcherFactory.this.timedDispatch(state, (T) message);
         }
 
+        @SuppressWarnings("unchecked")
+        @Override
+        public void sendBatch(List<S> messages) {
+            // Same as above, S and T are the same types
+            AbstractMessageDispatcherFactory.this.timedDispatch(state, (List<T>) messages);
+        }
+
         @Override
         public void close() throws Exception {
             state.close();
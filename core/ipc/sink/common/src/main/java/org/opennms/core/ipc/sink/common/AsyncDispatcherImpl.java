@@ -29,9 +29,12 @@
 package org.opennms.core.ipc.sink.common;
 
 import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
@@ -43,6 +46,7 @@ import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.joda.time.Duration;
 import org.opennms.core.concurrent.LogPreservingThreadFactory;
@@ -60,7 +64,9 @@ import org.slf4j.LoggerFactory;
 
 import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.swrve.ratelimitedlogger.RateLimitedLog;
 
 public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implements AsyncDispatcher<S> {
@@ -74,15 +80,24 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
     private SinkModule<S,T> sinkModule;
     private DispatcherState<W,S,T> state;
     private boolean useOffHeap = false;
+    // Maximum time a dispatch thread waits for a message before checking if the dispatcher was closed.
+    private static final long DEFAULT_BATCH_POLL_MS = 500L;
     
     final RateLimitedLog rateLimittedLogger = RateLimitedLog
             .withRateLimit(LOG)
             .maxRate(5).every(Duration.standardSeconds(30))
             .build();
 
-    final LinkedBlockingQueue<Runnable> queue;
+    final BlockingQueue<Runnable> queue;
     final ExecutorService executor;
 
+    // Batching mode
+    private final int batchSize;
+    private Counter droppedCounter;
+    private Histogram batchSizeHistogram;
+    private Timer queueResidencyTimer;
+    private volatile boolean closing = false;
+
     public AsyncDispatcherImpl(DispatcherState<W, S, T> state, AsyncPolicy asyncPolicy,
             SyncDispatcher<S> syncDispatcher) {
         Objects.requireNonNull(state);
@@ -91,6 +106,7 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
         this.asyncPolicy = asyncPolicy;
         this.state = state;
         sinkModule = state.getModule();
+        batchSize = Math.max(1, asyncPolicy.getBatchSize());
         if (OffHeapServiceLoader.isOffHeapEnabled()) {
             offHeapQueue = OffHeapServiceLoader.getOffHeapQueue();
             if (offHeapQueue != null) {
@@ -98,26 +114,51 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
                 LOG.info("Offheap storage enabled for sink module, {}", sinkModule.getId());
             }
         }
-        
-        final RejectedExecutionHandler rejectedExecutionHandler;
-        if (asyncPolicy.isBlockWhenFull()) {
-            // This queue ensures that calling thread is blocked when the queue is full
-            // See the implementation of OfferBlockingQueue for details
-            queue = new OfferBlockingQueue<>(asyncPolicy.getQueueSize());
-            rejectedExecutionHandler = new ThreadPoolExecutor.AbortPolicy();
+
+        final LogPreservingThreadFactory threadFactory = new LogPreservingThreadFactory(SystemInfoUtils.DEFAULT_INSTANCE_ID + ".Sink.AsyncDispatcher." + state.getModule().getId(), Integer.MAX_VALUE);
+        if (batchSize > 1) {
+            // Messages are queued in a fixed ring of slots, and the dispatch threads drain them in batches
+            queue = new ArrayBlockingQueue<>(asyncPolicy.getQueueSize());
+            if (!asyncPolicy.isBlockWhenFull()) {
+                droppedCounter = state.getMetrics().counter(MetricRegistry.name(state.getModule().getId(), "dropped"));
+            }
+            batchSizeHistogram = state.getMetrics().histogram(MetricRegistry.name(state.getModule().getId(), "batch-size"));
+            queueResidencyTimer = state.getMetrics().timer(MetricRegistry.name(state.getModule().getId(), "queue-residency"));
+            executor = Executors.newFixedThreadPool(asyncPolicy.getNumThreads(), threadFactory);
+            for (int i = 0; i < asyncPolicy.getNumThreads(); i++) {
+                executor.execute(new BatchDispatcher());
+            }
         } else {
-            queue = new LinkedBlockingQueue<Runnable>(asyncPolicy.getQueueSize());
-            // Reject and increase the dropped counter when the queue is full
-            final Counter droppedCounter = state.getMetrics().counter(MetricRegistry.name(state.getModule().getId(), "dropped"));
-            rejectedExecutionHandler = new RejectedExecutionHandler() {
-                @Override
-                public void rejectedExecution(Runnable r, ThreadPoolExecutor e) {
-                    droppedCounter.inc();
-                    throw new RejectedExecutionException("Task " + r.toString() +
-                            " rejected from " +
-                            e.toString());
-                }
-            };
+            final RejectedExecutionHandler rejectedExecutionHandler;
+            if (asyncPolicy.isBlockWhenFull()) {
+                // This queue ensures that calling thread is blocked when the queue is full
+                // See the implementation of OfferBlockingQueue for details
+                queue = new OfferBlockingQueue<>(asyncPolicy.getQueueSize());
+                rejectedExecutionHandler = new ThreadPoolExecutor.AbortPolicy();
+            } else {
+                queue = new LinkedBlockingQueue<Runnable>(asyncPolicy.getQueueSize());
+                // Reject and increase the dropped counter when the queue is full
+                final Counter droppedCounter = state.getMetrics().counter(MetricRegistry.name(state.getModule().getId(), "dropped"));
+                rejectedExecutionHandler = new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(Runnable r, ThreadPoolExecutor e) {
+                        droppedCounter.inc();
+                        throw new RejectedExecutionException("Task " + r.toString() +
+                                " rejected from " +
+                                e.toString());
+                    }
+                };
+            }
+
+            executor = new ThreadPoolExecutor(
+                    asyncPolicy.getNumThreads(),
+                    asyncPolicy.getNumThreads(),
+                    1000L,
+                    TimeUnit.MILLISECONDS,
+                    queue,
+                    threadFactory,
+                    rejectedExecutionHandler
+                );
         }
 
         state.getMetrics().register(MetricRegistry.name(state.getModule().getId(), "queue-size"), new Gauge<Integer>() {
@@ -127,15 +168,10 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
             }
         });
 
-        executor = new ThreadPoolExecutor(
-                asyncPolicy.getNumThreads(),
-                asyncPolicy.getNumThreads(),
-                1000L,
-                TimeUnit.MILLISECONDS,
-                queue,
-                new LogPreservingThreadFactory(SystemInfoUtils.DEFAULT_INSTANCE_ID + ".Sink.AsyncDispatcher." + state.getModule().getId(), Integer.MAX_VALUE),
-                rejectedExecutionHandler
-            );
+        // Drain any messages that were left in the OffHeapQueue before the last restart.
+        if (useOffHeap && offHeapQueue.getNumOfMessages(sinkModule.getId()) > 0) {
+            startOffHeapAdapter().firstWrite.countDown();
+        }
     }
 
     /**
@@ -185,9 +221,7 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
                 ((offHeapAdapter != null) && !offHeapAdapter.isOffHeapEmpty()))) {
             // Start drain thread before the first write to OffHeapQueue.
             if (offHeapAdapter == null) {
-                this.offHeapAdapter = new OffHeapAdapter();
-                offHeapAdapterExecutor.execute(offHeapAdapter);
-                LOG.info("started drain thread for {}", sinkModule.getId());
+                startOffHeapAdapter();
             }
             try {
                 return offHeapAdapter.writeMessage(message);
@@ -195,6 +229,9 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
                 rateLimittedLogger.error("OffHeap write failed ", e);
             }
         }
+        if (batchSize > 1) {
+            return enqueue(new PendingMessage(message, new CompletableFuture<>()));
+        }
         try {
             return CompletableFuture.supplyAsync(() -> {
                 syncDispatcher.send(message);
@@ -207,6 +244,36 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
         }
     }
     
+    /** Adds the message to the queue used in batching mode, honoring the policy when the queue is full. **/
+    private CompletableFuture<S> enqueue(PendingMessage pending) {
+        if (asyncPolicy.isBlockWhenFull()) {
+            try {
+                queue.put(pending);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                pending.future.completeExceptionally(e);
+            }
+        } else if (!queue.offer(pending)) {
+            droppedCounter.inc();
+            pending.future.completeExceptionally(new RejectedExecutionException("Message rejected, the queue for "
+                    + sinkModule.getId() + " is full"));
+        }
+        return pending.future;
+    }
+
+    private synchronized OffHeapAdapter startOffHeapAdapter() {
+        if (offHeapAdapter == null) {
+            if (executor instanceof ThreadPoolExecutor) {
+                // Messages read from the OffHeapQueue are put on the queue directly, make sure there are threads to run them
+                ((ThreadPoolExecutor) executor).prestartAllCoreThreads();
+            }
+            offHeapAdapter = new OffHeapAdapter();
+            offHeapAdapterExecutor.execute(offHeapAdapter);
+            LOG.info("started drain thread for {}", sinkModule.getId());
+        }
+        return offHeapAdapter;
+    }
+
     @Override
     public int getQueueSize() {
         return queue.size();
@@ -215,6 +282,7 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
     @Override
     public void close() throws Exception {
         syncDispatcher.close();
+        closing = true;
         executor.shutdown();
         if (offHeapAdapter != null) {
             offHeapAdapter.shutdown();
@@ -222,12 +290,114 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
         }
     }
 
+    /** A queued message, along with the future to complete once it was dispatched. **/
+    private class PendingMessage implements Runnable {
+        private final S message;
+        // Messages recovered from the OffHeapQueue after a restart have no future
+        private final CompletableFuture<S> future;
+        // Key of the message in the OffHeapQueue, acknowledged once the message was dispatched
+        private final String offHeapKey;
+        private final long enqueuedAt = System.nanoTime();
+
+        public PendingMessage(S message, CompletableFuture<S> future) {
+            this(message, future, null);
+        }
+
+        public PendingMessage(S message, CompletableFuture<S> future, String offHeapKey) {
+            this.message = message;
+            this.future = future;
+            this.offHeapKey = offHeapKey;
+        }
+
+        @Override
+        public void run() {
+            try {
+                syncDispatcher.send(message);
+                complete();
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        private void complete() {
+            acknowledge();
+            if (future != null) {
+                future.complete(message);
+            }
+        }
+
+        private void fail(Throwable t) {
+            // Failed messages are not retried, so they are consumed as well
+            acknowledge();
+            if (future != null) {
+                future.completeExceptionally(t);
+            }
+        }
+
+        private void acknowledge() {
+            if (offHeapKey != null) {
+                offHeapQueue.acknowledge(sinkModule.getId(), offHeapKey);
+            }
+        }
+    }
+
+    /** Used in batching mode, takes up to batchSize messages from the queue and dispatches them at once. **/
+    private class BatchDispatcher implements Runnable {
+        private final List<Runnable> batch = new ArrayList<>(batchSize);
+        private final List<S> messages = new ArrayList<>(batchSize);
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public void run() {
+            // Keep dispatching until closed and the queue was drained
+            while (!closing || !queue.isEmpty()) {
+                try {
+                    final Runnable first = queue.poll(DEFAULT_BATCH_POLL_MS, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                queue.drainTo(batch, batchSize - 1);
+
+                final long now = System.nanoTime();
+                for (Runnable r : batch) {
+                    final PendingMessage pending = (PendingMessage) r;
+                    queueResidencyTimer.update(now - pending.enqueuedAt, TimeUnit.NANOSECONDS);
+                    messages.add(pending.message);
+                }
+                batchSizeHistogram.update(batch.size());
+
+                try {
+                    syncDispatcher.sendBatch(messages);
+                    for (Runnable r : batch) {
+                        ((PendingMessage) r).complete();
+                    }
+                } catch (RuntimeException e) {
+                    rateLimittedLogger.error("Failed to dispatch batch of {} messages for {}", batch.size(), sinkModule.getId(), e);
+                    for (Runnable r : batch) {
+                        ((PendingMessage) r).fail(e);
+                    }
+                } finally {
+                    batch.clear();
+                    messages.clear();
+                }
+            }
+        }
+    }
+
     /** This adapter encapsulates write/read sink messages to OffHeapQueue. **/
     private class OffHeapAdapter implements Runnable {
 
         private Map<String, CompletableFuture<S>> offHeapFutureMap = new ConcurrentHashMap<>();
         private final CountDownLatch firstWrite = new CountDownLatch(1);
         private final AtomicBoolean closed = new AtomicBoolean(false);
+        // Keys only need to be unique while the messages are pending, seed them with the current time so that
+        // keys of messages left in the OffHeapQueue by a previous run don't collide with the ones of this run.
+        private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis() << 16);
 
         public OffHeapAdapter() {
             state.getMetrics().register(MetricRegistry.name(state.getModule().getId(), "offheap-messages"), new Gauge<Integer>() {
@@ -247,18 +417,24 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
                 try {
                     // Wait till atleast one write call to OffHeapQueue.
                     firstWrite.await();
-                    //retrieve key,value entry from top of queue.
-                    AbstractMap.SimpleImmutableEntry<String, byte[]> keyValue = offHeapQueue
-                            .readNextMessage(sinkModule.getId());
-                    if (keyValue != null) {
-                        queue.put(() -> {
-                            S message = sinkModule.unmarshalSingleMessage(keyValue.getValue());
-                            syncDispatcher.send(message);
-                            CompletableFuture<S> future = offHeapFutureMap.get(keyValue.getKey());
-                            future.complete(message);
-                            offHeapFutureMap.remove(keyValue.getKey());
-                        });
-
+                    // Only read as many messages as the executor queue can currently accept, at least one.
+                    List<AbstractMap.SimpleImmutableEntry<String, byte[]>> entries = offHeapQueue
+                            .readNextMessages(sinkModule.getId(), Math.max(1, queue.remainingCapacity()));
+                    for (AbstractMap.SimpleImmutableEntry<String, byte[]> keyValue : entries) {
+                        final S message;
+                        try {
+                            message = sinkModule.unmarshalSingleMessage(keyValue.getValue());
+                        } catch (RuntimeException e) {
+                            // Skip the message, it would never become readable
+                            rateLimittedLogger.error("Failed to unmarshal OffHeap message for {}", sinkModule.getId(), e);
+                            offHeapQueue.acknowledge(sinkModule.getId(), keyValue.getKey());
+                            final CompletableFuture<S> future = offHeapFutureMap.remove(keyValue.getKey());
+                            if (future != null) {
+                                future.completeExceptionally(e);
+                            }
+                            continue;
+                        }
+                        queue.put(new PendingMessage(message, offHeapFutureMap.remove(keyValue.getKey()), keyValue.getKey()));
                     }
                 } catch (InterruptedException e) {
                    LOG.warn("Interrupted while retrieving OffHeap Message for {} ", sinkModule.getId(), e);
@@ -270,16 +446,21 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
         public CompletableFuture<S> writeMessage(S message) throws WriteFailedException {
             final CompletableFuture<S> future = new CompletableFuture<>();
             byte[] bytes = sinkModule.marshalSingleMessage(message);
-            String uuid = UUID.randomUUID().toString();
-            offHeapFutureMap.put(uuid, future);
-            offHeapQueue.writeMessage(bytes, sinkModule.getId(), uuid);
+            String key = Long.toString(sequence.incrementAndGet());
+            offHeapFutureMap.put(key, future);
+            try {
+                offHeapQueue.writeMessage(bytes, sinkModule.getId(), key);
+            } catch (WriteFailedException e) {
+                offHeapFutureMap.remove(key);
+                throw e;
+            }
             firstWrite.countDown();
             return future;
             
         }
         
         public boolean isOffHeapEmpty() {
-            return offHeapFutureMap.isEmpty();
+            return offHeapFutureMap.isEmpty() && offHeapQueue.getNumOfMessages(sinkModule.getId()) == 0;
         }
         
         public void shutdown() {
@@ -40,7 +40,9 @@ import static org.mockito.Mockito.*;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -52,6 +54,10 @@ import org.opennms.core.ipc.sink.api.AsyncDispatcher;
 import org.opennms.core.ipc.sink.api.AsyncPolicy;
 import org.opennms.core.ipc.sink.api.Message;
 import org.opennms.core.ipc.sink.api.SinkModule;
+import org.osgi.framework.BundleContext;
+
+import io.opentracing.Tracer;
+import io.opentracing.util.GlobalTracer;
 
 @RunWith(MockitoJUnitRunner.class)
 public class AsyncDispatcherTest {
@@ -62,7 +68,17 @@ public class AsyncDispatcherTest {
     @Mock
     private SinkModule<MyMessage, MyMessage> module;
 
-    private static class MyMessage implements Message { }
+    private static class MyMessage implements Message {
+        private final int id;
+
+        public MyMessage() {
+            this(0);
+        }
+
+        public MyMessage(int id) {
+            this.id = id;
+        }
+    }
 
     private final ThreadLockingDispatcherFactory<MyMessage> threadLockingDispatcherFactory = new ThreadLockingDispatcherFactory<>();
 
@@ -202,4 +218,93 @@ public class AsyncDispatcherTest {
 
         asyncDispatcher.close();
     }
+
+    @Test(timeout=3*60*1000)
+    public void testBatchedDispatch() throws Exception {
+        when(module.getAsyncPolicy()).thenReturn(new AsyncPolicy() {
+            @Override
+            public int getQueueSize() {
+                return QUEUE_SIZE;
+            }
+
+            @Override
+            public int getNumThreads() {
+                return 1;
+            }
+
+            @Override
+            public boolean isBlockWhenFull() {
+                return true;
+            }
+
+            @Override
+            public int getBatchSize() {
+                return 10;
+            }
+        });
+
+        final CountDownLatch firstBatchStarted = new CountDownLatch(1);
+        final CountDownLatch releaseFirstBatch = new CountDownLatch(1);
+        final List<List<MyMessage>> batches = new CopyOnWriteArrayList<>();
+        final AbstractMessageDispatcherFactory<Void> batchingDispatcherFactory = new AbstractMessageDispatcherFactory<Void>() {
+            @Override
+            public <S extends Message, T extends Message> void dispatch(SinkModule<S, T> module, Void metadata, T message) {
+                throw new IllegalStateException("messages should be dispatched in batches");
+            }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public <S extends Message, T extends Message> void dispatchBatch(SinkModule<S, T> module, Void metadata, List<T> messages) {
+                batches.add(new ArrayList<>((List<MyMessage>)messages));
+                firstBatchStarted.countDown();
+                try {
+                    releaseFirstBatch.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+
+            @Override
+            public String getMetricDomain() {
+                return AsyncDispatcherTest.class.getPackage().getName();
+            }
+
+            @Override
+            public BundleContext getBundleContext() {
+                return null;
+            }
+
+            @Override
+            public Tracer getTracer() {
+                return GlobalTracer.get();
+            }
+        };
+        final AsyncDispatcher<MyMessage> asyncDispatcher = batchingDispatcherFactory.createAsyncDispatcher(module);
+
+        // Block the only dispatch thread on the first batch
+        final List<CompletableFuture<MyMessage>> futures = new ArrayList<>();
+        futures.add(asyncDispatcher.send(new MyMessage(0)));
+        assertTrue(firstBatchStarted.await(1, TimeUnit.MINUTES));
+
+        // Queue up more messages while the thread is busy
+        for (int i = 1; i <= QUEUE_SIZE; i++) {
+            futures.add(asyncDispatcher.send(new MyMessage(i)));
+        }
+        assertEquals(QUEUE_SIZE, asyncDispatcher.getQueueSize());
+
+        releaseFirstBatch.countDown();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[]{})).get(1, TimeUnit.MINUTES);
+
+        // The queued messages should have been dispatched in full batches, and in order
+        assertEquals(1 + QUEUE_SIZE / 10, batches.size());
+        int expectedId = 0;
+        for (int i = 0; i < batches.size(); i++) {
+            final List<MyMessage> batch = batches.get(i);
+            assertEquals(i == 0 ? 1 : 10, batch.size());
+            for (MyMessage message : batch) {
+                assertEquals(expectedId++, message.id);
+            }
+        }
+        asyncDispatcher.close();
+    }
 }
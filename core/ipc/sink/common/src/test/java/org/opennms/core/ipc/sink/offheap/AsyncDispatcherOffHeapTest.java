@@ -50,7 +50,9 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.opennms.core.ipc.sink.api.AsyncDispatcher;
 import org.opennms.core.ipc.sink.api.SinkModule;
 import org.opennms.core.ipc.sink.common.ThreadLockingDispatcherFactory;
@@ -61,24 +63,31 @@ public class AsyncDispatcherOffHeapTest {
 
     private final static String OFFHEAP_SIZE = "offHeapSize";
     private final static String ENABLE_OFFHEAP = "enableOffHeap";
+    private final static String SEGMENT_SIZE = "segmentSize";
+    private final static String OFFHEAP_DIRECTORY = "offHeapDirectory";
     public static final String OFFHEAP_CONFIG = "org.opennms.core.ipc.sink.offheap";
     private static final int QUEUE_SIZE = 100;
     private static final int NUM_THREADS = 16;
     private static final int OFFHEAP_MESSAGES = 100;
-    private H2OffHeapStore offHeapStore;
+    private SegmentedOffHeapStore offHeapStore;
 
     private SinkModule<MockMessage, MockMessage> module = new MockModule();
 
     private final ThreadLockingDispatcherFactory<MockMessage> threadLockingDispatcherFactory = new ThreadLockingDispatcherFactory<>();
 
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
     @Before
     public void setup() throws IOException {
         Hashtable<String, Object> configProperties = new Hashtable<>();
-        configProperties.put(OFFHEAP_SIZE, "40KB");
+        configProperties.put(OFFHEAP_SIZE, "4KB");
+        configProperties.put(SEGMENT_SIZE, "1KB");
+        configProperties.put(OFFHEAP_DIRECTORY, tempFolder.newFolder("offheap").getAbsolutePath());
         configProperties.put(ENABLE_OFFHEAP, true);
         ConfigurationAdmin configAdmin = mock(ConfigurationAdmin.class, RETURNS_DEEP_STUBS);
         when(configAdmin.getConfiguration(OFFHEAP_CONFIG).getProperties()).thenReturn(configProperties);
-        offHeapStore = new H2OffHeapStore(configAdmin);
+        offHeapStore = new SegmentedOffHeapStore(configAdmin);
         offHeapStore.init();
         OffHeapServiceLoader.setOffHeapQueue(offHeapStore);
         OffHeapServiceLoader.setOffHeapEnabled(true);
@@ -108,12 +117,10 @@ public class AsyncDispatcherOffHeapTest {
         int numOfMessagesInOffHeap = 0;
         for (int i = NUM_THREADS + QUEUE_SIZE; i < NUM_THREADS + QUEUE_SIZE + OFFHEAP_MESSAGES; i++) {
             CompletableFuture<MockMessage> future = asyncDispatcher.send(new MockMessage(Integer.toString(i)));
-            // This sleep is needed to get right size as the writes are committed every 1 sec by default
-            Thread.sleep(100);
             futures.add(future);
         }
         // Since one message will be read immediately without waiting, getNumOfMessages would be one less than num of offheap messages.
-        assertThat(offHeapStore.getNumOfMessages(module.getId()), equalTo(OFFHEAP_MESSAGES -1));
+        await().atMost(30, SECONDS).until(() -> offHeapStore.getNumOfMessages(module.getId()), equalTo(OFFHEAP_MESSAGES -1));
         // Release the threads!
         threadLockingSyncDispatcher.release();
         // Wait for the queue to be drained
@@ -151,8 +158,6 @@ public class AsyncDispatcherOffHeapTest {
         int numOfMessagesInOffHeap = 0;
         for (int i = NUM_THREADS + QUEUE_SIZE; i < NUM_THREADS + QUEUE_SIZE + OFFHEAP_MESSAGES*3; i++) {
             CompletableFuture<MockMessage> future = asyncDispatcher.send(new MockMessage(Integer.toString(i)));
-            // This sleep is needed to get right size as the writes are committed every 1 sec by default.
-            Thread.sleep(100);
             if (future.isCompletedExceptionally()) {
                 numOfMessagesDropped++;
             } else {
@@ -163,7 +168,8 @@ public class AsyncDispatcherOffHeapTest {
         // Atleast there should be one message that is dropped.
         assertThat(numOfMessagesDropped, greaterThan(0));
         // Since one message will be read immediately without waiting, getNumOfMessages would be one less than num of offheap messages.
-        assertThat(offHeapStore.getNumOfMessages(module.getId()), equalTo(numOfMessagesInOffHeap -1));
+        final int expectedNumOfMessages = numOfMessagesInOffHeap - 1;
+        await().atMost(30, SECONDS).until(() -> offHeapStore.getNumOfMessages(module.getId()), equalTo(expectedNumOfMessages));
         // Release the threads!
         threadLockingSyncDispatcher.release();
         // Wait for the queue to be drained
@@ -203,19 +209,13 @@ public class AsyncDispatcherOffHeapTest {
         Executors.newSingleThreadExecutor().execute(() -> {
                     for (int i = NUM_THREADS + QUEUE_SIZE; i < NUM_THREADS + QUEUE_SIZE + OFFHEAP_MESSAGES * 3; i++) {
                         CompletableFuture<MockMessage> future = asyncDispatcher.send(new MockMessage(Integer.toString(i)));
-                        // This sleep is needed to get right size as the writes are committed every 1 sec by default
-                        try {
-                            Thread.sleep(100);
-                        } catch (InterruptedException e) {
-                            //pass
-                        }
                         numOfMessagesDelivered.incrementAndGet();
                         futures.add(future);
                     }
                 }
         );
         // Allow dispatcher to fill offheap
-        await().atMost(30, SECONDS).until(() -> offHeapStore.getSize(), greaterThanOrEqualTo(40960L));
+        await().atMost(30, SECONDS).until(() -> offHeapStore.getSize(), greaterThanOrEqualTo(4096L));
         // Release the threads!
         threadLockingSyncDispatcher.release();
         // Wait for the queue to be drained
@@ -34,6 +34,8 @@ import static org.opennms.core.ipc.sink.api.Message.SINK_METRIC_PRODUCER_DOMAIN;
 
 import java.io.IOException;
 import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
@@ -68,6 +70,7 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.math.IntMath;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 
 import io.opentracing.Span;
 import io.opentracing.Tracer;
@@ -114,6 +117,77 @@ public class KafkaRemoteMessageDispatcherFactory extends AbstractMessageDispatch
         }
     }
 
+    /**
+     * Sends all of the messages before waiting for any of them to be acknowledged, instead of
+     * waiting for each message in turn. Messages that need to be split in chunks are sent
+     * synchronously, since all of their chunks need to end up in the same partition.
+     * If a message times out, it is sent again followed by the later messages with the same key,
+     * so messages with the same key keep their order.
+     */
+    @Override
+    public <S extends Message, T extends Message> void dispatchBatch(SinkModule<S, T> module, String topic, List<T> messages) {
+        try (MDCCloseable mdc = Logging.withPrefixCloseable(MessageConsumerManager.LOG_PREFIX)) {
+            LOG.trace("dispatchBatch({}): sending {} messages", topic, messages.size());
+            final List<ProducerRecord<String, byte[]>> records = new ArrayList<>(messages.size());
+            final List<Future<RecordMetadata>> futures = new ArrayList<>(messages.size());
+            long batchSize = 0;
+            for (T message : messages) {
+                byte[] sinkMessageContent = module.marshal(message);
+                batchSize += sinkMessageContent.length;
+                String messageId = UUID.randomUUID().toString();
+                final String messageKey = module.getRoutingKey(message).orElse(messageId);
+                if (sinkMessageContent.length > maxBufferSize) {
+                    boolean partitionChanged = false;
+                    do {
+                        partitionChanged = sendMessage(topic, messageId, messageKey, sinkMessageContent);
+                    } while (partitionChanged);
+                    continue;
+                }
+                final ProducerRecord<String, byte[]> record = new ProducerRecord<>(topic, messageKey,
+                        wrapMessageToProto(messageId, 0, 1, sinkMessageContent));
+                records.add(record);
+                futures.add(producer.send(record));
+            }
+
+            Span activeSpan = getTracer().activeSpan();
+            if (activeSpan != null) {
+                activeSpan.setTag(TracerConstants.TAG_TOPIC, topic);
+                activeSpan.setTag(TracerConstants.TAG_MESSAGE_SIZE, batchSize);
+                activeSpan.setTag(TracerConstants.TAG_THREAD, Thread.currentThread().getName());
+            }
+
+            final boolean[] resent = new boolean[records.size()];
+            for (int i = 0; i < futures.size(); i++) {
+                if (resent[i]) {
+                    continue;
+                }
+                try {
+                    futures.get(i).get();
+                } catch (InterruptedException e) {
+                    LOG.warn("Interrupted while sending messages to topic {}.", topic, e);
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException e) {
+                    if (e.getCause() != null && e.getCause() instanceof TimeoutException) {
+                        // Keep sending the record until it delivers, same as for individual messages.
+                        // Later records with the same key may have been delivered meanwhile, send them again after it.
+                        LOG.warn("Timeout occured while sending message to topic {}, it will be attempted again.", topic);
+                        final String key = records.get(i).key();
+                        sendMessageChunkToKafka(topic, records.get(i));
+                        for (int j = i + 1; j < records.size(); j++) {
+                            if (key.equals(records.get(j).key())) {
+                                sendMessageChunkToKafka(topic, records.get(j));
+                                resent[j] = true;
+                            }
+                        }
+                    } else {
+                        LOG.error("Exception occured while sending message to topic {} ", topic, e);
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * This method will divide message into chunks and send each chunk to kafka.
      * This will return false by default. If this is large buffer (total chunks > 1) and if different chunks have
@@ -186,7 +260,9 @@ public class KafkaRemoteMessageDispatcherFactory extends AbstractMessageDispatch
     private byte[] wrapMessageToProto(String messageId, int chunk, int totalChunks, byte[] sinkMessageContent) {
         // Calculate remaining bufferSize for each chunk.
         int bufferSize = getRemainingBufferSize(sinkMessageContent.length, chunk);
-        ByteString byteString = ByteString.copyFrom(sinkMessageContent, chunk * maxBufferSize, bufferSize);
+        // The content is not modified once marshalled, so it can be wrapped without a copy when it fits in a single chunk
+        ByteString byteString = totalChunks == 1 ? UnsafeByteOperations.unsafeWrap(sinkMessageContent)
+                : ByteString.copyFrom(sinkMessageContent, chunk * maxBufferSize, bufferSize);
         SinkMessageProtos.SinkMessage.Builder sinkMessageBuilder = SinkMessageProtos.SinkMessage.newBuilder()
                 .setMessageId(messageId)
                 .setCurrentChunkNumber(chunk)
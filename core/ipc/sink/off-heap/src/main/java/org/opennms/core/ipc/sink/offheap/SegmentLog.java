@@ -0,0 +1,456 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.ipc.sink.offheap;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.opennms.core.ipc.sink.api.WriteFailedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only log of sink messages for a single module, stored in a sequence
+ * of memory-mapped segment files.
+ *
+ * Each record is laid out as <code>[int length][int keyLength][key][message]</code>,
+ * where <code>length</code> covers everything after itself. The writer always
+ * leaves room for a zero length after the last record, and the length of a record
+ * is written after its body, so a reader (or a recovery scan) never sees a partially
+ * written record.
+ *
+ * Records which were read are only consumed once they were acknowledged, see
+ * {@link #acknowledge(String)}. The position up to which all the records were
+ * acknowledged is kept in a small mapped <code>cursor</code> file, which allows
+ * the log to be reopened after a restart, records which were read but not
+ * acknowledged yet are read again. Segments that were fully consumed are either
+ * kept as spares, and recycled by the writer, or deleted.
+ */
+class SegmentLog {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SegmentLog.class);
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String CURSOR_FILE = "cursor";
+    private static final int CURSOR_SIZE = Long.BYTES + Integer.BYTES;
+    private static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int spareSegments;
+    private final long maxSizeInBytes;
+    // Number of bytes allocated by the live segments of all the logs sharing the same store.
+    private final AtomicLong allocatedBytes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    // Live segments, the cursor is positioned in the first one, and the writer in the last one.
+    // There are no live segments until the first record is written.
+    private final List<Segment> segments = new ArrayList<>();
+    private final Deque<Segment> spares = new ArrayDeque<>();
+    private final FileChannel cursorChannel;
+    private final MappedByteBuffer cursor;
+    // Records which were read but not acknowledged yet, in the order they were read
+    private final Deque<InFlight> inFlight = new ArrayDeque<>();
+    private final Map<String, InFlight> inFlightByKey = new HashMap<>();
+
+    // Id of the first segment, used when the log has no live segments
+    private long firstSegmentId;
+    private int readIndex;
+    private int readOffset;
+    private int writeOffset;
+    // Number of records which were not read yet
+    private int numOfMessages;
+
+    SegmentLog(Path directory, int segmentSize, int spareSegments, long maxSizeInBytes, AtomicLong allocatedBytes) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.spareSegments = spareSegments;
+        this.maxSizeInBytes = maxSizeInBytes;
+        this.allocatedBytes = allocatedBytes;
+
+        Files.createDirectories(directory);
+        cursorChannel = FileChannel.open(directory.resolve(CURSOR_FILE), CREATE, READ, WRITE);
+        cursor = cursorChannel.map(FileChannel.MapMode.READ_WRITE, 0, CURSOR_SIZE);
+        recover(cursor.getLong(0), cursor.getInt(Long.BYTES));
+    }
+
+    private void recover(long cursorSegment, int cursorOffset) throws IOException {
+        final List<Long> ids = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                final String name = path.getFileName().toString();
+                try {
+                    ids.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    LOG.warn("Ignoring unexpected file {} in {}", name, directory);
+                }
+            }
+        }
+        Collections.sort(ids);
+
+        for (Long id : ids) {
+            if (id < cursorSegment) {
+                // Already consumed before the last shutdown
+                Files.deleteIfExists(segmentPath(id));
+            } else {
+                // Segments written before the last shutdown are kept, even if they exceed the maximum size
+                final Segment segment = Segment.open(segmentPath(id), id, 0);
+                allocatedBytes.addAndGet(segment.capacity());
+                segments.add(segment);
+            }
+        }
+
+        firstSegmentId = cursorSegment;
+        if (segments.isEmpty()) {
+            return;
+        }
+        readIndex = 0;
+        readOffset = segments.get(0).id == cursorSegment ? cursorOffset : 0;
+        int offset = readOffset;
+        for (int i = 0; i < segments.size(); i++) {
+            offset = scan(segments.get(i), offset);
+            if (i < segments.size() - 1) {
+                offset = 0;
+            }
+        }
+        writeOffset = offset;
+        updateCursor(segments.get(0).id, readOffset);
+
+        if (numOfMessages > 0) {
+            LOG.info("Recovered {} messages in {} segments from {}", numOfMessages, segments.size(), directory);
+        }
+    }
+
+    /** Counts the complete records in the given segment, starting at the given offset, and returns the end offset. */
+    private int scan(Segment segment, int offset) {
+        while (offset + HEADER_SIZE <= segment.capacity()) {
+            final int length = segment.buffer.getInt(offset);
+            if (length <= 0 || offset + Integer.BYTES + length > segment.capacity()) {
+                break;
+            }
+            numOfMessages++;
+            offset += Integer.BYTES + length;
+        }
+        return offset;
+    }
+
+    public void write(String key, byte[] message) throws WriteFailedException {
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final int length = Integer.BYTES + keyBytes.length + message.length;
+        final int recordSize = Integer.BYTES + length;
+        // Leave room for the zero length which marks the end of the written records
+        if (recordSize + Integer.BYTES > segmentSize) {
+            throw new WriteFailedException("Message of " + message.length + " bytes exceeds the segment size of " + segmentSize);
+        }
+
+        lock.lock();
+        try {
+            Segment tail = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            if (tail == null || writeOffset + recordSize + Integer.BYTES > tail.capacity()) {
+                tail = roll();
+            }
+            final ByteBuffer writer = tail.writer;
+            writer.position(writeOffset + Integer.BYTES);
+            writer.putInt(keyBytes.length);
+            writer.put(keyBytes);
+            writer.put(message);
+            writer.putInt(0);
+            // Publish the record by writing its length last
+            tail.buffer.putInt(writeOffset, length);
+            writeOffset += recordSize;
+            numOfMessages++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Segment roll() throws WriteFailedException {
+        if (allocatedBytes.addAndGet(segmentSize) > maxSizeInBytes) {
+            allocatedBytes.addAndGet(-segmentSize);
+            throw new WriteFailedException("Offheap storage exhausted, size = " + maxSizeInBytes);
+        }
+        final long id;
+        if (segments.isEmpty()) {
+            id = firstSegmentId;
+        } else {
+            final Segment last = segments.get(segments.size() - 1);
+            last.buffer.force();
+            id = last.id + 1;
+        }
+        try {
+            Segment next = spares.pollFirst();
+            if (next != null) {
+                next.buffer.putInt(0, 0);
+                next.moveTo(segmentPath(id), id);
+            } else {
+                next = Segment.open(segmentPath(id), id, segmentSize);
+                next.buffer.putInt(0, 0);
+            }
+            segments.add(next);
+            writeOffset = 0;
+            return next;
+        } catch (IOException e) {
+            allocatedBytes.addAndGet(-segmentSize);
+            LOG.error("Failed to allocate segment {} in {}", id, directory, e);
+            throw new WriteFailedException("Failed to allocate segment: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Retrieves up to <code>maxMessages</code> from the head of the log, waiting up to
+     * the given timeout for at least one message to become available. The messages
+     * remain in the log until they are acknowledged.
+     */
+    public List<AbstractMap.SimpleImmutableEntry<String, byte[]>> read(int maxMessages, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (numOfMessages == 0) {
+                if (nanos <= 0) {
+                    return Collections.emptyList();
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            final int count = Math.min(Math.max(maxMessages, 1), numOfMessages);
+            final List<AbstractMap.SimpleImmutableEntry<String, byte[]>> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                entries.add(readRecord());
+            }
+            return entries;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private AbstractMap.SimpleImmutableEntry<String, byte[]> readRecord() {
+        Segment segment = segments.get(readIndex);
+        if (readOffset + HEADER_SIZE > segment.capacity() || segment.buffer.getInt(readOffset) == 0) {
+            // The segment is exhausted, there are pending messages so it can't be the last one
+            readIndex++;
+            readOffset = 0;
+            segment = segments.get(readIndex);
+        }
+        final int length = segment.buffer.getInt(readOffset);
+        final ByteBuffer reader = segment.reader;
+        reader.position(readOffset + Integer.BYTES);
+        final byte[] keyBytes = new byte[reader.getInt()];
+        reader.get(keyBytes);
+        final byte[] message = new byte[length - Integer.BYTES - keyBytes.length];
+        reader.get(message);
+        readOffset += Integer.BYTES + length;
+        numOfMessages--;
+
+        final String key = new String(keyBytes, StandardCharsets.UTF_8);
+        final InFlight record = new InFlight(segment.id, readOffset);
+        inFlight.addLast(record);
+        inFlightByKey.put(key, record);
+        return new AbstractMap.SimpleImmutableEntry<>(key, message);
+    }
+
+    /**
+     * Marks the record with the given key, which was previously read, as consumed.
+     * The cursor is advanced over all the records read before it, once they were acknowledged as well.
+     */
+    public void acknowledge(String key) {
+        lock.lock();
+        try {
+            final InFlight record = inFlightByKey.remove(key);
+            if (record == null) {
+                return;
+            }
+            record.acknowledged = true;
+            if (inFlight.peekFirst() != record) {
+                return;
+            }
+            InFlight last = null;
+            while (!inFlight.isEmpty() && inFlight.peekFirst().acknowledged) {
+                last = inFlight.pollFirst();
+            }
+            if (inFlight.isEmpty()) {
+                // Everything that was read was consumed, move the cursor to the reader
+                commit(segments.get(readIndex).id, readOffset);
+            } else {
+                commit(last.segmentId, last.endOffset);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void commit(long segmentId, int offset) {
+        updateCursor(segmentId, offset);
+        // Release the segments before the one of the cursor
+        while (segments.get(0).id < segmentId) {
+            release(segments.remove(0));
+            readIndex--;
+        }
+    }
+
+    private void release(Segment segment) {
+        allocatedBytes.addAndGet(-segment.capacity());
+        if (spares.size() < spareSegments && segment.capacity() == segmentSize) {
+            spares.addLast(segment);
+            return;
+        }
+        try {
+            segment.close();
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            LOG.warn("Failed to delete consumed segment {}", segment.path, e);
+        }
+    }
+
+    private void updateCursor(long segmentId, int offset) {
+        cursor.putLong(0, segmentId);
+        cursor.putInt(Long.BYTES, offset);
+    }
+
+    public int getNumOfMessages() {
+        lock.lock();
+        try {
+            return numOfMessages;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getNumOfSegments() {
+        lock.lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Flushes the segments and the cursor to disk and releases the files. The pending messages are preserved. */
+    public void close() {
+        lock.lock();
+        try {
+            for (Segment segment : segments) {
+                segment.buffer.force();
+                allocatedBytes.addAndGet(-segment.capacity());
+                segment.close();
+            }
+            for (Segment segment : spares) {
+                segment.close();
+            }
+            segments.clear();
+            spares.clear();
+            inFlight.clear();
+            inFlightByKey.clear();
+            cursor.force();
+            cursorChannel.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close segment log in {}", directory, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Path segmentPath(long id) {
+        return directory.resolve(String.format("%019d%s", id, SEGMENT_SUFFIX));
+    }
+
+    private static final class InFlight {
+        private final long segmentId;
+        // Offset following the record in its segment
+        private final int endOffset;
+        private boolean acknowledged;
+
+        private InFlight(long segmentId, int endOffset) {
+            this.segmentId = segmentId;
+            this.endOffset = endOffset;
+        }
+    }
+
+    private static final class Segment {
+        private long id;
+        private Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        // Views with their own position, used by the writer and the reader respectively
+        private final ByteBuffer writer;
+        private final ByteBuffer reader;
+
+        private Segment(long id, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.writer = buffer.duplicate();
+            this.reader = buffer.duplicate();
+        }
+
+        /** Maps the given file, using its current size when <code>size</code> is 0. */
+        private static Segment open(Path path, long id, int size) throws IOException {
+            final FileChannel channel = FileChannel.open(path, CREATE, READ, WRITE);
+            final long capacity = size > 0 ? size : channel.size();
+            return new Segment(id, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+        }
+
+        private int capacity() {
+            return buffer.capacity();
+        }
+
+        private void moveTo(Path target, long targetId) throws IOException {
+            Files.move(path, target);
+            path = target;
+            id = targetId;
+        }
+
+        private void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.ipc.sink.offheap;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.core.ipc.sink.api.OffHeapQueue;
+import org.opennms.core.ipc.sink.api.WriteFailedException;
+import org.osgi.service.cm.ConfigurationAdmin;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Strings;
+
+/**
+ * {@link OffHeapQueue} backed by per-module, memory-mapped, append-only segment files.
+ *
+ * Messages are stored on disk, in the order they were written, and survive restarts
+ * until they were acknowledged.
+ * The total amount of space allocated by the segments of all the modules is bounded
+ * by <code>offHeapSize</code>.
+ */
+public class SegmentedOffHeapStore implements OffHeapQueue {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SegmentedOffHeapStore.class);
+    private static final String OFFHEAP_CONFIG = "org.opennms.core.ipc.sink.offheap";
+    private final static String OFFHEAP_SIZE = "offHeapSize";
+    private final static String DEFAULT_OFFHEAP_SIZE = "10MB";
+    private final static String SEGMENT_SIZE = "segmentSize";
+    private final static String DEFAULT_SEGMENT_SIZE = "1MB";
+    private final static String SPARE_SEGMENTS = "spareSegments";
+    private final static int DEFAULT_SPARE_SEGMENTS = 2;
+    private final static String OFFHEAP_DIRECTORY = "offHeapDirectory";
+    // Default wait time for each poll is 1000msec.
+    private final static long DEFAULT_WAIT_FOR_POLL = 1000L;
+
+    private JmxReporter reporter = null;
+    private MetricRegistry offheapMetrics = new MetricRegistry();
+    private final ConfigurationAdmin configAdmin;
+    private long maxSizeInBytes;
+    private int segmentSizeInBytes;
+    private int spareSegments = DEFAULT_SPARE_SEGMENTS;
+    private Path directory;
+    private final AtomicLong allocatedBytes = new AtomicLong(0);
+    // Map of ModuleName and corresponding segment log.
+    private final Map<String, SegmentLog> logs = new ConcurrentHashMap<>();
+
+    public SegmentedOffHeapStore(ConfigurationAdmin configAdmin) {
+        this.configAdmin = configAdmin;
+    }
+
+    public void init() throws IOException {
+        maxSizeInBytes = convertByteSizes(DEFAULT_OFFHEAP_SIZE, DEFAULT_OFFHEAP_SIZE);
+        segmentSizeInBytes = (int) convertByteSizes(DEFAULT_SEGMENT_SIZE, DEFAULT_SEGMENT_SIZE);
+        directory = getDefaultDirectory();
+        Dictionary<String, Object> properties = configAdmin.getConfiguration(OFFHEAP_CONFIG).getProperties();
+        if (properties != null) {
+            if (properties.get(OFFHEAP_SIZE) instanceof String) {
+                maxSizeInBytes = convertByteSizes((String)properties.get(OFFHEAP_SIZE), DEFAULT_OFFHEAP_SIZE);
+            }
+            if (properties.get(SEGMENT_SIZE) instanceof String) {
+                segmentSizeInBytes = (int) Math.min(Integer.MAX_VALUE, convertByteSizes((String)properties.get(SEGMENT_SIZE), DEFAULT_SEGMENT_SIZE));
+            }
+            if (properties.get(SPARE_SEGMENTS) != null) {
+                try {
+                    spareSegments = Integer.parseInt(properties.get(SPARE_SEGMENTS).toString());
+                } catch (NumberFormatException e) {
+                    LOG.error("Provided number of spare segments '{}' is invalid, using default as {}", properties.get(SPARE_SEGMENTS), DEFAULT_SPARE_SEGMENTS);
+                }
+            }
+            if (properties.get(OFFHEAP_DIRECTORY) instanceof String) {
+                directory = Paths.get((String)properties.get(OFFHEAP_DIRECTORY));
+            }
+        }
+        if (segmentSizeInBytes > maxSizeInBytes) {
+            LOG.warn("Segment size {} is larger than the offheap size, using {}", segmentSizeInBytes, maxSizeInBytes);
+            segmentSizeInBytes = (int) maxSizeInBytes;
+        }
+
+        // Reopen the logs of the modules that were written before the last shutdown
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path moduleDirectory : stream) {
+                final String moduleName = moduleDirectory.getFileName().toString();
+                logs.put(moduleName, openLog(moduleName));
+            }
+        }
+
+        reporter = JmxReporter.forRegistry(offheapMetrics).inDomain(this.getClass().getPackage().getName()).build();
+        offheapMetrics.register(MetricRegistry.name("offHeapSize"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return getSize();
+            }
+        });
+        offheapMetrics.register(MetricRegistry.name("offHeapSegments"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return logs.values().stream().mapToInt(SegmentLog::getNumOfSegments).sum();
+            }
+        });
+        reporter.start();
+        LOG.info("initializing segmented OffHeapStore in {} with max size : {} and segment size : {}",
+                directory, maxSizeInBytes, segmentSizeInBytes);
+    }
+
+    private SegmentLog openLog(String moduleName) throws IOException {
+        return new SegmentLog(directory.resolve(moduleName), segmentSizeInBytes, spareSegments, maxSizeInBytes, allocatedBytes);
+    }
+
+    private SegmentLog getOrCreateLog(String moduleName) throws WriteFailedException {
+        SegmentLog log = logs.get(moduleName);
+        if (log != null) {
+            return log;
+        }
+        synchronized (logs) {
+            log = logs.get(moduleName);
+            if (log == null) {
+                try {
+                    log = openLog(moduleName);
+                } catch (IOException e) {
+                    LOG.error("Failed to initialize segment log for module : {}", moduleName, e);
+                    throw new WriteFailedException("Failed to initialize segment log for module " + moduleName);
+                }
+                logs.put(moduleName, log);
+                LOG.info("initialized segment log for module : {} ", moduleName);
+            }
+            return log;
+        }
+    }
+
+    @Override
+    public boolean writeMessage(byte[] message, String moduleName, String key) throws WriteFailedException {
+        if (message == null || Strings.isNullOrEmpty(moduleName) || !isValidModuleName(moduleName)) {
+            throw new WriteFailedException("Invalid message");
+        }
+        getOrCreateLog(moduleName).write(key, message);
+        return true;
+    }
+
+    @Override
+    public AbstractMap.SimpleImmutableEntry<String, byte[]> readNextMessage(String moduleName)
+            throws InterruptedException {
+        final List<AbstractMap.SimpleImmutableEntry<String, byte[]>> entries = readNextMessages(moduleName, 1);
+        return entries.isEmpty() ? null : entries.get(0);
+    }
+
+    @Override
+    public List<AbstractMap.SimpleImmutableEntry<String, byte[]>> readNextMessages(String moduleName, int maxMessages)
+            throws InterruptedException {
+        final SegmentLog log = logs.get(moduleName);
+        if (log == null) {
+            LOG.warn("No data was ever written for this module {}", moduleName);
+            return Collections.emptyList();
+        }
+        // Poll for items to be available, max wait is 1 second.
+        return log.read(maxMessages, DEFAULT_WAIT_FOR_POLL, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void acknowledge(String moduleName, String key) {
+        final SegmentLog log = logs.get(moduleName);
+        if (log != null) {
+            log.acknowledge(key);
+        }
+    }
+
+    public void destroy() {
+        LOG.info("closing segmented OffHeapStore, size = {} ", getSize());
+        logs.forEach((module, log) -> log.close());
+        logs.clear();
+        if (reporter != null) {
+            reporter.stop();
+        }
+    }
+
+    private static boolean isValidModuleName(String moduleName) {
+        // Module names are used as directory names
+        return moduleName.matches("[A-Za-z0-9._-]+") && !moduleName.startsWith(".");
+    }
+
+    private static Path getDefaultDirectory() {
+        final String data = System.getProperty("karaf.data", System.getProperty("java.io.tmpdir"));
+        return Paths.get(data, "offheap");
+    }
+
+    private long convertByteSizes(String size, String defaultSize) {
+        String suffix = size.substring(size.length()-2, size.length());
+        double value = 0;
+        long bytes = 0;
+        try {
+            value = Double.parseDouble(size.substring(0, size.length() - 2));
+        } catch (NumberFormatException e) {
+            //pass
+        }
+        switch(suffix) {
+            case "KB":
+                bytes = (long) (value * 1024);
+                break;
+            case "MB":
+                bytes = (long) (value * 1024 * 1024);
+                break;
+            case "GB":
+                bytes = (long) (value * 1024 * 1024 * 1024);
+                break;
+        }
+        if (bytes == 0) {
+            LOG.error("Provided size '{}' is invalid, using default as {}", size, defaultSize);
+            return convertByteSizes(defaultSize, defaultSize);
+        }
+        return bytes;
+    }
+
+    /**
+     * @return number of bytes allocated by the live segments of all modules.
+     */
+    @Override
+    public long getSize() {
+        return allocatedBytes.get();
+    }
+
+    @Override
+    public int getNumOfMessages(String moduleName) {
+        SegmentLog log = logs.get(moduleName);
+        if (log != null) {
+            return log.getNumOfMessages();
+        }
+        return 0;
+    }
+
+}
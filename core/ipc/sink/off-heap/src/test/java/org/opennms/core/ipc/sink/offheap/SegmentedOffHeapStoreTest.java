@@ -0,0 +1,276 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.ipc.sink.offheap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.core.ipc.sink.api.WriteFailedException;
+import org.osgi.service.cm.ConfigurationAdmin;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+public class SegmentedOffHeapStoreTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SegmentedOffHeapStoreTest.class);
+    private final static String OFFHEAP_SIZE = "offHeapSize";
+    private final static String SEGMENT_SIZE = "segmentSize";
+    private final static String OFFHEAP_DIRECTORY = "offHeapDirectory";
+    public static final String OFFHEAP_CONFIG = "org.opennms.core.ipc.sink.offheap";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private String directory;
+    private SegmentedOffHeapStore queue;
+
+    @Before
+    public void setup() throws IOException {
+        directory = tempFolder.newFolder("offheap").getAbsolutePath();
+        queue = createStore("1MB", "64KB");
+    }
+
+    private SegmentedOffHeapStore createStore(String offHeapSize, String segmentSize) throws IOException {
+        Hashtable<String, Object> configProperties = new Hashtable<>();
+        configProperties.put(OFFHEAP_SIZE, offHeapSize);
+        configProperties.put(SEGMENT_SIZE, segmentSize);
+        configProperties.put(OFFHEAP_DIRECTORY, directory);
+        ConfigurationAdmin configAdmin = mock(ConfigurationAdmin.class, RETURNS_DEEP_STUBS);
+        when(configAdmin.getConfiguration(OFFHEAP_CONFIG).getProperties()).thenReturn(configProperties);
+        SegmentedOffHeapStore store = new SegmentedOffHeapStore(configAdmin);
+        store.init();
+        return store;
+    }
+
+    @Test
+    public void testSegmentedDataStore() throws InterruptedException, WriteFailedException {
+
+        long beforeWrite = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        executor.execute(() -> {
+            for (int i = 0; i < 1000; i++) {
+                String message = "This is " + i + " trap message";
+                try {
+                    queue.writeMessage(message.getBytes(), "traps-test", Integer.toString(i));
+                } catch (WriteFailedException e) {
+                   // pass
+                }
+            }
+        });
+
+        executor.execute(() -> {
+            for (int i = 0; i < 1000; i++) {
+                String message = "This is " + i + " syslog message";
+                try {
+                    queue.writeMessage(message.getBytes(), "syslog-test", Integer.toString(i));
+                } catch (WriteFailedException e) {
+                    // pass
+                }
+            }
+        });
+
+        for (int i = 0; i < 1000; i++) {
+            String message = "This is " + i + " event message";
+            queue.writeMessage(message.getBytes(), "events-test", Integer.toString(i));
+        }
+
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        long afterWrite = System.currentTimeMillis();
+        for (int i = 0; i < 1000; i++) {
+            AbstractMap.SimpleImmutableEntry<String, byte[]> keyValue = queue.readNextMessage("traps-test");
+            assertEquals(Integer.toString(i), keyValue.getKey());
+            assertEquals("This is " + i + " trap message", new String(keyValue.getValue()));
+        }
+        for (int i = 0; i < 1000; i++) {
+            AbstractMap.SimpleImmutableEntry<String, byte[]> keyValue = queue.readNextMessage("syslog-test");
+            assertEquals(Integer.toString(i), keyValue.getKey());
+            assertEquals("This is " + i + " syslog message", new String(keyValue.getValue()));
+        }
+        for (int i = 0; i < 1000; i++) {
+            AbstractMap.SimpleImmutableEntry<String, byte[]> keyValue = queue.readNextMessage("events-test");
+            assertEquals(Integer.toString(i), keyValue.getKey());
+            assertEquals("This is " + i + " event message", new String(keyValue.getValue()));
+        }
+        long afterRead = System.currentTimeMillis();
+        LOG.info("Total Write time  " + (afterWrite - beforeWrite));
+        LOG.info("Total read time  " + (afterRead - afterWrite));
+        LOG.info("Total time  " + (afterRead - beforeWrite));
+    }
+
+    @Test
+    public void testBatchedReadsAcrossSegments() throws Exception {
+        queue.destroy();
+        queue = createStore("64KB", "1KB");
+        for (int i = 0; i < 500; i++) {
+            queue.writeMessage(("message " + i).getBytes(), "flows", Integer.toString(i));
+        }
+        assertEquals(500, queue.getNumOfMessages("flows"));
+
+        int expected = 0;
+        while (expected < 500) {
+            List<AbstractMap.SimpleImmutableEntry<String, byte[]>> entries = queue.readNextMessages("flows", 64);
+            assertTrue(entries.size() > 0 && entries.size() <= 64);
+            for (AbstractMap.SimpleImmutableEntry<String, byte[]> entry : entries) {
+                assertEquals("message " + expected, new String(entry.getValue()));
+                queue.acknowledge("flows", entry.getKey());
+                expected++;
+            }
+        }
+        assertEquals(0, queue.getNumOfMessages("flows"));
+        // Only the segment currently being written to should remain allocated
+        assertEquals(1024L, queue.getSize());
+        assertNull(queue.readNextMessage("flows"));
+    }
+
+    @Test
+    public void testRejectedWhenFull() throws Exception {
+        queue.destroy();
+        queue = createStore("2KB", "1KB");
+        int written = 0;
+        try {
+            for (; written < 1000; written++) {
+                queue.writeMessage(("message " + written).getBytes(), "traps", Integer.toString(written));
+            }
+            fail("Expected the offheap storage to be exhausted");
+        } catch (WriteFailedException e) {
+            // expected
+        }
+        assertEquals(written, queue.getNumOfMessages("traps"));
+        assertEquals(2048L, queue.getSize());
+
+        // Reading does not release space until the messages were acknowledged
+        final List<AbstractMap.SimpleImmutableEntry<String, byte[]>> entries = queue.readNextMessages("traps", written);
+        try {
+            queue.writeMessage("before ack".getBytes(), "traps", "before");
+            fail("Expected the offheap storage to be exhausted");
+        } catch (WriteFailedException e) {
+            // expected
+        }
+        // Draining the first segment releases space for new writes
+        entries.forEach(entry -> queue.acknowledge("traps", entry.getKey()));
+        queue.writeMessage("after drain".getBytes(), "traps", "after");
+        assertEquals("after drain", new String(queue.readNextMessage("traps").getValue()));
+    }
+
+    @Test
+    public void testMessagesSurviveRestart() throws Exception {
+        queue.destroy();
+        queue = createStore("64KB", "1KB");
+        for (int i = 0; i < 200; i++) {
+            queue.writeMessage(("message " + i).getBytes(), "syslog", Integer.toString(i));
+        }
+        // Consume part of the log before restarting, the messages which were read but
+        // not acknowledged are read again after the restart
+        for (int i = 0; i < 80; i++) {
+            AbstractMap.SimpleImmutableEntry<String, byte[]> keyValue = queue.readNextMessage("syslog");
+            assertEquals("message " + i, new String(keyValue.getValue()));
+            if (i < 50) {
+                queue.acknowledge("syslog", keyValue.getKey());
+            }
+        }
+        queue.destroy();
+
+        queue = createStore("64KB", "1KB");
+        assertEquals(150, queue.getNumOfMessages("syslog"));
+        for (int i = 50; i < 200; i++) {
+            AbstractMap.SimpleImmutableEntry<String, byte[]> keyValue = queue.readNextMessage("syslog");
+            assertEquals(Integer.toString(i), keyValue.getKey());
+            assertEquals("message " + i, new String(keyValue.getValue()));
+        }
+        // New writes are appended after the recovered messages
+        queue.writeMessage("new message".getBytes(), "syslog", "new");
+        assertEquals("new message", new String(queue.readNextMessage("syslog").getValue()));
+    }
+
+    @Test
+    public void testCursorOnlyAdvancesOverAcknowledgedMessages() throws Exception {
+        queue.destroy();
+        queue = createStore("64KB", "1KB");
+        for (int i = 0; i < 100; i++) {
+            queue.writeMessage(("message " + i).getBytes(), "traps", Integer.toString(i));
+        }
+        final List<AbstractMap.SimpleImmutableEntry<String, byte[]>> entries = queue.readNextMessages("traps", 100);
+        assertEquals(100, entries.size());
+        // Acknowledge all but the 10th message, out of order
+        for (int i = 99; i >= 0; i--) {
+            if (i != 10) {
+                queue.acknowledge("traps", entries.get(i).getKey());
+            }
+        }
+        queue.destroy();
+
+        queue = createStore("64KB", "1KB");
+        assertEquals(90, queue.getNumOfMessages("traps"));
+        assertEquals("message 10", new String(queue.readNextMessage("traps").getValue()));
+    }
+
+    @Test
+    public void testFirstSegmentOfModuleIsAccounted() throws Exception {
+        queue.destroy();
+        queue = createStore("2KB", "1KB");
+        queue.writeMessage("trap".getBytes(), "traps", "1");
+        queue.writeMessage("syslog".getBytes(), "syslog", "1");
+        assertEquals(2048L, queue.getSize());
+        try {
+            queue.writeMessage("event".getBytes(), "events", "1");
+            fail("Expected the offheap storage to be exhausted");
+        } catch (WriteFailedException e) {
+            // expected
+        }
+        assertEquals(2048L, queue.getSize());
+        assertEquals(0, queue.getNumOfMessages("events"));
+    }
+
+    @After
+    public void destroy() throws InterruptedException {
+        queue.destroy();
+    }
+
+}
@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.snmp;
+
+import java.net.InetAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The GETBULK parameters learned for an agent, shared by all walks of the agent with the same
+ * configuration and kept across collection cycles.
+ *
+ * The number of repetitions starts at the configured maxRepetitions. It is halved when the agent
+ * answers slowly, times out or reports tooBig and increased by one while the agent answers quickly
+ * with full responses, but never beyond the configured value. The number of varbinds of the smallest
+ * request answered with tooBig caps further increases, so the walks settle just below the size the
+ * agent can handle. The number of columns requested per PDU starts at the configured maxVarsPerPdu
+ * and is only reduced when a single repetition is still too big.
+ *
+ * The tunings of the least recently walked agents are dropped once more than
+ * <code>org.opennms.netmgt.snmp.adaptiveWalks.maxAgents</code> agents are known, as are the tunings
+ * of agents that have not been walked for <code>org.opennms.netmgt.snmp.adaptiveWalks.expiry</code>
+ * milliseconds.
+ *
+ * Enabled by setting the <code>org.opennms.netmgt.snmp.adaptiveWalks</code> system property.
+ */
+final class SnmpWalkTuning {
+
+    static final boolean ENABLED = Boolean.getBoolean("org.opennms.netmgt.snmp.adaptiveWalks");
+
+    private static final int MAX_AGENTS = Integer.getInteger("org.opennms.netmgt.snmp.adaptiveWalks.maxAgents", 10000);
+
+    private static final long EXPIRY = Long.getLong("org.opennms.netmgt.snmp.adaptiveWalks.expiry", TimeUnit.HOURS.toMillis(1));
+
+    private static final Map<Key, SnmpWalkTuning> s_agents = new LinkedHashMap<Key, SnmpWalkTuning>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Key, SnmpWalkTuning> eldest) {
+            return size() > MAX_AGENTS || eldest.getValue().isExpired(System.currentTimeMillis());
+        }
+    };
+
+    private final int m_configuredMaxRepetitions;
+
+    private int m_maxVarsPerPdu;
+    private int m_maxRepetitions;
+    private int m_maxVarBinds = Integer.MAX_VALUE;
+
+    // Guarded by s_agents
+    private long m_lastUsed;
+
+    SnmpWalkTuning(final int maxVarsPerPdu, final int maxRepetitions) {
+        m_maxVarsPerPdu = Math.max(1, maxVarsPerPdu);
+        m_maxRepetitions = Math.max(1, maxRepetitions);
+        m_configuredMaxRepetitions = m_maxRepetitions;
+    }
+
+    /**
+     * @return the tuning of the given agent, or null if adaptive walks are disabled
+     */
+    static SnmpWalkTuning forAgent(final InetAddress address, final int maxVarsPerPdu, final int maxRepetitions) {
+        if (!ENABLED || address == null) {
+            return null;
+        }
+        // Walks configured differently learn separately, so configuration changes take effect
+        final Key key = new Key(address, maxVarsPerPdu, maxRepetitions);
+        final long now = System.currentTimeMillis();
+        synchronized (s_agents) {
+            SnmpWalkTuning tuning = s_agents.get(key);
+            if (tuning == null || tuning.isExpired(now)) {
+                tuning = new SnmpWalkTuning(maxVarsPerPdu, maxRepetitions);
+                s_agents.put(key, tuning);
+            }
+            tuning.m_lastUsed = now;
+            return tuning;
+        }
+    }
+
+    private boolean isExpired(final long now) {
+        return now - m_lastUsed > EXPIRY;
+    }
+
+    synchronized int getMaxVarsPerPdu(final int maxVarsPerPdu) {
+        return Math.min(maxVarsPerPdu, m_maxVarsPerPdu);
+    }
+
+    synchronized int getMaxRepetitions() {
+        return m_maxRepetitions;
+    }
+
+    /**
+     * A response to a request with the given number of non repeating and repeating varbinds.
+     *
+     * @param received the number of varbinds in the response
+     */
+    synchronized void responded(final long responseTime, final long timeout, final int nonRepeaters, final int repeaters, final int repetitions, final int received) {
+        if (timeout > 0 && responseTime * 2 > timeout) {
+            m_maxRepetitions = Math.max(1, Math.min(m_maxRepetitions, repetitions / 2));
+        } else if (timeout > 0 && responseTime * 10 < timeout
+                && repeaters > 0 && received >= nonRepeaters + repeaters * repetitions
+                && repetitions >= m_maxRepetitions) {
+            final int increased = Math.min(m_configuredMaxRepetitions, repetitions + 1);
+            // Later requests may walk more columns than this one
+            if (nonRepeaters + (long) Math.max(repeaters, m_maxVarsPerPdu) * increased < m_maxVarBinds) {
+                m_maxRepetitions = Math.max(m_maxRepetitions, increased);
+            }
+        }
+    }
+
+    /**
+     * The agent answered the request with tooBig.
+     *
+     * @return the number of repetitions to retry with, or 0 if the number of columns must be reduced instead
+     */
+    synchronized int tooBig(final int maxVarsPerPdu, final int nonRepeaters, final int repeaters, final int repetitions) {
+        m_maxVarBinds = Math.min(m_maxVarBinds, nonRepeaters + repeaters * Math.max(1, repetitions));
+        if (repetitions > 1) {
+            m_maxRepetitions = Math.max(1, Math.min(m_maxRepetitions, repetitions / 2));
+            return repetitions / 2;
+        }
+        m_maxVarsPerPdu = Math.max(1, Math.min(m_maxVarsPerPdu, maxVarsPerPdu / 2));
+        return 0;
+    }
+
+    synchronized void timedOut(final int repetitions) {
+        m_maxRepetitions = Math.max(1, Math.min(m_maxRepetitions, repetitions / 2));
+    }
+
+    static void clear() {
+        synchronized (s_agents) {
+            s_agents.clear();
+        }
+    }
+
+    private static final class Key {
+        private final InetAddress m_address;
+        private final int m_maxVarsPerPdu;
+        private final int m_maxRepetitions;
+
+        private Key(final InetAddress address, final int maxVarsPerPdu, final int maxRepetitions) {
+            m_address = address;
+            m_maxVarsPerPdu = maxVarsPerPdu;
+            m_maxRepetitions = maxRepetitions;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key that = (Key) obj;
+            return m_maxVarsPerPdu == that.m_maxVarsPerPdu
+                    && m_maxRepetitions == that.m_maxRepetitions
+                    && m_address.equals(that.m_address);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(m_address, m_maxVarsPerPdu, m_maxRepetitions);
+        }
+    }
+}
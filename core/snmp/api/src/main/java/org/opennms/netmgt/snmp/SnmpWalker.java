@@ -41,6 +41,66 @@ public abstract class SnmpWalker implements AutoCloseable {
         
         public abstract void reset();
     }
+
+    /**
+     * Passes the request built by the tracker on to the {@link WalkerPduBuilder} and records its
+     * size for the {@link SnmpWalkTuning} of the agent.
+     */
+    private static final class TunedRequest extends PduBuilder {
+        private final WalkerPduBuilder m_pduBuilder;
+        private int m_oids = 0;
+        private int m_nonRepeaters = 0;
+        private int m_repetitions = 1;
+        private int m_received = 0;
+        private long m_sentAt;
+        private long m_respondedAt = 0;
+
+        private TunedRequest(WalkerPduBuilder pduBuilder) {
+            m_pduBuilder = pduBuilder;
+        }
+
+        @Override
+        public void addOid(SnmpObjId snmpObjId) {
+            m_pduBuilder.addOid(snmpObjId);
+            m_oids++;
+        }
+
+        @Override
+        public void setNonRepeaters(int numNonRepeaters) {
+            m_pduBuilder.setNonRepeaters(numNonRepeaters);
+            m_nonRepeaters = numNonRepeaters;
+        }
+
+        @Override
+        public void setMaxRepetitions(int maxRepetitions) {
+            m_pduBuilder.setMaxRepetitions(maxRepetitions);
+            m_repetitions = maxRepetitions;
+        }
+
+        @Override
+        public int getMaxVarsPerPdu() {
+            return m_pduBuilder.getMaxVarsPerPdu();
+        }
+
+        @Override
+        public void setMaxVarsPerPdu(int maxVarsPerPdu) {
+            m_pduBuilder.setMaxVarsPerPdu(maxVarsPerPdu);
+        }
+
+        private int getRepeaters() {
+            return m_oids - m_nonRepeaters;
+        }
+
+        private void responded() {
+            if (m_respondedAt == 0) {
+                m_respondedAt = System.nanoTime();
+            }
+        }
+
+        private long getResponseTime() {
+            return TimeUnit.NANOSECONDS.toMillis((m_respondedAt == 0 ? System.nanoTime() : m_respondedAt) - m_sentAt);
+        }
+    }
     
     private final String m_name;
     private final CollectionTracker m_tracker;
@@ -51,6 +111,9 @@ public abstract class SnmpWalker implements AutoCloseable {
     private WalkerPduBuilder m_pduBuilder;
     private ResponseProcessor m_responseProcessor;
     private final int m_maxVarsPerPdu;
+    private final int m_timeout;
+    private final SnmpWalkTuning m_tuning;
+    private TunedRequest m_request;
     private boolean m_error = false;
     private String m_errorMessage = "";
     private Throwable m_errorThrowable = null;
@@ -58,6 +121,14 @@ public abstract class SnmpWalker implements AutoCloseable {
     private SnmpWalkCallback m_callback;
 
     protected SnmpWalker(InetAddress address, String name, int maxVarsPerPdu, int maxRepetitions, int maxRetries, CollectionTracker tracker) {
+        this(address, name, maxVarsPerPdu, maxRepetitions, maxRetries, SnmpConfiguration.DEFAULT_TIMEOUT, tracker);
+    }
+
+    /**
+     * @param timeout the time in milliseconds to wait for a response, used to judge the response times
+     * when adaptive walks are enabled
+     */
+    protected SnmpWalker(InetAddress address, String name, int maxVarsPerPdu, int maxRepetitions, int maxRetries, int timeout, CollectionTracker tracker) {
         m_address = address;
         m_signal = new CountDownLatch(1);
         
@@ -68,6 +139,8 @@ public abstract class SnmpWalker implements AutoCloseable {
         m_tracker.setMaxRetries(maxRetries);
         
         m_maxVarsPerPdu = maxVarsPerPdu;
+        m_timeout = timeout;
+        m_tuning = SnmpWalkTuning.forAgent(address, maxVarsPerPdu, maxRepetitions);
     }
 
     /**
@@ -83,7 +156,12 @@ public abstract class SnmpWalker implements AutoCloseable {
     protected abstract WalkerPduBuilder createPduBuilder(int maxVarsPerPdu);
     
     public void start() {
-        m_pduBuilder = createPduBuilder(m_maxVarsPerPdu);
+        int maxVarsPerPdu = m_maxVarsPerPdu;
+        if (m_tuning != null) {
+            maxVarsPerPdu = m_tuning.getMaxVarsPerPdu(maxVarsPerPdu);
+            m_tracker.setMaxRepetitions(m_tuning.getMaxRepetitions());
+        }
+        m_pduBuilder = createPduBuilder(maxVarsPerPdu);
         try {
             buildAndSendNextPdu();
         } catch (Throwable e) {
@@ -96,11 +174,26 @@ public abstract class SnmpWalker implements AutoCloseable {
     }
 
     protected void buildAndSendNextPdu() throws SnmpException {
+        if (m_request != null) {
+            // the response to the previous request has been processed
+            m_tuning.responded(m_request.getResponseTime(), m_timeout, m_request.m_nonRepeaters, m_request.getRepeaters(), m_request.m_repetitions, m_request.m_received);
+            if (m_tuning.getMaxRepetitions() != m_request.m_repetitions) {
+                m_tracker.setMaxRepetitions(m_tuning.getMaxRepetitions());
+            }
+            m_request = null;
+        }
         if (m_tracker.isFinished()) {
             handleDone();
         } else {
             m_pduBuilder.reset();
-            m_responseProcessor = m_tracker.buildNextPdu(m_pduBuilder);
+            if (m_tuning != null) {
+                final TunedRequest request = new TunedRequest(m_pduBuilder);
+                m_responseProcessor = m_tracker.buildNextPdu(request);
+                request.m_sentAt = System.nanoTime();
+                m_request = request;
+            } else {
+                m_responseProcessor = m_tracker.buildNextPdu(m_pduBuilder);
+            }
             sendNextPdu(m_pduBuilder);
         }
     }
@@ -147,6 +240,10 @@ public abstract class SnmpWalker implements AutoCloseable {
     }
     
     protected void handleTimeout(String msg) {
+        if (m_request != null) {
+            m_tuning.timedOut(m_request.m_repetitions);
+            m_request = null;
+        }
         m_tracker.setTimedOut(true);
         processError("Timeout retrieving", msg, new SnmpAgentTimeoutException(getName(), m_address));
     }
@@ -208,10 +305,29 @@ public abstract class SnmpWalker implements AutoCloseable {
     
     // processErrors returns true if we need to retry the request and false otherwise
     protected boolean processErrors(int errorStatus, int errorIndex) throws SnmpException {
+        final TunedRequest request = m_request;
+        if (request != null) {
+            request.responded();
+            if (errorStatus == ErrorStatus.TOO_BIG.ordinal()) {
+                // Retry with fewer repetitions first, only reduce the number of columns once a single repetition is too big
+                final int repetitions = m_tuning.tooBig(request.getMaxVarsPerPdu(), request.m_nonRepeaters, request.getRepeaters(), request.m_repetitions);
+                m_request = null;
+                if (repetitions > 0) {
+                    m_tracker.reportTooBigErr("Reducing maxRepetitions to " + repetitions + " for this agent.");
+                    m_tracker.setMaxRepetitions(repetitions);
+                    return true;
+                }
+            }
+        }
         return m_responseProcessor.processErrors(errorStatus, errorIndex);
     }
     
     protected void processResponse(SnmpObjId receivedOid, SnmpValue val) throws SnmpException {
+        final TunedRequest request = m_request;
+        if (request != null) {
+            request.responded();
+            request.m_received++;
+        }
         m_responseProcessor.processResponse(receivedOid, val);
     }
 
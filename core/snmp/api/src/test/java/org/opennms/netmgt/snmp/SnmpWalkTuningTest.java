@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.snmp;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class SnmpWalkTuningTest {
+
+    @Test
+    public void testFastAgentGetsMoreRepetitions() {
+        final SnmpWalkTuning tuning = new SnmpWalkTuning(10, 20);
+        tuning.timedOut(20);
+        tuning.timedOut(10);
+        tuning.timedOut(5);
+        assertEquals(2, tuning.getMaxRepetitions());
+
+        // Partial responses, e.g. the end of the table, do not show that more repetitions would help
+        tuning.responded(10, 3000, 0, 10, 2, 15);
+        assertEquals(2, tuning.getMaxRepetitions());
+
+        // Full responses increase the repetitions one at a time
+        tuning.responded(10, 3000, 0, 10, 2, 20);
+        assertEquals(3, tuning.getMaxRepetitions());
+
+        // Up to the configured repetitions, but not beyond
+        int repetitions = tuning.getMaxRepetitions();
+        for (int i = 0; i < 100; i++) {
+            tuning.responded(10, 3000, 0, 10, repetitions, 10 * repetitions);
+            repetitions = tuning.getMaxRepetitions();
+        }
+        assertEquals(20, repetitions);
+    }
+
+    @Test
+    public void testSlowAgentGetsFewerRepetitions() {
+        final SnmpWalkTuning tuning = new SnmpWalkTuning(10, 8);
+
+        // Neither fast nor slow
+        tuning.responded(500, 3000, 0, 10, 8, 80);
+        assertEquals(8, tuning.getMaxRepetitions());
+
+        tuning.responded(2000, 3000, 0, 10, 8, 80);
+        assertEquals(4, tuning.getMaxRepetitions());
+
+        tuning.timedOut(4);
+        assertEquals(2, tuning.getMaxRepetitions());
+        tuning.timedOut(2);
+        tuning.timedOut(1);
+        assertEquals(1, tuning.getMaxRepetitions());
+    }
+
+    @Test
+    public void testTooBig() {
+        final SnmpWalkTuning tuning = new SnmpWalkTuning(10, 8);
+
+        assertEquals(4, tuning.tooBig(10, 0, 10, 8));
+        assertEquals(4, tuning.getMaxRepetitions());
+
+        // The agent could not handle 80 varbinds, so the requests stay below
+        int repetitions = tuning.getMaxRepetitions();
+        for (int i = 0; i < 100; i++) {
+            tuning.responded(10, 3000, 0, 10, repetitions, 10 * repetitions);
+            repetitions = tuning.getMaxRepetitions();
+        }
+        assertEquals(7, repetitions);
+
+        // Once a single repetition is too big, the number of columns is reduced
+        assertEquals(2, tuning.tooBig(10, 0, 10, 4));
+        assertEquals(1, tuning.tooBig(10, 0, 10, 2));
+        assertEquals(0, tuning.tooBig(10, 0, 10, 1));
+        assertEquals(5, tuning.getMaxVarsPerPdu(10));
+        assertEquals(3, tuning.getMaxVarsPerPdu(3));
+    }
+}
@@ -61,6 +61,8 @@ import org.snmp4j.smi.OID;
 import org.snmp4j.smi.OctetString;
 import org.snmp4j.smi.UdpAddress;
 import org.snmp4j.transport.DefaultUdpTransportMapping;
+import org.snmp4j.util.MultiThreadedMessageDispatcher;
+import org.snmp4j.util.WorkerPool;
 
 public class Snmp4JAgentConfig {
     
@@ -334,8 +336,16 @@ public class Snmp4JAgentConfig {
     }
 
     public Snmp createSnmpSession() throws IOException {
+        return createSnmpSession(null);
+    }
+
+    /**
+     * Creates a session which processes the received messages, and calls the response listeners,
+     * on the threads of the given pool rather than on its listen thread, unless the pool is null.
+     */
+    public Snmp createSnmpSession(final WorkerPool workerPool) throws IOException {
         final TransportMapping<?> transport = new DefaultUdpTransportMapping();
-        final MessageDispatcher disp = new MessageDispatcherImpl();
+        final MessageDispatcher disp = workerPool == null ? new MessageDispatcherImpl() : new MultiThreadedMessageDispatcher(workerPool, new MessageDispatcherImpl());
         final Snmp session;
         // Here we create the SNMP session, while only adding the message processing
         // models we need for the specific agent
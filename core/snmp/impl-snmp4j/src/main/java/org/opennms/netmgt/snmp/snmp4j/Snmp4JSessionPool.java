@@ -0,0 +1,411 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.snmp.snmp4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.opennms.core.sysprops.SystemProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snmp4j.PDU;
+import org.snmp4j.Snmp;
+import org.snmp4j.Target;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.event.ResponseListener;
+import org.snmp4j.util.ThreadPool;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Hands out the SNMP sessions used by {@link Snmp4JStrategy} and {@link Snmp4JWalker}.
+ *
+ * By default every request gets a dedicated session, i.e. a new UDP socket with its own listen
+ * thread, which is closed once the request completes. If the <code>org.opennms.snmp.snmp4j.sharedTransports</code>
+ * system property is set, requests are multiplexed over long-lived sessions instead and SNMP4J matches
+ * the responses to the outstanding requests by their request ID:
+ * <ul>
+ * <li>SNMPv1 and SNMPv2c requests to any agent share a fixed set of sessions, as the community is part of the target.</li>
+ * <li>SNMPv3 requests share one session per set of user credentials. Its USM and message processing model keep
+ * the discovered engine IDs and the localized keys of the agents, so these are not rediscovered for every request.
+ * Once <code>org.opennms.snmp.snmp4j.maxSharedV3Transports</code> credential sets are in use, requests using
+ * other credentials fall back to dedicated sessions.</li>
+ * </ul>
+ *
+ * The responses received on the shared sessions are processed by a pool of
+ * <code>org.opennms.snmp.snmp4j.sharedTransportThreads</code> threads, so a slow response listener
+ * does not hold up the responses to the other requests on the same session.
+ *
+ * The number of open sockets and of requests waiting for a response on the shared sessions are
+ * exposed over JMX in the <code>org.opennms.netmgt.snmp.snmp4j</code> domain until the pool is closed.
+ */
+public final class Snmp4JSessionPool implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(Snmp4JSessionPool.class);
+
+    private static final int DEFAULT_WORKER_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    private static Snmp4JSessionPool s_instance;
+
+    private final boolean m_enabled;
+    private final int m_sharedTransports;
+    private final int m_maxSharedV3Transports;
+    private final ThreadPool m_workerPool;
+
+    private final AtomicReferenceArray<Snmp> m_sessions;
+    private final AtomicInteger m_nextSession = new AtomicInteger();
+    private final Map<UserKey, Snmp> m_v3Sessions = new ConcurrentHashMap<>();
+
+    private final AtomicInteger m_sharedCount = new AtomicInteger();
+    private final AtomicInteger m_dedicatedCount = new AtomicInteger();
+    private final AtomicInteger m_inFlight = new AtomicInteger();
+
+    private final MetricRegistry m_metrics = new MetricRegistry();
+    private final JmxReporter m_reporter;
+
+    Snmp4JSessionPool(final boolean enabled, final int sharedTransports, final int maxSharedV3Transports) {
+        this(enabled, sharedTransports, maxSharedV3Transports, DEFAULT_WORKER_THREADS);
+    }
+
+    Snmp4JSessionPool(final boolean enabled, final int sharedTransports, final int maxSharedV3Transports, final int workerThreads) {
+        m_enabled = enabled;
+        m_sharedTransports = Math.max(1, sharedTransports);
+        m_maxSharedV3Transports = maxSharedV3Transports;
+        m_sessions = new AtomicReferenceArray<>(m_sharedTransports);
+        m_workerPool = enabled ? ThreadPool.create("Snmp4JSessionPool", Math.max(1, workerThreads)) : null;
+
+        m_metrics.register("sockets.shared", (Gauge<Integer>) m_sharedCount::get);
+        m_metrics.register("sockets.dedicated", (Gauge<Integer>) m_dedicatedCount::get);
+        m_metrics.register("pdus.inflight", (Gauge<Integer>) m_inFlight::get);
+        m_reporter = JmxReporter.forRegistry(m_metrics).inDomain("org.opennms.netmgt.snmp.snmp4j").build();
+        m_reporter.start();
+    }
+
+    /**
+     * Returns the pool used by the strategy, creating it if it was not used before or was closed.
+     */
+    public static synchronized Snmp4JSessionPool getInstance() {
+        if (s_instance == null) {
+            s_instance = new Snmp4JSessionPool(Boolean.getBoolean("org.opennms.snmp.snmp4j.sharedTransports"),
+                    SystemProperties.getInteger("org.opennms.snmp.snmp4j.sharedTransportCount", 4),
+                    SystemProperties.getInteger("org.opennms.snmp.snmp4j.maxSharedV3Transports", 64),
+                    SystemProperties.getInteger("org.opennms.snmp.snmp4j.sharedTransportThreads", DEFAULT_WORKER_THREADS));
+        }
+        return s_instance;
+    }
+
+    /**
+     * Closes the pool used by the strategy, if any.
+     */
+    public static synchronized void closeInstance() {
+        if (s_instance != null) {
+            s_instance.close();
+            s_instance = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return m_enabled;
+    }
+
+    public MetricRegistry getMetrics() {
+        return m_metrics;
+    }
+
+    /**
+     * Returns a session for sending requests to the given agent. Dedicated sessions must be
+     * started using {@link Lease#listen()} when expecting responses, shared sessions are already listening.
+     */
+    public Lease acquire(final Snmp4JAgentConfig agentConfig) throws IOException {
+        if (m_enabled) {
+            final Snmp session = agentConfig.isSnmpV3() ? getV3Session(agentConfig) : getSession(agentConfig);
+            if (session != null) {
+                return new Lease(this, session, true);
+            }
+        }
+        final Snmp session = agentConfig.createSnmpSession();
+        m_dedicatedCount.incrementAndGet();
+        Snmp4JStrategy.trackSession(session);
+        return new Lease(this, session, false);
+    }
+
+    private Snmp getSession(final Snmp4JAgentConfig agentConfig) throws IOException {
+        final int index = (m_nextSession.getAndIncrement() & Integer.MAX_VALUE) % m_sharedTransports;
+        final Snmp session = m_sessions.get(index);
+        if (session != null) {
+            return session;
+        }
+        synchronized (m_sessions) {
+            if (m_sessions.get(index) == null) {
+                m_sessions.set(index, openSharedSession(agentConfig));
+            }
+            return m_sessions.get(index);
+        }
+    }
+
+    private Snmp getV3Session(final Snmp4JAgentConfig agentConfig) throws IOException {
+        final UserKey key = new UserKey(agentConfig);
+        final Snmp session = m_v3Sessions.get(key);
+        if (session != null) {
+            return session;
+        }
+        synchronized (m_v3Sessions) {
+            if (!m_v3Sessions.containsKey(key)) {
+                if (m_v3Sessions.size() >= m_maxSharedV3Transports) {
+                    LOG.debug("acquire: {} SNMPv3 credential sets are already using shared sessions, using a dedicated session for agent {}", m_v3Sessions.size(), agentConfig);
+                    return null;
+                }
+                m_v3Sessions.put(key, openSharedSession(agentConfig));
+            }
+            return m_v3Sessions.get(key);
+        }
+    }
+
+    private Snmp openSharedSession(final Snmp4JAgentConfig agentConfig) throws IOException {
+        final Snmp session = agentConfig.createSnmpSession(m_workerPool);
+        try {
+            session.listen();
+        } catch (final IOException e) {
+            closeQuietly(session);
+            throw e;
+        }
+        m_sharedCount.incrementAndGet();
+        LOG.info("acquire: opened shared SNMP session {} using {}", session, session.getMessageDispatcher().getTransportMappings());
+        return session;
+    }
+
+    /**
+     * Closes all shared sessions. Requests still waiting for a response are cancelled.
+     */
+    public void closeSharedSessions() {
+        synchronized (m_sessions) {
+            for (int i = 0; i < m_sharedTransports; i++) {
+                closeShared(m_sessions.getAndSet(i, null));
+            }
+        }
+        synchronized (m_v3Sessions) {
+            m_v3Sessions.values().forEach(this::closeShared);
+            m_v3Sessions.clear();
+        }
+    }
+
+    /**
+     * Closes all shared sessions, stops their worker threads and stops reporting the metrics of the pool.
+     */
+    @Override
+    public void close() {
+        closeSharedSessions();
+        if (m_workerPool != null) {
+            m_workerPool.cancel();
+        }
+        m_reporter.stop();
+    }
+
+    private void closeShared(final Snmp session) {
+        if (session != null) {
+            closeQuietly(session);
+            m_sharedCount.decrementAndGet();
+        }
+    }
+
+    private static void closeQuietly(final Snmp session) {
+        try {
+            session.close();
+        } catch (final IOException e) {
+            LOG.error("error closing SNMP connection", e);
+        }
+    }
+
+    /**
+     * A session borrowed for one request, or for all requests of a walk.
+     */
+    public static final class Lease {
+        private final Snmp4JSessionPool m_pool;
+        private final Snmp m_session;
+        private final boolean m_shared;
+        private final Set<Request> m_pending = ConcurrentHashMap.newKeySet();
+        private final AtomicBoolean m_released = new AtomicBoolean(false);
+
+        private Lease(final Snmp4JSessionPool pool, final Snmp session, final boolean shared) {
+            m_pool = pool;
+            m_session = session;
+            m_shared = shared;
+        }
+
+        public Snmp getSession() {
+            return m_session;
+        }
+
+        public boolean isShared() {
+            return m_shared;
+        }
+
+        public void listen() throws IOException {
+            if (!m_shared) {
+                m_session.listen();
+            }
+        }
+
+        /**
+         * Sends the request without waiting for a response.
+         */
+        public void send(final PDU pdu, final Target target) throws IOException {
+            m_session.send(pdu, target);
+        }
+
+        /**
+         * Sends the request. The listener is called once, with either the response or the timeout,
+         * unless the lease is released before.
+         */
+        public void send(final PDU pdu, final Target target, final ResponseListener listener) throws IOException {
+            final Request request = new Request(this, pdu, listener);
+            if (m_shared) {
+                m_pending.add(request);
+                m_pool.m_inFlight.incrementAndGet();
+            }
+            try {
+                m_session.send(pdu, target, null, request);
+            } catch (final IOException | RuntimeException e) {
+                request.finish();
+                throw e;
+            }
+        }
+
+        /**
+         * Returns the session. Dedicated sessions are closed, shared sessions remain open and
+         * stop waiting for the responses to the requests sent using this lease.
+         */
+        public void release() {
+            if (m_shared) {
+                m_pending.forEach(Request::cancel);
+            } else if (m_released.compareAndSet(false, true)) {
+                try {
+                    closeQuietly(m_session);
+                } finally {
+                    m_pool.m_dedicatedCount.decrementAndGet();
+                    Snmp4JStrategy.reapSession(m_session);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Lease[session=" + m_session + ", shared=" + m_shared + "]";
+        }
+    }
+
+    /**
+     * A request sent using a {@link Lease}.
+     *
+     * SNMP4J keeps track of asynchronous requests until they are cancelled, so the request is
+     * cancelled as soon as it completes, which a long-lived session relies on.
+     */
+    private static final class Request implements ResponseListener {
+        private final Lease m_lease;
+        private final PDU m_pdu;
+        private final ResponseListener m_listener;
+        private final AtomicBoolean m_done = new AtomicBoolean(false);
+
+        private Request(final Lease lease, final PDU pdu, final ResponseListener listener) {
+            m_lease = lease;
+            m_pdu = pdu;
+            m_listener = listener;
+        }
+
+        @Override
+        public void onResponse(final ResponseEvent responseEvent) {
+            m_lease.m_session.cancel(responseEvent.getRequest(), this);
+            if (finish()) {
+                m_listener.onResponse(responseEvent);
+            }
+        }
+
+        private void cancel() {
+            if (finish()) {
+                m_lease.m_session.cancel(m_pdu, this);
+            }
+        }
+
+        private boolean finish() {
+            if (m_done.compareAndSet(false, true)) {
+                if (m_lease.m_shared) {
+                    m_lease.m_pending.remove(this);
+                    m_lease.m_pool.m_inFlight.decrementAndGet();
+                }
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private static final class UserKey {
+        private final String m_securityName;
+        private final String m_authProtocol;
+        private final String m_authPassPhrase;
+        private final String m_privProtocol;
+        private final String m_privPassPhrase;
+
+        private UserKey(final Snmp4JAgentConfig agentConfig) {
+            m_securityName = Objects.toString(agentConfig.getSecurityName(), null);
+            m_authProtocol = Objects.toString(agentConfig.getAuthProtocol(), null);
+            m_authPassPhrase = Objects.toString(agentConfig.getAuthPassPhrase(), null);
+            m_privProtocol = Objects.toString(agentConfig.getPrivProtocol(), null);
+            m_privPassPhrase = Objects.toString(agentConfig.getPrivPassPhrase(), null);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            final UserKey that = (UserKey) obj;
+            return Objects.equals(m_securityName, that.m_securityName)
+                    && Objects.equals(m_authProtocol, that.m_authProtocol)
+                    && Objects.equals(m_authPassPhrase, that.m_authPassPhrase)
+                    && Objects.equals(m_privProtocol, that.m_privProtocol)
+                    && Objects.equals(m_privPassPhrase, that.m_privPassPhrase);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(m_securityName, m_authProtocol, m_authPassPhrase, m_privProtocol, m_privPassPhrase);
+        }
+    }
+}
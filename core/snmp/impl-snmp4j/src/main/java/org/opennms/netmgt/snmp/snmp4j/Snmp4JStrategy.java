@@ -306,11 +306,10 @@ public class Snmp4JStrategy implements SnmpStrategy {
     }
 
     private void send(Snmp4JAgentConfig agentConfig, PDU pdu, boolean expectResponse, CompletableFuture<SnmpValue[]> future) {
-        Snmp session;
+        final Snmp4JSessionPool.Lease lease;
 
         try {
-            session = agentConfig.createSnmpSession();
-            Snmp4JStrategy.trackSession(session);
+            lease = Snmp4JSessionPool.getInstance().acquire(agentConfig);
         } catch (final Exception e) {
             LOG.error("send: Could not create SNMP session for agent {}", agentConfig, e);
             future.completeExceptionally(new SnmpException("Could not create SNMP session for agent", e));
@@ -319,17 +318,16 @@ public class Snmp4JStrategy implements SnmpStrategy {
 
         if (expectResponse) {
             try {
-                session.listen();
+                lease.listen();
             } catch (final Exception e) {
-                closeQuietly(session);
+                lease.release();
                 LOG.error("send: error setting up listener for SNMP responses", e);
                 future.completeExceptionally(new SnmpException("error setting up listener for SNMP responses", e));
                 return;
             }
 
             try {
-                final Snmp mySession = session;
-                mySession.send(pdu, agentConfig.getTarget(), null, new ResponseListener() {
+                lease.send(pdu, agentConfig.getTarget(), new ResponseListener() {
                     @Override
                     public void onResponse(final ResponseEvent responseEvent) {
                         try {
@@ -340,32 +338,33 @@ public class Snmp4JStrategy implements SnmpStrategy {
                             // Close the tracker using a separate thread
                             // This allows the SnmpWalker to clean up properly instead
                             // of interrupting execution as it's executing the callback
-                            REAPER_EXECUTOR.submit(new Runnable() {
-                                @Override
-                                public void run() {
-                                    closeQuietly(mySession);
-                                }
-                            });
+                            if (!lease.isShared()) {
+                                REAPER_EXECUTOR.submit(new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        lease.release();
+                                    }
+                                });
+                            }
                         }
                     }
                 });
             } catch (final Exception e) {
                 // The ResponseListener will not be called since an exception occurred in the send,
                 // so we make sure to close the session here
-                closeQuietly(session);
+                lease.release();
                 LOG.error("send: error during SNMP operation", e);
                 future.completeExceptionally(e);
             }
         } else { // we're not expecting a response
             try {
-                session.send(pdu, agentConfig.getTarget());
+                lease.send(pdu, agentConfig.getTarget());
                 future.complete(null);
             } catch (final Exception e) {
                 LOG.error("send: error during SNMP operation", e);
                 future.completeExceptionally(new SnmpException(e));
             } finally {
-                closeQuietly(session);
-                Snmp4JStrategy.reapSession(session);
+                lease.release();
             }
         }
     }
@@ -713,20 +712,6 @@ public class Snmp4JStrategy implements SnmpStrategy {
 
     }
 
-    private static void closeQuietly(Snmp session) {
-        if (session == null) {
-            return;
-        }
-        
-        try {
-            session.close();
-        } catch (IOException e) {
-            LOG.error("error closing SNMP connection", e);
-        } finally {
-            Snmp4JStrategy.reapSession(session);
-        }
-    }
-
         @Override
 	public byte[] getLocalEngineID() {
 		return MPv3.createLocalEngineID();
@@ -38,7 +38,6 @@ import org.opennms.netmgt.snmp.SnmpWalker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snmp4j.PDU;
-import org.snmp4j.Snmp;
 import org.snmp4j.Target;
 import org.snmp4j.event.ResponseEvent;
 import org.snmp4j.event.ResponseListener;
@@ -162,9 +161,6 @@ public class Snmp4JWalker extends SnmpWalker {
 
         @Override
         public void onResponse(ResponseEvent responseEvent) {
-            // need to cancel the request here otherwise SNMP4J Keeps it around forever... go figure
-            m_session.cancel(responseEvent.getRequest(), this);
-
             // Check to see if we got an interrupted exception
             if (responseEvent.getError() instanceof InterruptedException) {
                 LOG.debug("Interruption event.  We have probably tried to close the session due to an error", responseEvent.getError());
@@ -188,13 +184,13 @@ public class Snmp4JWalker extends SnmpWalker {
         
     }
     
-    private Snmp m_session;
+    private Snmp4JSessionPool.Lease m_lease;
     private final Target m_tgt;
     private final ResponseListener m_listener;
     private final Snmp4JAgentConfig m_agentConfig;
 
     public Snmp4JWalker(Snmp4JAgentConfig agentConfig, String name, CollectionTracker tracker) {
-        super(agentConfig.getInetAddress(), name, agentConfig.getMaxVarsPerPdu(), agentConfig.getMaxRepetitions(), agentConfig.getRetries(), tracker);
+        super(agentConfig.getInetAddress(), name, agentConfig.getMaxVarsPerPdu(), agentConfig.getMaxRepetitions(), agentConfig.getRetries(), agentConfig.getTimeout(), tracker);
         
         m_agentConfig = agentConfig;
         
@@ -221,10 +217,9 @@ public class Snmp4JWalker extends SnmpWalker {
     protected void sendNextPdu(WalkerPduBuilder pduBuilder) throws SnmpException {
         Snmp4JPduBuilder snmp4JPduBuilder = (Snmp4JPduBuilder)pduBuilder;
         try {
-            if (m_session == null) {
-                m_session = m_agentConfig.createSnmpSession();
-                Snmp4JStrategy.trackSession(m_session);
-                m_session.listen();
+            if (m_lease == null) {
+                m_lease = Snmp4JSessionPool.getInstance().acquire(m_agentConfig);
+                m_lease.listen();
             }
         } catch (final IOException e) {
             close();
@@ -233,7 +228,7 @@ public class Snmp4JWalker extends SnmpWalker {
 
         LOG.debug("Sending tracker pdu of size {}", snmp4JPduBuilder.getPdu().size());
         try {
-            m_session.send(snmp4JPduBuilder.getPdu(), m_tgt, null, m_listener);
+            m_lease.send(snmp4JPduBuilder.getPdu(), m_tgt, m_listener);
         } catch (final IOException e) {
             LOG.debug("Failed to send pdu of size {}", snmp4JPduBuilder.getPdu().size(), e);
             close();
@@ -247,15 +242,9 @@ public class Snmp4JWalker extends SnmpWalker {
 
     @Override
     public void close() {
-        if (m_session != null) {
-            try {
-                m_session.close();
-            } catch (IOException e) {
-                LOG.error("{}: Unexpected Error occured closing SNMP session for: {}", getName(), m_agentConfig, e);
-            } finally {
-                Snmp4JStrategy.reapSession(m_session);
-            }
-            m_session = null;
+        if (m_lease != null) {
+            m_lease.release();
+            m_lease = null;
         }
     }
 }
@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.snmp.snmp4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Test;
+import org.opennms.netmgt.snmp.SnmpAgentConfig;
+import org.opennms.netmgt.snmp.SnmpConfiguration;
+import org.snmp4j.CommunityTarget;
+import org.snmp4j.PDU;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.VariableBinding;
+import org.snmp4j.util.MultiThreadedMessageDispatcher;
+
+public class Snmp4JSessionPoolTest {
+
+    private Snmp4JSessionPool pool;
+
+    @After
+    public void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void dedicatedSessionsAreClosedOnRelease() throws Exception {
+        pool = new Snmp4JSessionPool(false, 4, 64);
+
+        final Snmp4JSessionPool.Lease first = pool.acquire(v2Config());
+        final Snmp4JSessionPool.Lease second = pool.acquire(v2Config());
+        assertFalse(first.isShared());
+        assertFalse(first.getSession().getMessageDispatcher() instanceof MultiThreadedMessageDispatcher);
+        assertNotSame(first.getSession(), second.getSession());
+        assertEquals(2, gauge("sockets.dedicated"));
+        assertEquals(0, gauge("sockets.shared"));
+
+        first.release();
+        // Releasing twice must not close the session again
+        first.release();
+        assertEquals(1, gauge("sockets.dedicated"));
+        second.release();
+        assertEquals(0, gauge("sockets.dedicated"));
+    }
+
+    @Test
+    public void sharedSessionsAreReused() throws Exception {
+        pool = new Snmp4JSessionPool(true, 2, 64);
+
+        final Snmp4JSessionPool.Lease first = pool.acquire(v2Config());
+        final Snmp4JSessionPool.Lease second = pool.acquire(v2Config());
+        final Snmp4JSessionPool.Lease third = pool.acquire(v2Config());
+        assertTrue(first.isShared());
+        // Responses are not processed on the listen thread of the shared session
+        assertTrue(first.getSession().getMessageDispatcher() instanceof MultiThreadedMessageDispatcher);
+        assertNotSame(first.getSession(), second.getSession());
+        assertSame(first.getSession(), third.getSession());
+        assertEquals(2, gauge("sockets.shared"));
+
+        // Shared sessions stay open when released
+        first.release();
+        assertTrue(listening(first));
+        assertSame(first.getSession(), pool.acquire(v2Config()).getSession());
+        assertEquals(0, gauge("sockets.dedicated"));
+    }
+
+    @Test
+    public void sharedSessionsArePerV3Credentials() throws Exception {
+        pool = new Snmp4JSessionPool(true, 1, 2);
+
+        final Snmp4JSessionPool.Lease alice = pool.acquire(v3Config("alice"));
+        assertTrue(alice.isShared());
+        assertSame(alice.getSession(), pool.acquire(v3Config("alice")).getSession());
+        assertNotSame(alice.getSession(), pool.acquire(v3Config("bob")).getSession());
+        assertNotSame(alice.getSession(), pool.acquire(v2Config()).getSession());
+
+        // Once the limit of credential sets is reached, dedicated sessions are used
+        final Snmp4JSessionPool.Lease carol = pool.acquire(v3Config("carol"));
+        assertFalse(carol.isShared());
+        carol.release();
+        assertEquals(3, gauge("sockets.shared"));
+    }
+
+    @Test
+    public void releaseCancelsPendingRequests() throws Exception {
+        pool = new Snmp4JSessionPool(true, 1, 64);
+        // An agent which never responds
+        try (DatagramSocket agent = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            final Snmp4JSessionPool.Lease lease = pool.acquire(v2Config());
+            final CommunityTarget target = new CommunityTarget(Snmp4JAgentConfig.convertAddress(InetAddress.getLoopbackAddress(), agent.getLocalPort()), new OctetString("public"));
+            target.setVersion(SnmpConstants.version2c);
+            target.setTimeout(60000);
+            final PDU pdu = new PDU();
+            pdu.setType(PDU.GET);
+            pdu.add(new VariableBinding(new OID(".1.3.6.1.2.1.1.1.0")));
+
+            final AtomicBoolean called = new AtomicBoolean(false);
+            lease.send(pdu, target, response -> called.set(true));
+            assertEquals(1, gauge("pdus.inflight"));
+
+            lease.release();
+            assertEquals(0, gauge("pdus.inflight"));
+            assertFalse(called.get());
+        }
+    }
+
+    @Test
+    public void closeReleasesSessionsAndMetrics() throws Exception {
+        pool = new Snmp4JSessionPool(true, 1, 64);
+        final Snmp4JSessionPool.Lease v2 = pool.acquire(v2Config());
+        final Snmp4JSessionPool.Lease v3 = pool.acquire(v3Config("alice"));
+        assertFalse(ManagementFactory.getPlatformMBeanServer().queryNames(new ObjectName("org.opennms.netmgt.snmp.snmp4j:*"), null).isEmpty());
+
+        pool.close();
+        assertFalse(listening(v2));
+        assertFalse(listening(v3));
+        assertEquals(0, gauge("sockets.shared"));
+        assertTrue(ManagementFactory.getPlatformMBeanServer().queryNames(new ObjectName("org.opennms.netmgt.snmp.snmp4j:*"), null).isEmpty());
+
+        // Another pool can be opened afterwards
+        pool = new Snmp4JSessionPool(true, 1, 64);
+        assertTrue(pool.acquire(v2Config()).isShared());
+    }
+
+    private int gauge(String name) {
+        return (Integer) pool.getMetrics().getGauges().get(name).getValue();
+    }
+
+    private static boolean listening(Snmp4JSessionPool.Lease lease) {
+        return lease.getSession().getMessageDispatcher().getTransportMappings().stream().anyMatch(t -> t.isListening());
+    }
+
+    private static Snmp4JAgentConfig v2Config() {
+        final SnmpAgentConfig config = new SnmpAgentConfig(InetAddress.getLoopbackAddress());
+        config.setVersion(SnmpConfiguration.VERSION2C);
+        return new Snmp4JAgentConfig(config);
+    }
+
+    private static Snmp4JAgentConfig v3Config(String securityName) {
+        final SnmpAgentConfig config = new SnmpAgentConfig(InetAddress.getLoopbackAddress());
+        config.setVersion(SnmpConfiguration.VERSION3);
+        config.setSecurityName(securityName);
+        return new Snmp4JAgentConfig(config);
+    }
+}
@@ -240,15 +240,6 @@ public abstract class BaseThresholdDefConfigWrapper {
         return Objects.hash(m_baseDef);
     }
 
-    /**
-     * <p>merge</p>
-     *
-     * @param threshold a {@link org.opennms.netmgt.threshd.BaseThresholdDefConfigWrapper} object.
-     */
-    public void merge(BaseThresholdDefConfigWrapper threshold) {
-        m_baseDef = threshold.getBasethresholddef();
-    }
-    
     public abstract void accept(ThresholdDefVisitor thresholdDefVisitor);
 }
 
@@ -29,11 +29,10 @@
 package org.opennms.netmgt.threshd;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
 
@@ -104,21 +103,15 @@ public class DefaultThresholdsDao implements ThresholdsDao, InitializingBean {
 
     private ThresholdResourceType getThresholdResourceType(String groupName, String typeName, ThresholdResourceType type, ThresholdingSession thresholdingSession) {
         ThresholdResourceType resourceType = new ThresholdResourceType(typeName);
-        Map<String, Set<ThresholdEntity>> thresholdMap = null;
-        if (type == null) {
-            thresholdMap = new HashMap<String, Set<ThresholdEntity>>();
-            fillThresholdStateMap(groupName, typeName, thresholdMap, thresholdingSession);
-        } else {
-            thresholdMap = type.getThresholdMap();
-            fillThresholdStateMap(groupName, type.getDsType(), thresholdMap, thresholdingSession);
-
-        }
+        Map<String, Set<ThresholdEntity>> thresholdMap = new HashMap<String, Set<ThresholdEntity>>();
+        // The previous map is still referenced by the current thresholding plan, it is only read
+        final Map<String, Set<ThresholdEntity>> previousMap = type == null ? Collections.emptyMap() : type.getThresholdMap();
+        fillThresholdStateMap(groupName, typeName, previousMap, thresholdMap, thresholdingSession);
         resourceType.setThresholdMap(thresholdMap);
         return resourceType;
     }
 
-    private void fillThresholdStateMap(String groupName, String  typeName, Map<String, Set<ThresholdEntity>> thresholdMap, ThresholdingSession thresholdingSession) {
-        boolean merge = !thresholdMap.isEmpty();
+    private void fillThresholdStateMap(String groupName, String  typeName, Map<String, Set<ThresholdEntity>> previousMap, Map<String, Set<ThresholdEntity>> thresholdMap, ThresholdingSession thresholdingSession) {
         for (Basethresholddef thresh : m_thresholdingDao.getReadOnlyConfig().getGroup(groupName).getThresholdsAndExpressions()) {
             // See if map entry already exists for this datasource; if not, create a new one.
             if (thresh.getDsType().equals(typeName)) {
@@ -131,23 +124,18 @@ public class DefaultThresholdsDao implements ThresholdsDao, InitializingBean {
                         thresholdEntitySet = new LinkedHashSet<ThresholdEntity>();
                         thresholdMap.put(wrapper.getDatasourceExpression(), thresholdEntitySet);
                     }
+                    // Keep the entity (and its states) of an unchanged definition
+                    final ThresholdEntity previousEntity = findEntity(previousMap.get(wrapper.getDatasourceExpression()), wrapper);
+                    if (previousEntity != null) {
+                        LOG.debug("fillThresholdStateMap(merge): keeping entity {}", previousEntity);
+                        thresholdEntitySet.add(previousEntity);
+                        continue;
+                    }
                     try {
                         ThresholdEntity thresholdEntity = new ThresholdEntity(m_entityScopeProvider);
                         thresholdEntity.setEventProxy(m_eventProxy);
                         thresholdEntity.addThreshold(wrapper, thresholdingSession);
-                        if (merge) {
-                            boolean updated = false;
-                            for (ThresholdEntity e : thresholdEntitySet) {
-                                if (thresholdEntity.getThresholdConfig().equals(e.getThresholdConfig())) {
-                                    e.merge(thresholdEntity);
-                                    updated = true;
-                                }
-                            }
-                            if (!updated) // Does not exist!
-                                thresholdEntitySet.add(thresholdEntity);
-                        } else {
-                            thresholdEntitySet.add(thresholdEntity);
-                        }
+                        thresholdEntitySet.add(thresholdEntity);
                     } catch (IllegalStateException e) {
                         LOG.warn("fillThresholdStateMap: Encountered duplicate {} for datasource {}", thresh.getType(), wrapper.getDatasourceExpression(), e);
                     } 
@@ -157,34 +145,17 @@ public class DefaultThresholdsDao implements ThresholdsDao, InitializingBean {
                 }
             }
         }
-        // Search for deleted configuration
-        if (merge) {
-            LOG.debug("fillThresholdStateMap(merge): checking if definitions that are no longer exist for group {} using type {}", groupName, typeName);
-            for (final Entry<String, Set<ThresholdEntity>> entry : thresholdMap.entrySet()) {
-                final Set<ThresholdEntity> value = entry.getValue();
-                for (final Iterator<ThresholdEntity> thresholdIterator = value.iterator(); thresholdIterator.hasNext();) {
-                    final ThresholdEntity entity = thresholdIterator.next();
-                    boolean found = false;
-                    for (final Basethresholddef thresh : m_thresholdingDao.getReadOnlyConfig().getGroup(groupName).getThresholdsAndExpressions()) {
-                        BaseThresholdDefConfigWrapper newConfig = null;
-                        try {
-                            newConfig = BaseThresholdDefConfigWrapper.getConfigWrapper(thresh);
-                        } catch (ThresholdExpressionException e) {
-                            LOG.warn("fillThresholdStateMap: Could not parse threshold expression", e);
-                        }
-                        if (newConfig != null && newConfig.equals(entity.getThresholdConfig())) {
-                            found = true;
-                            continue;
-                        }
-                    }
-                    if (!found) {
-                        LOG.info("fillThresholdStateMap(merge): deleting entity {}", entity);
-                        entity.delete();
-                        thresholdIterator.remove();
-                    }
+    }
+
+    private static ThresholdEntity findEntity(Set<ThresholdEntity> entities, BaseThresholdDefConfigWrapper config) {
+        if (entities != null) {
+            for (ThresholdEntity e : entities) {
+                if (config.equals(e.getThresholdConfig())) {
+                    return e;
                 }
             }
         }
+        return null;
     }
 
     public void setThresholdingDao(ReadableThresholdingDao thresholdingDao) {
@@ -28,15 +28,18 @@
 
 package org.opennms.netmgt.threshd;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
@@ -68,9 +71,11 @@ public final class ThresholdEntity implements Cloneable {
     
     private static List<ThresholdEvaluator> s_thresholdEvaluators;
     
-    //Contains a list of evaluators for each used "instance".  Is populated with the list for the "default" instance (the "null" key)
-    // in the Constructor.  Note that this means we must use a null-key capable map like HashMap
-    private Map<String,List<ThresholdEvaluatorState>> m_thresholdEvaluatorStates = new HashMap<String,List<ThresholdEvaluatorState>>();
+    // The evaluators of the "default" instance, cloned for each used instance
+    private final List<ThresholdEvaluatorState> m_defaultEvaluatorStates = new LinkedList<ThresholdEvaluatorState>();
+
+    // Contains a list of evaluators for each used "instance", so that resources can be evaluated concurrently
+    private final ConcurrentMap<String,List<ThresholdEvaluatorState>> m_thresholdEvaluatorStates = new ConcurrentHashMap<String,List<ThresholdEvaluatorState>>();
 
     private ThresholdingEventProxy m_thresholdingEventProxy;
 
@@ -89,8 +94,6 @@ public final class ThresholdEntity implements Cloneable {
      * Constructor.
      */
     public ThresholdEntity(EntityScopeProvider entityScopeProvider) {
-        //Put in a default list for the "null" key (the default evaluators)
-        m_thresholdEvaluatorStates.put(null, new LinkedList<ThresholdEvaluatorState>());
         m_entityScopeProvider = Objects.requireNonNull(entityScopeProvider);
     }
 
@@ -100,11 +103,11 @@ public final class ThresholdEntity implements Cloneable {
      * @return a {@link org.opennms.netmgt.threshd.BaseThresholdDefConfigWrapper} object.
      */
     public BaseThresholdDefConfigWrapper getThresholdConfig() {
-        return m_thresholdEvaluatorStates.get(null).get(0).getThresholdConfig();
+        return m_defaultEvaluatorStates.get(0).getThresholdConfig();
     }
     
     private boolean hasThresholds() {
-        return m_thresholdEvaluatorStates.get(null).size()!=0;
+        return m_defaultEvaluatorStates.size()!=0;
     }
     /**
      * Get datasource name
@@ -345,16 +348,13 @@ public final class ThresholdEntity implements Cloneable {
      */
     public void addThreshold(BaseThresholdDefConfigWrapper threshold, ThresholdingSession thresholdingSession) {
         ThresholdEvaluator evaluator = getEvaluatorForThreshold(threshold);
-        //Get the default list of evaluators (the null key)
-        List<ThresholdEvaluatorState> defaultList=m_thresholdEvaluatorStates.get(null);
-
-        for (ThresholdEvaluatorState item : defaultList) {
+        for (ThresholdEvaluatorState item : m_defaultEvaluatorStates) {
             if (threshold.getType().equals(item.getThresholdConfig().getType())) {
                 throw new IllegalStateException(threshold.getType() + " threshold already set.");
             }
         }
 
-        defaultList.add(evaluator.getThresholdEvaluatorState(threshold, thresholdingSession));
+        m_defaultEvaluatorStates.add(evaluator.getThresholdEvaluatorState(threshold, thresholdingSession));
     }
 
     private ThresholdEvaluator getEvaluatorForThreshold(BaseThresholdDefConfigWrapper threshold) {
@@ -377,43 +377,30 @@ public final class ThresholdEntity implements Cloneable {
      * @return a {@link java.util.List} object.
      */
     public List<ThresholdEvaluatorState> getThresholdEvaluatorStates(String instance) {
-        List<ThresholdEvaluatorState> result= m_thresholdEvaluatorStates.get(instance);
-        if(result==null) {
-            //There is no set of evaluators for this instance; create a list by copying the base ones
-            List<ThresholdEvaluatorState> defaultList=m_thresholdEvaluatorStates.get(null);
-          
-            //Create the new list
-            result=new LinkedList<ThresholdEvaluatorState>();
-            for(ThresholdEvaluatorState state: defaultList) {
+        if (instance == null) {
+            return m_defaultEvaluatorStates;
+        }
+        final List<ThresholdEvaluatorState> result = m_thresholdEvaluatorStates.get(instance);
+        if (result != null) {
+            return result;
+        }
+        //There is no set of evaluators for this instance; create a list by copying the base ones
+        //and store it with the instance as the key
+        return m_thresholdEvaluatorStates.computeIfAbsent(instance.intern(), key -> {
+            final List<ThresholdEvaluatorState> states = new ArrayList<ThresholdEvaluatorState>(m_defaultEvaluatorStates.size());
+            for (ThresholdEvaluatorState state : m_defaultEvaluatorStates) {
                 ThresholdEvaluatorState instancedState = state.getCleanClone();
 
-                if (instance != null) {
-                    // We need to set the instance on the evaluator state so that it can update its key to avoid
-                    // collisions and this seems to be the only convenient spot to do that
-                    instancedState.setInstance(instance);
-                }
+                // We need to set the instance on the evaluator state so that it can update its key to avoid
+                // collisions and this seems to be the only convenient spot to do that
+                instancedState.setInstance(key);
 
-                result.add(instancedState);
+                states.add(instancedState);
             }
-            
-            //Store the new list with the instance as the key
-            m_thresholdEvaluatorStates.put(instance == null ? null : instance.intern(), result);
-        }
-        return result;
+            return Collections.unmodifiableList(states);
+        });
     }
     
-    /**
-     * Merges the configuration and update states using parameter entity as a reference.
-     *
-     * @param entity a {@link org.opennms.netmgt.threshd.ThresholdEntity} object.
-     */
-    public void merge(ThresholdEntity entity) {
-        if (getThresholdConfig().equals(entity.getThresholdConfig()) == false) {
-            sendRearmForTriggeredStates();
-            getThresholdConfig().merge(entity.getThresholdConfig());
-        }
-    }
-
     /**
      * Delete this will check states and will send rearm for all triggered.
      */
@@ -422,20 +409,25 @@ public final class ThresholdEntity implements Cloneable {
     }
     
     private void sendRearmForTriggeredStates() {
-        for (String instance : m_thresholdEvaluatorStates.keySet()) {
-            for (ThresholdEvaluatorState state : m_thresholdEvaluatorStates.get(instance)) {
-                if (state.isTriggered()) {
-                    Event e = state.getEventForState(Status.RE_ARMED, new Date(), Double.NaN, null);
-                    Parm p = new Parm();
-                    p.setParmName("reason");
-                    Value v = new Value();
-                    v.setContent("Configuration has been changed");
-                    p.setValue(v);
-                    e.addParm(p);
-                    LOG.info("sendRearmForTriggeredStates: sending rearm for {}", e);
-                    m_thresholdingEventProxy.sendEvent(e);
-                    state.clearState();
-                }
+        sendRearmForTriggeredStates(m_defaultEvaluatorStates);
+        for (List<ThresholdEvaluatorState> states : m_thresholdEvaluatorStates.values()) {
+            sendRearmForTriggeredStates(states);
+        }
+    }
+
+    private void sendRearmForTriggeredStates(List<ThresholdEvaluatorState> states) {
+        for (ThresholdEvaluatorState state : states) {
+            if (state.isTriggered()) {
+                Event e = state.getEventForState(Status.RE_ARMED, new Date(), Double.NaN, null);
+                Parm p = new Parm();
+                p.setParmName("reason");
+                Value v = new Value();
+                v.setContent("Configuration has been changed");
+                p.setValue(v);
+                e.addParm(p);
+                LOG.info("sendRearmForTriggeredStates: sending rearm for {}", e);
+                m_thresholdingEventProxy.sendEvent(e);
+                state.clearState();
             }
         }
     }
@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.threshd;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.opennms.netmgt.collection.api.CollectionResource;
+import org.opennms.netmgt.config.threshd.FilterOperator;
+import org.opennms.netmgt.config.threshd.ResourceFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Immutable view of the threshold groups of a {@link ThresholdingSetImpl}, compiled whenever
+ * the groups are (re)loaded.
+ *
+ * The thresholds are indexed by resource type, in the order in which the groups and their
+ * entities used to be walked when applying thresholds. The data sources and resource filters
+ * of each threshold are resolved once, so applying the thresholds of a resource does not
+ * have to walk the groups nor to compile regular expressions.
+ */
+final class ThresholdingPlan {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ThresholdingPlan.class);
+
+    static final ThresholdingPlan EMPTY = compile(Collections.emptyList());
+
+    private final Map<String, List<PlannedThreshold>> m_thresholdsByResourceType;
+
+    private final Map<String, Set<String>> m_datasourcesByResourceType;
+
+    private ThresholdingPlan(Map<String, List<PlannedThreshold>> thresholdsByResourceType, Map<String, Set<String>> datasourcesByResourceType) {
+        m_thresholdsByResourceType = thresholdsByResourceType;
+        m_datasourcesByResourceType = datasourcesByResourceType;
+    }
+
+    static ThresholdingPlan compile(List<ThresholdGroup> thresholdGroups) {
+        final Set<String> resourceTypeNames = new LinkedHashSet<>();
+        resourceTypeNames.add(CollectionResource.RESOURCE_TYPE_NODE);
+        resourceTypeNames.add(CollectionResource.RESOURCE_TYPE_IF);
+        resourceTypeNames.add(CollectionResource.RESOURCE_TYPE_LATENCY);
+        for (final ThresholdGroup group : thresholdGroups) {
+            if (group.getGenericResourceTypeMap() != null) {
+                resourceTypeNames.addAll(group.getGenericResourceTypeMap().keySet());
+            }
+        }
+
+        final Map<String, List<PlannedThreshold>> thresholdsByResourceType = new HashMap<>();
+        final Map<String, Set<String>> datasourcesByResourceType = new HashMap<>();
+        for (final String resourceTypeName : resourceTypeNames) {
+            final List<PlannedThreshold> thresholds = new ArrayList<>();
+            final Set<String> datasources = new HashSet<>();
+            for (final ThresholdGroup group : thresholdGroups) {
+                final Map<String, Set<ThresholdEntity>> entityMap = getEntityMap(group, resourceTypeName);
+                if (entityMap == null) {
+                    continue;
+                }
+                for (final Entry<String, Set<ThresholdEntity>> entry : entityMap.entrySet()) {
+                    for (final ThresholdEntity thresholdEntity : entry.getValue()) {
+                        thresholds.add(new PlannedThreshold(entry.getKey(), thresholdEntity));
+                        datasources.addAll(thresholdEntity.getRequiredDatasources());
+                    }
+                }
+            }
+            if (!thresholds.isEmpty()) {
+                thresholdsByResourceType.put(resourceTypeName, Collections.unmodifiableList(thresholds));
+                datasourcesByResourceType.put(resourceTypeName, Collections.unmodifiableSet(datasources));
+            }
+        }
+        return new ThresholdingPlan(thresholdsByResourceType, datasourcesByResourceType);
+    }
+
+    /**
+     * @return the thresholds to apply to resources of the given type, in evaluation order
+     */
+    List<PlannedThreshold> getThresholds(String resourceTypeName) {
+        final List<PlannedThreshold> thresholds = m_thresholdsByResourceType.get(resourceTypeName);
+        return thresholds == null ? Collections.emptyList() : thresholds;
+    }
+
+    /**
+     * @return true if any threshold of the given resource type requires the attribute, either as data source or for its filters
+     */
+    boolean hasThresholds(String resourceTypeName, String attributeName) {
+        final Set<String> datasources = m_datasourcesByResourceType.get(resourceTypeName);
+        return datasources != null && datasources.contains(attributeName);
+    }
+
+    private static Map<String, Set<ThresholdEntity>> getEntityMap(ThresholdGroup thresholdGroup, String resourceType) {
+        LOG.trace("getEntityMap: checking if the resourceType '{}' exists on threshold group {}", resourceType, thresholdGroup);
+        final ThresholdResourceType thresholdResourceType;
+        if (CollectionResource.RESOURCE_TYPE_NODE.equals(resourceType)) {
+            thresholdResourceType = thresholdGroup.getNodeResourceType();
+        } else if (CollectionResource.RESOURCE_TYPE_IF.equals(resourceType) || CollectionResource.RESOURCE_TYPE_LATENCY.equals(resourceType)) {
+            thresholdResourceType = thresholdGroup.getIfResourceType();
+        } else {
+            final Map<String, ThresholdResourceType> typeMap = thresholdGroup.getGenericResourceTypeMap();
+            if (typeMap == null) {
+                LOG.error("getEntityMap: Generic Resource Type map was null (this shouldn't happen) for threshold group {}", thresholdGroup.getName());
+                return null;
+            }
+            thresholdResourceType = typeMap.get(resourceType);
+            if (thresholdResourceType == null) {
+                LOG.debug("getEntityMap: No thresholds configured for resource type '{}' in threshold group {}. Skipping this group.", resourceType, thresholdGroup.getName());
+                return null;
+            }
+        }
+        return thresholdResourceType == null ? null : thresholdResourceType.getThresholdMap();
+    }
+
+    /**
+     * A {@link ThresholdEntity} together with the settings of its definition needed before evaluating it.
+     */
+    static final class PlannedThreshold {
+        private final String m_key;
+        private final ThresholdEntity m_entity;
+        private final String[] m_datasources;
+        private final boolean m_relaxed;
+        private final String m_datasourceLabel;
+        private final FilterOperator m_filterOperator;
+        private final ResourceFilter[] m_filters;
+        // The compiled filters, null if the regular expression of the filter is invalid
+        private final Pattern[] m_filterPatterns;
+
+        private PlannedThreshold(String key, ThresholdEntity entity) {
+            final BaseThresholdDefConfigWrapper config = entity.getThresholdConfig();
+            m_key = key;
+            m_entity = entity;
+            m_datasources = config.getRequiredDatasources().toArray(new String[0]);
+            m_relaxed = config.getBasethresholddef().getRelaxed();
+            m_datasourceLabel = entity.getDatasourceLabel();
+            m_filterOperator = config.getBasethresholddef().getFilterOperator();
+            m_filters = config.getBasethresholddef().getResourceFilters().toArray(new ResourceFilter[0]);
+            m_filterPatterns = new Pattern[m_filters.length];
+            for (int i = 0; i < m_filters.length; i++) {
+                try {
+                    m_filterPatterns[i] = Pattern.compile(m_filters[i].getContent().orElse(""));
+                } catch (PatternSyntaxException e) {
+                    LOG.warn("The regular expression {} of the filter on {} is invalid: {}", m_filters[i].getContent().orElse(null), m_filters[i].getField(), e.getMessage());
+                }
+            }
+        }
+
+        String getKey() {
+            return m_key;
+        }
+
+        ThresholdEntity getEntity() {
+            return m_entity;
+        }
+
+        String[] getDatasources() {
+            return m_datasources;
+        }
+
+        boolean isRelaxed() {
+            return m_relaxed;
+        }
+
+        String getDatasourceLabel() {
+            return m_datasourceLabel;
+        }
+
+        FilterOperator getFilterOperator() {
+            return m_filterOperator;
+        }
+
+        ResourceFilter[] getFilters() {
+            return m_filters;
+        }
+
+        Pattern getFilterPattern(int index) {
+            return m_filterPatterns[index];
+        }
+    }
+}
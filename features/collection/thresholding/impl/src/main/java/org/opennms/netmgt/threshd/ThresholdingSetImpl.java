@@ -29,22 +29,18 @@
 package org.opennms.netmgt.threshd;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
-import java.util.stream.Collectors;
 
 import org.opennms.core.rpc.utils.mate.EntityScopeProvider;
 import org.opennms.netmgt.collectd.AliasedResource;
@@ -60,6 +56,7 @@ import org.opennms.netmgt.config.threshd.ResourceFilter;
 import org.opennms.netmgt.dao.api.IfLabel;
 import org.opennms.netmgt.dao.api.ResourceStorageDao;
 import org.opennms.netmgt.rrd.RrdRepository;
+import org.opennms.netmgt.threshd.ThresholdingPlan.PlannedThreshold;
 import org.opennms.netmgt.threshd.api.ThresholdInitializationException;
 import org.opennms.netmgt.threshd.api.ThresholdingEventProxy;
 import org.opennms.netmgt.threshd.api.ThresholdingSession;
@@ -94,6 +91,8 @@ public class ThresholdingSetImpl implements ThresholdingSet {
     private ServiceParameters m_svcParams;
 
     protected final List<ThresholdGroup> m_thresholdGroups = new LinkedList<>();
+    // Compiled from the threshold groups whenever they change, applying thresholds only relies on the plan
+    private volatile ThresholdingPlan m_plan = ThresholdingPlan.EMPTY;
     protected final List<String> m_scheduledOutages = new ArrayList<>();
     
     private final ThresholdingSession m_thresholdingSession;
@@ -149,6 +148,7 @@ public class ThresholdingSetImpl implements ThresholdingSet {
                 }
             }
             m_hasThresholds = !m_thresholdGroups.isEmpty();
+            updatePlan();
         }
         updateScheduledOutages();
     }
@@ -168,8 +168,11 @@ public class ThresholdingSetImpl implements ThresholdingSet {
             LOG.error("Failed to reinitialize thresholding set.  Reverting to previous configuration.", e);
             m_hasThresholds = hasThresholds;
             if (!thresholdGroups.equals(m_thresholdGroups)) {
-                m_thresholdGroups.clear();
-                m_thresholdGroups.addAll(thresholdGroups);
+                synchronized(m_thresholdGroups) {
+                    m_thresholdGroups.clear();
+                    m_thresholdGroups.addAll(thresholdGroups);
+                    updatePlan();
+                }
             }
             if (!scheduledOutages.equals(m_scheduledOutages)) {
                 m_scheduledOutages.clear();
@@ -182,28 +185,17 @@ public class ThresholdingSetImpl implements ThresholdingSet {
     /*
      * Used to reload merge new thresholds configuration with current.
      * 
-     * Extract thresholdEvaluatorStates Map from each ThresholdEntity, then copy this to new thresholdEntity.
+     * The new groups are built from scratch, only the entities of unchanged definitions are carried over
+     * (with their states). Nothing referenced by the current plan is modified: entities that are no longer
+     * used are rearmed once the new plan has been published.
      */
     private void mergeThresholdGroups(final int nodeId, final String hostAddress, final String serviceName) throws ThresholdInitializationException {
         final String logHeader = "mergeThresholdGroups(nodeId=" + nodeId + ",ipAddr=" + hostAddress + ",svc=" + serviceName + ")";
         LOG.debug("{}: Begin merging operation", logHeader);
-        final List<String> existingGroupNameList = m_thresholdGroups.stream().map(ThresholdGroup::getName).collect(Collectors.toList());
         List<String> newGroupNameList = getThresholdGroupNames(nodeId, hostAddress, serviceName);
 
+        final Set<ThresholdEntity> retiredEntities;
         synchronized(m_thresholdGroups) {
-            // If size differs its because some groups where deleted.
-            if (newGroupNameList.size() != m_thresholdGroups.size() || !existingGroupNameList.equals(newGroupNameList)) {
-                // Deleting Groups
-                LOG.debug("{}: New group name list differs from current threshold group list", logHeader);
-                for (final Iterator<ThresholdGroup> i = m_thresholdGroups.iterator(); i.hasNext();) {
-                    final ThresholdGroup group = i.next();
-                    if (!newGroupNameList.contains(group.getName())) {
-                        LOG.info("{}: deleting group {}", logHeader, group);
-                        group.delete();
-                        i.remove();
-                    }
-                }
-            }
             final List<ThresholdGroup> newThresholdGroupList = new LinkedList<>();
             for (final String groupName : newGroupNameList) {
                 // Check if group exist on current configured list
@@ -230,37 +222,57 @@ public class ThresholdingSetImpl implements ThresholdingSet {
                     throw tie;
                 }
             }
+            for (final ThresholdGroup group : m_thresholdGroups) {
+                if (!newGroupNameList.contains(group.getName())) {
+                    LOG.info("{}: deleting group {}", logHeader, group);
+                }
+            }
+            retiredEntities = getEntities(m_thresholdGroups);
+            retiredEntities.removeAll(getEntities(newThresholdGroupList));
+
             m_thresholdGroups.clear();
             m_thresholdGroups.addAll(newThresholdGroupList);
             m_hasThresholds = !m_thresholdGroups.isEmpty();
+            updatePlan();
+        }
+        for (final ThresholdEntity entity : retiredEntities) {
+            LOG.info("{}: deleting entity {}", logHeader, entity);
+            entity.delete();
+        }
+    }
+
+    private static Set<ThresholdEntity> getEntities(final List<ThresholdGroup> groups) {
+        final Set<ThresholdEntity> entities = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (final ThresholdGroup group : groups) {
+            addEntities(entities, group.getNodeResourceType());
+            addEntities(entities, group.getIfResourceType());
+            for (final ThresholdResourceType type : group.getGenericResourceTypeMap().values()) {
+                addEntities(entities, type);
+            }
+        }
+        return entities;
+    }
+
+    private static void addEntities(final Set<ThresholdEntity> entities, final ThresholdResourceType type) {
+        if (type != null) {
+            type.getThresholdMap().values().forEach(entities::addAll);
         }
     }
 
+    /*
+     * Must be called while holding the lock on m_thresholdGroups, after the groups have changed.
+     */
+    private void updatePlan() {
+        m_plan = ThresholdingPlan.compile(new ArrayList<>(m_thresholdGroups));
+    }
+
     public boolean hasThresholds() {
         return m_hasThresholds;
     }
 
     private boolean hasThresholds(final String resourceTypeName, final String attributeName) {
-        boolean ok = false;
-        synchronized(m_thresholdGroups) {
-            for (ThresholdGroup group : m_thresholdGroups) {
-                Map<String,Set<ThresholdEntity>> entityMap = getEntityMap(group, resourceTypeName);
-                if (entityMap != null) {
-                    for (final Entry<String, Set<ThresholdEntity>> entry : entityMap.entrySet()) {
-                        final Set<ThresholdEntity> value = entry.getValue();
-                        for (final ThresholdEntity thresholdEntity : value) {
-                            final Collection<String> requiredDatasources = thresholdEntity.getRequiredDatasources();
-                            if (requiredDatasources.contains(attributeName)) {
-                                ok = true;
-                                LOG.debug("hasThresholds: {}@{}? {}", resourceTypeName, attributeName, ok);
-                            } else {
-                                LOG.trace("hasThresholds: {}@{}? {}", resourceTypeName, attributeName, ok);
-                            }
-                        }
-                    }
-                }
-            }
-        }
+        final boolean ok = m_plan.hasThresholds(resourceTypeName, attributeName);
+        LOG.trace("hasThresholds: {}@{}? {}", resourceTypeName, attributeName, ok);
         return ok;
     }
 
@@ -284,6 +296,9 @@ public class ThresholdingSetImpl implements ThresholdingSet {
     /*
      * Apply thresholds definitions for specified resource using attribuesMap as current values.
      * Return a list of events to be send if some thresholds must be triggered or be rearmed.
+     *
+     * The thresholds are taken from the current plan without locking, so that the resources of a node
+     * can be evaluated concurrently. The evaluator states of each resource are kept by its threshold entities.
      * 
      * @param resourceWrapper a {@link org.opennms.netmgt.threshd.CollectionResourceWrapper} object.
      * @param attributesMap a {@link java.util.Map} object.
@@ -295,52 +310,49 @@ public class ThresholdingSetImpl implements ThresholdingSet {
             LOG.debug("applyThresholds: Ignoring resource {} because required attributes map is empty.", resourceWrapper);
             return eventsList;
         }
+        final List<PlannedThreshold> thresholds = m_plan.getThresholds(resourceWrapper.getResourceTypeName());
+        if (thresholds.isEmpty()) {
+            LOG.debug("applyThresholds: No thresholds configured for resource type '{}'.", resourceWrapper.getResourceTypeName());
+            return eventsList;
+        }
         LOG.debug("applyThresholds: Applying thresholds on {} using {} attributes.", resourceWrapper, attributesMap.size());
         Date date = new Date();
-        synchronized(m_thresholdGroups) {
-            for (ThresholdGroup group : m_thresholdGroups) {
-                Map<String,Set<ThresholdEntity>> entityMap = getEntityMap(group, resourceWrapper.getResourceTypeName());
-                if (entityMap != null) {
-                    for (final Entry<String, Set<ThresholdEntity>> entry : entityMap.entrySet()) {
-                        final String key = entry.getKey();
-                        final Set<ThresholdEntity> value = entry.getValue();
-                        for (final ThresholdEntity thresholdEntity : value) {
-                            if (passedThresholdFilters(resourceWrapper, thresholdEntity)) {
-                                LOG.info("applyThresholds: Processing threshold {} : {} on resource {}", key, thresholdEntity, resourceWrapper);
-                                Collection<String> requiredDatasources = thresholdEntity.getThresholdConfig().getRequiredDatasources();
-                                final Map<String, Double> values = new HashMap<String,Double>();
-                                boolean valueMissing = false;
-                                boolean relaxed = thresholdEntity.getThresholdConfig().getBasethresholddef().getRelaxed();
-                                for(final String ds : requiredDatasources) {
-                                    final Double dsValue = resourceWrapper.getAttributeValue(ds);
-                                    if(dsValue == null) {
-                                        LOG.info("applyThresholds: Could not get data source value for '{}', {}", ds, (relaxed ? "but the expression will be evaluated (relaxed mode enabled)" : "not evaluating threshold"));
-                                        valueMissing = true;
-                                    }
-                                    values.put(ds,dsValue);
-                                }
-                                if(!valueMissing || relaxed) {
-                                    LOG.info("applyThresholds: All attributes found for {}, evaluating", resourceWrapper);
-                                    resourceWrapper.setDsLabel(thresholdEntity.getDatasourceLabel());
-                                    try {
-                                        List<Event> thresholdEvents = thresholdEntity.evaluateAndCreateEvents(resourceWrapper, values, date);
-                                        eventsList.addAll(thresholdEvents);
-                                    } catch (Exception e) {
-                                        LOG.warn("applyThresholds: Can't evaluate {} on {} because {}", key, resourceWrapper, e.getMessage());
-                                    }
-                                }
-                            } else {
-                                LOG.info("applyThresholds: Not processing threshold {} : {} because no filters matched", key, thresholdEntity);
-                            }
-                        }
+        // Reused for all thresholds, it only holds the values of the threshold being evaluated
+        final Map<String, Double> values = new HashMap<String,Double>();
+        for (final PlannedThreshold threshold : thresholds) {
+            final String key = threshold.getKey();
+            final ThresholdEntity thresholdEntity = threshold.getEntity();
+            if (passedThresholdFilters(resourceWrapper, threshold)) {
+                LOG.info("applyThresholds: Processing threshold {} : {} on resource {}", key, thresholdEntity, resourceWrapper);
+                values.clear();
+                boolean valueMissing = false;
+                boolean relaxed = threshold.isRelaxed();
+                for(final String ds : threshold.getDatasources()) {
+                    final Double dsValue = resourceWrapper.getAttributeValue(ds);
+                    if(dsValue == null) {
+                        LOG.info("applyThresholds: Could not get data source value for '{}', {}", ds, (relaxed ? "but the expression will be evaluated (relaxed mode enabled)" : "not evaluating threshold"));
+                        valueMissing = true;
                     }
+                    values.put(ds,dsValue);
                 }
+                if(!valueMissing || relaxed) {
+                    LOG.info("applyThresholds: All attributes found for {}, evaluating", resourceWrapper);
+                    resourceWrapper.setDsLabel(threshold.getDatasourceLabel());
+                    try {
+                        List<Event> thresholdEvents = thresholdEntity.evaluateAndCreateEvents(resourceWrapper, values, date);
+                        eventsList.addAll(thresholdEvents);
+                    } catch (Exception e) {
+                        LOG.warn("applyThresholds: Can't evaluate {} on {} because {}", key, resourceWrapper, e.getMessage());
+                    }
+                }
+            } else {
+                LOG.info("applyThresholds: Not processing threshold {} : {} because no filters matched", key, thresholdEntity);
             }
         }
         return eventsList;
     }
 
-    protected boolean passedThresholdFilters(CollectionResourceWrapper resource, ThresholdEntity thresholdEntity) {
+    private boolean passedThresholdFilters(CollectionResourceWrapper resource, PlannedThreshold threshold) {
         // Check Valid Interface Resource based on suggestions from Bug 2711
         if (resource.isAnInterfaceResource() && !resource.isValidInterfaceResource()) {
             LOG.info("passedThresholdFilters: Could not get data interface information for '{}' or this interface has an invalid ifIndex.  Not evaluating threshold.",
@@ -349,36 +361,34 @@ public class ThresholdingSetImpl implements ThresholdingSet {
         }
 
         // Find the filters for threshold definition for selected group/dataSource
-        final List<ResourceFilter> filters = thresholdEntity.getThresholdConfig().getBasethresholddef().getResourceFilters();
-        if (filters.size() == 0) return true;
+        final ResourceFilter[] filters = threshold.getFilters();
+        if (filters.length == 0) return true;
         // Threshold definition with filters must match ThresholdEntity (checking DataSource and ResourceType)
-        LOG.debug("passedThresholdFilters: applying {} filters to resource {}", filters.size(), resource);
-        int count = 1;
-        final FilterOperator operator = thresholdEntity.getThresholdConfig().getBasethresholddef().getFilterOperator();
+        LOG.debug("passedThresholdFilters: applying {} filters to resource {}", filters.length, resource);
+        final FilterOperator operator = threshold.getFilterOperator();
         boolean andResult = true;
-        for (ResourceFilter f : filters) {
-            LOG.debug("passedThresholdFilters: filter #{}: field={}, regex='{}'", count, f.getField(), f.getContent().orElse(null));
-            count++;
+        for (int i = 0; i < filters.length; i++) {
+            final ResourceFilter f = filters[i];
+            LOG.debug("passedThresholdFilters: filter #{}: field={}, regex='{}'", i + 1, f.getField(), f.getContent().orElse(null));
             // Read Resource Attribute and apply filter rules if attribute is not null
             String attr = resource.getFieldValue(f.getField());
             if (attr != null) {
-                try {
-                    final Pattern p = Pattern.compile(f.getContent().orElse(""));
-                    final Matcher m = p.matcher(attr);
-                    boolean pass = m.matches();
-                    LOG.debug("passedThresholdFilters: the value of {} is {}. Pass filter? {}", f.getField(), attr, pass);
-                    if (operator.equals(FilterOperator.OR) && pass) {
-                        return true;
-                    }
-                    if (operator.equals(FilterOperator.AND)) {
-                        andResult = andResult && pass;
-                        if (andResult == false)
-                            return false;
-                    }
-                } catch (PatternSyntaxException e) {
-                    LOG.warn("passedThresholdFilters: the regular expression {} is invalid: {}", f.getContent().orElse(null), e.getMessage(), e);
+                final Pattern p = threshold.getFilterPattern(i);
+                if (p == null) {
+                    LOG.warn("passedThresholdFilters: the regular expression {} is invalid", f.getContent().orElse(null));
                     return false;
                 }
+                final Matcher m = p.matcher(attr);
+                boolean pass = m.matches();
+                LOG.debug("passedThresholdFilters: the value of {} is {}. Pass filter? {}", f.getField(), attr, pass);
+                if (operator.equals(FilterOperator.OR) && pass) {
+                    return true;
+                }
+                if (operator.equals(FilterOperator.AND)) {
+                    andResult = andResult && pass;
+                    if (andResult == false)
+                        return false;
+                }
             } else {
                 LOG.warn("passedThresholdFilters: can't find value of {} for resource {}", f.getField(), resource);
                 if (operator.equals(FilterOperator.AND)) {
@@ -487,29 +497,6 @@ public class ThresholdingSetImpl implements ThresholdingSet {
         }
     }
 
-    private static Map<String, Set<ThresholdEntity>> getEntityMap(ThresholdGroup thresholdGroup, String resourceType) {
-        LOG.trace("getEntityMap: checking if the resourceType '{}' exists on threshold group {}", resourceType, thresholdGroup);
-        Map<String, Set<ThresholdEntity>> entityMap = null;
-        if (CollectionResource.RESOURCE_TYPE_NODE.equals(resourceType)) {
-            entityMap = thresholdGroup.getNodeResourceType().getThresholdMap();
-        } else if (CollectionResource.RESOURCE_TYPE_IF.equals(resourceType) || CollectionResource.RESOURCE_TYPE_LATENCY.equals(resourceType)) {
-            entityMap = thresholdGroup.getIfResourceType().getThresholdMap();
-        } else {
-            Map<String, ThresholdResourceType> typeMap = thresholdGroup.getGenericResourceTypeMap();
-            if (typeMap == null) {
-                LOG.error("getEntityMap: Generic Resource Type map was null (this shouldn't happen) for threshold group {}", thresholdGroup.getName());
-                return null;
-            }
-            ThresholdResourceType thisResourceType = typeMap.get(resourceType);
-            if (thisResourceType == null) {
-                LOG.debug("getEntityMap: No thresholds configured for resource type '{}' in threshold group {}. Skipping this group.", resourceType, thresholdGroup.getName());
-                return null;
-            }
-            entityMap = thisResourceType.getThresholdMap();
-        }
-        return Collections.unmodifiableMap(entityMap);
-    }
-
     @Override
     public String toString() {
         synchronized (m_thresholdGroups) {
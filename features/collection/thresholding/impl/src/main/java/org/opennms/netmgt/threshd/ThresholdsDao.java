@@ -51,6 +51,10 @@ public interface ThresholdsDao {
     /**
      * <p>merge</p>
      *
+     * Builds a new group from the current configuration, reusing the entities
+     * of the given group whose definition did not change. The given group is
+     * not modified.
+     *
      * @param group a {@link org.opennms.netmgt.threshd.ThresholdGroup} object.
      * @return a {@link org.opennms.netmgt.threshd.ThresholdGroup} object.
      */
@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.threshd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.opennms.core.rpc.utils.mate.EntityScopeProvider;
+import org.opennms.netmgt.collection.api.CollectionResource;
+import org.opennms.netmgt.config.dao.thresholding.api.ReadableThresholdingDao;
+import org.opennms.netmgt.config.threshd.Group;
+import org.opennms.netmgt.config.threshd.ResourceFilter;
+import org.opennms.netmgt.config.threshd.Threshold;
+import org.opennms.netmgt.config.threshd.ThresholdType;
+import org.opennms.netmgt.config.threshd.ThresholdingConfig;
+import org.opennms.netmgt.threshd.ThresholdingPlan.PlannedThreshold;
+
+import com.google.common.collect.Sets;
+
+public class ThresholdingPlanTest {
+
+    private final EntityScopeProvider m_entityScopeProvider = mock(EntityScopeProvider.class);
+
+    @Test
+    public void canPlanThresholdsByResourceType() {
+        final ThresholdGroup first = group("first",
+                Collections.singletonMap("cpu", entity("node", "cpuLoad")),
+                Collections.singletonMap("ifInOctets", entity("if", "ifInOctets")),
+                Collections.singletonMap("hrStorage", Collections.singletonMap("hrStorageUsed", entity("hrStorage", "hrStorageUsed"))));
+        final ThresholdGroup second = group("second",
+                Collections.singletonMap("mem", entity("node", "memFree")),
+                Collections.emptyMap(),
+                Collections.emptyMap());
+        final ThresholdingPlan plan = ThresholdingPlan.compile(Arrays.asList(first, second));
+
+        assertEquals(Arrays.asList("cpu", "mem"), keys(plan.getThresholds(CollectionResource.RESOURCE_TYPE_NODE)));
+        assertEquals(Arrays.asList("ifInOctets"), keys(plan.getThresholds(CollectionResource.RESOURCE_TYPE_IF)));
+        assertEquals(Arrays.asList("ifInOctets"), keys(plan.getThresholds(CollectionResource.RESOURCE_TYPE_LATENCY)));
+        assertEquals(Arrays.asList("hrStorageUsed"), keys(plan.getThresholds("hrStorage")));
+        assertTrue(plan.getThresholds("unknown").isEmpty());
+
+        assertTrue(plan.hasThresholds(CollectionResource.RESOURCE_TYPE_NODE, "memFree"));
+        assertFalse(plan.hasThresholds(CollectionResource.RESOURCE_TYPE_NODE, "ifInOctets"));
+        assertTrue(plan.hasThresholds("hrStorage", "hrStorageUsed"));
+        assertFalse(plan.hasThresholds("unknown", "hrStorageUsed"));
+    }
+
+    @Test
+    public void canCompileResourceFilters() {
+        final Set<ThresholdEntity> entities = entity("hrStorage", "hrStorageUsed");
+        final ThresholdEntity entity = entities.iterator().next();
+        entity.getThresholdConfig().getBasethresholddef().addResourceFilter(filter("hrStorageDescr", "^/opt"));
+        entity.getThresholdConfig().getBasethresholddef().addResourceFilter(filter("hrStorageType", "[invalid"));
+        final ThresholdingPlan plan = ThresholdingPlan.compile(Collections.singletonList(group("filters",
+                Collections.emptyMap(), Collections.emptyMap(),
+                Collections.singletonMap("hrStorage", Collections.singletonMap("hrStorageUsed", entities)))));
+
+        final PlannedThreshold threshold = plan.getThresholds("hrStorage").get(0);
+        assertSame(entity, threshold.getEntity());
+        assertEquals(Arrays.asList("hrStorageUsed"), Arrays.asList(threshold.getDatasources()));
+        assertEquals(2, threshold.getFilters().length);
+        assertTrue(threshold.getFilterPattern(0).matcher("/opt").find());
+        assertNull(threshold.getFilterPattern(1));
+        // The fields of the filters are required as well
+        assertTrue(plan.hasThresholds("hrStorage", "hrStorageDescr"));
+    }
+
+    @Test
+    public void canKeepStatesByInstance() {
+        final ThresholdEntity entity = entity("if", "ifInOctets").iterator().next();
+
+        final List<ThresholdEvaluatorState> eth0 = entity.getThresholdEvaluatorStates(new String("eth0"));
+        assertSame(eth0, entity.getThresholdEvaluatorStates("eth0"));
+        assertNotSame(eth0, entity.getThresholdEvaluatorStates("eth1"));
+        assertNotSame(eth0.get(0), entity.getThresholdEvaluatorStates(null).get(0));
+        assertEquals(1, eth0.size());
+    }
+
+    @Test
+    public void canMergeWithoutChangingCurrentGroup() throws Exception {
+        final ReadableThresholdingDao thresholdingDao = mock(ReadableThresholdingDao.class);
+        final DefaultThresholdsDao thresholdsDao = new DefaultThresholdsDao();
+        thresholdsDao.setThresholdingDao(thresholdingDao);
+        thresholdsDao.setEntityScopeProvider(m_entityScopeProvider);
+        thresholdsDao.afterPropertiesSet();
+
+        when(thresholdingDao.getReadOnlyConfig()).thenReturn(config(threshold("node", "cpuLoad", 90.0), threshold("node", "memFree", 90.0)));
+        final ThresholdGroup current = thresholdsDao.get("merge", MockSession.getSession());
+        final Map<String, Set<ThresholdEntity>> currentMap = current.getNodeResourceType().getThresholdMap();
+        final ThresholdEntity cpu = currentMap.get("cpuLoad").iterator().next();
+        final ThresholdEntity mem = currentMap.get("memFree").iterator().next();
+
+        when(thresholdingDao.getReadOnlyConfig()).thenReturn(config(threshold("node", "cpuLoad", 90.0), threshold("node", "memFree", 80.0)));
+        final ThresholdGroup merged = thresholdsDao.merge(current, MockSession.getSession());
+        final Map<String, Set<ThresholdEntity>> mergedMap = merged.getNodeResourceType().getThresholdMap();
+
+        // Unchanged definitions keep their entity, changed ones get a new entity and configuration
+        assertNotSame(current, merged);
+        assertNotSame(currentMap, mergedMap);
+        assertEquals(Collections.singleton(cpu), mergedMap.get("cpuLoad"));
+        final ThresholdEntity mergedMem = mergedMap.get("memFree").iterator().next();
+        assertNotSame(mem, mergedMem);
+        assertEquals(80.0, mergedMem.getThresholdConfig().getValue(), 0.0);
+
+        // The current group is left as is, it may still be used by the current plan
+        assertEquals(Collections.singleton(mem), currentMap.get("memFree"));
+        assertEquals(90.0, mem.getThresholdConfig().getValue(), 0.0);
+    }
+
+    private Set<ThresholdEntity> entity(String dsType, String dsName) {
+        final ThresholdEntity entity = new ThresholdEntity(m_entityScopeProvider);
+        entity.addThreshold(new ThresholdConfigWrapper(threshold(dsType, dsName, 90.0)), MockSession.getSession());
+        return Sets.newHashSet(entity);
+    }
+
+    private static Threshold threshold(String dsType, String dsName, double value) {
+        final Threshold threshold = new Threshold();
+        threshold.setType(ThresholdType.HIGH);
+        threshold.setDsName(dsName);
+        threshold.setDsType(dsType);
+        threshold.setValue(value);
+        threshold.setRearm(50.0);
+        threshold.setTrigger(1);
+        return threshold;
+    }
+
+    private static ThresholdingConfig config(Threshold... thresholds) {
+        final Group group = new Group();
+        group.setName("merge");
+        group.setRrdRepository("/tmp");
+        group.setThresholds(Arrays.asList(thresholds));
+        final ThresholdingConfig config = new ThresholdingConfig();
+        config.addGroup(group);
+        return config;
+    }
+
+    private static ResourceFilter filter(String field, String content) {
+        final ResourceFilter filter = new ResourceFilter();
+        filter.setField(field);
+        filter.setContent(content);
+        return filter;
+    }
+
+    private static ThresholdGroup group(String name, Map<String, Set<ThresholdEntity>> node, Map<String, Set<ThresholdEntity>> iface,
+                                        Map<String, Map<String, Set<ThresholdEntity>>> generic) {
+        final ThresholdGroup group = new ThresholdGroup(name);
+        group.setNodeResourceType(resourceType("node", node));
+        group.setIfResourceType(resourceType("if", iface));
+        final Map<String, ThresholdResourceType> genericTypes = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<String, Set<ThresholdEntity>>> entry : generic.entrySet()) {
+            genericTypes.put(entry.getKey(), resourceType(entry.getKey(), entry.getValue()));
+        }
+        group.setGenericResourceTypeMap(genericTypes);
+        return group;
+    }
+
+    private static ThresholdResourceType resourceType(String name, Map<String, Set<ThresholdEntity>> thresholds) {
+        final ThresholdResourceType resourceType = new ThresholdResourceType(name);
+        resourceType.setThresholdMap(new LinkedHashMap<>(thresholds));
+        return resourceType;
+    }
+
+    private static List<String> keys(List<PlannedThreshold> thresholds) {
+        return thresholds.stream().map(PlannedThreshold::getKey).collect(Collectors.toList());
+    }
+}
@@ -59,4 +59,10 @@ public interface TopologyEntityCache {
     List<IpInterfaceTopologyEntity> getIpInterfaceTopologyEntities();
     void refresh();
 
+    void refreshNodeTopologyEntities();
+    void refreshCdpTopologyEntities();
+    void refreshOspfTopologyEntities();
+    void refreshIsIsTopologyEntities();
+    void refreshLldpTopologyEntities();
+
 }
@@ -152,16 +152,41 @@ public class TopologyEntityCacheImpl implements TopologyEntityCache {
 
     @Override
     public void refresh(){
+        refreshNodeTopologyEntities();
+        refreshCdpTopologyEntities();
+        refreshOspfTopologyEntities();
+        refreshIsIsTopologyEntities();
+        refreshLldpTopologyEntities();
+    }
+
+    @Override
+    public void refreshNodeTopologyEntities() {
         nodeTopologyEntities.refresh(CACHE_KEY);
+        snmpInterfaceTopologyEntities.refresh(CACHE_KEY);
+        ipInterfaceTopologyEntities.refresh(CACHE_KEY);
+    }
+
+    @Override
+    public void refreshCdpTopologyEntities() {
         cdpLinkTopologyEntities.refresh(CACHE_KEY);
-        isIsLinkTopologyEntities.refresh(CACHE_KEY);
-        lldpLinkTopologyEntities.refresh(CACHE_KEY);
-        ospfLinkTopologyEntities.refresh(CACHE_KEY);
         cdpElementTopologyEntities.refresh(CACHE_KEY);
+    }
+
+    @Override
+    public void refreshOspfTopologyEntities() {
+        ospfLinkTopologyEntities.refresh(CACHE_KEY);
+    }
+
+    @Override
+    public void refreshIsIsTopologyEntities() {
+        isIsLinkTopologyEntities.refresh(CACHE_KEY);
         isIsElementTopologyEntities.refresh(CACHE_KEY);
+    }
+
+    @Override
+    public void refreshLldpTopologyEntities() {
+        lldpLinkTopologyEntities.refresh(CACHE_KEY);
         lldpElementTopologyEntities.refresh(CACHE_KEY);
-        snmpInterfaceTopologyEntities.refresh(CACHE_KEY);
-        ipInterfaceTopologyEntities.refresh(CACHE_KEY);
     }
 
     private int getCacheDuration(){
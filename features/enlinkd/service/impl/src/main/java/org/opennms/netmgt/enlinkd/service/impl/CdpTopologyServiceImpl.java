@@ -67,6 +67,12 @@ public class CdpTopologyServiceImpl extends TopologyServiceImpl implements CdpTo
     public CdpTopologyServiceImpl() {
     }
 
+    @Override
+    public void refresh() {
+        super.refresh();
+        getTopologyEntityCache().refreshCdpTopologyEntities();
+    }
+
     @Override
     public void delete(int nodeid) {
         m_cdpElementDao.deleteByNodeId(nodeid);
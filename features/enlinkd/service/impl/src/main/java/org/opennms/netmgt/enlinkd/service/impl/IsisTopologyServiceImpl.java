@@ -66,6 +66,12 @@ public class IsisTopologyServiceImpl extends TopologyServiceImpl implements Isis
     public IsisTopologyServiceImpl() {
     }
 
+    @Override
+    public void refresh() {
+        super.refresh();
+        getTopologyEntityCache().refreshIsIsTopologyEntities();
+    }
+
     @Override
     public void delete(int nodeid) {
         m_isisElementDao.deleteByNodeId(nodeid);
@@ -67,6 +67,12 @@ public class LldpTopologyServiceImpl extends TopologyServiceImpl implements Lldp
     public LldpTopologyServiceImpl() {
     }
 
+    @Override
+    public void refresh() {
+        super.refresh();
+        getTopologyEntityCache().refreshLldpTopologyEntities();
+    }
+
     @Override
     public void delete(int nodeid) {
         m_lldpElementDao.deleteByNodeId(nodeid);
@@ -65,6 +65,12 @@ public class OspfTopologyServiceImpl extends TopologyServiceImpl implements Ospf
     public OspfTopologyServiceImpl() {
     }
 
+    @Override
+    public void refresh() {
+        super.refresh();
+        getTopologyEntityCache().refreshOspfTopologyEntities();
+    }
+
     @Override
     public void delete(int nodeid) {
         m_ospfElementDao.deleteByNodeId(nodeid);
@@ -57,9 +57,14 @@ public class TopologyServiceImpl implements TopologyService {
             return m_updates.get();
     }
 
+    /**
+     * Reloads the cached nodes and interfaces every topology is built from.
+     * Services matching links of a protocol also reload the entities of that protocol,
+     * so an update of one protocol does not reload the links of all the others.
+     */
     @Override
     public void refresh() {
-        m_topologyEntityCache.refresh();
+        m_topologyEntityCache.refreshNodeTopologyEntities();
     }
 
     public TopologyEntityCache getTopologyEntityCache() {
@@ -0,0 +1,345 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.opennms.core.logging.Logging;
+import org.opennms.netmgt.events.api.EventListener;
+import org.opennms.netmgt.events.api.model.IEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * A ring of broadcast events shared by all event listeners.
+ *
+ * Each event is published once, together with the subscribers it is meant for. Every
+ * subscriber consumes the ring at its own cursor using its own threads and skips the
+ * events which are not meant for it.
+ *
+ * Publishing never waits for the subscribers. A subscriber with more than its limit of
+ * events in its backlog does not receive further events until it caught up. Events
+ * which are overwritten before a subscriber got to them are dropped for that subscriber.
+ * Both cases are counted by the <code>dropped</code> metric of the subscriber.
+ */
+final class EventBroadcastRing {
+    private static final Logger LOG = LoggerFactory.getLogger(EventBroadcastRing.class);
+
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+    private final int mask;
+    private final AtomicReferenceArray<Entry> entries;
+    /** The next sequence to publish. */
+    private final AtomicLong sequence = new AtomicLong();
+
+    EventBroadcastRing(int capacity) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("The capacity must be a power of two: " + capacity);
+        }
+        this.mask = capacity - 1;
+        this.entries = new AtomicReferenceArray<>(capacity);
+    }
+
+    int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Publishes the event to the given subscribers.
+     *
+     * @return a future which completes once all of the subscribers handled or dropped the event
+     */
+    CompletableFuture<Void> publish(IEvent event, List<Subscriber> subscribers) {
+        final Subscriber[] targets = subscribers.stream().filter(Subscriber::admit).toArray(Subscriber[]::new);
+        if (targets.length == 0) {
+            return DONE;
+        }
+
+        final Entry entry = new Entry(sequence.getAndIncrement(), event, targets);
+        final int index = (int) entry.seq & mask;
+        while (true) {
+            final Entry previous = entries.get(index);
+            if (previous != null && previous.seq > entry.seq) {
+                // Overtaken by a publisher a whole lap ahead
+                entry.overwritten();
+                break;
+            }
+            if (entries.compareAndSet(index, previous, entry)) {
+                if (previous != null) {
+                    previous.overwritten();
+                }
+                break;
+            }
+        }
+
+        for (Subscriber target : targets) {
+            if (target.running) {
+                target.signal();
+            } else {
+                // Stopped after admitting the event, its threads may have exited already
+                entry.cancel(target);
+            }
+        }
+        return entry.done;
+    }
+
+    private static final class Entry {
+        private static final int PENDING = 0;
+        private static final int CLAIMED = 1;
+        private static final int DROPPED = 2;
+
+        private final long seq;
+        private final Subscriber[] targets;
+        private final AtomicIntegerArray states;
+        private final AtomicInteger remaining;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        // Released once handled by all targets, as the entry stays in the ring until it is overwritten
+        private volatile IEvent event;
+
+        private Entry(long seq, IEvent event, Subscriber[] targets) {
+            this.seq = seq;
+            this.event = event;
+            this.targets = targets;
+            this.states = new AtomicIntegerArray(targets.length);
+            this.remaining = new AtomicInteger(targets.length);
+        }
+
+        /**
+         * @return the event if it is meant for the subscriber and no other thread of the subscriber claimed it before
+         */
+        private IEvent claim(Subscriber subscriber) {
+            for (int i = 0; i < targets.length; i++) {
+                if (targets[i] == subscriber) {
+                    // Read the event before claiming it, as it may be released right after
+                    final IEvent claimed = event;
+                    return states.compareAndSet(i, PENDING, CLAIMED) ? claimed : null;
+                }
+            }
+            return null;
+        }
+
+        private void cancel(Subscriber subscriber) {
+            for (int i = 0; i < targets.length; i++) {
+                if (targets[i] == subscriber && states.compareAndSet(i, PENDING, DROPPED)) {
+                    subscriber.backlog.decrementAndGet();
+                    completed();
+                }
+            }
+        }
+
+        private void overwritten() {
+            for (int i = 0; i < targets.length; i++) {
+                if (states.compareAndSet(i, PENDING, DROPPED)) {
+                    targets[i].dropped();
+                    completed();
+                }
+            }
+        }
+
+        private void completed() {
+            if (remaining.decrementAndGet() == 0) {
+                event = null;
+                done.complete(null);
+            }
+        }
+    }
+
+    /**
+     * The cursor and threads of an event listener.
+     */
+    final class Subscriber {
+        private final EventListener listener;
+        private final int limit;
+        /** The next sequence to consume. */
+        private final AtomicLong next;
+        /** Events meant for the listener which have not been handled yet. */
+        private final AtomicInteger backlog = new AtomicInteger();
+        private final Counter dropped;
+        private final MetricRegistry registry;
+        private final Thread[] threads;
+        private final Lock lock = new ReentrantLock();
+        private final Condition published = lock.newCondition();
+        private final AtomicInteger waiters = new AtomicInteger();
+        private volatile boolean running = true;
+
+        /**
+         * @param limit maximum number of events in the backlog, including the events being handled
+         */
+        Subscriber(EventListener listener, int numThreads, int limit, ThreadFactory threadFactory, MetricRegistry registry) {
+            this.listener = listener;
+            this.limit = limit;
+            this.next = new AtomicLong(sequence.get());
+            this.registry = registry;
+            this.dropped = registry.counter(MetricRegistry.name("eventlisteners", listener.getName(), "dropped"));
+            registry.remove(MetricRegistry.name("eventlisteners", listener.getName(), "lag"));
+            registry.register(MetricRegistry.name("eventlisteners", listener.getName(), "lag"), (Gauge<Integer>) backlog::get);
+            this.threads = new Thread[numThreads];
+            for (int i = 0; i < numThreads; i++) {
+                threads[i] = threadFactory.newThread(this::run);
+                threads[i].setDaemon(true);
+            }
+        }
+
+        EventListener getListener() {
+            return listener;
+        }
+
+        void start() {
+            for (Thread thread : threads) {
+                thread.start();
+            }
+        }
+
+        /**
+         * Stops the threads once they handled the events which have already been published.
+         * Events published after are not handled, but complete right away.
+         */
+        void stop() {
+            running = false;
+            lock.lock();
+            try {
+                published.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            registry.remove(MetricRegistry.name("eventlisteners", listener.getName(), "lag"));
+            registry.remove(MetricRegistry.name("eventlisteners", listener.getName(), "dropped"));
+        }
+
+        private boolean admit() {
+            if (!running) {
+                return false;
+            }
+            if (backlog.incrementAndGet() > limit) {
+                backlog.decrementAndGet();
+                dropped.inc();
+                LOG.warn("Listener {}'s event queue is full, discarding event", listener.getName());
+                return false;
+            }
+            return true;
+        }
+
+        private void dropped() {
+            backlog.decrementAndGet();
+            dropped.inc();
+            LOG.warn("Listener {} fell behind by more than {} events, discarding event", listener.getName(), getCapacity());
+        }
+
+        private void signal() {
+            if (waiters.get() > 0) {
+                lock.lock();
+                try {
+                    published.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        private void run() {
+            while (true) {
+                final long seq = next.get();
+                final Entry entry = entries.get((int) seq & mask);
+                if (entry == null || entry.seq < seq) {
+                    // Check whether running before checking the sequence: a publisher which claims a sequence
+                    // after the check sees that the subscriber is stopped and cancels the event itself
+                    final boolean stopped = !running;
+                    if (seq < sequence.get()) {
+                        // Claimed by a publisher which did not store the entry yet
+                        Thread.yield();
+                    } else if (stopped) {
+                        return;
+                    } else {
+                        await(seq);
+                    }
+                } else if (entry.seq > seq) {
+                    // Lapped, the events in between are dropped when they are overwritten
+                    next.compareAndSet(seq, entry.seq - mask);
+                } else if (next.compareAndSet(seq, seq + 1)) {
+                    final IEvent event = entry.claim(this);
+                    if (event != null) {
+                        handle(entry, event);
+                    }
+                }
+            }
+        }
+
+        private void await(long seq) {
+            lock.lock();
+            try {
+                waiters.incrementAndGet();
+                try {
+                    while (running && sequence.get() <= seq) {
+                        published.await();
+                    }
+                } finally {
+                    waiters.decrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void handle(Entry entry, IEvent event) {
+            try {
+                if (LOG.isDebugEnabled()) LOG.debug("run: calling onEvent on {} for event {}", listener.getName(), event.toStringSimple());
+
+                // Make sure we restore our log4j logging prefix after onEvent is called
+                final Map<String,String> mdc = Logging.getCopyOfContextMap();
+                try {
+                    listener.onEvent(event);
+                } finally {
+                    Logging.setContextMap(mdc);
+                }
+            } catch (Throwable t) {
+                LOG.warn("run: an unexpected error occured during ListenerThread {}", listener.getName(), t);
+            } finally {
+                backlog.decrementAndGet();
+                entry.completed();
+            }
+        }
+    }
+}
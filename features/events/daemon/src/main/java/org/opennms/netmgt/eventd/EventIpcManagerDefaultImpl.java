@@ -32,7 +32,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -111,9 +111,19 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
     private List<EventListener> m_listeners = new ArrayList<EventListener>();
 
     /**
-     * Hash table of event listener threads keyed by the listener's id
+     * Hash table of event listener cursors keyed by the listener's id
      */
-    private Map<String, EventListenerExecutor> m_listenerThreads = new HashMap<String, EventListenerExecutor>();
+    private Map<String, EventBroadcastRing.Subscriber> m_subscribers = new HashMap<String, EventBroadcastRing.Subscriber>();
+
+    /**
+     * Immutable copy of the subscriptions used to broadcast events without locking
+     */
+    private volatile Subscriptions m_subscriptions = new Subscriptions(Collections.emptyList(), Collections.emptyMap());
+
+    /**
+     * The ring all events are broadcasted through
+     */
+    private final EventBroadcastRing m_ring = new EventBroadcastRing(Integer.getInteger("org.opennms.eventd.broadcast.ringSize", 65536));
 
     /**
      * The thread pool handling the events
@@ -129,79 +139,16 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
     private final MetricRegistry m_registry;
 
     /**
-     * A thread dedicated to each listener. The events meant for each listener
-     * is added to an execution queue when the 'sendNow()' is called. The
-     * ListenerThread reads events off of this queue and sends them to the
-     * appropriate listener.
+     * The subscribers of the listeners interested in all events and of the
+     * listeners interested in specific UEIs.
      */
-    private static class EventListenerExecutor {
-        /**
-         * Listener to which this thread is dedicated
-         */
-        private final EventListener m_listener;
-
-        /**
-         * The thread that is running this runnable.
-         */
-        private final ExecutorService m_delegateThread;
-
-        /**
-         * Constructor
-         */
-        EventListenerExecutor(EventListener listener, Integer handlerQueueLength) {
-            m_listener = listener;
-
-            int numThreads = 1;
-            if (m_listener instanceof ThreadAwareEventListener) {
-                numThreads = ((ThreadAwareEventListener)m_listener).getNumThreads();
-            }
-
-            m_delegateThread = new ThreadPoolExecutor(
-                    numThreads,
-                    numThreads,
-                    0L,
-                    TimeUnit.MILLISECONDS,
-                    handlerQueueLength == null ? new LinkedBlockingQueue<Runnable>() : new LinkedBlockingQueue<Runnable>(handlerQueueLength),
-                    // This ThreadFactory will ensure that the log prefix of the calling thread
-                    // is used for all events that this listener handles. Therefore, if Notifd
-                    // registers for an event then all logs for handling that event will end up
-                    // inside notifd.log.
-                    new LogPreservingThreadFactory(m_listener.getName(), numThreads),
-                    new RejectedExecutionHandler() {
-                        @Override
-                        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
-                            LOG.warn("Listener {}'s event queue is full, discarding event", m_listener.getName());
-                        }
-                    }
-            );
-        }
-
-        public CompletableFuture<Void> addEvent(final IEvent event) {
-            return CompletableFuture.runAsync(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                         if (LOG.isDebugEnabled()) LOG.debug("run: calling onEvent on {} for event {}", m_listener.getName(), event.toStringSimple());
-
-                        // Make sure we restore our log4j logging prefix after onEvent is called
-                        Map<String,String> mdc = Logging.getCopyOfContextMap();
-                        try {
-                            m_listener.onEvent(event);
-                        } finally {
-                            Logging.setContextMap(mdc);
-                        }
-                    } catch (Throwable t) {
-                        LOG.warn("run: an unexpected error occured during ListenerThread {}", m_listener.getName(), t);
-                    }
-                }
-            }, m_delegateThread);
-        }
+    private static class Subscriptions {
+        private final List<EventBroadcastRing.Subscriber> m_all;
+        private final Map<String, List<EventBroadcastRing.Subscriber>> m_byUei;
 
-        /**
-         * Stops the execution of this listener.
-         */
-        public void stop() {
-            m_delegateThread.shutdown();
+        Subscriptions(List<EventBroadcastRing.Subscriber> all, Map<String, List<EventBroadcastRing.Subscriber>> byUei) {
+            m_all = all;
+            m_byUei = byUei;
         }
     }
 
@@ -296,23 +243,21 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
             LOG.debug("Event ID {} to be broadcasted: {}", event.getDbid(), event.getUei());
         }
 
-        if (LOG.isDebugEnabled() && m_listeners.isEmpty()) {
+        final Subscriptions subscriptions = m_subscriptions;
+        if (LOG.isDebugEnabled() && subscriptions.m_all.isEmpty()) {
             LOG.debug("No listeners interested in all events");
         }
 
-        List<CompletableFuture<Void>> listenerFutures = new ArrayList<>();
-
         IEvent immutableEvent = ImmutableMapper.fromMutableEvent(event);
 
         // Send to listeners interested in receiving all events
-        for (EventListener listener : m_listeners) {
-            listenerFutures.add(queueEventToListener(immutableEvent, listener));
-        }
+        final Set<EventBroadcastRing.Subscriber> targets = new LinkedHashSet<>(subscriptions.m_all);
 
         if (event.getUei() == null) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Event ID {} does not have a UEI, so skipping UEI matching", immutableEvent.getDbid());
             }
+            m_ring.publish(immutableEvent, new ArrayList<>(targets));
             return;
         }
 
@@ -320,15 +265,11 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
          * Send to listeners who are interested in this event UEI.
          * Loop to attempt partial wild card "directory" matches.
          */
-        Set<EventListener> sentToListeners = new HashSet<EventListener>();
+        final int matchAll = targets.size();
         for (String uei = event.getUei(); uei.length() > 0; ) {
-            if (m_ueiListeners.containsKey(uei)) {
-                for (EventListener listener : m_ueiListeners.get(uei)) {
-                    if (!sentToListeners.contains(listener)) {
-                        listenerFutures.add(queueEventToListener(immutableEvent, listener));
-                        sentToListeners.add(listener);
-                    }
-                }
+            final List<EventBroadcastRing.Subscriber> subscribers = subscriptions.m_byUei.get(uei);
+            if (subscribers != null) {
+                targets.addAll(subscribers);
             }
             
             // Try wild cards: Find / before last character
@@ -342,23 +283,21 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
             }
         }
         
-        if (sentToListeners.isEmpty()) {
+        if (targets.size() == matchAll) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("No listener interested in event ID {}: {}", event.getDbid(), event.getUei());
             }
         }
 
+        final CompletableFuture<Void> handled = m_ring.publish(immutableEvent, new ArrayList<>(targets));
+
         // If synchronous...
         if (synchronous) {
             // Wait for all of the listeners to complete before returning
-            CompletableFuture.allOf(listenerFutures.toArray(new CompletableFuture[0])).join();
+            handled.join();
         }
     }
 
-    private CompletableFuture<Void> queueEventToListener(IEvent event, EventListener listener) {
-        return m_listenerThreads.get(listener.getName()).addEvent(event);
-    }
-
     /**
      * {@inheritDoc}
      *
@@ -377,6 +316,7 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         for (String uei : m_ueiListeners.keySet()) {
             removeUeiForListener(uei, listener);
         }
+        updateSubscriptions();
     }
 
     /**
@@ -406,6 +346,7 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
 
         // Since we have a UEI-specific listener, remove the match-all listener
         removeMatchAllForListener(listener);
+        updateSubscriptions();
     }
 
     /**
@@ -440,6 +381,7 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         for (String uei : ueis) {
             removeUeiForListener(uei, listener);
         }
+        updateSubscriptions();
     }
 
     /**
@@ -459,6 +401,7 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         Assert.notNull(uei, "uei argument cannot be null");
 
         removeUeiForListener(uei, listener);
+        updateSubscriptions();
     }
 
     /**
@@ -480,10 +423,10 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         }
 
         // stop and remove the listener thread for this listener
-        if (m_listenerThreads.containsKey(listener.getName())) {
-            m_listenerThreads.get(listener.getName()).stop();
-
-            m_listenerThreads.remove(listener.getName());
+        final EventBroadcastRing.Subscriber subscriber = m_subscribers.remove(listener.getName());
+        updateSubscriptions();
+        if (subscriber != null) {
+            subscriber.stop();
         }
     }
 
@@ -492,12 +435,59 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
      * already exist.
      */
     private void createListenerThread(EventListener listener) {
-        if (m_listenerThreads.containsKey(listener.getName())) {
+        if (m_subscribers.containsKey(listener.getName())) {
             return;
         }
-        
-        EventListenerExecutor listenerThread = new EventListenerExecutor(listener, m_handlerQueueLength);
-        m_listenerThreads.put(listener.getName(), listenerThread);
+
+        int numThreads = 1;
+        if (listener instanceof ThreadAwareEventListener) {
+            numThreads = ((ThreadAwareEventListener)listener).getNumThreads();
+        }
+
+        // Events being handled count against the queue length, as they did with a thread pool
+        final int limit = m_handlerQueueLength == null ? Integer.MAX_VALUE : (int) Math.min(Integer.MAX_VALUE, (long) m_handlerQueueLength + numThreads);
+
+        final EventBroadcastRing.Subscriber subscriber = m_ring.new Subscriber(
+                listener,
+                numThreads,
+                limit,
+                // This ThreadFactory will ensure that the log prefix of the calling thread
+                // is used for all events that this listener handles. Therefore, if Notifd
+                // registers for an event then all logs for handling that event will end up
+                // inside notifd.log.
+                new LogPreservingThreadFactory(listener.getName(), numThreads),
+                m_registry);
+        m_subscribers.put(listener.getName(), subscriber);
+        subscriber.start();
+    }
+
+    /**
+     * Publishes a copy of the current subscriptions to {@link #broadcastNow(Event, boolean)}.
+     */
+    private void updateSubscriptions() {
+        final List<EventBroadcastRing.Subscriber> all = new ArrayList<>(m_listeners.size());
+        for (EventListener listener : m_listeners) {
+            addSubscriber(all, listener);
+        }
+        final Map<String, List<EventBroadcastRing.Subscriber>> byUei = new HashMap<>();
+        for (Map.Entry<String, List<EventListener>> entry : m_ueiListeners.entrySet()) {
+            if (entry.getValue().isEmpty()) {
+                continue;
+            }
+            final List<EventBroadcastRing.Subscriber> subscribers = new ArrayList<>(entry.getValue().size());
+            for (EventListener listener : entry.getValue()) {
+                addSubscriber(subscribers, listener);
+            }
+            byUei.put(entry.getKey(), subscribers);
+        }
+        m_subscriptions = new Subscriptions(all, byUei);
+    }
+
+    private void addSubscriber(List<EventBroadcastRing.Subscriber> subscribers, EventListener listener) {
+        final EventBroadcastRing.Subscriber subscriber = m_subscribers.get(listener.getName());
+        if (subscriber != null) {
+            subscribers.add(subscriber);
+        }
     }
 
     /**
@@ -638,10 +628,6 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
 
     @Override
     public boolean hasEventListener(final String uei) {
-        if (this.m_ueiListeners.containsKey(uei)) {
-            return this.m_ueiListeners.get(uei).size() > 0;
-        } else {
-            return false;
-        }
+        return m_subscriptions.m_byUei.containsKey(uei);
     }
 }
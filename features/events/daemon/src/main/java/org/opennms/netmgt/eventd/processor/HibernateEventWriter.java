@@ -32,9 +32,12 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
+import org.opennms.core.concurrent.GroupCommitQueue;
 import org.opennms.netmgt.dao.api.DistPollerDao;
 import org.opennms.netmgt.dao.api.EventDao;
 import org.opennms.netmgt.dao.api.MonitoringSystemDao;
@@ -56,6 +59,7 @@ import org.opennms.netmgt.xml.event.Log;
 import org.opennms.netmgt.xml.event.Operaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DeadlockLoserDataAccessException;
 import org.springframework.transaction.TransactionStatus;
@@ -89,7 +93,7 @@ import com.codahale.metrics.Timer.Context;
  * @author <A HREF="mailto:sowmya@opennms.org">Sowmya Nataraj </A>
  * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
  */
-public class HibernateEventWriter implements EventWriter {
+public class HibernateEventWriter implements EventWriter, DisposableBean {
     private static final Logger LOG = LoggerFactory.getLogger(HibernateEventWriter.class);
 
     public static final String LOG_MSG_DEST_DO_NOT_PERSIST = "donotpersist";
@@ -97,6 +101,13 @@ public class HibernateEventWriter implements EventWriter {
     public static final String LOG_MSG_DEST_LOG_AND_DISPLAY = "logndisplay";
     public static final String LOG_MSG_DEST_LOG_ONLY = "logonly";
     public static final String LOG_MSG_DEST_DISPLAY_ONLY = "displayonly";
+
+    /**
+     * When greater than zero, logs processed concurrently within this many milliseconds
+     * are written together using a single transaction and batched inserts.
+     */
+    protected static final long BATCH_WINDOW_MS = Long.getLong("org.opennms.eventd.writer.batchWindowMs", 0L);
+    protected static final int MAX_BATCH_SIZE = Integer.getInteger("org.opennms.eventd.writer.maxBatchSize", 500);
     
     @Autowired
     private TransactionOperations m_transactionManager;
@@ -121,8 +132,35 @@ public class HibernateEventWriter implements EventWriter {
 
     private final Timer writeTimer;
 
+    private final Timer batchWriteTimer;
+
+    private volatile GroupCommitQueue<PendingLog> m_batches;
+
     public HibernateEventWriter(MetricRegistry registry) {
         writeTimer = Objects.requireNonNull(registry).timer("eventlogs.process.write");
+        batchWriteTimer = registry.timer("eventlogs.process.write.batch");
+        setBatchWindow(BATCH_WINDOW_MS, MAX_BATCH_SIZE);
+    }
+
+    /**
+     * Enables group commits when the window is greater than zero.
+     *
+     * @param windowMs how long to wait for logs from other threads before writing a batch
+     * @param maxBatchSize maximum number of logs written in one batch
+     */
+    public void setBatchWindow(long windowMs, int maxBatchSize) {
+        m_batches = windowMs > 0 ? new GroupCommitQueue<>("HibernateEventWriter", windowMs, maxBatchSize, maxBatchSize, this::persistBatch) : null;
+    }
+
+    /**
+     * Stops the group commit thread after writing the logs which have already been queued.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        final GroupCommitQueue<PendingLog> batches = m_batches;
+        if (batches != null) {
+            batches.stop();
+        }
     }
 
     /**
@@ -179,29 +217,100 @@ public class HibernateEventWriter implements EventWriter {
                 return;
             }
 
-            // Time the transaction and insertions
-            try (Context context = writeTimer.time()) {
-                final AtomicReference<EventProcessorException> exception = new AtomicReference<>();
-
-                m_transactionManager.execute(new TransactionCallbackWithoutResult() {
-                    @Override
-                    protected void doInTransactionWithoutResult(TransactionStatus status) {
-                        for (Event eachEvent : eventsToPersist) {
-                            try {
-                                process(eventLog.getHeader(), eachEvent);
-                            } catch (EventProcessorException e) {
-                                exception.set(e);
-                                return;
-                            }
+            if (m_batches != null) {
+                persistInBatch(eventLog.getHeader(), eventsToPersist);
+            } else {
+                persist(eventLog.getHeader(), eventsToPersist);
+            }
+        }
+    }
+
+    private void persist(final Header eventHeader, final List<Event> eventsToPersist) throws EventProcessorException {
+        // Time the transaction and insertions
+        try (Context context = writeTimer.time()) {
+            final AtomicReference<EventProcessorException> exception = new AtomicReference<>();
+
+            m_transactionManager.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    for (Event eachEvent : eventsToPersist) {
+                        try {
+                            process(eventHeader, eachEvent);
+                        } catch (EventProcessorException e) {
+                            exception.set(e);
+                            return;
+                        }
+                    }
+                }
+            });
+
+            if (exception.get() != null) {
+                throw exception.get();
+            }
+        }
+    }
+
+    /**
+     * Hands the events over to the committer thread and waits until they have been written,
+     * as the following processors rely on the database ids of the events.
+     */
+    private void persistInBatch(final Header eventHeader, final List<Event> eventsToPersist) throws EventProcessorException {
+        final PendingLog pending = new PendingLog(eventHeader, eventsToPersist);
+        try {
+            m_batches.add(pending);
+            pending.written.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EventProcessorException("Interrupted while waiting for events to be stored: " + eventsToPersist, e);
+        } catch (IllegalStateException e) {
+            throw new EventProcessorException("Not storing events, the writer is stopped: " + eventsToPersist, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof EventProcessorException) {
+                throw (EventProcessorException)e.getCause();
+            }
+            throw new EventProcessorException("Unexpected exception while storing events: " + eventsToPersist, e.getCause());
+        }
+    }
+
+    /**
+     * Writes the events of all given logs using a single transaction and batched inserts.
+     *
+     * If that fails, each log is written using its own transaction again, so that an
+     * event which cannot be stored only fails the log it belongs to.
+     */
+    private void persistBatch(final List<PendingLog> batch) {
+        try (Context context = batchWriteTimer.time()) {
+            m_transactionManager.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    final List<OnmsEvent> ovents = new ArrayList<>();
+                    for (PendingLog pending : batch) {
+                        for (Event event : pending.events) {
+                            ovents.add(createOnmsEvent(pending.header, event));
                         }
                     }
-                });
+                    eventDao.saveAll(ovents);
 
-                if (exception.get() != null) {
-                    throw exception.get();
+                    // Update the events with the database IDs of the events stored in the database
+                    int i = 0;
+                    for (PendingLog pending : batch) {
+                        for (Event event : pending.events) {
+                            event.setDbid(ovents.get(i++).getId());
+                        }
+                    }
+                }
+            });
+        } catch (Throwable e) {
+            LOG.warn("HibernateEventWriter: failed to store batch of {} logs, storing them one by one.", batch.size(), e);
+            for (PendingLog pending : batch) {
+                try {
+                    persist(pending.header, pending.events);
+                } catch (EventProcessorException | RuntimeException ex) {
+                    pending.written.completeExceptionally(ex);
                 }
             }
         }
+        batch.forEach(pending -> pending.written.complete(null));
     }
 
     /**
@@ -405,4 +514,15 @@ public class HibernateEventWriter implements EventWriter {
     public void setTransactionManager(TransactionOperations transactionManager) {
         m_transactionManager = transactionManager;
     }
+
+    private static class PendingLog {
+        private final Header header;
+        private final List<Event> events;
+        private final CompletableFuture<Void> written = new CompletableFuture<>();
+
+        private PendingLog(Header header, List<Event> events) {
+            this.header = header;
+            this.events = events;
+        }
+    }
 }
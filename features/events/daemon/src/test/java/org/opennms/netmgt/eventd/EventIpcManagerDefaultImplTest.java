@@ -37,11 +37,13 @@ import static org.opennms.core.utils.InetAddressUtils.addr;
 
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -634,6 +636,65 @@ public class EventIpcManagerDefaultImplTest extends TestCase {
         await().pollInterval(1, TimeUnit.SECONDS).untilAtomic(counter, is(equalTo(6)));
     }
 
+    /**
+     * Events discarded for a slow listener must not affect the other
+     * listeners and are counted by the metrics of the slow listener.
+     */
+    public void testSlowEventListenerDoesNotDelayOtherListeners() throws InterruptedException {
+        AtomicInteger slowCounter = new AtomicInteger();
+        CountDownLatch fastCounter = new CountDownLatch(10);
+
+        EventListener slowListener = new EventListener() {
+            @Override
+            public String getName() {
+                return "slowListener";
+            }
+
+            @Override
+            public void onEvent(IEvent event) {
+                try {
+                    Thread.sleep(SLOW_EVENT_OPERATION_DELAY);
+                } catch (InterruptedException e) {
+                }
+                slowCounter.incrementAndGet();
+            }
+        };
+        EventListener fastListener = new EventListener() {
+            @Override
+            public String getName() {
+                return "fastListener";
+            }
+
+            @Override
+            public void onEvent(IEvent event) {
+                fastCounter.countDown();
+            }
+        };
+
+        EventIpcManagerDefaultImpl manager = new EventIpcManagerDefaultImpl(m_registry);
+        manager.setHandlerPoolSize(1);
+        manager.setHandlerQueueLength(5);
+        manager.setEventHandler(new DefaultEventHandlerImpl(m_registry));
+        manager.afterPropertiesSet();
+
+        manager.addEventListener(slowListener);
+        manager.addEventListener(fastListener, "uei.opennms.org/foo/");
+
+        for (int i = 0; i < 10; i++) {
+            manager.broadcastNow(new EventBuilder("uei.opennms.org/foo/" + i, "testSlowEventListenerDoesNotDelayOtherListeners").getEvent(), false);
+        }
+
+        assertTrue("fast listener was delayed by the slow listener", fastCounter.await(SLOW_EVENT_OPERATION_DELAY, TimeUnit.MILLISECONDS));
+        assertEquals(4, m_registry.counter("eventlisteners.slowListener.dropped").getCount());
+        assertEquals(0, m_registry.counter("eventlisteners.fastListener.dropped").getCount());
+
+        await().pollInterval(1, TimeUnit.SECONDS).untilAtomic(slowCounter, is(equalTo(6)));
+        assertEquals(0, m_registry.getGauges().get("eventlisteners.slowListener.lag").getValue());
+
+        manager.removeEventListener(slowListener);
+        assertFalse(m_registry.getGauges().containsKey("eventlisteners.slowListener.lag"));
+    }
+
     /**
      * This test creates two event listeners that both create events as they
      * handle events. This test can be used to detect deadlocks between the
@@ -774,6 +835,20 @@ public class EventIpcManagerDefaultImplTest extends TestCase {
         assertEquals(1, counter.get());
     }
 
+    /**
+     * Verify that events published to a stopped listener do not keep synchronous broadcasts waiting.
+     */
+    public void testPublishToStoppedListener() {
+        final EventBroadcastRing ring = new EventBroadcastRing(8);
+        final EventBroadcastRing.Subscriber subscriber = ring.new Subscriber(m_listener, 1, 10, Executors.defaultThreadFactory(), m_registry);
+        subscriber.start();
+        subscriber.stop();
+
+        final Event e = new EventBuilder("uei.opennms.org/foo", "testPublishToStoppedListener").getEvent();
+        final CompletableFuture<Void> handled = ring.publish(ImmutableMapper.fromMutableEvent(e), Collections.singletonList(subscriber));
+        assertTrue(handled.isDone());
+    }
+
     private static class MultiThreadedEventListener implements ThreadAwareEventListener, EventListener {
         private final ThreadLocker locker;
         private final int numThreads;
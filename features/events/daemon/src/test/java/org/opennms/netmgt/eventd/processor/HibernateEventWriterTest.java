@@ -28,6 +28,7 @@
 
 package org.opennms.netmgt.eventd.processor;
 
+import static org.junit.Assert.assertFalse;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -35,6 +36,12 @@ import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.opennms.netmgt.events.api.EventProcessorException;
@@ -63,6 +70,11 @@ public class HibernateEventWriterTest {
         eventWriter.setTransactionManager(transactionManager);
     }
 
+    @After
+    public void tearDown() throws InterruptedException {
+        eventWriter.destroy();
+    }
+
     /**
      * Verifies that no transaction is opened when none of the events
      * in the event log need to be persisted.
@@ -116,4 +128,48 @@ public class HibernateEventWriterTest {
         eventWriter.process(log);
         verify(transactionManager, times(1)).execute(any());
     }
+
+    /**
+     * Verifies that logs processed concurrently share a single
+     * transaction when group commits are enabled.
+     */
+    @Test
+    public void testSingleTransactionForConcurrentLogs() throws Exception {
+        // Only the batch size closes the batch
+        eventWriter.setBatchWindow(TimeUnit.MINUTES.toMillis(1), 2);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<?> first = executor.submit(() -> {
+                eventWriter.process(newLog());
+                return null;
+            });
+            final Future<?> second = executor.submit(() -> {
+                eventWriter.process(newLog());
+                return null;
+            });
+            first.get(1, TimeUnit.MINUTES);
+            second.get(1, TimeUnit.MINUTES);
+        } finally {
+            executor.shutdown();
+        }
+        verify(transactionManager, times(1)).execute(any());
+    }
+
+    @Test
+    public void testDestroyStopsBatchThread() throws Exception {
+        eventWriter.setBatchWindow(1, 10);
+        eventWriter.process(newLog());
+        verify(transactionManager, times(1)).execute(any());
+
+        eventWriter.destroy();
+        assertFalse(Thread.getAllStackTraces().keySet().stream()
+                .anyMatch(thread -> "HibernateEventWriter".equals(thread.getName())));
+    }
+
+    private static Log newLog() {
+        EventBuilder bldr = new EventBuilder("testUei", "testSource");
+        bldr.setLogDest(HibernateEventWriter.LOG_MSG_DEST_LOG_AND_DISPLAY);
+        return bldr.getLog();
+    }
 }
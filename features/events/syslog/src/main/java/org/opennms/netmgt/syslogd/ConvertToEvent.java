@@ -82,6 +82,8 @@ public class ConvertToEvent {
     /** Constant <code>HIDDEN_MESSAGE="The message logged has been removed due"{trunked}</code> */
     protected static final String HIDDEN_MESSAGE = "The message logged has been removed due to configuration of Syslogd; it may contain sensitive data.";
 
+    private static final String LOCALHOST_NAME = InetAddressUtils.getLocalHostName();
+
     private final Event m_event;
 
     private static final LoadingCache<String,Pattern> CACHED_PATTERNS = CacheBuilder.newBuilder().build(
@@ -122,6 +124,15 @@ public class ConvertToEvent {
         if (message == null) {
             return null;
         }
+        return toEventBuilder(message, message.getHostAddress(), systemId, location, receivedTimestamp);
+    }
+
+    /**
+     * @param hostAddress The address resolved from the host name of the message, as resolving
+     * it with {@link SyslogMessage#getHostAddress()} may require a DNS lookup.
+     */
+    private static EventBuilder toEventBuilder(SyslogMessage message, InetAddress hostAddress, String systemId, String location,
+                                               Date receivedTimestamp) {
 
         // Build a basic event out of the syslog message
         final String priorityTxt = message.getSeverity().toString();
@@ -136,7 +147,7 @@ public class ConvertToEvent {
         // Set monitoring system
         bldr.setDistPoller(systemId);
         // Set event host
-        bldr.setHost(InetAddressUtils.getLocalHostName());
+        bldr.setHost(LOCALHOST_NAME);
         // Set default event destination to logndisplay
         bldr.setLogDest("logndisplay");
 
@@ -148,7 +159,6 @@ public class ConvertToEvent {
         // Add any syslog message parameters as event parameters.
         message.getParameters().forEach((k, v) -> bldr.addParam(k.toString(), v));
 
-        final InetAddress hostAddress = message.getHostAddress();
         if (hostAddress != null) {
             // Set nodeId
             InterfaceToNodeCache cache = AbstractInterfaceToNodeCache.getInstance();
@@ -341,31 +351,48 @@ public class ConvertToEvent {
         * node to match against nodeId.
          */
 
-        // Time to verify UEI matching.
+        // Resolve the host name once, it is needed by the UEI matches and the event
+        final InetAddress hostAddress = message.getHostAddress();
+        final String hostAddressTxt = str(hostAddress);
 
-        EventBuilder bldr = toEventBuilder(message, systemId, location, receivedTimestamp);
+        // Time to verify UEI matching. This is done before building
+        // the event, so discarded messages are dropped right away.
 
+        UeiMatch matchedUei = null;
+        Matcher matchedGroups = null;
         final List<UeiMatch> ueiMatch = (config.getUeiList() == null ? Collections.emptyList() : config.getUeiList());
         for (final UeiMatch uei : ueiMatch) {
             final boolean messageMatchesUeiListEntry = containsIgnoreCase(uei.getFacilities(), facilityTxt) &&
                                               containsIgnoreCase(uei.getSeverities(), priorityTxt) &&
                                               matchProcess(uei.getProcessMatch().orElse(null), message.getProcessName()) &&
                                               matchHostname(uei.getHostnameMatch().orElse(null), message.getHostName()) &&
-                                              matchHostAddr(uei.getHostaddrMatch().orElse(null), str(message.getHostAddress()));
+                                              matchHostAddr(uei.getHostaddrMatch().orElse(null), hostAddressTxt);
 
             if (messageMatchesUeiListEntry) {
                 if (uei.getMatch().getType().equals("substr")) {
-                    if (matchSubstring(message.getMessage(), uei, bldr, config.getDiscardUei())) {
+                    if (matchSubstring(message.getMessage(), uei, config.getDiscardUei())) {
+                        matchedUei = uei;
                         break;
                     }
                 } else if ((uei.getMatch().getType().startsWith("regex"))) {
-                    if (matchRegex(message.getMessage(), uei, bldr, config.getDiscardUei())) {
+                    matchedGroups = matchRegex(message.getMessage(), uei, config.getDiscardUei());
+                    if (matchedGroups != null) {
+                        matchedUei = uei;
                         break;
                     }
                 }
             }
         }
 
+        EventBuilder bldr = toEventBuilder(message, hostAddress, systemId, location, receivedTimestamp);
+
+        if (matchedUei != null) {
+            bldr.setUei(matchedUei.getUei());
+            if (matchedGroups != null) {
+                addGroupParameters(matchedGroups, matchedUei, bldr);
+            }
+        }
+
         // Time to verify if we need to hide the message
         final List<HideMatch> hideMatch = (config.getHideMessages() == null ? Collections.emptyList() : config.getHideMessages());
         boolean doHide = false;
@@ -452,17 +479,16 @@ public class ConvertToEvent {
 
     /**
      * Checks the message for substring matches to a {@link UeiMatch}. If the message
-     * matches, then the UEI is updated (or the event is discarded if the discard
+     * matches, then the UEI must be updated (or the event is discarded if the discard
      * UEI is used). Parameter assignments are NOT performed for substring matches.
      * 
      * @param message
      * @param uei
-     * @param bldr
      * @param discardUei
      * @return
      * @throws MessageDiscardedException
      */
-    private static boolean matchSubstring(String message, final UeiMatch uei, final EventBuilder bldr, final String discardUei) throws MessageDiscardedException {
+    private static boolean matchSubstring(String message, final UeiMatch uei, final String discardUei) throws MessageDiscardedException {
         final boolean traceEnabled = LOG.isTraceEnabled();
         if (message.contains(uei.getMatch().getExpression())) {
             if (discardUei.equals(uei.getUei())) {
@@ -471,7 +497,6 @@ public class ConvertToEvent {
             } else {
                 // Update the UEI to the new value
                 if (traceEnabled) LOG.trace("Changed the UEI of a Syslogd event, based on substring match, to : {}", uei.getUei());
-                bldr.setUei(uei.getUei());
                 return true;
             }
         } else {
@@ -482,23 +507,23 @@ public class ConvertToEvent {
 
     /**
      * Checks the message for matches to a {@link UeiMatch}. If the message
-     * matches, then the UEI is updated (or the event is discarded if the discard
-     * UEI is used) and parameters are added to the event.
+     * matches, then the UEI must be updated (or the event is discarded if the discard
+     * UEI is used) and parameters are added to the event using
+     * {@link #addGroupParameters(Matcher, UeiMatch, EventBuilder)}.
      * 
      * @param message
      * @param uei
-     * @param bldr
      * @param discardUei
-     * @return
+     * @return The matcher holding the matched groups or null if the message does not match
      * @throws MessageDiscardedException
      */
-    private static boolean matchRegex(final String message, final UeiMatch uei, final EventBuilder bldr, final String discardUei) throws MessageDiscardedException {
+    private static Matcher matchRegex(final String message, final UeiMatch uei, final String discardUei) throws MessageDiscardedException {
         final boolean traceEnabled = LOG.isTraceEnabled();
         final String expression = uei.getMatch().getExpression();
         final Pattern msgPat = getPattern(expression);
         if (msgPat == null) {
             LOG.debug("Unable to create pattern for expression '{}'", expression);
-            return false;
+            return null;
         } 
 
         final Matcher msgMat = msgPat.matcher(message);
@@ -512,39 +537,48 @@ public class ConvertToEvent {
             } else {
                 // Update the UEI to the new value
                 if (traceEnabled) LOG.trace("Changed the UEI of a Syslogd event, based on regex match, to : {}", uei.getUei());
-                bldr.setUei(uei.getUei());
             }
 
-            if (msgMat.groupCount() > 0) {
-                // Perform default parameter mapping
-                if (uei.getMatch().getDefaultParameterMapping()) {
-                    if (traceEnabled) LOG.trace("Doing default parameter mappings for this regex match.");
-                    for (int groupNum = 1; groupNum <= msgMat.groupCount(); groupNum++) {
-                        if (traceEnabled) LOG.trace("Added parm 'group{}' with value '{}' to Syslogd event based on regex match group", groupNum, msgMat.group(groupNum));
-                        bldr.addParam("group"+groupNum, msgMat.group(groupNum));
-                    }
+            return msgMat;
+        }
+
+        if (traceEnabled) LOG.trace("Message portion '{}' did not regex-match pattern '{}'", message, expression);
+        return null;
+    }
+
+    /**
+     * Adds the groups of a regex match of a {@link UeiMatch} as parameters to the event.
+     * 
+     * @param msgMat The matcher returned by {@link #matchRegex(String, UeiMatch, String)}
+     * @param uei
+     * @param bldr
+     */
+    private static void addGroupParameters(final Matcher msgMat, final UeiMatch uei, final EventBuilder bldr) {
+        final boolean traceEnabled = LOG.isTraceEnabled();
+        if (msgMat.groupCount() > 0) {
+            // Perform default parameter mapping
+            if (uei.getMatch().getDefaultParameterMapping()) {
+                if (traceEnabled) LOG.trace("Doing default parameter mappings for this regex match.");
+                for (int groupNum = 1; groupNum <= msgMat.groupCount(); groupNum++) {
+                    if (traceEnabled) LOG.trace("Added parm 'group{}' with value '{}' to Syslogd event based on regex match group", groupNum, msgMat.group(groupNum));
+                    bldr.addParam("group"+groupNum, msgMat.group(groupNum));
                 }
+            }
 
-                // If there are specific parameter mappings as well, perform those mappings
-                if (uei.getParameterAssignments().size() > 0) {
-                    if (traceEnabled) LOG.trace("Doing user-specified parameter assignments for this regex match.");
-                    for (ParameterAssignment assignment : uei.getParameterAssignments()) {
-                        String parmName = assignment.getParameterName();
-                        String parmValue = msgMat.group(assignment.getMatchingGroup());
-                        parmValue = parmValue == null ? "" : parmValue;
-                        bldr.addParam(parmName, parmValue);
-                        if (traceEnabled) {
-                            LOG.trace("Added parm '{}' with value '{}' to Syslogd event based on user-specified parameter assignment", parmName, parmValue);
-                        }
+            // If there are specific parameter mappings as well, perform those mappings
+            if (uei.getParameterAssignments().size() > 0) {
+                if (traceEnabled) LOG.trace("Doing user-specified parameter assignments for this regex match.");
+                for (ParameterAssignment assignment : uei.getParameterAssignments()) {
+                    String parmName = assignment.getParameterName();
+                    String parmValue = msgMat.group(assignment.getMatchingGroup());
+                    parmValue = parmValue == null ? "" : parmValue;
+                    bldr.addParam(parmName, parmValue);
+                    if (traceEnabled) {
+                        LOG.trace("Added parm '{}' with value '{}' to Syslogd event based on user-specified parameter assignment", parmName, parmValue);
                     }
                 }
             }
-
-            return true;
         }
-
-        if (traceEnabled) LOG.trace("Message portion '{}' did not regex-match pattern '{}'", message, expression);
-        return false;
     }
 
     /**
@@ -77,4 +77,15 @@ public interface ParserStage {
 	 * that the next stage can continue processing.
 	 */
 	ParserState apply(ParserState state);
+
+	/**
+	 * Check whether this stage can complete on input that starts with the
+	 * given character. Stages that cannot rule out a character must return
+	 * true.
+	 * 
+	 * @param c The first character of the remaining input
+	 */
+	default boolean canStartWith(char c) {
+		return true;
+	}
 }
\ No newline at end of file
@@ -37,7 +37,6 @@ import java.util.EmptyStackException;
 import java.util.List;
 import java.util.Objects;
 import java.util.Stack;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
@@ -89,44 +88,39 @@ public class ParserStageSequenceBuilder {
 	private static class ParserStageState {
 		public final ByteBuffer buffer;
 
-		private StringBuilder accumulatedValue = null;
-		private AtomicInteger accumulatedSize = null;
+		/**
+		 * Stages only ever accumulate the characters at the start of the
+		 * stage, so only their count is tracked and the value is read
+		 * back from the buffer once the stage is complete.
+		 */
+		private final int start;
+		private int accumulatedSize = 0;
 
 		// Only used by MatchMonth
 		public RadixTreeNode<CharacterWithValue> currentNode = null; 
 
 		public ParserStageState(ByteBuffer input) {
 			buffer = input;
+			start = input.position();
 		}
 
 		public void accumulate(char c) {
-			accessAccumulatedValue().append(c);
-			accessAccumulatedSize().incrementAndGet();
+			accumulatedSize++;
 		}
 
 		public int getAccumulatedSize() {
-			return accessAccumulatedSize().get();
-		}
-
-		private final StringBuilder accessAccumulatedValue() {
-			if (accumulatedValue == null) {
-				accumulatedValue = new StringBuilder();
-			}
-			return accumulatedValue;
+			return accumulatedSize;
 		}
 
-		private final AtomicInteger accessAccumulatedSize() {
-			if (accumulatedSize == null) {
-				accumulatedSize = new AtomicInteger();
-			}
-			return accumulatedSize;
+		public char getAccumulatedChar(int index) {
+			return (char)buffer.get(start + index);
 		}
 
 		@Override
 		public String toString() {
 			return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
-				.append("accumulatedValue", accumulatedValue == null ? "null" : accumulatedValue.toString())
-				.append("accumulatedSize", accumulatedSize == null ? 0 : accumulatedSize.get())
+				.append("start", start)
+				.append("accumulatedSize", accumulatedSize)
 				.toString();
 		}
 	}
@@ -335,22 +329,40 @@ public class ParserStageSequenceBuilder {
 			m_terminal = terminal;
 		}
 
+		/**
+		 * Optional and terminal stages can complete without consuming
+		 * anything, so they can start with any character.
+		 */
+		@Override
+		public final boolean canStartWith(char c) {
+			return m_optional || m_terminal || acceptsFirstChar(c);
+		}
+
+		/**
+		 * @return false if {@link #acceptChar(ParserStageState, char)} cancels
+		 * the stage when called with the first character
+		 */
+		protected boolean acceptsFirstChar(char c) {
+			return true;
+		}
+
 		public abstract AcceptResult acceptChar(ParserStageState state, char c);
 
 		public final ParserState apply(final ParserState incomingState) {
 			if (incomingState == null) {
 				return null;
 			} else {
-				LOG.trace("Starting stage: " + this);
+				LOG.trace("Starting stage: {}", this);
 			}
 
-			ParserState state = incomingState.clone();
-
 			// Create a new state for the current ParserStage.
-			// Use ByteBuffer.duplicate() to create a buffer with marks
+			// ParserState.getBuffer() creates a buffer with marks
 			// and positions that only this stage will use.
-//			ParserStageState stageState = new ParserStageState(state.getBuffer().duplicate()); 
-			ParserStageState stageState = new ParserStageState(state.getBuffer()); 
+			ParserStageState stageState = new ParserStageState(incomingState.getBuffer());
+
+			// The message is shared with the incoming state until
+			// this stage stores a value in it
+			SyslogMessage message = incomingState.message;
 
 			while(true) {
 				stageState.buffer.mark();
@@ -361,27 +373,17 @@ public class ParserStageSequenceBuilder {
 				} catch (BufferUnderflowException e) {
 					if (m_terminal) {
 						if (m_resultConsumer != null) {
-							m_resultConsumer.accept(state, getValue(stageState));
+							message = consume(message, stageState);
 						}
 
-//						// Reset any local state if necessary
-//						reset(stageState);
-
 						LOG.trace("End of buffer with terminal match");
-						return new ParserState(stageState.buffer, state.message);
+						return new ParserState(stageState.buffer, message);
 					} else if (m_optional) {
-//						// TODO: Should we reset the buffer here? It probably
-//						// doesn't matter since we're at the end of the buffer.
-//						stageState.buffer.reset();
-
-//						// Reset any local state if necessary
-//						reset(stageState);
-
 						LOG.trace("End of buffer with optional match");
-						return new ParserState(stageState.buffer, state.message);
+						return new ParserState(stageState.buffer, message);
 					} else {
 						// Reached end of buffer, match failed
-						LOG.trace("Parse failed due to buffer underflow: " + this);
+						LOG.trace("Parse failed due to buffer underflow: {}", this);
 						return null;
 					}
 				}
@@ -392,7 +394,7 @@ public class ParserStageSequenceBuilder {
 					case COMPLETE_AFTER_CONSUMING:
 						if (m_resultConsumer != null) {
 							try {
-								m_resultConsumer.accept(state, getValue(stageState));
+								message = consume(message, stageState);
 							} catch (Exception e) {
 								// Conversion to value failed
 								LOG.trace("Parse failed on result consumer: {}", stageState, e);
@@ -400,14 +402,11 @@ public class ParserStageSequenceBuilder {
 							}
 						}
 
-//						// Reset any local state if necessary
-//						reset(stageState);
-
-						return new ParserState(stageState.buffer, state.message);
+						return new ParserState(stageState.buffer, message);
 					case COMPLETE_WITHOUT_CONSUMING:
 						if (m_resultConsumer != null) {
 							try {
-								m_resultConsumer.accept(state, getValue(stageState));
+								message = consume(message, stageState);
 							} catch (Exception e) {
 								// Conversion to value failed
 								LOG.trace("Parse failed on result consumer: {}", stageState, e);
@@ -421,7 +420,7 @@ public class ParserStageSequenceBuilder {
 						// Move the mark back before the current character
 						stageState.buffer.reset();
 
-						return new ParserState(stageState.buffer, state.message);
+						return new ParserState(stageState.buffer, message);
 					case CANCEL:
 						if (m_optional) {
 							stageState.buffer.reset();
@@ -429,7 +428,7 @@ public class ParserStageSequenceBuilder {
 							// Reset any local state if necessary
 							reset(stageState);
 
-							return new ParserState(stageState.buffer, state.message);
+							return new ParserState(stageState.buffer, message);
 						} else {
 							// Match failed
 							LOG.trace("Parse failed: {}", this);
@@ -439,6 +438,19 @@ public class ParserStageSequenceBuilder {
 			}
 		}
 
+		/**
+		 * Pass the value of this stage to the result consumer. The consumer
+		 * works on a copy of the message because the incoming message may
+		 * also be used by other branches of the parser.
+		 * 
+		 * @return The message containing the value
+		 */
+		private SyslogMessage consume(SyslogMessage message, ParserStageState stageState) {
+			final ParserState state = new ParserState(stageState.buffer, message.clone());
+			m_resultConsumer.accept(state, getValue(stageState));
+			return state.message;
+		}
+
 		public void reset(ParserStageState state) {
 			// Do nothing by default
 		}
@@ -452,12 +464,39 @@ public class ParserStageSequenceBuilder {
 		}
 
 		protected static String getAccumulatedValue(ParserStageState state) {
-			final StringBuilder accumulatedValue = state.accumulatedValue;
-			if (accumulatedValue == null) {
+			final int size = state.getAccumulatedSize();
+			if (size == 0) {
 				return null;
-			} else {
-				return accumulatedValue.toString();
 			}
+			final char[] value = new char[size];
+			for (int i = 0; i < size; i++) {
+				value[i] = state.getAccumulatedChar(i);
+			}
+			return new String(value);
+		}
+
+		/**
+		 * Convert the accumulated value to an integer without creating a
+		 * {@link String} if it only consists of up to 9 digits, which
+		 * cannot overflow.
+		 * 
+		 * @return The value or null if the value must be converted from
+		 * {@link #getAccumulatedValue(ParserStageState)}
+		 */
+		protected static Integer getAccumulatedDigits(ParserStageState state) {
+			final int size = state.getAccumulatedSize();
+			if (size == 0 || size > 9) {
+				return null;
+			}
+			int value = 0;
+			for (int i = 0; i < size; i++) {
+				final char c = state.getAccumulatedChar(i);
+				if (c < '0' || c > '9') {
+					return null;
+				}
+				value = value * 10 + (c - '0');
+			}
+			return value;
 		}
 
 		protected R getValue(ParserStageState state) {
@@ -508,6 +547,11 @@ public class ParserStageSequenceBuilder {
 			return m_char;
 		}
 
+		@Override
+		protected boolean acceptsFirstChar(char c) {
+			return c == m_char;
+		}
+
 		@Override
 		public AcceptResult acceptChar(ParserStageState state, char c) {
 			if (c == m_char) {
@@ -616,6 +660,16 @@ public class ParserStageSequenceBuilder {
 			super(consumer);
 		}
 
+		@Override
+		protected boolean acceptsFirstChar(char c) {
+			for (RadixTreeNode<CharacterWithValue> child : MONTH_STRINGS.getChildren()) {
+				if (child.getContent().getCharacter() == c) {
+					return true;
+				}
+			}
+			return false;
+		}
+
 		@Override
 		public AcceptResult acceptChar(ParserStageState state, char c) {
 			if (state.currentNode == null) {
@@ -737,6 +791,11 @@ public class ParserStageSequenceBuilder {
 			m_charMatcher = charMatcher;
 		}
 
+		@Override
+		protected boolean acceptsFirstChar(char c) {
+			return getLength() <= 0 || m_charMatcher.test(c);
+		}
+
 		@Override
 		public AcceptResult acceptChar(ParserStageState state, char c) {
 			if (getAccumulatedSize(state) >= getLength()) {
@@ -961,6 +1020,11 @@ public class ParserStageSequenceBuilder {
 
 		@Override
 		public Integer getValue(ParserStageState state) {
+			final Integer digits = getAccumulatedDigits(state);
+			if (digits != null) {
+				return digits;
+			}
+
 			// Trim the leading zeros from this value
 			String value = getAccumulatedValue(state);
 			boolean trimmed = false;
@@ -993,6 +1057,11 @@ public class ParserStageSequenceBuilder {
 			super(consumer);
 		}
 
+		@Override
+		protected boolean acceptsFirstChar(char c) {
+			return c >= '0' && c <= '9';
+		}
+
 		@Override
 		public AcceptResult acceptChar(ParserStageState state, char c) {
 			if (c >= '0' && c <= '9') {
@@ -1010,6 +1079,10 @@ public class ParserStageSequenceBuilder {
 
 		@Override
 		public Integer getValue(ParserStageState state) {
+			final Integer digits = getAccumulatedDigits(state);
+			if (digits != null) {
+				return digits;
+			}
 			return trimAndConvert(getAccumulatedValue(state));
 		}
 
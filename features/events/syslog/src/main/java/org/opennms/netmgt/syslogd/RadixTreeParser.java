@@ -30,9 +30,13 @@ package org.opennms.netmgt.syslogd;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 import org.opennms.core.collections.RadixTree;
@@ -44,27 +48,24 @@ import org.slf4j.LoggerFactory;
 /**
  * <p>This class uses a {@link RadixTree} to store a tree of parser stages.
  * Each leaf node of the tree represents a complete parse of an incoming
- * message. To parse incoming {@link ByteBuffer} messages, the {@link RadixTree}
- * is traversed and each stage is added as a future processing step. When a leaf node 
- * is reached and returns a non-null result, ie. a complete parse, that result is 
- * returned as the parse result.</p>
+ * message. To parse incoming {@link ByteBuffer} messages, the tree is
+ * traversed depth-first and the first leaf node that returns a non-null
+ * result, ie. a complete parse, is returned as the parse result. Branches
+ * whose stages fail are not traversed any further.</p>
  * 
  * <p>You can teach the parser new {@link ParserStage} sequences by using the 
- * {@link #teach(ParserStage[])} method. This will add the stages to the {@link RadixTree}.</p>
+ * {@link #teach(ParserStage[])} method. This will add the stages to the {@link RadixTree}.
+ * The tree is compiled into an immutable structure on the first parse after it
+ * has been changed.</p>
  * 
- * <p>TODO: Make the parser tree construction phased or asynchronous so that tree 
- * nodes are added as-needed to complete the parse. In many cases, the first
- * several branches of the tree will result in a complete parse, making it unnecessary
- * to add all possible branches to the execution tree.</p>
- * 
- * <p>TODO: Allow cancellation of in-progress branches when the first non-null result
- * is obtained.</p>
- * 
- * <p>TODO: Score and sort parse branches based on successful parses. If a particular parse
- * branch is successful, we should have a way to increment a score on the stages in
- * that branch so that we can periodically sort the tree based on these scores. This 
- * will put heavily utilized parse branches near the front of the tree, making it faster
- * to traverse the branches to a successful parse.</p>
+ * <p>Each branch counts the messages that were parsed by it. Every
+ * {@link #REORDER_INTERVAL} parses on average, a copy of the compiled tree is
+ * published where the siblings of each branch are sorted by these counts, so
+ * heavily used branches are tried first. A branch is only moved in front of a
+ * sibling that was taught before it if their first stages cannot both accept
+ * the same character (see {@link ParserStage#canStartWith(char)}). Otherwise
+ * the sibling taught first keeps precedence, so reordering never changes the
+ * result of a parse.</p>
  * 
  * @author Seth
  */
@@ -72,29 +73,31 @@ public class RadixTreeParser implements ByteBufferParser<SyslogMessage> {
 
 	private final static Logger LOG = LoggerFactory.getLogger(RadixTreeParser.class);
 
+	/**
+	 * Average number of parses between two attempts to reorder the branches.
+	 */
+	static final int REORDER_INTERVAL = 4096;
+
 	final RadixTree<ParserStage> tree = new RadixTreeImpl<>();
 
-//	private static final ThreadPoolExecutor m_executor = new ThreadPoolExecutor(
-//		1,
-//		1,
-//		0L, TimeUnit.MILLISECONDS,
-//		new SynchronousQueue<>(true),
-//		new ThreadFactory() {
-//			final AtomicInteger index = new AtomicInteger();
-//			@Override
-//			public Thread newThread(Runnable r) {
-//				return new Thread(r, RadixTreeParser.class.getSimpleName() + "-Thread-" + String.valueOf(index.incrementAndGet()));
-//			}
-//		},
-//		// Throttle incoming tasks by running them on the caller thread
-//		new ThreadPoolExecutor.CallerRunsPolicy()
-//	);
+	// Compiled from the tree on demand, reset whenever the tree is changed
+	private final AtomicReference<Branch> m_root = new AtomicReference<>();
 
-//	private static final ExecutorService m_executor = Executors.newSingleThreadExecutor();
+	private final AtomicBoolean m_reordering = new AtomicBoolean(false);
 
-//	private final ExecutorService m_executor = new ExecutorFactoryCassandraSEPImpl().newExecutor("StagedParser", "StageExecutor");
+	private final int m_reorderInterval;
 
-//	private final ExecutorService m_executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2);
+	public RadixTreeParser() {
+		this(REORDER_INTERVAL);
+	}
+
+	/**
+	 * @param reorderInterval Average number of parses between two attempts to
+	 * reorder the branches, 0 to keep them in the order they were taught
+	 */
+	RadixTreeParser(int reorderInterval) {
+		m_reorderInterval = reorderInterval;
+	}
 
 	/**
 	 * @return The number of nodes in the underlying radix tree.
@@ -108,14 +111,16 @@ public class RadixTreeParser implements ByteBufferParser<SyslogMessage> {
 	 * 
 	 * @param stages
 	 */
-	public void teach(ParserStage[] stages) {
+	public synchronized void teach(ParserStage[] stages) {
 		tree.addChildren(stages);
+		m_root.set(null);
 	}
 
-	public void performEdgeCompression() {
+	public synchronized void performEdgeCompression() {
 		for (RadixTreeNode<ParserStage> child : tree.getChildren()) {
 			compressNode(child);
 		}
+		m_root.set(null);
 	}
 
 	public static void compressNode(RadixTreeNode<ParserStage> node) {
@@ -160,6 +165,11 @@ public class RadixTreeParser implements ByteBufferParser<SyslogMessage> {
 			return currentState;
 		}
 
+		@Override
+		public boolean canStartWith(char c) {
+			return members.get(0).canStartWith(c);
+		}
+
 		@Override
 		public void setOptional(boolean optional) {
 			throw new UnsupportedOperationException();
@@ -182,92 +192,195 @@ public class RadixTreeParser implements ByteBufferParser<SyslogMessage> {
 
 	@Override
 	public CompletableFuture<SyslogMessage> parse(ByteBuffer incoming) {
-		ParserState state = new ParserState(incoming);
+		final ParserState state = getRoot().parse(new ParserState(incoming));
 
-		// TODO: Use better collection than ArrayList?
-		// We have to make sure that this list maintains the insertion order
-		// so that the first future that completes is definitely returned by
-		// {@link RadixTreeParser#firstNonNullResult()}
-		final List<CompletableFuture<ParserState>> finishedFutures = new ArrayList<>();
+		if (m_reorderInterval > 0 && ThreadLocalRandom.current().nextInt(m_reorderInterval) == 0) {
+			reorder();
+		}
 
-		// Top of future tree is parser state
-		final CompletableFuture<ParserState> parent = CompletableFuture.completedFuture(state);
+		return CompletableFuture.completedFuture(state == null ? null : state.message);
+	}
 
-		// Recursively construct the parser tree
-		addStageFutures(finishedFutures, parent, tree);
+	private Branch getRoot() {
+		final Branch root = m_root.get();
+		if (root != null) {
+			return root;
+		}
+		synchronized (this) {
+			if (m_root.get() == null) {
+				m_root.set(Branch.compile(tree, 0));
+			}
+			return m_root.get();
+		}
+	}
 
-		return firstNonNullResult(finishedFutures).thenApply(s -> {
-			if (s == null) {
-				return null;
-			} else {
-				return s.message;
+	/**
+	 * Publish a copy of the compiled tree with the siblings of each branch
+	 * sorted by the number of messages they parsed. Does nothing if another
+	 * thread is already reordering the tree.
+	 */
+	void reorder() {
+		if (!m_reordering.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			final Branch root = m_root.get();
+			if (root != null) {
+				final Branch reordered = root.reorder();
+				// Do not replace a tree that was reset by a concurrent change
+				if (reordered != root && m_root.compareAndSet(root, reordered)) {
+					LOG.debug("Reordered parser tree:\n{}", reordered);
+				}
 			}
-		});
+		} finally {
+			m_reordering.set(false);
+		}
 	}
 
 	/**
-	 * TODO: Use a visitor pattern instead?
+	 * Immutable node of the compiled parser tree. Reordering creates new
+	 * branches sharing the stages and hit counters of the original ones.
 	 */
-	private static void addStageFutures(List<CompletableFuture<ParserState>> finishedFutures, CompletableFuture<ParserState> parent, RadixTreeNode<ParserStage> node) {
-		final CompletableFuture<ParserState> current;
-
-		// If we're at the root of the radix tree (where the content is null), 
-		// use the parent future as the current future
-		if (node.getContent() == null) {
-			current = parent;
-		} else {
-			// Otherwise, apply the current node's stage to the parent
-			current = parent.thenApply(s -> { return node.getContent().apply(s); });
+	private static final class Branch {
+		private final ParserStage stage;
+		private final Branch[] children;
+		// Position among its siblings in the order they were taught
+		private final int index;
+		// Whether the children at the given teach positions may parse the same input
+		private final boolean[][] conflicts;
+		// Number of messages parsed by this branch
+		private final LongAdder hits;
+
+		private Branch(ParserStage stage, Branch[] children, int index, boolean[][] conflicts, LongAdder hits) {
+			this.stage = stage;
+			this.children = children;
+			this.index = index;
+			this.conflicts = conflicts;
+			this.hits = hits;
 		}
 
-		// If the node has children, then recursively process the children. Do not
-		// add the current node to the finished futures list: we're only concerned
-		// with seeing if the leaf nodes complete, not the intermediate stages
-		if (node.getChildren() != null && node.getChildren().size() > 0) {
-			for (RadixTreeNode<ParserStage> child : node.getChildren()) {
-				addStageFutures(finishedFutures, current, child);
+		private static Branch compile(RadixTreeNode<ParserStage> node, int index) {
+			final Branch[] children = new Branch[node.getChildren() == null ? 0 : node.getChildren().size()];
+			int i = 0;
+			if (children.length > 0) {
+				for (RadixTreeNode<ParserStage> child : node.getChildren()) {
+					children[i] = compile(child, i);
+					i++;
+				}
 			}
-		} else {
-			// If the node is a leaf node, then add it to the list of futures
-			// that need to be evaluated as part of the parse tree
-			finishedFutures.add(current);
+			final boolean[][] conflicts = new boolean[children.length][children.length];
+			for (i = 0; i < children.length; i++) {
+				for (int j = i + 1; j < children.length; j++) {
+					conflicts[i][j] = conflicts[j][i] = mayConflict(children[i].stage, children[j].stage);
+				}
+			}
+			return new Branch(node.getContent(), children, index, conflicts, new LongAdder());
 		}
-	}
 
-	private static <T> CompletableFuture<T> firstNonNullResult(List<? extends CompletionStage<T>> futures) {
-
-		CompletableFuture<T> parent = new CompletableFuture<>();
-
-		CompletableFuture.allOf(
-			futures.stream().map(
-				s -> s.thenAccept(t -> {
-//					System.out.println("VALUE " + t);
-					// After each stage completes, if its result is non-null
-					// then complete the parent future
-					if (t != null) {
-						if (!parent.complete(t)) {
-							LOG.trace("More than one future completed with a non-null result");
-						} else {
-							LOG.trace("Non-null result returned");
-						}
-					}
-				})
-			).toArray(
-				CompletableFuture<?>[]::new
-			)
-		).exceptionally(ex -> {
-			// If all futures complete exceptionally, mark this future as exceptional as well
-//			parent.completeExceptionally(ex);
-			parent.complete(null);
+		private static boolean mayConflict(ParserStage a, ParserStage b) {
+			for (int c = Character.MIN_VALUE; c <= Character.MAX_VALUE; c++) {
+				if (a.canStartWith((char)c) && b.canStartWith((char)c)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * @return the state of the first complete parse below this branch or
+		 * null if the input cannot be parsed by this branch
+		 */
+		private ParserState parse(ParserState state) {
+			final ParserState current;
+			// The root of the radix tree has no content
+			if (stage == null) {
+				current = state;
+			} else {
+				try {
+					current = stage.apply(state);
+				} catch (RuntimeException e) {
+					LOG.trace("Parse failed due to an exception: {}", stage, e);
+					return null;
+				}
+				if (current == null) {
+					return null;
+				}
+			}
+
+			if (children.length == 0) {
+				hits.increment();
+				return current;
+			}
+			for (Branch child : children) {
+				final ParserState result = child.parse(current);
+				if (result != null) {
+					hits.increment();
+					return result;
+				}
+			}
 			return null;
-		}).thenAccept(v -> {
-			// If the parent isn't complete yet, then all children returned null so just
-			// complete with null
-			if (parent.complete(null)) {
-				LOG.debug("All futures completed with a null result");
+		}
+
+		/**
+		 * @return this branch if none of its descendants changed position,
+		 * otherwise a reordered copy
+		 */
+		private Branch reorder() {
+			if (children.length == 0) {
+				return this;
+			}
+			boolean changed = false;
+			final List<Branch> remaining = new ArrayList<>(children.length);
+			final long[] counts = new long[children.length];
+			for (Branch child : children) {
+				final Branch reordered = child.reorder();
+				changed |= reordered != child;
+				remaining.add(reordered);
+				counts[reordered.index] = reordered.hits.sum();
 			}
-		});
+			remaining.sort(Comparator.comparingInt(b -> b.index));
+
+			final Branch[] sorted = new Branch[children.length];
+			for (int i = 0; i < sorted.length; i++) {
+				// Pick the most used sibling that does not have to stay behind a
+				// conflicting sibling taught before it, ties keep the teach order
+				Branch next = null;
+				for (Branch candidate : remaining) {
+					if ((next == null || counts[candidate.index] > counts[next.index]) && !isBlocked(candidate, remaining)) {
+						next = candidate;
+					}
+				}
+				remaining.remove(next);
+				sorted[i] = next;
+				changed |= next.index != children[i].index;
+			}
+			return changed ? new Branch(stage, sorted, index, conflicts, hits) : this;
+		}
+
+		private boolean isBlocked(Branch candidate, List<Branch> remaining) {
+			for (Branch other : remaining) {
+				if (other.index >= candidate.index) {
+					// The list is in teach order
+					return false;
+				} else if (conflicts[other.index][candidate.index]) {
+					return true;
+				}
+			}
+			return false;
+		}
 
-		return parent;
+		@Override
+		public String toString() {
+			return toStringWithPrefix("");
+		}
+
+		private String toStringWithPrefix(String prefix) {
+			final StringBuilder value = new StringBuilder();
+			value.append(stage == null ? "" : stage.toString()).append(" (").append(hits.sum()).append(")\n");
+			for (Branch child : children) {
+				value.append(prefix).append(child.toStringWithPrefix(prefix + "  "));
+			}
+			return value.toString();
+		}
 	}
 }
@@ -38,6 +38,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 import org.opennms.core.test.ConfigurationTestUtils;
@@ -396,6 +397,140 @@ public class BufferParserTest {
 		assertNull("No pattern should match", root.join());
 	}
 
+	@Test
+	public void testValuesOfFailedBranchesAreDiscarded() {
+		final RadixTreeParser treeParser = new RadixTreeParser();
+		treeParser.teach(new ParserStageSequenceBuilder()
+			.integer((s,v) -> { s.message.setMinute(v); })
+			.character(':')
+			.getStages().toArray(new ParserStage[0]));
+		treeParser.teach(new ParserStageSequenceBuilder()
+			.integer((s,v) -> { s.message.setSecond(v); })
+			.whitespace()
+			.terminal().string((s,v) -> { s.message.setMessage(v); })
+			.getStages().toArray(new ParserStage[0]));
+
+		// The first branch fails after storing the minute
+		SyslogMessage message = treeParser.parse(ByteBuffer.wrap("0042 message".getBytes(StandardCharsets.US_ASCII))).join();
+		assertNotNull(message);
+		assertNull(message.getMinute());
+		assertEquals(42, message.getSecond().intValue());
+		assertEquals("message", message.getMessage());
+
+		message = treeParser.parse(ByteBuffer.wrap("000:".getBytes(StandardCharsets.US_ASCII))).join();
+		assertNotNull(message);
+		assertEquals(0, message.getMinute().intValue());
+		assertNull(message.getSecond());
+	}
+
+	@Test
+	public void testReorderExclusiveBranches() {
+		final CountingStage a = new CountingStage('a', true);
+		final CountingStage b = new CountingStage('b', true);
+
+		final RadixTreeParser treeParser = new RadixTreeParser();
+		treeParser.teach(new ParserStage[] { a });
+		treeParser.teach(new ParserStage[] { b });
+
+		for (int i = 0; i < 10; i++) {
+			assertNotNull(treeParser.parse(ByteBuffer.wrap("b".getBytes())).join());
+		}
+		treeParser.reorder();
+
+		// The most used branch is tried first
+		final int applied = a.getApplied();
+		assertNotNull(treeParser.parse(ByteBuffer.wrap("b".getBytes())).join());
+		assertEquals(applied, a.getApplied());
+		assertNotNull(treeParser.parse(ByteBuffer.wrap("a".getBytes())).join());
+		assertEquals(applied + 1, a.getApplied());
+		assertNull(treeParser.parse(ByteBuffer.wrap("c".getBytes())).join());
+	}
+
+	@Test
+	public void testReorderConflictingBranches() {
+		final CountingStage a = new CountingStage('a', false);
+		final CountingStage b = new CountingStage('b', false);
+
+		final RadixTreeParser treeParser = new RadixTreeParser();
+		treeParser.teach(new ParserStage[] { a });
+		treeParser.teach(new ParserStage[] { b });
+
+		for (int i = 0; i < 10; i++) {
+			assertNotNull(treeParser.parse(ByteBuffer.wrap("b".getBytes())).join());
+		}
+		treeParser.reorder();
+
+		// The branches may match the same input so the order is kept
+		final int applied = a.getApplied();
+		assertNotNull(treeParser.parse(ByteBuffer.wrap("b".getBytes())).join());
+		assertEquals(applied + 1, a.getApplied());
+	}
+
+	@Test
+	public void testReorderKeepsPrecedence() {
+		final RadixTreeParser radixParser = new RadixTreeParser();
+		radixParser.teach(GrokParserStageSequenceBuilder.parseGrok("<%{INT:facilityPriority}>%{MONTH:month} %{INT:day} %{STRING:message}").toArray(new ParserStage[0]));
+		radixParser.teach(GrokParserStageSequenceBuilder.parseGrok("%{STRING:message}").toArray(new ParserStage[0]));
+		radixParser.performEdgeCompression();
+
+		for (int i = 0; i < 100; i++) {
+			assertEquals("unstructured message", radixParser.parse(ByteBuffer.wrap("unstructured message".getBytes())).join().getMessage());
+		}
+		radixParser.reorder();
+
+		// The catch-all pattern must not take over the more specific pattern
+		final SyslogMessage message = radixParser.parse(ByteBuffer.wrap("<13>Feb 3 structured message".getBytes())).join();
+		assertEquals(2, message.getMonth().intValue());
+		assertEquals(3, message.getDayOfMonth().intValue());
+		assertEquals("structured message", message.getMessage());
+	}
+
+	/**
+	 * Matches a single character and counts how often it was applied.
+	 */
+	private static class CountingStage implements ParserStage {
+		private final char m_char;
+		private final boolean m_exclusive;
+		private final AtomicInteger m_applied = new AtomicInteger();
+
+		/**
+		 * @param exclusive Whether the stage tells that it only starts with its character
+		 */
+		public CountingStage(char c, boolean exclusive) {
+			m_char = c;
+			m_exclusive = exclusive;
+		}
+
+		public int getApplied() {
+			return m_applied.get();
+		}
+
+		@Override
+		public ParserState apply(ParserState state) {
+			m_applied.incrementAndGet();
+			final ByteBuffer buffer = state.getBuffer();
+			if (buffer.hasRemaining() && buffer.get() == m_char) {
+				return new ParserState(buffer, state.message);
+			}
+			return null;
+		}
+
+		@Override
+		public boolean canStartWith(char c) {
+			return !m_exclusive || c == m_char;
+		}
+
+		@Override
+		public void setOptional(boolean optional) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void setTerminal(boolean terminal) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
 	@Test
 	public void testGrokRadixTree() {
 		RadixTreeParser radixParser = new RadixTreeParser();
@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.netmgt.syslogd;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.core.collections.RadixTreeNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Parses the messages of <i>syslogMessages.txt</i> with the default grok patterns. In the skewed
+ * workload, 95% of the messages use the three formats listed first in the file.
+ *
+ * {@link #parseAllBranches(Blackhole)} applies every branch of the tree to each message, as the
+ * parser used to do, and serves as a baseline.
+ *
+ * Run with <code>mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=...RadixTreeParserBenchmark</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RadixTreeParserBenchmark {
+
+    @Param({"uniform", "skewed"})
+    public String workload;
+
+    // Whether the branches are reordered by usage
+    @Param({"false", "true"})
+    public boolean reordered;
+
+    private RadixTreeParser parser;
+    private List<byte[]> messages;
+
+    @Setup
+    public void setUp() throws IOException {
+        parser = new RadixTreeParser(reordered ? RadixTreeParser.REORDER_INTERVAL : 0);
+        readLines("/org/opennms/netmgt/syslogd/grok-patterns.txt").forEach(pattern -> {
+            parser.teach(GrokParserStageSequenceBuilder.parseGrok(pattern).toArray(new ParserStage[0]));
+        });
+        parser.performEdgeCompression();
+
+        final List<byte[]> samples = new ArrayList<>();
+        for (final String sample : readLines("/syslogMessages.txt")) {
+            samples.add(sample.replaceAll("\\\\u0000", "\u0000").replaceAll("\\\\uFEFF", "\uFEFF").getBytes(StandardCharsets.UTF_8));
+        }
+
+        messages = new ArrayList<>();
+        if ("skewed".equals(workload)) {
+            for (int i = 0; i < 20 * samples.size(); i++) {
+                messages.add(samples.get(i % 20 == 19 ? i / 20 : i % 3));
+            }
+        } else {
+            messages.addAll(samples);
+        }
+
+        if (reordered) {
+            for (final byte[] message : messages) {
+                parser.parse(ByteBuffer.wrap(message));
+            }
+            parser.reorder();
+        }
+    }
+
+    @Benchmark
+    public void parse(final Blackhole blackhole) {
+        for (final byte[] message : messages) {
+            blackhole.consume(parser.parse(ByteBuffer.wrap(message)).join());
+        }
+    }
+
+    @Benchmark
+    public void parseAllBranches(final Blackhole blackhole) {
+        for (final byte[] message : messages) {
+            blackhole.consume(parseAllBranches(parser.tree, new ParserState(ByteBuffer.wrap(message))));
+        }
+    }
+
+    private static SyslogMessage parseAllBranches(final RadixTreeNode<ParserStage> node, final ParserState state) {
+        final ParserState current = node.getContent() == null ? state : node.getContent().apply(state);
+        if (node.getChildren().isEmpty()) {
+            return current == null ? null : current.message;
+        }
+        SyslogMessage result = null;
+        for (final RadixTreeNode<ParserStage> child : node.getChildren()) {
+            final SyslogMessage message = parseAllBranches(child, current);
+            if (result == null) {
+                result = message;
+            }
+        }
+        return result;
+    }
+
+    private static List<String> readLines(final String resource) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        try (final BufferedReader reader = new BufferedReader(new InputStreamReader(RadixTreeParserBenchmark.class.getResourceAsStream(resource), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // Ignore comments and blank lines
+                if (line.trim().length() > 0 && !line.trim().startsWith("#")) {
+                    lines.add(line);
+                }
+            }
+        }
+        return lines;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RadixTreeParserBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,311 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.trapd;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.netmgt.snmp.SnmpObjId;
+import org.opennms.netmgt.snmp.SnmpResult;
+import org.opennms.netmgt.snmp.SnmpValue;
+import org.opennms.netmgt.trapd.jmx.TrapdInstrumentation;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Admission control for traps, applied before the traps are converted to events.
+ *
+ * <ul>
+ * <li>Traps are rate limited per agent address and per trap identity using token buckets
+ * which hold up to one second worth of traps.</li>
+ * <li>Once a trap is admitted, duplicates of it, having the same agent address, identity
+ * and varbinds, are suppressed for the given window. The next admitted duplicate reports
+ * the number of duplicates suppressed in between.</li>
+ * <li>Only one newSuspect event is sent per location and interface within the given TTL.</li>
+ * </ul>
+ *
+ * Every limit is disabled by default and can be enabled using the system properties below.
+ */
+public class TrapAdmissionControl {
+
+    /** Maximum number of traps per second accepted from a single agent address, 0 disables the limit */
+    public static final String AGENT_RATE_PROPERTY = "org.opennms.trapd.admission.agentRate";
+
+    /** Maximum number of traps per second accepted with the same trap identity, 0 disables the limit */
+    public static final String TRAP_RATE_PROPERTY = "org.opennms.trapd.admission.trapRate";
+
+    /** Window in ms in which duplicates of an admitted trap are suppressed, 0 disables the suppression */
+    public static final String DUPLICATE_WINDOW_PROPERTY = "org.opennms.trapd.admission.duplicateWindowMs";
+
+    /** Time in ms in which a newSuspect event is only sent once per interface, 0 disables the deduplication */
+    public static final String NEW_SUSPECT_TTL_PROPERTY = "org.opennms.trapd.admission.newSuspectTtlMs";
+
+    /** Name of the parameter holding the number of suppressed duplicates */
+    public static final String DUPLICATE_COUNT_PARM = "duplicateCount";
+
+    /** Returned by {@link #admit(InetAddress, TrapDTO)} if the trap must be dropped */
+    public static final int REJECTED = -1;
+
+    private static final SnmpObjId SYS_UP_TIME_OID = SnmpObjId.get(".1.3.6.1.2.1.1.3.0");
+
+    // Bounds the memory used per limit if traps are received from lots of agents
+    private static final long MAX_ENTRIES = 100000;
+
+    private final TrapdInstrumentation m_instrumentation;
+    private final Ticker m_ticker;
+    private final double m_agentRate;
+    private final double m_trapRate;
+    private final long m_duplicateWindowNanos;
+    private final Cache<InetAddress, TokenBucket> m_agentBuckets;
+    private final Cache<TrapIdentityDTO, TokenBucket> m_trapBuckets;
+    private final Cache<DuplicateKey, DuplicateState> m_duplicates;
+    private final Cache<List<String>, Boolean> m_newSuspects;
+
+    public TrapAdmissionControl(TrapdInstrumentation instrumentation, double agentRate, double trapRate, long duplicateWindowMs, long newSuspectTtlMs) {
+        this(instrumentation, agentRate, trapRate, duplicateWindowMs, newSuspectTtlMs, Ticker.systemTicker());
+    }
+
+    protected TrapAdmissionControl(TrapdInstrumentation instrumentation, double agentRate, double trapRate, long duplicateWindowMs, long newSuspectTtlMs, Ticker ticker) {
+        m_instrumentation = Objects.requireNonNull(instrumentation);
+        m_ticker = Objects.requireNonNull(ticker);
+        m_agentRate = agentRate;
+        m_trapRate = trapRate;
+        m_duplicateWindowNanos = TimeUnit.MILLISECONDS.toNanos(duplicateWindowMs);
+        // A bucket which has not been used for a second is full and can be recreated
+        m_agentBuckets = agentRate > 0 ? newCache(TimeUnit.SECONDS.toNanos(1), ticker, false) : null;
+        m_trapBuckets = trapRate > 0 ? newCache(TimeUnit.SECONDS.toNanos(1), ticker, false) : null;
+        m_duplicates = duplicateWindowMs > 0 ? newCache(m_duplicateWindowNanos, ticker, false) : null;
+        m_newSuspects = newSuspectTtlMs > 0 ? newCache(TimeUnit.MILLISECONDS.toNanos(newSuspectTtlMs), ticker, true) : null;
+    }
+
+    public static TrapAdmissionControl fromSystemProperties(TrapdInstrumentation instrumentation) {
+        return new TrapAdmissionControl(instrumentation,
+                Double.parseDouble(System.getProperty(AGENT_RATE_PROPERTY, "0")),
+                Double.parseDouble(System.getProperty(TRAP_RATE_PROPERTY, "0")),
+                Long.getLong(DUPLICATE_WINDOW_PROPERTY, 0L),
+                Long.getLong(NEW_SUSPECT_TTL_PROPERTY, 0L));
+    }
+
+    private static <K, V> Cache<K, V> newCache(long expiryNanos, Ticker ticker, boolean expireAfterWrite) {
+        final CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+                .maximumSize(MAX_ENTRIES)
+                .ticker(ticker);
+        if (expireAfterWrite) {
+            builder.expireAfterWrite(expiryNanos, TimeUnit.NANOSECONDS);
+        } else {
+            builder.expireAfterAccess(expiryNanos, TimeUnit.NANOSECONDS);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Decides whether the given trap is forwarded.
+     *
+     * @param trapAddress The effective address of the agent which sent the trap
+     * @param trap The trap
+     * @return the number of duplicates of the trap suppressed since it was last admitted,
+     * or {@link #REJECTED} if the trap must be dropped
+     */
+    public int admit(InetAddress trapAddress, TrapDTO trap) {
+        final long now = m_ticker.read();
+
+        if (m_duplicates == null) {
+            return isRateLimited(trapAddress, trap, now) ? REJECTED : 0;
+        }
+
+        // Check for duplicates first, so duplicates do not use up the tokens of other traps.
+        // The state is only updated once the trap passed the rate limits, a trap which is
+        // rate limited does not start a new window.
+        final DuplicateState state = get(m_duplicates, new DuplicateKey(trapAddress, trap), DuplicateState::new);
+        synchronized (state) {
+            if (state.suppress(now, m_duplicateWindowNanos)) {
+                m_instrumentation.incDuplicatesSuppressedCount();
+                return REJECTED;
+            }
+            if (isRateLimited(trapAddress, trap, now)) {
+                return REJECTED;
+            }
+            return state.admit(now);
+        }
+    }
+
+    private boolean isRateLimited(InetAddress trapAddress, TrapDTO trap, long now) {
+        if (m_agentBuckets != null && trapAddress != null
+                && !get(m_agentBuckets, trapAddress, () -> new TokenBucket(m_agentRate, now)).tryAcquire(now)) {
+            m_instrumentation.incRateLimitedCount();
+            return true;
+        }
+
+        if (m_trapBuckets != null && trap.getTrapIdentity() != null
+                && !get(m_trapBuckets, trap.getTrapIdentity(), () -> new TokenBucket(m_trapRate, now)).tryAcquire(now)) {
+            m_instrumentation.incRateLimitedCount();
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @return false if a newSuspect event was already sent for the interface
+     */
+    public boolean shouldSendNewSuspect(String location, String trapInterface) {
+        if (m_newSuspects == null) {
+            return true;
+        }
+        if (m_newSuspects.asMap().putIfAbsent(Arrays.asList(location, trapInterface), Boolean.TRUE) == null) {
+            return true;
+        }
+        m_instrumentation.incNewSuspectsSuppressedCount();
+        return false;
+    }
+
+    private static <K, V> V get(Cache<K, V> cache, K key, Callable<V> loader) {
+        try {
+            return cache.get(key, loader);
+        } catch (ExecutionException e) {
+            // The loaders only create new objects
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class TokenBucket {
+        private final double m_tokensPerNano;
+        private final double m_capacity;
+        private double m_tokens;
+        private long m_lastRefill;
+
+        private TokenBucket(double rate, long now) {
+            m_tokensPerNano = rate / TimeUnit.SECONDS.toNanos(1);
+            m_capacity = Math.max(1.0, rate);
+            m_tokens = m_capacity;
+            m_lastRefill = now;
+        }
+
+        private synchronized boolean tryAcquire(long now) {
+            m_tokens = Math.min(m_capacity, m_tokens + (now - m_lastRefill) * m_tokensPerNano);
+            m_lastRefill = now;
+            if (m_tokens >= 1.0) {
+                m_tokens -= 1.0;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Must be used while holding the lock on the state.
+     */
+    private static class DuplicateState {
+        private long m_admitted;
+        // Negative until the trap was admitted for the first time
+        private int m_suppressed = -1;
+
+        /**
+         * @return true if the trap is a duplicate within the window of the last admitted one
+         */
+        private boolean suppress(long now, long window) {
+            if (m_suppressed >= 0 && now - m_admitted < window) {
+                m_suppressed++;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * @return the number of duplicates suppressed since the trap was last admitted
+         */
+        private int admit(long now) {
+            final int suppressed = Math.max(0, m_suppressed);
+            m_suppressed = 0;
+            m_admitted = now;
+            return suppressed;
+        }
+    }
+
+    /**
+     * Identifies duplicates of a trap. The sysUpTime of the agent is ignored, as it
+     * differs for every trap.
+     */
+    private static class DuplicateKey {
+        private final InetAddress m_trapAddress;
+        private final TrapIdentityDTO m_trapIdentity;
+        private final SnmpObjId[] m_names;
+        private final int[] m_types;
+        private final byte[][] m_values;
+        private final int m_hashCode;
+
+        private DuplicateKey(InetAddress trapAddress, TrapDTO trap) {
+            m_trapAddress = trapAddress;
+            m_trapIdentity = trap.getTrapIdentity();
+            final List<SnmpResult> results = trap.getResults();
+            m_names = new SnmpObjId[results.size()];
+            m_types = new int[results.size()];
+            m_values = new byte[results.size()][];
+            int hashCode = Objects.hash(trapAddress, m_trapIdentity);
+            for (int i = 0; i < results.size(); i++) {
+                final SnmpResult result = results.get(i);
+                if (SYS_UP_TIME_OID.equals(result.getBase())) {
+                    continue;
+                }
+                final SnmpValue value = result.getValue();
+                m_names[i] = result.getBase();
+                m_types[i] = value == null ? -1 : value.getType();
+                m_values[i] = value == null ? null : value.getBytes();
+                hashCode = 31 * hashCode + Objects.hashCode(m_names[i]);
+                hashCode = 31 * hashCode + Arrays.hashCode(m_values[i]);
+            }
+            m_hashCode = hashCode;
+        }
+
+        @Override
+        public int hashCode() {
+            return m_hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (obj == null || getClass() != obj.getClass()) return false;
+            final DuplicateKey other = (DuplicateKey) obj;
+            return m_hashCode == other.m_hashCode
+                    && Objects.equals(m_trapAddress, other.m_trapAddress)
+                    && Objects.equals(m_trapIdentity, other.m_trapIdentity)
+                    && Arrays.equals(m_names, other.m_names)
+                    && Arrays.equals(m_types, other.m_types)
+                    && Arrays.deepEquals(m_values, other.m_values);
+        }
+    }
+}
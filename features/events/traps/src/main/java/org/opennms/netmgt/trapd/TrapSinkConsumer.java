@@ -47,6 +47,7 @@ import org.opennms.netmgt.trapd.jmx.TrapdInstrumentation;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.Events;
 import org.opennms.netmgt.xml.event.Log;
+import org.opennms.netmgt.xml.event.Parm;
 import org.opennms.netmgt.xml.eventconf.LogDestType;
 import org.opennms.netmgt.xml.eventconf.Logmsg;
 import org.slf4j.Logger;
@@ -86,10 +87,13 @@ public class TrapSinkConsumer implements MessageConsumer<TrapInformationWrapper,
 
 	private EventCreator eventCreator;
 
+	private TrapAdmissionControl admissionControl;
+
 	@PostConstruct
 	public void init() throws Exception {
 		messageConsumerManager.registerConsumer(this);
 		eventCreator = new EventCreator(interfaceToNodeCache, eventConfDao);
+		admissionControl = TrapAdmissionControl.fromSystemProperties(trapdInstrumentation);
 	}
 
 	@Override
@@ -108,6 +112,7 @@ public class TrapSinkConsumer implements MessageConsumer<TrapInformationWrapper,
 			if (config.getNewSuspectOnTrap()) {
 				eventLog.getEvents().getEventCollection().stream()
 						.filter(e -> !e.hasNodeid())
+						.filter(e -> admissionControl.shouldSendNewSuspect(messageLog.getLocation(), e.getInterface()))
 						.forEach(e -> {
 							sendNewSuspectEvent(e.getInterface(), e.getDistPoller());
 							LOG.debug("Sent newSuspectEvent for interface {}", e.getInterface());
@@ -123,11 +128,19 @@ public class TrapSinkConsumer implements MessageConsumer<TrapInformationWrapper,
 
 		for (TrapDTO eachMessage : messageLog.getMessages()) {
 			try {
+				final int duplicates = admissionControl.admit(messageLog.getTrapAddress(), eachMessage);
+				if (duplicates == TrapAdmissionControl.REJECTED) {
+					LOG.debug("Trap dropped by admission control: {}", eachMessage);
+					continue;
+				}
 				final Event event = eventCreator.createEventFrom(
 						eachMessage,
 						messageLog.getSystemId(),
 						messageLog.getLocation(),
 						messageLog.getTrapAddress());
+				if (duplicates > 0) {
+					event.addParm(new Parm(TrapAdmissionControl.DUPLICATE_COUNT_PARM, Integer.toString(duplicates)));
+				}
 				if (!shouldDiscard(event)) {
 					if (event.getSnmp() != null) {
 						trapdInstrumentation.incTrapsReceivedCount(event.getSnmp().getVersion());
@@ -91,6 +91,24 @@ public class Trapd extends AbstractSpringContextJmxServiceDaemon<org.opennms.net
     public long getTrapsErrored() {
         return getTrapdInstrumentation().getTrapsErrored();
     }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getTrapsRateLimited() {
+        return getTrapdInstrumentation().getTrapsRateLimited();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getDuplicateTrapsSuppressed() {
+        return getTrapdInstrumentation().getDuplicateTrapsSuppressed();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getNewSuspectsSuppressed() {
+        return getTrapdInstrumentation().getNewSuspectsSuppressed();
+    }
     
     private TrapdInstrumentation getTrapdInstrumentation() {
         return TrapSinkConsumer.trapdInstrumentation;
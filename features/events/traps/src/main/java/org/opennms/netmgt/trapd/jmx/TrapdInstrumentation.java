@@ -44,6 +44,9 @@ public class TrapdInstrumentation {
     private final AtomicLong vUnknownTrapsReceived = new AtomicLong();
     private final AtomicLong trapsDiscarded = new AtomicLong();
     private final AtomicLong trapsErrored = new AtomicLong();
+    private final AtomicLong trapsRateLimited = new AtomicLong();
+    private final AtomicLong duplicateTrapsSuppressed = new AtomicLong();
+    private final AtomicLong newSuspectsSuppressed = new AtomicLong();
 
     public void incTrapsReceivedCount(String version) {
         trapsReceived.incrementAndGet();
@@ -67,6 +70,18 @@ public class TrapdInstrumentation {
         trapsErrored.incrementAndGet();
     }
 
+    public void incRateLimitedCount() {
+        trapsRateLimited.incrementAndGet();
+    }
+
+    public void incDuplicatesSuppressedCount() {
+        duplicateTrapsSuppressed.incrementAndGet();
+    }
+
+    public void incNewSuspectsSuppressedCount() {
+        newSuspectsSuppressed.incrementAndGet();
+    }
+
     public long getV1TrapsReceived() {
         return v1TrapsReceived.get();
     }
@@ -94,4 +109,16 @@ public class TrapdInstrumentation {
     public long getTrapsReceived() {
         return trapsReceived.get();
     }
+
+    public long getTrapsRateLimited() {
+        return trapsRateLimited.get();
+    }
+
+    public long getDuplicateTrapsSuppressed() {
+        return duplicateTrapsSuppressed.get();
+    }
+
+    public long getNewSuspectsSuppressed() {
+        return newSuspectsSuppressed.get();
+    }
 }
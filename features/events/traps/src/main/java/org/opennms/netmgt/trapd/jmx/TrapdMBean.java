@@ -57,4 +57,13 @@ public interface TrapdMBean extends BaseOnmsMBean {
     
     /** @return The number of traps not processed due to errors since Trapd was last started */
     public long getTrapsErrored();
+
+    /** @return The number of traps dropped by the rate limits since Trapd was last started */
+    public long getTrapsRateLimited();
+
+    /** @return The number of duplicate traps suppressed since Trapd was last started */
+    public long getDuplicateTrapsSuppressed();
+
+    /** @return The number of newSuspect events suppressed for already reported interfaces since Trapd was last started */
+    public long getNewSuspectsSuppressed();
 }
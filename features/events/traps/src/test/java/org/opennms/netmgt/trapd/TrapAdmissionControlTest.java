@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.trapd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.snmp.SnmpObjId;
+import org.opennms.netmgt.snmp.SnmpResult;
+import org.opennms.netmgt.snmp.SnmpValue;
+import org.opennms.netmgt.trapd.jmx.TrapdInstrumentation;
+
+import com.google.common.base.Ticker;
+
+public class TrapAdmissionControlTest {
+
+    private static final InetAddress AGENT_1 = InetAddressUtils.addr("10.0.0.1");
+    private static final InetAddress AGENT_2 = InetAddressUtils.addr("10.0.0.2");
+
+    private final TrapdInstrumentation instrumentation = new TrapdInstrumentation();
+    private final FakeTicker ticker = new FakeTicker();
+
+    @Test
+    public void testDisabledByDefault() {
+        final TrapAdmissionControl admissionControl = new TrapAdmissionControl(instrumentation, 0, 0, 0, 0, ticker);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(0, admissionControl.admit(AGENT_1, trap(".1.3.6.1.4.1.5813", 1, "value")));
+            assertTrue(admissionControl.shouldSendNewSuspect("Default", "10.0.0.1"));
+        }
+        assertEquals(0, instrumentation.getTrapsRateLimited());
+        assertEquals(0, instrumentation.getDuplicateTrapsSuppressed());
+        assertEquals(0, instrumentation.getNewSuspectsSuppressed());
+    }
+
+    @Test
+    public void testRateLimitPerAgent() {
+        final TrapAdmissionControl admissionControl = new TrapAdmissionControl(instrumentation, 10, 0, 0, 0, ticker);
+
+        // The bucket holds one second worth of traps
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, admissionControl.admit(AGENT_1, trap(".1.3.6.1.4.1.5813", i, "value")));
+        }
+        assertEquals(TrapAdmissionControl.REJECTED, admissionControl.admit(AGENT_1, trap(".1.3.6.1.4.1.5813", 10, "value")));
+        // Other agents are not affected
+        assertEquals(0, admissionControl.admit(AGENT_2, trap(".1.3.6.1.4.1.5813", 10, "value")));
+
+        // One token is added every 100ms
+        ticker.advance(100, TimeUnit.MILLISECONDS);
+        assertEquals(0, admissionControl.admit(AGENT_1, trap(".1.3.6.1.4.1.5813", 11, "value")));
+        assertEquals(TrapAdmissionControl.REJECTED, admissionControl.admit(AGENT_1, trap(".1.3.6.1.4.1.5813", 12, "value")));
+        assertEquals(2, instrumentation.getTrapsRateLimited());
+    }
+
+    @Test
+    public void testRateLimitPerTrap() {
+        final TrapAdmissionControl admissionControl = new TrapAdmissionControl(instrumentation, 0, 2, 0, 0, ticker);
+
+        assertEquals(0, admissionControl.admit(AGENT_1, trap(".1.3.6.1.4.1.5813", 1, "a")));
+        assertEquals(0, admissionControl.admit(AGENT_2, trap(".1.3.6.1.4.1.5813", 1, "b")));
+        assertEquals(TrapAdmissionControl.REJECTED, admissionControl.admit(AGENT_1, trap(".1.3.6.1.4.1.5813", 1, "c")));
+        // Other traps are not affected
+        assertEquals(0, admissionControl.admit(AGENT_1, trap(".1.3.6.1.4.1.5813", 2, "c")));
+        assertEquals(1, instrumentation.getTrapsRateLimited());
+    }
+
+    @Test
+    public void testDuplicateSuppression() {
+        final TrapAdmissionControl admissionControl = new TrapAdmissionControl(instrumentation, 0, 0, 1000, 0, ticker);
+
+        assertEquals(0, admissionControl.admit(AGENT_1, trap(".1.3.6.1.4.1.5813", 1, "linkDown")));
+        for (int i = 0; i < 5; i++) {
+            ticker.advance(100, TimeUnit.MILLISECONDS);
+            assertEquals(TrapAdmissionControl.REJECTED, admissionControl.admit(AGENT_1, trap(".1.3.6.1.4.1.5813", 1, "linkDown")));
+        }
+        // Traps with other varbinds or from other agents are no duplicates
+        assertEquals(0, admissionControl.admit(AGENT_1, trap(".1.3.6.1.4.1.5813", 1, "linkUp")));
+        assertEquals(0, admissionControl.admit(AGENT_2, trap(".1.3.6.1.4.1.5813", 1, "linkDown")));
+
+        // The next trap after the window reports the suppressed duplicates
+        ticker.advance(500, TimeUnit.MILLISECONDS);
+        assertEquals(5, admissionControl.admit(AGENT_1, trap(".1.3.6.1.4.1.5813", 1, "linkDown")));
+        assertEquals(TrapAdmissionControl.REJECTED, admissionControl.admit(AGENT_1, trap(".1.3.6.1.4.1.5813", 1, "linkDown")));
+        assertEquals(6, instrumentation.getDuplicateTrapsSuppressed());
+
+        // Once the duplicates stop, the trap is forwarded as a new trap
+        ticker.advance(5, TimeUnit.SECONDS);
+        assertEquals(0, admissionControl.admit(AGENT_1, trap(".1.3.6.1.4.1.5813", 1, "linkDown")));
+    }
+
+    @Test
+    public void testDuplicateSuppressionWithRateLimits() {
+        final TrapAdmissionControl admissionControl = new TrapAdmissionControl(instrumentation, 4, 2, 1000, 0, ticker);
+
+        assertEquals(0, admissionControl.admit(AGENT_1, trap(".1.3.6.1.4.1.5813", 1, "linkDown")));
+        // Duplicates do not use up tokens
+        assertEquals(TrapAdmissionControl.REJECTED, admissionControl.admit(AGENT_1, trap(".1.3.6.1.4.1.5813", 1, "linkDown")));
+        assertEquals(0, admissionControl.admit(AGENT_1, trap(".1.3.6.1.4.1.5813", 1, "linkUp")));
+
+        // Rate limited per trap, this does not start a window for its duplicates
+        assertEquals(TrapAdmissionControl.REJECTED, admissionControl.admit(AGENT_1, trap(".1.3.6.1.4.1.5813", 1, "coldStart")));
+        assertEquals(1, instrumentation.getTrapsRateLimited());
+        ticker.advance(500, TimeUnit.MILLISECONDS);
+        assertEquals(0, admissionControl.admit(AGENT_1, trap(".1.3.6.1.4.1.5813", 1, "coldStart")));
+        assertEquals(TrapAdmissionControl.REJECTED, admissionControl.admit(AGENT_1, trap(".1.3.6.1.4.1.5813", 1, "linkDown")));
+
+        // Use up the tokens of the agent
+        ticker.advance(500, TimeUnit.MILLISECONDS);
+        for (int i = 2; i < 6; i++) {
+            assertEquals(0, admissionControl.admit(AGENT_1, trap(".1.3.6.1.4.1.5813", i, "linkDown")));
+        }
+
+        // Rate limited per agent once the window expired, the suppressed duplicates are kept
+        // until the trap is admitted
+        assertEquals(TrapAdmissionControl.REJECTED, admissionControl.admit(AGENT_1, trap(".1.3.6.1.4.1.5813", 1, "linkDown")));
+        assertEquals(2, instrumentation.getTrapsRateLimited());
+        ticker.advance(250, TimeUnit.MILLISECONDS);
+        assertEquals(2, admissionControl.admit(AGENT_1, trap(".1.3.6.1.4.1.5813", 1, "linkDown")));
+        assertEquals(TrapAdmissionControl.REJECTED, admissionControl.admit(AGENT_1, trap(".1.3.6.1.4.1.5813", 1, "linkDown")));
+
+        assertEquals(3, instrumentation.getDuplicateTrapsSuppressed());
+        assertEquals(2, instrumentation.getTrapsRateLimited());
+    }
+
+    @Test
+    public void testNewSuspectDeduplication() {
+        final TrapAdmissionControl admissionControl = new TrapAdmissionControl(instrumentation, 0, 0, 0, 60000, ticker);
+
+        assertTrue(admissionControl.shouldSendNewSuspect("Default", "10.0.0.1"));
+        assertFalse(admissionControl.shouldSendNewSuspect("Default", "10.0.0.1"));
+        assertTrue(admissionControl.shouldSendNewSuspect("Other", "10.0.0.1"));
+        assertTrue(admissionControl.shouldSendNewSuspect("Default", "10.0.0.2"));
+
+        ticker.advance(1, TimeUnit.MINUTES);
+        assertTrue(admissionControl.shouldSendNewSuspect("Default", "10.0.0.1"));
+        assertEquals(1, instrumentation.getNewSuspectsSuppressed());
+    }
+
+    private static TrapDTO trap(String enterpriseId, int specific, String value) {
+        final TrapIdentityDTO trapIdentity = new TrapIdentityDTO();
+        trapIdentity.setEnterpriseId(enterpriseId);
+        trapIdentity.setGeneric(6);
+        trapIdentity.setSpecific(specific);
+
+        final SnmpValue snmpValue = mock(SnmpValue.class);
+        when(snmpValue.getType()).thenReturn(SnmpValue.SNMP_OCTET_STRING);
+        when(snmpValue.getBytes()).thenReturn(value.getBytes());
+
+        final TrapDTO trap = new TrapDTO();
+        trap.setTrapIdentity(trapIdentity);
+        trap.getResults().add(new SnmpResult(SnmpObjId.get(".1.3.6.1.2.1.2.2.1.2"), null, snmpValue));
+        return trap;
+    }
+
+    private static class FakeTicker extends Ticker {
+        private long nanos = 0;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        private void advance(long duration, TimeUnit unit) {
+            nanos += unit.toNanos(duration);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.flows.classification.internal.compiled;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.opennms.core.utils.IPLike;
+import org.opennms.netmgt.flows.classification.internal.value.StringValue;
+import org.opennms.netmgt.flows.classification.persistence.api.RuleDefinition;
+
+/**
+ * Maps the src or dst address of a request to the bitmap of rules matching it.
+ *
+ * Addresses are matched the same way rules always did: an address without a wildcard must be equal
+ * to the address of the request, an address with a wildcard is an IPLIKE expression.
+ *
+ * IPv4 IPLIKE expressions are expanded into a bitmap per value of each octet, so they can be
+ * evaluated with four lookups. All other expressions, and requests which are not plain
+ * dotted-decimal IPv4 addresses, are evaluated using {@link IPLike}.
+ */
+final class AddressIndex {
+
+    /** The address is not a plain IPv4 address and IPv4 expressions must be evaluated using {@link IPLike}. */
+    static final long NOT_IPV4 = -1;
+    /** The address is an IPv6 address which never matches an IPv4 expression. */
+    static final long IPV6 = -2;
+
+    private final long[] anyAddress;
+    private final Map<String, long[]> rulesByAddress;
+    // [octet][value] -> IPv4 expressions matching the value
+    private final long[][][] rulesByOctet;
+    private final long[] ipv4Expressions;
+    private final long[] otherExpressions;
+    private final String[] expressions;
+
+    private AddressIndex(Builder builder) {
+        this.anyAddress = builder.anyAddress;
+        this.rulesByAddress = builder.rulesByAddress;
+        this.rulesByOctet = builder.rulesByOctet;
+        this.ipv4Expressions = builder.ipv4Expressions;
+        this.otherExpressions = builder.otherExpressions;
+        this.expressions = builder.expressions;
+    }
+
+    /**
+     * Parses a dotted-decimal IPv4 address without allocating.
+     *
+     * @return the address as unsigned integer, {@link #IPV6} or {@link #NOT_IPV4}
+     */
+    static long parseIpv4(String address) {
+        if (address == null) {
+            return NOT_IPV4;
+        }
+        long result = 0;
+        int octet = -1;
+        int dots = 0;
+        for (int i = 0; i < address.length(); i++) {
+            final char c = address.charAt(i);
+            if (c >= '0' && c <= '9') {
+                octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+                if (octet > 255) {
+                    return notIpv4(address);
+                }
+            } else if (c == '.' && octet >= 0 && dots < 3) {
+                result = (result << 8) | octet;
+                octet = -1;
+                dots++;
+            } else {
+                return notIpv4(address);
+            }
+        }
+        if (dots != 3 || octet < 0) {
+            return notIpv4(address);
+        }
+        return (result << 8) | octet;
+    }
+
+    private static long notIpv4(String address) {
+        return address.indexOf(':') >= 0 ? IPV6 : NOT_IPV4;
+    }
+
+    long[] getRulesByAddress(String address) {
+        return address == null ? null : rulesByAddress.get(address);
+    }
+
+    /**
+     * @return the given word of the bitmap of rules which may match the address. Rules for which
+     * {@link #needsVerification(int, long)} is true must be verified using {@link #matches(int, String)}.
+     */
+    long getRules(int word, long[] rulesByAddress, long ipv4) {
+        long rules = anyAddress[word] | otherExpressions[word];
+        if (rulesByAddress != null) {
+            rules |= rulesByAddress[word];
+        }
+        if (ipv4 >= 0) {
+            rules |= rulesByOctet[0][(int) (ipv4 >>> 24) & 0xFF][word]
+                    & rulesByOctet[1][(int) (ipv4 >>> 16) & 0xFF][word]
+                    & rulesByOctet[2][(int) (ipv4 >>> 8) & 0xFF][word]
+                    & rulesByOctet[3][(int) ipv4 & 0xFF][word];
+        } else if (ipv4 == NOT_IPV4) {
+            rules |= ipv4Expressions[word];
+        }
+        return rules;
+    }
+
+    boolean needsVerification(int rule, long ipv4) {
+        return Bitmaps.get(otherExpressions, rule) || (ipv4 == NOT_IPV4 && Bitmaps.get(ipv4Expressions, rule));
+    }
+
+    boolean matches(int rule, String address) {
+        return IPLike.matches(address, expressions[rule]);
+    }
+
+    static final class Builder {
+        private final long[] anyAddress;
+        private final Map<String, long[]> rulesByAddress = new HashMap<>();
+        private final long[][][] rulesByOctet = new long[4][256][];
+        private final long[] ipv4Expressions;
+        private final long[] otherExpressions;
+        private final String[] expressions;
+
+        Builder(int ruleCount) {
+            final int words = Bitmaps.words(ruleCount);
+            this.anyAddress = new long[words];
+            this.ipv4Expressions = new long[words];
+            this.otherExpressions = new long[words];
+            this.expressions = new String[ruleCount];
+            for (int i = 0; i < 4; i++) {
+                for (int value = 0; value < 256; value++) {
+                    rulesByOctet[i][value] = new long[words];
+                }
+            }
+        }
+
+        void add(int rule, String address) {
+            final StringValue value = new StringValue(address);
+            if (!RuleDefinition.isDefined(address) || value.isWildcard()) {
+                Bitmaps.set(anyAddress, rule);
+            } else if (value.hasWildcard()) {
+                expressions[rule] = address;
+                if (!addIpv4Expression(rule, address)) {
+                    Bitmaps.set(otherExpressions, rule);
+                }
+            } else {
+                Bitmaps.set(rulesByAddress.computeIfAbsent(address, a -> new long[anyAddress.length]), rule);
+            }
+        }
+
+        private boolean addIpv4Expression(int rule, String expression) {
+            if (expression.indexOf(':') >= 0 || expression.indexOf('.') < 0) {
+                return false;
+            }
+            // Split the same way IPLike does
+            final String[] octets = expression.split("\\.", 0);
+            if (octets.length != 4) {
+                return false;
+            }
+            final boolean[][] matches = new boolean[4][256];
+            try {
+                for (int i = 0; i < 4; i++) {
+                    for (int value = 0; value < 256; value++) {
+                        matches[i][value] = IPLike.matchNumericListOrRange(Integer.toString(value), octets[i]);
+                    }
+                }
+            } catch (RuntimeException e) {
+                // Malformed expression, keep the behaviour of IPLike when evaluating it
+                return false;
+            }
+            for (int i = 0; i < 4; i++) {
+                for (int value = 0; value < 256; value++) {
+                    if (matches[i][value]) {
+                        Bitmaps.set(rulesByOctet[i][value], rule);
+                    }
+                }
+            }
+            Bitmaps.set(ipv4Expressions, rule);
+            return true;
+        }
+
+        AddressIndex build() {
+            final Bitmaps.Interner interner = new Bitmaps.Interner();
+            for (int i = 0; i < 4; i++) {
+                for (int value = 0; value < 256; value++) {
+                    rulesByOctet[i][value] = interner.intern(rulesByOctet[i][value]);
+                }
+            }
+            return new AddressIndex(this);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.flows.classification.internal.compiled;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Helpers for fixed size bitmaps of rule indices.
+ *
+ * Bit <code>i</code> of a bitmap is set if the rule with index <code>i</code> is part of it.
+ */
+final class Bitmaps {
+
+    private Bitmaps() {
+    }
+
+    static int words(int ruleCount) {
+        return (ruleCount + 63) >>> 6;
+    }
+
+    static void set(long[] bitmap, int index) {
+        bitmap[index >>> 6] |= 1L << index;
+    }
+
+    static boolean get(long[] bitmap, int index) {
+        return (bitmap[index >>> 6] & (1L << index)) != 0;
+    }
+
+    static long[] or(long[] a, long[] b) {
+        final long[] result = a.clone();
+        for (int i = 0; i < result.length; i++) {
+            result[i] |= b[i];
+        }
+        return result;
+    }
+
+    /**
+     * Deduplicates equal bitmaps, as most values of a dimension are matched by the same set of rules.
+     */
+    static final class Interner {
+        private final Map<Key, long[]> bitmaps = new HashMap<>();
+
+        long[] intern(long[] bitmap) {
+            return bitmaps.computeIfAbsent(new Key(bitmap), key -> key.bitmap);
+        }
+    }
+
+    private static final class Key {
+        private final long[] bitmap;
+
+        private Key(long[] bitmap) {
+            this.bitmap = bitmap;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            return Arrays.equals(bitmap, ((Key) o).bitmap);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(bitmap);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.flows.classification.internal.compiled;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import org.opennms.netmgt.flows.classification.ClassificationRequest;
+import org.opennms.netmgt.flows.classification.FilterService;
+import org.opennms.netmgt.flows.classification.internal.value.StringValue;
+import org.opennms.netmgt.flows.classification.persistence.api.Protocol;
+import org.opennms.netmgt.flows.classification.persistence.api.Protocols;
+import org.opennms.netmgt.flows.classification.persistence.api.RuleDefinition;
+
+/**
+ * Immutable lookup structure compiled from a list of rules in evaluation order.
+ *
+ * Each rule is identified by its index in that order. For the protocol, ports and addresses of a
+ * {@link ClassificationRequest}, the rules matching each possible value are precomputed as bitmaps.
+ * Classifying a request combines the bitmaps of its values and the lowest set bit is the first
+ * matching rule. Apart from exporter filters and IPLIKE expressions which cannot be compiled,
+ * classifying a request does not allocate.
+ *
+ * Rules sharing the same position are resolved as they always were: rules bound to the src port of
+ * the request go first, followed by rules not bound to any port and rules bound to the dst port.
+ */
+public final class CompiledRuleSet {
+
+    public static final CompiledRuleSet EMPTY = compile(Collections.emptyList(), FilterService.NOOP);
+
+    private static final int PROTOCOL_COUNT = 256;
+
+    // How a rule is bound to the ports of a request, lower bindings win, see #getPortBinding(int, int)
+    private static final byte SRC_PORT = 0;
+    private static final byte ANY_PORT = 1;
+    private static final byte DST_PORT = 2;
+
+    private final int words;
+    private final String[] names;
+    private final String[] exporterFilters;
+    private final byte[] portBindings;
+    // Index of the last rule with the same position as the rule
+    private final int[] lastOfPosition;
+    private final long[][] rulesByProtocol;
+    private final long[] anyProtocol;
+    private final PortIndex srcPorts;
+    private final PortIndex dstPorts;
+    private final AddressIndex srcAddresses;
+    private final AddressIndex dstAddresses;
+    private final FilterService filterService;
+
+    private CompiledRuleSet(List<? extends RuleDefinition> rules, FilterService filterService) {
+        final int ruleCount = rules.size();
+        this.words = Bitmaps.words(ruleCount);
+        this.names = new String[ruleCount];
+        this.exporterFilters = new String[ruleCount];
+        this.portBindings = new byte[ruleCount];
+        this.lastOfPosition = new int[ruleCount];
+        this.anyProtocol = new long[words];
+        this.filterService = Objects.requireNonNull(filterService);
+
+        final long[][] protocolRules = new long[PROTOCOL_COUNT][words];
+        final PortIndex.Builder srcPorts = new PortIndex.Builder(ruleCount);
+        final PortIndex.Builder dstPorts = new PortIndex.Builder(ruleCount);
+        final AddressIndex.Builder srcAddresses = new AddressIndex.Builder(ruleCount);
+        final AddressIndex.Builder dstAddresses = new AddressIndex.Builder(ruleCount);
+        for (int i = 0; i < ruleCount; i++) {
+            final RuleDefinition rule = rules.get(i);
+            names[i] = rule.getName();
+            if (rule.hasDstPortDefinition()) {
+                portBindings[i] = DST_PORT;
+            } else if (rule.hasSrcPortDefinition()) {
+                portBindings[i] = SRC_PORT;
+            } else {
+                portBindings[i] = ANY_PORT;
+            }
+            if (rule.hasExportFilterDefinition()) {
+                exporterFilters[i] = rule.getExporterFilter();
+            }
+            if (rule.hasProtocolDefinition()) {
+                // Unknown protocols are ignored, a rule only defining unknown protocols never matches
+                for (StringValue keyword : new StringValue(rule.getProtocol()).splitBy(",")) {
+                    final Protocol protocol = Protocols.getProtocol(keyword.getValue());
+                    if (protocol != null && protocol.getDecimal() < PROTOCOL_COUNT) {
+                        Bitmaps.set(protocolRules[protocol.getDecimal()], i);
+                    }
+                }
+            } else {
+                Bitmaps.set(anyProtocol, i);
+            }
+            srcPorts.add(i, rule.getSrcPort());
+            dstPorts.add(i, rule.getDstPort());
+            srcAddresses.add(i, rule.getSrcAddress());
+            dstAddresses.add(i, rule.getDstAddress());
+        }
+
+        for (int i = ruleCount - 1; i >= 0; i--) {
+            final boolean samePosition = i + 1 < ruleCount
+                    && rules.get(i).getGroupPosition() == rules.get(i + 1).getGroupPosition()
+                    && rules.get(i).getPosition() == rules.get(i + 1).getPosition();
+            lastOfPosition[i] = samePosition ? lastOfPosition[i + 1] : i;
+        }
+
+        final Bitmaps.Interner interner = new Bitmaps.Interner();
+        this.rulesByProtocol = new long[PROTOCOL_COUNT][];
+        for (int decimal = 0; decimal < PROTOCOL_COUNT; decimal++) {
+            rulesByProtocol[decimal] = interner.intern(Bitmaps.or(protocolRules[decimal], anyProtocol));
+        }
+        this.srcPorts = srcPorts.build();
+        this.dstPorts = dstPorts.build();
+        this.srcAddresses = srcAddresses.build();
+        this.dstAddresses = dstAddresses.build();
+    }
+
+    /**
+     * Compiles the given rules. The first rule matching a request wins, so the rules must already be sorted by position.
+     */
+    public static CompiledRuleSet compile(List<? extends RuleDefinition> rules, FilterService filterService) {
+        return new CompiledRuleSet(rules, filterService);
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * @return the name of the first rule matching the request or null if no rule matches
+     */
+    public String classify(ClassificationRequest request) {
+        final long[] protocolRules = getProtocolRules(request.getProtocol());
+        final long[] srcPortRules = srcPorts.getRules(request.getSrcPort());
+        final long[] dstPortRules = dstPorts.getRules(request.getDstPort());
+        final String srcAddress = request.getSrcAddress();
+        final String dstAddress = request.getDstAddress();
+        final long srcIpv4 = AddressIndex.parseIpv4(srcAddress);
+        final long dstIpv4 = AddressIndex.parseIpv4(dstAddress);
+        final long[] srcAddressRules = srcAddresses.getRulesByAddress(srcAddress);
+        final long[] dstAddressRules = dstAddresses.getRulesByAddress(dstAddress);
+
+        // Matching rule with the lowest position found so far
+        int match = -1;
+        int matchBinding = ANY_PORT;
+        int last = Integer.MAX_VALUE;
+        for (int word = 0; word < words && (word << 6) <= last; word++) {
+            long candidates = protocolRules[word] & srcPortRules[word] & dstPortRules[word];
+            if (candidates == 0) {
+                continue;
+            }
+            candidates &= srcAddresses.getRules(word, srcAddressRules, srcIpv4)
+                    & dstAddresses.getRules(word, dstAddressRules, dstIpv4);
+            while (candidates != 0) {
+                final int rule = (word << 6) + Long.numberOfTrailingZeros(candidates);
+                if (rule > last) {
+                    break;
+                }
+                if (verify(rule, request, srcIpv4, dstIpv4)) {
+                    final int binding = getPortBinding(rule, request.getSrcPort());
+                    if (match < 0 || binding < matchBinding) {
+                        match = rule;
+                        matchBinding = binding;
+                        last = lastOfPosition[rule];
+                    }
+                    if (matchBinding == SRC_PORT || rule == last) {
+                        return names[match];
+                    }
+                }
+                candidates &= candidates - 1;
+            }
+        }
+        return match < 0 ? null : names[match];
+    }
+
+    /**
+     * Rules used to be looked up by port. Rules defining a dst port were only found by their dst ports,
+     * other rules by their src port. Hence a matching rule defining a dst port is bound to the src port of
+     * the request, if its dst ports contain the src port of the request as well.
+     */
+    private int getPortBinding(int rule, int srcPort) {
+        if (portBindings[rule] == DST_PORT && !Bitmaps.get(dstPorts.getRules(srcPort), rule)) {
+            return DST_PORT;
+        }
+        return portBindings[rule] == ANY_PORT ? ANY_PORT : SRC_PORT;
+    }
+
+    private long[] getProtocolRules(Protocol protocol) {
+        if (protocol == null || protocol.getDecimal() >= PROTOCOL_COUNT) {
+            return anyProtocol;
+        }
+        return rulesByProtocol[protocol.getDecimal()];
+    }
+
+    // Evaluates the conditions which could not be decided by the bitmaps
+    private boolean verify(int rule, ClassificationRequest request, long srcIpv4, long dstIpv4) {
+        if (srcAddresses.needsVerification(rule, srcIpv4) && !srcAddresses.matches(rule, request.getSrcAddress())) {
+            return false;
+        }
+        if (dstAddresses.needsVerification(rule, dstIpv4) && !dstAddresses.matches(rule, request.getDstAddress())) {
+            return false;
+        }
+        return exporterFilters[rule] == null || filterService.matches(request.getExporterAddress(), exporterFilters[rule]);
+    }
+}
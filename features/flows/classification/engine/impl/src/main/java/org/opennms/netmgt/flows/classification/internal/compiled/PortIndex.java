@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.flows.classification.internal.compiled;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.opennms.netmgt.flows.classification.internal.value.PortValue;
+import org.opennms.netmgt.flows.classification.persistence.api.Rule;
+import org.opennms.netmgt.flows.classification.persistence.api.RuleDefinition;
+
+/**
+ * Maps each port to the bitmap of rules matching it.
+ *
+ * Consecutive ports matched by the same rules share the same bitmap, so the index only
+ * allocates one bitmap per boundary of the port ranges used by the rules.
+ */
+final class PortIndex {
+
+    private final long[][] rulesByPort;
+
+    private PortIndex(long[][] rulesByPort) {
+        this.rulesByPort = rulesByPort;
+    }
+
+    long[] getRules(int port) {
+        return rulesByPort[port];
+    }
+
+    static final class Builder {
+        private final long[] anyPort;
+        // port -> rules entering or leaving the set of matching rules at this port
+        private final TreeMap<Integer, List<Integer>> toggles = new TreeMap<>();
+
+        Builder(int ruleCount) {
+            this.anyPort = new long[Bitmaps.words(ruleCount)];
+        }
+
+        void add(int rule, String ports) {
+            if (!RuleDefinition.isDefined(ports)) {
+                Bitmaps.set(anyPort, rule);
+                return;
+            }
+            final int[] sortedPorts = new PortValue(ports).getPorts().stream()
+                    .mapToInt(Integer::intValue)
+                    .filter(port -> port >= Rule.MIN_PORT_VALUE && port <= Rule.MAX_PORT_VALUE)
+                    .sorted()
+                    .toArray();
+            // Merge the ports into ranges which neither overlap nor touch, so each range toggles the rule exactly twice
+            int i = 0;
+            while (i < sortedPorts.length) {
+                final int start = sortedPorts[i];
+                int end = start;
+                while (i + 1 < sortedPorts.length && sortedPorts[i + 1] == end + 1) {
+                    end = sortedPorts[++i];
+                }
+                toggle(start, rule);
+                toggle(end + 1, rule);
+                i++;
+            }
+        }
+
+        private void toggle(int port, int rule) {
+            toggles.computeIfAbsent(port, p -> new ArrayList<>()).add(rule);
+        }
+
+        PortIndex build() {
+            final long[][] rulesByPort = new long[Rule.MAX_PORT_VALUE + 1][];
+            final long[] current = anyPort.clone();
+            long[] snapshot = current.clone();
+            for (int port = Rule.MIN_PORT_VALUE; port <= Rule.MAX_PORT_VALUE; port++) {
+                final List<Integer> rules = toggles.get(port);
+                if (rules != null) {
+                    for (int rule : rules) {
+                        current[rule >>> 6] ^= 1L << rule;
+                    }
+                    snapshot = current.clone();
+                }
+                rulesByPort[port] = snapshot;
+            }
+            return new PortIndex(rulesByPort);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.flows.classification.internal.compiled;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.opennms.netmgt.flows.classification.ClassificationRequest;
+import org.opennms.netmgt.flows.classification.ClassificationRequestBuilder;
+import org.opennms.netmgt.flows.classification.FilterService;
+import org.opennms.netmgt.flows.classification.exception.InvalidFilterException;
+import org.opennms.netmgt.flows.classification.persistence.api.ProtocolType;
+import org.opennms.netmgt.flows.classification.persistence.api.Rule;
+import org.opennms.netmgt.flows.classification.persistence.api.RuleBuilder;
+
+import com.google.common.collect.Lists;
+
+public class CompiledRuleSetTest {
+
+    @Test
+    public void verifyParseIpv4() {
+        assertEquals(0x0A000001L, AddressIndex.parseIpv4("10.0.0.1"));
+        assertEquals(0xFFFFFFFFL, AddressIndex.parseIpv4("255.255.255.255"));
+        assertEquals(0x0A000001L, AddressIndex.parseIpv4("010.0.0.01"));
+        assertEquals(AddressIndex.NOT_IPV4, AddressIndex.parseIpv4(null));
+        assertEquals(AddressIndex.NOT_IPV4, AddressIndex.parseIpv4("10.0.0"));
+        assertEquals(AddressIndex.NOT_IPV4, AddressIndex.parseIpv4("10.0.0.1."));
+        assertEquals(AddressIndex.NOT_IPV4, AddressIndex.parseIpv4("10.0.0.256"));
+        assertEquals(AddressIndex.NOT_IPV4, AddressIndex.parseIpv4("localhost"));
+        assertEquals(AddressIndex.IPV6, AddressIndex.parseIpv4("fe80:0:0:0:0:0:0:1"));
+        assertEquals(AddressIndex.IPV6, AddressIndex.parseIpv4("::ffff:10.0.0.1"));
+    }
+
+    @Test
+    public void verifyAddressExpressions() {
+        final CompiledRuleSet ruleSet = compile(
+                new RuleBuilder().withName("exact").withPosition(1).withDstAddress("10.0.0.1-5").build(),
+                new RuleBuilder().withName("range").withPosition(2).withDstAddress("10.0.*.1-5").build(),
+                new RuleBuilder().withName("ipv6").withPosition(3).withDstAddress("fe80:*:*:*:*:*:*:*").build());
+
+        // Without a wildcard, the address is compared literally
+        assertEquals("exact", ruleSet.classify(request("10.0.0.1-5")));
+        assertEquals("range", ruleSet.classify(request("10.0.7.3")));
+        assertNull(ruleSet.classify(request("10.0.7.6")));
+        assertEquals("ipv6", ruleSet.classify(request("fe80:0:0:0:0:0:0:1")));
+        assertNull(ruleSet.classify(request("fe81:0:0:0:0:0:0:1")));
+        // Addresses which are not plain IPv4 addresses are evaluated by IPLIKE
+        assertEquals("range", ruleSet.classify(request("010.0.0.0005")));
+    }
+
+    @Test
+    public void verifyProtocols() {
+        final CompiledRuleSet ruleSet = compile(
+                new RuleBuilder().withName("unknown").withPosition(1).withProtocol("unknown").build(),
+                new RuleBuilder().withName("tcp-udp").withPosition(2).withProtocol("tcp, UDP").build(),
+                new RuleBuilder().withName("any").withPosition(3).build());
+
+        assertEquals("tcp-udp", ruleSet.classify(new ClassificationRequestBuilder().withSrcPort(1234).withDstPort(80).withProtocol(ProtocolType.TCP).build()));
+        assertEquals("tcp-udp", ruleSet.classify(new ClassificationRequestBuilder().withSrcPort(1234).withDstPort(80).withProtocol(ProtocolType.UDP).build()));
+        assertEquals("any", ruleSet.classify(new ClassificationRequestBuilder().withSrcPort(1234).withDstPort(80).withProtocol(ProtocolType.ICMP).build()));
+    }
+
+    @Test
+    public void verifyExporterFilter() {
+        final FilterService filterService = new FilterService() {
+            @Override
+            public void validate(String filterExpression) throws InvalidFilterException {
+            }
+
+            @Override
+            public boolean matches(String address, String filterExpression) {
+                return filterExpression.equals(address);
+            }
+        };
+        final CompiledRuleSet ruleSet = CompiledRuleSet.compile(Lists.newArrayList(
+                new RuleBuilder().withName("exporter").withPosition(1).withDstPort(80).withExporterFilter("10.0.0.1").build(),
+                new RuleBuilder().withName("http").withPosition(2).withDstPort(80).build()), filterService);
+
+        final ClassificationRequestBuilder request = new ClassificationRequestBuilder().withSrcPort(1234).withDstPort(80).withProtocol(ProtocolType.TCP);
+        assertEquals("exporter", ruleSet.classify(request.withExporterAddress("10.0.0.1").build()));
+        assertEquals("http", ruleSet.classify(request.withExporterAddress("10.0.0.2").build()));
+    }
+
+    @Test
+    public void verifyRulesWithSamePosition() {
+        final CompiledRuleSet ruleSet = compile(
+                new RuleBuilder().withName("dst").withDstPort(80).build(),
+                new RuleBuilder().withName("any").withDstAddress("10.0.0.1").build(),
+                new RuleBuilder().withName("src").withSrcPort(1024).build());
+
+        // Rules bound to the src port win, followed by rules not bound to a port
+        assertEquals("src", ruleSet.classify(new ClassificationRequestBuilder().withSrcPort(1024).withDstPort(80).withDstAddress("10.0.0.1").withProtocol(ProtocolType.TCP).build()));
+        assertEquals("any", ruleSet.classify(new ClassificationRequestBuilder().withSrcPort(1025).withDstPort(80).withDstAddress("10.0.0.1").withProtocol(ProtocolType.TCP).build()));
+        assertEquals("dst", ruleSet.classify(new ClassificationRequestBuilder().withSrcPort(1025).withDstPort(80).withDstAddress("10.0.0.2").withProtocol(ProtocolType.TCP).build()));
+        // The dst port of the rule equals the src port of the request
+        assertEquals("dst", ruleSet.classify(new ClassificationRequestBuilder().withSrcPort(80).withDstPort(80).withDstAddress("10.0.0.1").withProtocol(ProtocolType.TCP).build()));
+    }
+
+    @Test
+    public void verifyManyRules() {
+        final List<Rule> rules = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            rules.add(new RuleBuilder().withName("rule" + i).withPosition(i).withDstPort(i % 100).withDstAddress("10.0." + (i / 100) + ".*").build());
+        }
+        final CompiledRuleSet ruleSet = CompiledRuleSet.compile(rules, FilterService.NOOP);
+        assertEquals(1000, ruleSet.size());
+        assertEquals("rule742", ruleSet.classify(new ClassificationRequestBuilder().withSrcPort(1234).withDstPort(42).withDstAddress("10.0.7.1").withProtocol(ProtocolType.TCP).build()));
+        assertNull(ruleSet.classify(new ClassificationRequestBuilder().withSrcPort(1234).withDstPort(42).withDstAddress("10.0.10.1").withProtocol(ProtocolType.TCP).build()));
+    }
+
+    private static CompiledRuleSet compile(Rule... rules) {
+        return CompiledRuleSet.compile(Lists.newArrayList(rules), FilterService.NOOP);
+    }
+
+    private static ClassificationRequest request(String dstAddress) {
+        return new ClassificationRequestBuilder().withSrcPort(1234).withDstPort(80).withDstAddress(dstAddress).withProtocol(ProtocolType.TCP).build();
+    }
+}
@@ -0,0 +1,248 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.netmgt.flows.elastic;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.opennms.features.jest.client.bulk.BulkException;
+import org.opennms.features.jest.client.bulk.BulkRequest;
+import org.opennms.features.jest.client.bulk.BulkWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.searchbox.client.JestClient;
+
+/**
+ * Indexes documents asynchronously using bulk requests.
+ *
+ * Documents are collected until either {@link Config#bulkSize} documents are buffered or the oldest buffered
+ * document is older than {@link Config#flushIntervalMs}. Up to {@link Config#concurrency} bulk requests are executed
+ * in parallel, each considering the configured retries.
+ *
+ * At most {@link Config#maxPendingDocuments} documents are buffered or in flight. Once this limit is reached
+ * {@link #write(List)} blocks until bulk requests complete, which pushes back on the callers.
+ *
+ * Unlike a synchronous bulk request, {@link #write(List)} does not fail if documents can not be persisted.
+ * Documents which are still rejected after all retries are dropped, they are logged and counted by the
+ * <code>documentsRejected</code> meter.
+ */
+class AsyncBulkWriter<T> implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncBulkWriter.class);
+
+    private static final String PENDING_DOCUMENTS = "pendingDocuments";
+
+    static class Config {
+        int bulkSize = 1000;
+        long flushIntervalMs = 500;
+        int concurrency = 4;
+        int maxPendingDocuments = 20000;
+        int retryCount = 5;
+    }
+
+    private final JestClient client;
+
+    private final Function<List<T>, BulkWrapper> transformer;
+
+    private final Config config;
+
+    // Permits for documents which are buffered or in flight
+    private final Semaphore pendingDocuments;
+
+    private final ExecutorService bulkExecutor;
+
+    private final ScheduledExecutorService flushExecutor;
+
+    /**
+     * Time taken to execute a bulk request, including retries
+     */
+    private final Timer bulkLatencyTimer;
+
+    /**
+     * Documents persisted
+     */
+    private final Meter documentsPersistedMeter;
+
+    /**
+     * Documents which could not be persisted after all retries
+     */
+    private final Meter documentsRejectedMeter;
+
+    private final MetricRegistry metricRegistry;
+
+    private final Gauge<Integer> pendingDocumentsGauge;
+
+    private List<T> buffer = new ArrayList<>();
+    private int bufferPermits;
+    private long bufferCreatedAt;
+    private int inFlight;
+
+    AsyncBulkWriter(MetricRegistry metricRegistry, JestClient client, Function<List<T>, BulkWrapper> transformer,
+                    Meter documentsPersistedMeter, Config config) {
+        this.client = Objects.requireNonNull(client);
+        this.transformer = Objects.requireNonNull(transformer);
+        this.documentsPersistedMeter = Objects.requireNonNull(documentsPersistedMeter);
+        this.config = Objects.requireNonNull(config);
+        if (config.bulkSize < 1 || config.concurrency < 1 || config.maxPendingDocuments < config.bulkSize) {
+            throw new IllegalArgumentException("Bulk size and concurrency must be positive and the maximum number of "
+                    + "pending documents must not be smaller than the bulk size.");
+        }
+        this.pendingDocuments = new Semaphore(config.maxPendingDocuments);
+
+        // The queue is bounded by the number of pending documents
+        this.bulkExecutor = new ThreadPoolExecutor(config.concurrency, config.concurrency, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), new ThreadFactoryBuilder().setNameFormat("flow-bulk-writer-%d").build());
+        this.flushExecutor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("flow-bulk-flusher").setDaemon(true).build());
+        if (config.flushIntervalMs > 0) {
+            flushExecutor.scheduleWithFixedDelay(this::flushIfExpired, config.flushIntervalMs, config.flushIntervalMs, TimeUnit.MILLISECONDS);
+        }
+
+        this.metricRegistry = Objects.requireNonNull(metricRegistry);
+        bulkLatencyTimer = metricRegistry.timer("bulkLatency");
+        documentsRejectedMeter = metricRegistry.meter("documentsRejected");
+        // Replace the gauge of a previous writer, e.g. when the repository was restarted
+        pendingDocumentsGauge = () -> config.maxPendingDocuments - pendingDocuments.availablePermits();
+        metricRegistry.remove(PENDING_DOCUMENTS);
+        metricRegistry.register(PENDING_DOCUMENTS, pendingDocumentsGauge);
+    }
+
+    /**
+     * Buffers the given documents, blocking while the maximum number of pending documents is reached.
+     */
+    void write(List<T> documents) throws InterruptedException {
+        if (documents.isEmpty()) {
+            return;
+        }
+        // A single huge batch may exceed the limit, it still only waits for all other documents to complete
+        final int permits = Math.min(documents.size(), config.maxPendingDocuments);
+        while (!pendingDocuments.tryAcquire(permits)) {
+            synchronized (this) {
+                // The missing permits may be held by the buffer, which is not sent before it is full or expired,
+                // so send it right away and wait for the bulk requests to complete
+                submitBuffer();
+                while (inFlight > 0 && pendingDocuments.availablePermits() < permits) {
+                    wait();
+                }
+            }
+        }
+        synchronized (this) {
+            if (buffer.isEmpty()) {
+                bufferCreatedAt = System.currentTimeMillis();
+            }
+            buffer.addAll(documents);
+            bufferPermits += permits;
+            if (buffer.size() >= config.bulkSize) {
+                submitBuffer();
+            }
+        }
+    }
+
+    /**
+     * Submits all buffered documents and waits until all bulk requests completed.
+     */
+    void flush() throws InterruptedException {
+        synchronized (this) {
+            submitBuffer();
+            while (inFlight > 0) {
+                wait();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        flushExecutor.shutdownNow();
+        flush();
+        bulkExecutor.shutdown();
+        bulkExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        metricRegistry.removeMatching((name, metric) -> PENDING_DOCUMENTS.equals(name) && metric == pendingDocumentsGauge);
+    }
+
+    private synchronized void flushIfExpired() {
+        if (!buffer.isEmpty() && System.currentTimeMillis() - bufferCreatedAt >= config.flushIntervalMs) {
+            submitBuffer();
+        }
+    }
+
+    // Must be called while holding the lock
+    private void submitBuffer() {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        final List<T> documents = buffer;
+        final int permits = bufferPermits;
+        buffer = new ArrayList<>(config.bulkSize);
+        bufferPermits = 0;
+        inFlight++;
+        bulkExecutor.execute(() -> {
+            try {
+                execute(documents);
+            } finally {
+                pendingDocuments.release(permits);
+                synchronized (this) {
+                    inFlight--;
+                    notifyAll();
+                }
+            }
+        });
+    }
+
+    private void execute(List<T> documents) {
+        final BulkRequest<T> bulkRequest = new BulkRequest<>(client, documents, transformer, config.retryCount);
+        try (Timer.Context ctx = bulkLatencyTimer.time()) {
+            // the bulk request considers retries
+            bulkRequest.execute();
+            documentsPersistedMeter.mark(documents.size());
+        } catch (BulkException ex) {
+            final int rejected = ex.getBulkResult() != null ? ex.getBulkResult().getFailedDocuments().size() : documents.size();
+            documentsPersistedMeter.mark(documents.size() - rejected);
+            documentsRejectedMeter.mark(rejected);
+            LOG.error("Failed to persist {} of {} documents: {}", rejected, documents.size(), ex.getMessage(), ex);
+        } catch (IOException | RuntimeException ex) {
+            documentsRejectedMeter.mark(documents.size());
+            LOG.error("An error occurred while executing the bulk request for {} documents: {}", documents.size(), ex.getMessage(), ex);
+        }
+    }
+}
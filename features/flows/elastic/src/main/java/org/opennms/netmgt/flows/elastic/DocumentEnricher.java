@@ -31,9 +31,13 @@ package org.opennms.netmgt.flows.elastic;
 import java.net.InetAddress;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
@@ -50,13 +54,11 @@ import org.opennms.netmgt.flows.api.FlowSource;
 import org.opennms.netmgt.flows.classification.ClassificationEngine;
 import org.opennms.netmgt.flows.classification.ClassificationRequest;
 import org.opennms.netmgt.flows.classification.persistence.api.Protocols;
-import org.opennms.netmgt.model.OnmsCategory;
 import org.opennms.netmgt.model.OnmsNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.codahale.metrics.MetricRegistry;
-import com.codahale.metrics.Timer;
 import com.google.common.base.Strings;
 import com.google.common.cache.CacheLoader;
 
@@ -71,10 +73,11 @@ public class DocumentEnricher {
 
     private final ClassificationEngine classificationEngine;
 
-    // Caches NodeDocument data
-    private final Cache<NodeInfoKey, Optional<NodeDocument>> nodeInfoCache;
+    // Caches the id of the node an exporter or address belongs to
+    private final Cache<NodeInfoKey, Optional<Integer>> nodeInfoCache;
 
-    private final Timer nodeLoadTimer;
+    // Shared NodeDocument data of all nodes
+    private final NodeDocumentIndex nodeDocumentIndex;
 
     public DocumentEnricher(MetricRegistry metricRegistry, NodeDao nodeDao, InterfaceToNodeCache interfaceToNodeCache,
                             SessionUtils sessionUtils, ClassificationEngine classificationEngine,
@@ -86,13 +89,13 @@ public class DocumentEnricher {
 
         this.nodeInfoCache = new CacheBuilder()
                 .withConfig(cacheConfig)
-                .withCacheLoader(new CacheLoader<NodeInfoKey, Optional<NodeDocument>>() {
+                .withCacheLoader(new CacheLoader<NodeInfoKey, Optional<Integer>>() {
                     @Override
-                    public Optional<NodeDocument> load(NodeInfoKey key) {
-                        return getNodeInfo(key.location, key.ipAddress, key.contextKey, key.value);
+                    public Optional<Integer> load(NodeInfoKey key) {
+                        return getNodeId(key.location, key.ipAddress, key.contextKey, key.value);
                     }
                 }).build();
-        this.nodeLoadTimer = metricRegistry.timer("nodeLoadTime");
+        this.nodeDocumentIndex = new NodeDocumentIndex(nodeDao, sessionUtils, metricRegistry.timer("nodeLoadTime"), cacheConfig);
     }
 
     public List<FlowDocument> enrich(final Collection<Flow> flows, final FlowSource source) {
@@ -101,48 +104,65 @@ public class DocumentEnricher {
             return Collections.emptyList();
         }
 
-        return sessionUtils.withTransaction(() -> flows.stream().map(flow -> {
-            final FlowDocument document = FlowDocument.from(flow);
-            // Metadata from message
-            document.setHost(source.getSourceAddress());
-            document.setLocation(source.getLocation());
-
-            // Node data
-            getNodeInfoFromCache(source.getLocation(), source.getSourceAddress(), source.getContextKey(), flow.getNodeIdentifier()).ifPresent(document::setNodeExporter);
-            if (document.getDstAddr() != null) {
-                getNodeInfoFromCache(source.getLocation(), document.getDstAddr(), null, null).ifPresent(document::setNodeDst);
-            }
-            if (document.getSrcAddr() != null) {
-                getNodeInfoFromCache(source.getLocation(), document.getSrcAddr(), null, null).ifPresent(document::setNodeSrc);
+        return sessionUtils.withTransaction(() -> {
+            // Resolve the nodes of all exporters and addresses in the batch at once
+            final Set<NodeInfoKey> keys = new HashSet<>();
+            for (final Flow flow : flows) {
+                keys.add(exporterKey(source, flow));
+                if (flow.getDstAddr() != null) {
+                    keys.add(addressKey(source, flow.getDstAddr()));
+                }
+                if (flow.getSrcAddr() != null) {
+                    keys.add(addressKey(source, flow.getSrcAddr()));
+                }
             }
+            final Map<NodeInfoKey, NodeDocument> nodeInfo = getNodeInfo(keys);
 
-            // Locality
-            if (document.getSrcAddr() != null) {
-                document.setSrcLocality(isPrivateAddress(document.getSrcAddr()) ? Locality.PRIVATE : Locality.PUBLIC);
-            }
-            if (document.getDstAddr() != null) {
-                document.setDstLocality(isPrivateAddress(document.getDstAddr()) ? Locality.PRIVATE : Locality.PUBLIC);
-            }
+            return flows.stream().map(flow -> enrich(flow, source, nodeInfo)).collect(Collectors.toList());
+        });
+    }
 
-            if (Locality.PUBLIC.equals(document.getDstLocality()) || Locality.PUBLIC.equals(document.getSrcLocality())) {
-                document.setFlowLocality(Locality.PUBLIC);
-            } else if (Locality.PRIVATE.equals(document.getDstLocality()) || Locality.PRIVATE.equals(document.getSrcLocality())) {
-                document.setFlowLocality(Locality.PRIVATE);
-            }
+    private FlowDocument enrich(final Flow flow, final FlowSource source, final Map<NodeInfoKey, NodeDocument> nodeInfo) {
+        final FlowDocument document = FlowDocument.from(flow);
+        // Metadata from message
+        document.setHost(source.getSourceAddress());
+        document.setLocation(source.getLocation());
+
+        // Node data
+        document.setNodeExporter(nodeInfo.get(exporterKey(source, flow)));
+        if (document.getDstAddr() != null) {
+            document.setNodeDst(nodeInfo.get(addressKey(source, document.getDstAddr())));
+        }
+        if (document.getSrcAddr() != null) {
+            document.setNodeSrc(nodeInfo.get(addressKey(source, document.getSrcAddr())));
+        }
 
-            final ClassificationRequest classificationRequest = createClassificationRequest(document);
+        // Locality
+        if (document.getSrcAddr() != null) {
+            document.setSrcLocality(isPrivateAddress(document.getSrcAddr()) ? Locality.PRIVATE : Locality.PUBLIC);
+        }
+        if (document.getDstAddr() != null) {
+            document.setDstLocality(isPrivateAddress(document.getDstAddr()) ? Locality.PRIVATE : Locality.PUBLIC);
+        }
 
-            // Check whether classification is possible
-            if (classificationRequest.isClassifiable()) {
-                // Apply Application mapping
-                document.setApplication(classificationEngine.classify(classificationRequest));
-            }
+        if (Locality.PUBLIC.equals(document.getDstLocality()) || Locality.PUBLIC.equals(document.getSrcLocality())) {
+            document.setFlowLocality(Locality.PUBLIC);
+        } else if (Locality.PRIVATE.equals(document.getDstLocality()) || Locality.PRIVATE.equals(document.getSrcLocality())) {
+            document.setFlowLocality(Locality.PRIVATE);
+        }
+
+        final ClassificationRequest classificationRequest = createClassificationRequest(document);
+
+        // Check whether classification is possible
+        if (classificationRequest.isClassifiable()) {
+            // Apply Application mapping
+            document.setApplication(classificationEngine.classify(classificationRequest));
+        }
 
-            // Conversation tagging
-            document.setConvoKey(ConversationKeyUtils.getConvoKeyAsJsonString(document));
+        // Conversation tagging
+        document.setConvoKey(ConversationKeyUtils.getConvoKeyAsJsonString(document));
 
-            return document;
-        }).collect(Collectors.toList()));
+        return document;
     }
 
     private static boolean isPrivateAddress(String ipAddress) {
@@ -150,53 +170,54 @@ public class DocumentEnricher {
         return inetAddress.isLoopbackAddress() || inetAddress.isLinkLocalAddress() || inetAddress.isSiteLocalAddress();
     }
 
-    private Optional<NodeDocument> getNodeInfoFromCache(final String location, final String ipAddress, final ContextKey contextKey, final String value) {
-        final NodeInfoKey key = new NodeInfoKey(location, ipAddress, contextKey, value);
+    private static NodeInfoKey exporterKey(final FlowSource source, final Flow flow) {
+        return new NodeInfoKey(source.getLocation(), source.getSourceAddress(), source.getContextKey(), flow.getNodeIdentifier());
+    }
+
+    private static NodeInfoKey addressKey(final FlowSource source, final String ipAddress) {
+        return new NodeInfoKey(source.getLocation(), ipAddress, null, null);
+    }
+
+    // Looks up the node ids of all keys and loads the nodes missing in the index with a single query
+    private Map<NodeInfoKey, NodeDocument> getNodeInfo(final Set<NodeInfoKey> keys) {
+        final Map<NodeInfoKey, Optional<Integer>> nodeIds;
         try {
-            return nodeInfoCache.get(key);
+            nodeIds = nodeInfoCache.getAll(keys);
         } catch (ExecutionException e) {
-            LOG.error("Error while retrieving NodeDocument from NodeInfoCache: {}.", e.getMessage(), e);
+            LOG.error("Error while retrieving node ids from NodeInfoCache: {}.", e.getMessage(), e);
             throw new RuntimeException(e);
         }
-    }
 
-    private Optional<NodeDocument> getNodeInfo(final String location, final String ipAddress, final ContextKey contextKey, final String value) {
-        return getNodeInfo(location, InetAddressUtils.addr(ipAddress), contextKey, value);
-    }
+        final Map<Integer, NodeDocument> nodeDocuments = nodeDocumentIndex.getAll(nodeIds.values().stream()
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .collect(Collectors.toSet()));
 
-    private Optional<NodeDocument> getNodeInfo(final String location, final InetAddress ipAddress, final ContextKey contextKey, final String value) {
-        OnmsNode onmsNode = null;
+        final Map<NodeInfoKey, NodeDocument> nodeInfo = new HashMap<>();
+        nodeIds.forEach((key, nodeId) -> {
+            if (!nodeId.isPresent()) {
+                return;
+            }
+            final NodeDocument nodeDocument = nodeDocuments.get(nodeId.get());
+            if (nodeDocument != null) {
+                nodeInfo.put(key, nodeDocument);
+            } else {
+                LOG.debug("Node with id: {} at location: {} with IP address: {} is in the interface to node cache, but wasn't found in the database.", nodeId.get(), key.location, key.ipAddress);
+            }
+        });
+        return nodeInfo;
+    }
 
+    private Optional<Integer> getNodeId(final String location, final String ipAddress, final ContextKey contextKey, final String value) {
         if (contextKey != null && !Strings.isNullOrEmpty(value)) {
             final List<OnmsNode> nodes = nodeDao.findNodeWithMetaData(contextKey.getContext(), contextKey.getKey(), value);
 
             if (!nodes.isEmpty()) {
-                onmsNode = nodes.get(0);
+                return Optional.of(nodes.get(0).getId());
             }
         }
 
-        if (onmsNode == null) {
-            final Optional<Integer> nodeId = interfaceToNodeCache.getFirstNodeId(location, ipAddress);
-            if (nodeId.isPresent()) {
-                try (Timer.Context ctx = nodeLoadTimer.time()) {
-                    onmsNode = nodeDao.get(nodeId.get());
-                }
-            } else {
-                LOG.warn("Node with id: {} at location: {} with IP address: {} is in the interface to node cache, but wasn't found in the database.", nodeId, location, ipAddress);
-            }
-        }
-
-        if (onmsNode != null) {
-            final NodeDocument nodeDocument = new NodeDocument();
-            nodeDocument.setForeignSource(onmsNode.getForeignSource());
-            nodeDocument.setForeignId(onmsNode.getForeignId());
-            nodeDocument.setNodeId(onmsNode.getId());
-            nodeDocument.setCategories(onmsNode.getCategories().stream().map(OnmsCategory::getName).collect(Collectors.toList()));
-
-            return Optional.of(nodeDocument);
-        }
-
-        return Optional.empty();
+        return interfaceToNodeCache.getFirstNodeId(location, InetAddressUtils.addr(ipAddress));
     }
 
     // Key class, which is used to cache NodeDocument objects
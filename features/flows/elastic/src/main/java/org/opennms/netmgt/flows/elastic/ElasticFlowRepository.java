@@ -52,6 +52,7 @@ import org.opennms.features.jest.client.SearchResultUtils;
 import org.opennms.features.jest.client.bulk.BulkException;
 import org.opennms.features.jest.client.bulk.BulkRequest;
 import org.opennms.features.jest.client.bulk.BulkWrapper;
+import org.opennms.features.jest.client.bulk.StreamingBulkWrapper;
 import org.opennms.features.jest.client.index.IndexSelector;
 import org.opennms.features.jest.client.index.IndexStrategy;
 import org.opennms.features.jest.client.template.IndexSettings;
@@ -95,8 +96,6 @@ import io.searchbox.action.Action;
 import io.searchbox.client.JestClient;
 import io.searchbox.client.JestResult;
 import io.searchbox.client.JestResultHandler;
-import io.searchbox.core.Bulk;
-import io.searchbox.core.Index;
 import io.searchbox.core.Search;
 import io.searchbox.core.SearchResult;
 import io.searchbox.core.search.aggregation.MetricAggregation;
@@ -124,6 +123,16 @@ public class ElasticFlowRepository implements FlowRepository {
 
     private final int bulkRetryCount;
 
+    private final AsyncBulkWriter.Config bulkWriterConfig = new AsyncBulkWriter.Config();
+
+    // Persist synchronously unless configured otherwise
+    private int bulkConcurrency = 0;
+
+    private final MetricRegistry metricRegistry;
+
+    // Only set if flows are persisted asynchronously
+    private AsyncBulkWriter<FlowDocument> bulkWriter;
+
     /**
      * Flows/second throughput
      */
@@ -186,6 +195,8 @@ public class ElasticFlowRepository implements FlowRepository {
         this.identity = identity;
         this.tracerRegistry = tracerRegistry;
         this.indexSettings = Objects.requireNonNull(indexSettings);
+        this.metricRegistry = Objects.requireNonNull(metricRegistry);
+        this.bulkWriterConfig.retryCount = bulkRetryCount;
 
         flowsPersistedMeter = metricRegistry.meter("flowsPersisted");
         logEnrichementTimer = metricRegistry.timer("logEnrichment");
@@ -231,26 +242,27 @@ public class ElasticFlowRepository implements FlowRepository {
             scope.span().setTag(TracerConstants.TAG_LOCATION, source.getLocation());
             scope.span().setTag(TracerConstants.TAG_SOURCE_ADDRESS, source.getSourceAddress());
             scope.span().setTag(TracerConstants.TAG_THREAD, Thread.currentThread().getName());
-            final BulkRequest<FlowDocument> bulkRequest = new BulkRequest<>(client, flowDocuments, (documents) -> {
-                final Bulk.Builder bulkBuilder = new Bulk.Builder();
-                for (FlowDocument flowDocument : documents) {
-                    final String index = indexStrategy.getIndex(indexSettings, INDEX_NAME, Instant.ofEpochMilli(flowDocument.getTimestamp()));
-                    final Index.Builder indexBuilder = new Index.Builder(flowDocument)
-                            .index(index);
-                    bulkBuilder.addAction(indexBuilder.build());
+            if (bulkWriter != null) {
+                try {
+                    // Blocks while too many flows are pending
+                    bulkWriter.write(flowDocuments);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new FlowException("Interrupted while waiting to persist flows.", ex);
                 }
-                return new BulkWrapper(bulkBuilder);
-            }, bulkRetryCount);
-            try {
-                // the bulk request considers retries
-                bulkRequest.execute();
-            } catch (BulkException ex) {
-                throw new PersistenceException(ex.getMessage(), ex.getBulkResult().getFailedDocuments());
-            } catch (IOException ex) {
-                LOG.error("An error occurred while executing the given request: {}", ex.getMessage(), ex);
-                throw new FlowException(ex.getMessage(), ex);
+            } else {
+                final BulkRequest<FlowDocument> bulkRequest = new BulkRequest<>(client, flowDocuments, this::createBulk, bulkRetryCount);
+                try {
+                    // the bulk request considers retries
+                    bulkRequest.execute();
+                } catch (BulkException ex) {
+                    throw new PersistenceException(ex.getMessage(), ex.getBulkResult().getFailedDocuments());
+                } catch (IOException ex) {
+                    LOG.error("An error occurred while executing the given request: {}", ex.getMessage(), ex);
+                    throw new FlowException(ex.getMessage(), ex);
+                }
+                flowsPersistedMeter.mark(flowDocuments.size());
             }
-            flowsPersistedMeter.mark(flowDocuments.size());
         }
 
         // Mark nodes and interfaces as having associated flows
@@ -298,6 +310,15 @@ public class ElasticFlowRepository implements FlowRepository {
         }
     }
 
+    private BulkWrapper createBulk(List<FlowDocument> documents) {
+        final StreamingBulkWrapper.Builder bulkBuilder = new StreamingBulkWrapper.Builder();
+        for (FlowDocument flowDocument : documents) {
+            final String index = indexStrategy.getIndex(indexSettings, INDEX_NAME, Instant.ofEpochMilli(flowDocument.getTimestamp()));
+            bulkBuilder.addIndex(index, null, flowDocument);
+        }
+        return bulkBuilder.build();
+    }
+
     @Override
     public CompletableFuture<Long> getFlowCount(List<Filter> filters) {
         final String query = searchQueryProvider.getFlowCountQuery(filters);
@@ -896,6 +917,45 @@ public class ElasticFlowRepository implements FlowRepository {
         if (tracerRegistry != null && identity != null) {
             tracerRegistry.init(identity.getId());
         }
+        if (bulkConcurrency > 0) {
+            bulkWriterConfig.concurrency = bulkConcurrency;
+            bulkWriter = new AsyncBulkWriter<>(metricRegistry, client, this::createBulk, flowsPersistedMeter, bulkWriterConfig);
+        }
+    }
+
+    public void stop() throws InterruptedException {
+        if (bulkWriter != null) {
+            bulkWriter.close();
+            bulkWriter = null;
+        }
+    }
+
+    /**
+     * Waits until all flows handed to {@link #persist(Collection, FlowSource)} are persisted.
+     */
+    public void flush() throws InterruptedException {
+        if (bulkWriter != null) {
+            bulkWriter.flush();
+        }
+    }
+
+    /**
+     * Sets the number of bulk requests executed in parallel. If 0, flows are persisted synchronously.
+     */
+    public void setBulkConcurrency(int bulkConcurrency) {
+        this.bulkConcurrency = bulkConcurrency;
+    }
+
+    public void setBulkSize(int bulkSize) {
+        bulkWriterConfig.bulkSize = bulkSize;
+    }
+
+    public void setBulkFlushMs(long bulkFlushMs) {
+        bulkWriterConfig.flushIntervalMs = bulkFlushMs;
+    }
+
+    public void setBulkMaxPendingFlows(int bulkMaxPendingFlows) {
+        bulkWriterConfig.maxPendingDocuments = bulkMaxPendingFlows;
     }
 
     private Tracer getTracer() {
@@ -0,0 +1,219 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.netmgt.flows.elastic;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import org.opennms.core.cache.CacheConfig;
+import org.opennms.core.criteria.CriteriaBuilder;
+import org.opennms.core.criteria.Fetch.FetchType;
+import org.opennms.netmgt.dao.api.NodeDao;
+import org.opennms.netmgt.dao.api.SessionUtils;
+import org.opennms.netmgt.model.OnmsCategory;
+import org.opennms.netmgt.model.OnmsNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Timer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Read-only snapshot of the node data used to enrich flows, indexed by node id.
+ *
+ * The snapshot is loaded with a single query on a background thread on first use and reloaded once it
+ * is older than the expiry of the node cache. Until a reload completes, the previous snapshot is served.
+ * Nodes missing from the snapshot are loaded in bulk and published with a copy of it, so readers never
+ * wait for a reload and never see a partially updated index.
+ * Must be used within a transaction.
+ */
+class NodeDocumentIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(NodeDocumentIndex.class);
+
+    private static final ExecutorService RELOAD_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("flow-node-index-reload")
+            .setDaemon(true)
+            .build());
+
+    private final NodeDao nodeDao;
+
+    private final SessionUtils sessionUtils;
+
+    private final Timer nodeLoadTimer;
+
+    private final boolean enabled;
+
+    private final long maxAgeNanos;
+
+    private final AtomicBoolean reloading = new AtomicBoolean(false);
+
+    // Empty and incomplete until the first reload completes
+    private volatile Snapshot snapshot = new Snapshot(Collections.emptyMap(), System.nanoTime(), false);
+
+    NodeDocumentIndex(NodeDao nodeDao, SessionUtils sessionUtils, Timer nodeLoadTimer, CacheConfig cacheConfig) {
+        this.nodeDao = Objects.requireNonNull(nodeDao);
+        this.sessionUtils = Objects.requireNonNull(sessionUtils);
+        this.nodeLoadTimer = Objects.requireNonNull(nodeLoadTimer);
+        this.enabled = cacheConfig.isEnabled();
+        this.maxAgeNanos = cacheConfig.getExpireAfterWrite() != null && cacheConfig.getExpireAfterWrite() > 0
+                ? TimeUnit.SECONDS.toNanos(cacheConfig.getExpireAfterWrite())
+                : Long.MAX_VALUE;
+    }
+
+    /**
+     * @return the documents of all given nodes which exist
+     */
+    Map<Integer, NodeDocument> getAll(Set<Integer> nodeIds) {
+        if (nodeIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        if (!enabled) {
+            return loadNodes(nodeIds);
+        }
+
+        Snapshot current = getSnapshot();
+        final Set<Integer> missingIds = new HashSet<>();
+        for (Integer nodeId : nodeIds) {
+            if (!current.documents.containsKey(nodeId)) {
+                missingIds.add(nodeId);
+            }
+        }
+        if (!missingIds.isEmpty()) {
+            current = addNodes(missingIds, loadNodes(missingIds));
+        }
+
+        final Map<Integer, NodeDocument> result = new HashMap<>();
+        for (Integer nodeId : nodeIds) {
+            final NodeDocument document = current.documents.get(nodeId);
+            if (document != null) {
+                result.put(nodeId, document);
+            }
+        }
+        return result;
+    }
+
+    private Snapshot getSnapshot() {
+        final Snapshot current = snapshot;
+        if ((!current.complete || current.isExpired(maxAgeNanos)) && reloading.compareAndSet(false, true)) {
+            try {
+                RELOAD_EXECUTOR.execute(this::reload);
+            } catch (RejectedExecutionException e) {
+                reloading.set(false);
+                LOG.warn("Failed to schedule the reload of the node index.", e);
+            }
+        }
+        return current;
+    }
+
+    private void reload() {
+        try {
+            final long loadedAt = System.nanoTime();
+            final Map<Integer, NodeDocument> documents = sessionUtils.withReadOnlyTransaction(() -> loadNodes(null));
+            LOG.debug("Loaded {} nodes into the node index.", documents.size());
+            synchronized (this) {
+                snapshot = new Snapshot(documents, loadedAt, true);
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Failed to reload the node index. Serving the previous snapshot until the next attempt.", e);
+        } finally {
+            reloading.set(false);
+        }
+    }
+
+    private synchronized Snapshot addNodes(Set<Integer> nodeIds, Map<Integer, NodeDocument> documents) {
+        final Map<Integer, NodeDocument> merged = new HashMap<>(snapshot.documents);
+        // Nodes which do not exist are remembered as well, so they are not queried again until the next reload
+        for (Integer nodeId : nodeIds) {
+            merged.put(nodeId, documents.get(nodeId));
+        }
+        snapshot = new Snapshot(merged, snapshot.loadedAt, snapshot.complete);
+        return snapshot;
+    }
+
+    // Loads the given nodes, or all nodes if null, including their categories with a single query
+    private Map<Integer, NodeDocument> loadNodes(Collection<Integer> nodeIds) {
+        final CriteriaBuilder builder = new CriteriaBuilder(OnmsNode.class)
+                .fetch("categories", FetchType.EAGER)
+                .distinct();
+        if (nodeIds != null) {
+            builder.in("id", nodeIds);
+        }
+        final List<OnmsNode> nodes;
+        try (Timer.Context ctx = nodeLoadTimer.time()) {
+            nodes = nodeDao.findMatching(builder.toCriteria());
+        }
+        final Map<Integer, NodeDocument> documents = new HashMap<>(nodes.size());
+        for (OnmsNode node : nodes) {
+            documents.put(node.getId(), toNodeDocument(node));
+        }
+        return documents;
+    }
+
+    private static NodeDocument toNodeDocument(OnmsNode node) {
+        final NodeDocument nodeDocument = new NodeDocument();
+        nodeDocument.setForeignSource(node.getForeignSource());
+        nodeDocument.setForeignId(node.getForeignId());
+        nodeDocument.setNodeId(node.getId());
+        nodeDocument.setCategories(Collections.unmodifiableList(node.getCategories().stream()
+                .map(OnmsCategory::getName)
+                .collect(Collectors.toList())));
+        return nodeDocument;
+    }
+
+    private static class Snapshot {
+        // Maps the ids of nodes which do not exist to null
+        private final Map<Integer, NodeDocument> documents;
+
+        private final long loadedAt;
+
+        // Whether all nodes were loaded, rather than only the nodes looked up
+        private final boolean complete;
+
+        private Snapshot(Map<Integer, NodeDocument> documents, long loadedAt, boolean complete) {
+            this.documents = Collections.unmodifiableMap(documents);
+            this.loadedAt = loadedAt;
+            this.complete = complete;
+        }
+
+        private boolean isExpired(long maxAgeNanos) {
+            return maxAgeNanos != Long.MAX_VALUE && System.nanoTime() - loadedAt > maxAgeNanos;
+        }
+    }
+}
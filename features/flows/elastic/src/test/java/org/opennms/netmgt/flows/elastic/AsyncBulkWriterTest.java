@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.netmgt.flows.elastic;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.After;
+import org.junit.Test;
+import org.opennms.features.jest.client.bulk.BulkWrapper;
+import org.opennms.features.jest.client.bulk.StreamingBulkWrapper;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.gson.Gson;
+
+import io.searchbox.action.Action;
+import io.searchbox.client.JestClient;
+import io.searchbox.core.BulkResult;
+
+public class AsyncBulkWriterTest {
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+
+    private final JestClient client = mock(JestClient.class);
+
+    // Sizes of the executed bulks
+    private final List<Integer> bulks = new CopyOnWriteArrayList<>();
+
+    private AsyncBulkWriter<Integer> writer;
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void verifyFlushBySize() throws Exception {
+        succeed(null);
+        writer = createWriter(10, 0, 100);
+
+        for (int i = 0; i < 5; i++) {
+            writer.write(documents(5));
+        }
+        await().atMost(5, TimeUnit.SECONDS).until(bulks::size, equalTo(2));
+        assertEquals(10, (int) bulks.get(0));
+        assertEquals(10, (int) bulks.get(1));
+
+        // The remaining documents are only sent when flushed
+        writer.flush();
+        assertEquals(3, bulks.size());
+        assertEquals(25, metricRegistry.meter("flowsPersisted").getCount());
+    }
+
+    @Test
+    public void verifyFlushByAge() throws Exception {
+        succeed(null);
+        writer = createWriter(1000, 50, 1000);
+
+        writer.write(documents(3));
+        await().atMost(5, TimeUnit.SECONDS).until(bulks::size, equalTo(1));
+        assertEquals(3, (int) bulks.get(0));
+    }
+
+    @Test
+    public void verifyBackpressure() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        succeed(latch);
+        writer = createWriter(10, 0, 10);
+
+        // Fills up the pending documents, the bulk blocks in the client
+        writer.write(documents(10));
+        final CompletableFuture<Void> blocked = CompletableFuture.runAsync(() -> {
+            try {
+                writer.write(documents(1));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(200);
+        assertFalse(blocked.isDone());
+        assertEquals(10, metricRegistry.getGauges().get("pendingDocuments").getValue());
+
+        latch.countDown();
+        blocked.get(5, TimeUnit.SECONDS);
+        writer.flush();
+        assertEquals(11, metricRegistry.meter("flowsPersisted").getCount());
+    }
+
+    @Test(timeout = 10000)
+    public void verifyBufferedDocumentsAreSentWhenBlocked() throws Exception {
+        succeed(null);
+        writer = createWriter(10, 0, 10);
+
+        // The buffer holds 5 of the 10 permits and is never flushed by age
+        writer.write(documents(5));
+        writer.write(documents(6));
+        assertEquals(5, (int) bulks.get(0));
+
+        writer.flush();
+        assertEquals(11, metricRegistry.meter("flowsPersisted").getCount());
+    }
+
+    @Test
+    public void verifyMultipleWritersOnSameRegistry() throws Exception {
+        succeed(null);
+        final AsyncBulkWriter<Integer> first = createWriter(10, 0, 100);
+        first.write(documents(3));
+        writer = createWriter(10, 0, 100);
+        writer.write(documents(4));
+        assertEquals(4, metricRegistry.getGauges().get("pendingDocuments").getValue());
+
+        // Closing the previous writer keeps the gauge of the current one
+        first.close();
+        assertEquals(4, metricRegistry.getGauges().get("pendingDocuments").getValue());
+
+        writer.close();
+        assertFalse(metricRegistry.getGauges().containsKey("pendingDocuments"));
+        writer = null;
+    }
+
+    @Test
+    public void verifyRejectedDocuments() throws Exception {
+        when(client.execute(any(Action.class))).thenThrow(new IOException("unavailable"));
+        writer = createWriter(10, 0, 100);
+
+        writer.write(documents(10));
+        writer.flush();
+        assertEquals(10, metricRegistry.meter("documentsRejected").getCount());
+        assertEquals(0, metricRegistry.meter("flowsPersisted").getCount());
+        assertEquals(1, metricRegistry.timer("bulkLatency").getCount());
+    }
+
+    private AsyncBulkWriter<Integer> createWriter(int bulkSize, long flushIntervalMs, int maxPendingDocuments) {
+        final AsyncBulkWriter.Config config = new AsyncBulkWriter.Config();
+        config.bulkSize = bulkSize;
+        config.flushIntervalMs = flushIntervalMs;
+        config.concurrency = 2;
+        config.maxPendingDocuments = maxPendingDocuments;
+        config.retryCount = 1;
+        return new AsyncBulkWriter<>(metricRegistry, client, AsyncBulkWriterTest::createBulk, metricRegistry.meter("flowsPersisted"), config);
+    }
+
+    private void succeed(CountDownLatch latch) throws IOException {
+        when(client.execute(any(Action.class))).then(invocation -> {
+            final BulkWrapper bulk = (BulkWrapper) invocation.getArguments()[0];
+            if (latch != null) {
+                latch.await();
+            }
+            bulks.add(bulk.size());
+            final BulkResult result = new BulkResult(new Gson());
+            result.setSucceeded(true);
+            return result;
+        });
+    }
+
+    private static BulkWrapper createBulk(List<Integer> documents) {
+        final StreamingBulkWrapper.Builder builder = new StreamingBulkWrapper.Builder();
+        documents.forEach(document -> builder.addIndex("index", null, Collections.singletonMap("value", document)));
+        return builder.build();
+    }
+
+    private static List<Integer> documents(int count) {
+        return IntStream.range(0, count).boxed().collect(Collectors.toList());
+    }
+}
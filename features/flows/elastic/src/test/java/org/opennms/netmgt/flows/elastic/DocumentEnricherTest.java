@@ -28,9 +28,13 @@
 
 package org.opennms.netmgt.flows.elastic;
 
+import static com.jayway.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
@@ -48,15 +52,19 @@ import com.google.common.collect.Lists;
 public class DocumentEnricherTest {
 
     private DocumentEnricher enricher;
+    private NodeDao nodeDao;
+    private InterfaceToNodeCache interfaceToNodeCache;
     private AtomicInteger nodeDaoGetCounter;
+    private AtomicInteger nodeDaoFindMatchingCounter;
 
     @Before
     public void setUp() {
         final MockDocumentEnricherFactory factory = new MockDocumentEnricherFactory();
         enricher = factory.getEnricher();
-        final NodeDao nodeDao = factory.getNodeDao();
-        final InterfaceToNodeCache interfaceToNodeCache = factory.getInterfaceToNodeCache();
+        nodeDao = factory.getNodeDao();
+        interfaceToNodeCache = factory.getInterfaceToNodeCache();
         nodeDaoGetCounter = factory.getNodeDaoGetCounter();
+        nodeDaoFindMatchingCounter = factory.getNodeDaoFindMatchingCounter();
 
         interfaceToNodeCache.setNodeId("Default", InetAddressUtils.addr("10.0.0.1"), 1);
         interfaceToNodeCache.setNodeId("Default", InetAddressUtils.addr("10.0.0.2"), 2);
@@ -72,10 +80,43 @@ public class DocumentEnricherTest {
         final List<FlowDocument> documents = Lists.newArrayList();
         documents.add(createFlowDocument("10.0.0.1", "10.0.0.2"));
         documents.add(createFlowDocument("10.0.0.1", "10.0.0.3"));
+        final List<FlowDocument> enriched = enricher.enrich(documents.stream().map(TestFlow::new).collect(Collectors.toList()), new FlowSource("Default", "127.0.0.1", null));
+
+        // get is only called for each save, the nodes of the batch are loaded with a single query
+        // while all nodes are loaded into the index in the background
+        assertEquals(3, nodeDaoGetCounter.get());
+        await().atMost(5, TimeUnit.SECONDS).until(nodeDaoFindMatchingCounter::get, equalTo(2));
+        assertEquals(Integer.valueOf(1), enriched.get(0).getNodeSrc().getNodeId());
+        assertEquals(Integer.valueOf(2), enriched.get(0).getNodeDst().getNodeId());
+        assertEquals(Integer.valueOf(3), enriched.get(1).getNodeDst().getNodeId());
+        assertNull(enriched.get(0).getNodeExporter());
+
+        // Nodes already known are served from the index
         enricher.enrich(documents.stream().map(TestFlow::new).collect(Collectors.toList()), new FlowSource("Default", "127.0.0.1", null));
+        assertEquals(2, nodeDaoFindMatchingCounter.get());
+    }
 
-        // get is also called for each save, so we account for those as well
-        assertEquals(6, nodeDaoGetCounter.get());
+    @Test
+    public void verifyMissingNodesAreLoadedInBulk() {
+        final FlowSource source = new FlowSource("Default", "127.0.0.1", null);
+        enricher.enrich(Lists.newArrayList(new TestFlow(createFlowDocument("10.0.0.1", "10.0.0.2"))), source);
+        await().atMost(5, TimeUnit.SECONDS).until(nodeDaoFindMatchingCounter::get, equalTo(2));
+
+        interfaceToNodeCache.setNodeId("Default", InetAddressUtils.addr("10.0.0.4"), 4);
+        interfaceToNodeCache.setNodeId("Default", InetAddressUtils.addr("10.0.0.5"), 5);
+        nodeDao.save(createOnmsNode(4, "my-requisition"));
+        nodeDao.save(createOnmsNode(5, "my-requisition"));
+
+        final List<FlowDocument> enriched = enricher.enrich(Lists.newArrayList(
+                new TestFlow(createFlowDocument("10.0.0.4", "10.0.0.1")),
+                new TestFlow(createFlowDocument("10.0.0.5", "10.0.0.4"))), source);
+
+        // Both new nodes are loaded with one query
+        assertEquals(3, nodeDaoFindMatchingCounter.get());
+        assertEquals(Integer.valueOf(4), enriched.get(0).getNodeSrc().getNodeId());
+        assertEquals(Integer.valueOf(1), enriched.get(0).getNodeDst().getNodeId());
+        assertEquals(Integer.valueOf(5), enriched.get(1).getNodeSrc().getNodeId());
+        assertEquals(Integer.valueOf(4), enriched.get(1).getNodeDst().getNodeId());
     }
 
     private static FlowDocument createFlowDocument(String sourceIp, String destIp) {
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.features.jest.client.bulk;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+import com.google.common.base.Strings;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
+import io.searchbox.action.BulkableAction;
+import io.searchbox.core.Bulk;
+import io.searchbox.core.Index;
+import io.searchbox.params.Parameters;
+
+/**
+ * A {@link BulkWrapper} of index actions which serializes the request body with a single streaming
+ * {@link JsonWriter} instead of creating an intermediate string for each action and document.
+ */
+public class StreamingBulkWrapper extends BulkWrapper {
+
+    // The documents in the same order as the bulkable actions
+    private final List<Object> sources;
+
+    private final int expectedDocumentSize;
+
+    private StreamingBulkWrapper(Builder builder) {
+        super(builder.bulkBuilder);
+        this.sources = builder.sources;
+        this.expectedDocumentSize = builder.expectedDocumentSize;
+    }
+
+    @Override
+    public String getData(Gson gson) {
+        final StringWriter out = new StringWriter(sources.size() * expectedDocumentSize);
+        final JsonWriter writer = new JsonWriter(out);
+        // Each line of the body is a separate JSON document
+        writer.setLenient(true);
+        try {
+            final Iterator<Object> sourceIterator = sources.iterator();
+            for (BulkableAction action : bulkableActions) {
+                writeMetadata(writer, action);
+                out.write('\n');
+                final Object source = sourceIterator.next();
+                gson.toJson(source, source.getClass(), writer);
+                out.write('\n');
+            }
+            writer.flush();
+        } catch (IOException e) {
+            // Cannot happen when writing to a StringWriter
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    private static void writeMetadata(JsonWriter writer, BulkableAction action) throws IOException {
+        writer.beginObject();
+        writer.name(action.getBulkMethodName());
+        writer.beginObject();
+        if (!Strings.isNullOrEmpty(action.getId())) {
+            writer.name("_id").value(action.getId());
+        }
+        if (!Strings.isNullOrEmpty(action.getIndex())) {
+            writer.name("_index").value(action.getIndex());
+        }
+        if (!Strings.isNullOrEmpty(action.getType())) {
+            writer.name("_type").value(action.getType());
+        }
+        for (String parameter : Parameters.ACCEPTED_IN_BULK) {
+            final Collection<Object> values = action.getParameter(parameter);
+            if (values != null && values.size() == 1) {
+                writer.name("_" + parameter).value(values.iterator().next().toString());
+            }
+        }
+        writer.endObject();
+        writer.endObject();
+    }
+
+    public static class Builder {
+        private final Bulk.Builder bulkBuilder = new Bulk.Builder();
+        private final List<Object> sources = new ArrayList<>();
+        private int expectedDocumentSize = 1024;
+
+        /**
+         * Adds an index action for the given document. The document is serialized when the request is executed.
+         */
+        public Builder addIndex(String index, String type, Object source) {
+            Objects.requireNonNull(source);
+            final Index.Builder indexBuilder = new Index.Builder(source).index(index);
+            if (type != null) {
+                indexBuilder.type(type);
+            }
+            bulkBuilder.addAction(indexBuilder.build());
+            sources.add(source);
+            return this;
+        }
+
+        /**
+         * The expected size of a serialized document, used to size the buffer of the request body.
+         */
+        public Builder withExpectedDocumentSize(int expectedDocumentSize) {
+            this.expectedDocumentSize = expectedDocumentSize;
+            return this;
+        }
+
+        public StreamingBulkWrapper build() {
+            return new StreamingBulkWrapper(this);
+        }
+    }
+}
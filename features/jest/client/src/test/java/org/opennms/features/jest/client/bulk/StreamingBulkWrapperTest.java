@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.features.jest.client.bulk;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.annotations.SerializedName;
+
+import io.searchbox.core.Bulk;
+import io.searchbox.core.Index;
+
+public class StreamingBulkWrapperTest {
+
+    @Test
+    public void verifyBodyEqualsBulkBody() {
+        final Gson gson = new Gson();
+        final Bulk.Builder bulkBuilder = new Bulk.Builder();
+        final StreamingBulkWrapper.Builder streamingBuilder = new StreamingBulkWrapper.Builder();
+        for (int i = 0; i < 3; i++) {
+            final Document document = new Document("host" + i, i, i % 2 == 0 ? null : "tag\"" + i);
+            bulkBuilder.addAction(new Index.Builder(document).index("index-" + i).build());
+            streamingBuilder.addIndex("index-" + i, null, document);
+        }
+        bulkBuilder.addAction(new Index.Builder(new Document("typed", 3, null)).index("index").type("type").build());
+        streamingBuilder.addIndex("index", "type", new Document("typed", 3, null));
+
+        final StreamingBulkWrapper bulk = streamingBuilder.build();
+        assertEquals(4, bulk.size());
+        assertEquals(bulkBuilder.build().getData(gson), bulk.getData(gson));
+    }
+
+    private static class Document {
+        @SerializedName("host_name")
+        private final String host;
+        private final int value;
+        private final String tag;
+
+        private Document(String host, int value, String tag) {
+            this.host = host;
+            this.value = value;
+            this.tag = tag;
+        }
+    }
+}
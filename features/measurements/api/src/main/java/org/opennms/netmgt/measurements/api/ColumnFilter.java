@@ -1,8 +1,8 @@
 /*******************************************************************************
  * This file is part of OpenNMS(R).
  *
- * Copyright (C) 2017-2017 The OpenNMS Group, Inc.
- * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
  *
  * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
  *
@@ -26,10 +26,18 @@
  *     http://www.opennms.com/
  *******************************************************************************/
 
-package org.opennms.netmgt.flows.classification.internal.classifier;
+package org.opennms.netmgt.measurements.api;
 
-import org.opennms.netmgt.flows.classification.ClassificationRequest;
+/**
+ * A {@link Filter} which can also be applied to the columns of the {@link FetchResults}
+ * directly, avoiding the conversion of the results to a table and back.
+ *
+ * @see FilterEngine#filter(java.util.List, FetchResults)
+ */
+public interface ColumnFilter extends Filter {
 
-public interface Classifier extends Comparable<Classifier> {
-    String classify(ClassificationRequest classificationRequest);
+    /**
+     * Alters the given results in place.
+     */
+    void filter(FetchResults results) throws Exception;
 }
@@ -29,6 +29,7 @@
 package org.opennms.netmgt.measurements.api;
 
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.opennms.netmgt.measurements.api.exceptions.FetchException;
 import org.opennms.netmgt.measurements.api.exceptions.MeasurementException;
@@ -41,15 +42,35 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.RowSortedTable;
 
 @Component("measurementsService")
 public class DefaultMeasurementsService implements MeasurementsService {
 
+    /**
+     * Maximum number of samples held by the cache of recent fetches, 0 disables the cache.
+     */
+    public static final String CACHE_MAX_SAMPLES_PROPERTY = "org.opennms.measurements.cache.maxSamples";
+
+    /**
+     * Maximum time in milliseconds for which cached fetches are served without reading
+     * the time series again. Cached fetches are served for at most one collection interval.
+     */
+    public static final String CACHE_MAX_AGE_PROPERTY = "org.opennms.measurements.cache.maxAge";
+
+    /**
+     * Time in milliseconds after which cached fetches which were not used are dropped.
+     */
+    public static final String CACHE_EXPIRE_AFTER_ACCESS_PROPERTY = "org.opennms.measurements.cache.expireAfterAccess";
+
     private final MeasurementFetchStrategy fetchStrategy;
     private final ExpressionEngine expressionEngine;
     private final FilterEngine filterEngine;
     private final QueryRequestValidator queryRequestValidator = new QueryRequestValidator();
+    private final FetchResultsCache fetchResultsCache = new FetchResultsCache(
+            Long.getLong(CACHE_MAX_SAMPLES_PROPERTY, 1000000L),
+            Long.getLong(CACHE_MAX_AGE_PROPERTY, TimeUnit.MINUTES.toMillis(5)),
+            Long.getLong(CACHE_EXPIRE_AFTER_ACCESS_PROPERTY, TimeUnit.MINUTES.toMillis(15)),
+            System::currentTimeMillis);
 
     @Autowired
     public DefaultMeasurementsService(MeasurementFetchStrategy fetchStrategy, ExpressionEngine expressionEngine, FilterEngine filterEngine) {
@@ -65,15 +86,15 @@ public class DefaultMeasurementsService implements MeasurementsService {
         // Fetch the measurements
         FetchResults results;
         try {
-            results = fetchStrategy.fetch(
-                    request.getStart(),
-                    request.getEnd(),
-                    request.getStep(),
-                    request.getMaxRows(),
+            results = fetchResultsCache.fetch(request, (start, end, step, maxrows) -> fetchStrategy.fetch(
+                    start,
+                    end,
+                    step,
+                    maxrows,
                     request.getHeartbeat(),
                     request.getInterval(),
                     request.getSources(),
-                    request.isRelaxed());
+                    request.isRelaxed()));
         } catch (Exception e) {
             throw new FetchException(e, "Fetch failed: {}", e.getMessage());
         }
@@ -86,9 +107,7 @@ public class DefaultMeasurementsService implements MeasurementsService {
 
         // Apply the filters
         if (!request.getFilters().isEmpty()) {
-            RowSortedTable<Long, String, Double> table = results.asRowSortedTable();
-            filterEngine.filter(request.getFilters(), table);
-            results = new FetchResults(table, results.getStep(), results.getConstants(), results.getMetadata());
+            results = filterEngine.filter(request.getFilters(), results);
         }
 
         // Remove any transient values belonging to sources
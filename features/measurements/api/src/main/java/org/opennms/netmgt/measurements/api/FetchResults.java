@@ -46,7 +46,7 @@ import com.google.common.collect.TreeBasedTable;
  */
 public class FetchResults {
 
-    private final long[] m_timestamps;
+    private long[] m_timestamps;
 
     private final Map<String, double[]> m_columns;
 
@@ -134,6 +134,20 @@ public class FetchResults {
         return m_columns;
     }
 
+    /**
+     * Appends the given number of rows. The timestamps of the new rows are zero and their values NaN.
+     */
+    public void appendRows(int numRows) {
+        Preconditions.checkArgument(numRows >= 0, "numRows must not be negative");
+        final int length = m_timestamps.length + numRows;
+        m_timestamps = Arrays.copyOf(m_timestamps, length);
+        for (Map.Entry<String, double[]> column : m_columns.entrySet()) {
+            final double[] values = Arrays.copyOf(column.getValue(), length);
+            Arrays.fill(values, length - numRows, length, Double.NaN);
+            column.setValue(values);
+        }
+    }
+
     public long getStep() {
         return m_step;
     }
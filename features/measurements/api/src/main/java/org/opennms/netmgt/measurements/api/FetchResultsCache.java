@@ -0,0 +1,247 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.measurements.api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.opennms.netmgt.measurements.model.QueryRequest;
+import org.opennms.netmgt.measurements.model.Source;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Caches the results of recent fetches, so that dashboards refreshing the same
+ * queries over and over do not read the same files again.
+ *
+ * Entries are keyed by the sources, step and row limit of the request, but not by its
+ * window. The rows of an entry form a contiguous grid and a request is served from the rows
+ * within one step of its window, which are the rows the fetch strategy would have returned.
+ *
+ * An entry fetched within the last collection interval serves any request covered by its rows.
+ * Otherwise, and when a sliding window moves past the last row, only the rows from the end of
+ * the previous fetch, less one collection interval for late updates, are fetched and merged
+ * into the entry. Rows before the start of the latest request are dropped, and entries are
+ * evicted by their total number of samples.
+ */
+class FetchResultsCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FetchResultsCache.class);
+
+    /**
+     * Fetches the results for the sources of a request within the given window.
+     */
+    interface Fetcher {
+        FetchResults fetch(long start, long end, long step, int maxrows) throws Exception;
+    }
+
+    private final Cache<List<Object>, Entry> m_cache;
+
+    private final long m_maxAge;
+
+    private final LongSupplier m_clock;
+
+    /**
+     * @param maxSamples maximum number of samples held by all entries, 0 disables the cache
+     * @param maxAge maximum time in milliseconds for which an entry is served without fetching
+     * @param expireAfterAccess time in milliseconds after which unused entries are dropped
+     * @param clock the current time in milliseconds
+     */
+    FetchResultsCache(long maxSamples, long maxAge, long expireAfterAccess, LongSupplier clock) {
+        Preconditions.checkArgument(maxSamples >= 0, "maxSamples must not be negative");
+        Preconditions.checkArgument(maxAge >= 0, "maxAge must not be negative");
+        m_maxAge = maxAge;
+        m_clock = Preconditions.checkNotNull(clock);
+        m_cache = maxSamples > 0 && maxAge > 0 ? CacheBuilder.newBuilder()
+                .maximumWeight(maxSamples)
+                .weigher((List<Object> key, Entry entry) -> entry.getSamples())
+                .expireAfterAccess(expireAfterAccess, TimeUnit.MILLISECONDS)
+                .build() : null;
+    }
+
+    FetchResults fetch(QueryRequest request, Fetcher fetcher) throws Exception {
+        if (m_cache == null) {
+            return fetcher.fetch(request.getStart(), request.getEnd(), request.getStep(), request.getMaxRows());
+        }
+
+        // The key must be built before fetching, fetch strategies may substitute the fallback attributes of the sources
+        final List<Object> key = getKey(request);
+        final long start = request.getStart();
+        final long end = request.getEnd();
+        final long now = m_clock.getAsLong();
+
+        final Entry entry = m_cache.getIfPresent(key);
+        if (entry != null && entry.covers(start)) {
+            if (now - entry.fetchedAt < entry.interval && entry.covers(end)) {
+                return entry.slice(start, end);
+            }
+
+            final long tailStart = Math.min(entry.end, entry.fetchedAt) - entry.interval;
+            final FetchResults tail = tailStart > start
+                    ? fetcher.fetch(tailStart, end, entry.results.getStep(), 0) : null;
+            if (tail != null) {
+                final Entry merged = entry.merge(tail, start, end, now);
+                if (merged != null) {
+                    LOG.debug("Merged {} rows into the cached results of {}.", tail.getTimestamps().length, key);
+                    m_cache.put(key, merged);
+                    return merged.slice(start, end);
+                }
+            }
+        }
+
+        final FetchResults results = fetcher.fetch(start, end, request.getStep(), request.getMaxRows());
+        if (results != null && results.getStep() > 0) {
+            final long interval = request.getInterval() != null && request.getInterval() > 0
+                    ? request.getInterval() : results.getStep();
+            m_cache.put(key, new Entry(copy(results, 0, results.getTimestamps().length), end,
+                    Math.min(interval, m_maxAge), now));
+        }
+        return results;
+    }
+
+    long size() {
+        return m_cache == null ? 0 : m_cache.size();
+    }
+
+    private static List<Object> getKey(QueryRequest request) {
+        final List<Object> key = new ArrayList<>();
+        key.add(request.getStep());
+        key.add(request.getMaxRows());
+        // The step chosen by the fetch strategy depends on the length of the window when the rows are limited
+        key.add(request.getMaxRows() > 0 ? request.getEnd() - request.getStart() : null);
+        key.add(request.getHeartbeat());
+        key.add(request.getInterval());
+        key.add(request.isRelaxed());
+        for (final Source source : request.getSources()) {
+            key.add(Arrays.asList(source.getLabel(), source.getResourceId(), source.getAttribute(),
+                    source.getFallbackAttribute(), source.getDataSource(), source.getAggregation()));
+        }
+        return key;
+    }
+
+    private static FetchResults copy(FetchResults results, int from, int to) {
+        final Map<String, double[]> columns = new HashMap<>();
+        for (final Map.Entry<String, double[]> column : results.getColumns().entrySet()) {
+            columns.put(column.getKey(), Arrays.copyOfRange(column.getValue(), from, to));
+        }
+        return new FetchResults(Arrays.copyOfRange(results.getTimestamps(), from, to), columns,
+                results.getStep(), new HashMap<>(results.getConstants()), results.getMetadata());
+    }
+
+    private static class Entry {
+        private final FetchResults results;
+        // End of the window of the last fetch
+        private final long end;
+        // Collection interval, capped by the maximum age
+        private final long interval;
+        private final long fetchedAt;
+
+        private Entry(FetchResults results, long end, long interval, long fetchedAt) {
+            this.results = results;
+            this.end = end;
+            this.interval = interval;
+            this.fetchedAt = fetchedAt;
+        }
+
+        private int getSamples() {
+            return results.getTimestamps().length * (results.getColumns().size() + 1);
+        }
+
+        /**
+         * @return true if the rows within one step of the given time are part of the entry
+         */
+        private boolean covers(long time) {
+            final long[] timestamps = results.getTimestamps();
+            return timestamps.length > 0 && timestamps[0] <= time && time <= timestamps[timestamps.length - 1];
+        }
+
+        private FetchResults slice(long start, long end) {
+            final long[] timestamps = results.getTimestamps();
+            final long step = results.getStep();
+            int from = 0;
+            while (from < timestamps.length && timestamps[from] <= start - step) {
+                from++;
+            }
+            int to = from;
+            while (to < timestamps.length && timestamps[to] < end + step) {
+                to++;
+            }
+            return copy(results, from, to);
+        }
+
+        /**
+         * Replaces the rows from the first row of the tail onwards and drops the rows
+         * before the given start.
+         *
+         * @return the merged entry or null if the rows of the tail do not continue the grid of the entry
+         */
+        private Entry merge(FetchResults tail, long start, long end, long now) {
+            final long[] timestamps = results.getTimestamps();
+            final long[] tailTimestamps = tail.getTimestamps();
+            final long step = results.getStep();
+            if (tail.getStep() != step
+                    || tailTimestamps.length == 0
+                    || tailTimestamps[0] < timestamps[0]
+                    || tailTimestamps[0] > timestamps[timestamps.length - 1] + step
+                    || (tailTimestamps[0] - timestamps[0]) % step != 0
+                    || !tail.getColumns().keySet().equals(results.getColumns().keySet())) {
+                return null;
+            }
+
+            int from = 0;
+            while (from < timestamps.length && timestamps[from] <= start - step) {
+                from++;
+            }
+            final int head = Math.max(0, (int) ((tailTimestamps[0] - timestamps[0]) / step) - from);
+            final int rows = head + tailTimestamps.length;
+
+            final long[] mergedTimestamps = new long[rows];
+            System.arraycopy(timestamps, from, mergedTimestamps, 0, head);
+            System.arraycopy(tailTimestamps, 0, mergedTimestamps, head, tailTimestamps.length);
+            final Map<String, double[]> columns = new HashMap<>();
+            for (final Map.Entry<String, double[]> column : results.getColumns().entrySet()) {
+                final double[] values = new double[rows];
+                System.arraycopy(column.getValue(), from, values, 0, head);
+                System.arraycopy(tail.getColumns().get(column.getKey()), 0, values, head, tailTimestamps.length);
+                columns.put(column.getKey(), values);
+            }
+            return new Entry(new FetchResults(mergedTimestamps, columns, step,
+                    new HashMap<>(tail.getConstants()), tail.getMetadata()), end, interval, now);
+        }
+    }
+}
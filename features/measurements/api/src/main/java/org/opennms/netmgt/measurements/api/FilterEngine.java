@@ -41,7 +41,7 @@ import org.opennms.netmgt.measurements.model.FilterMetaData;
 import org.springframework.stereotype.Component;
 
 /**
- * Used to apply a series of {@link Filter} to a {@link RowSortedTable}. 
+ * Used to apply a series of {@link Filter} to a {@link RowSortedTable} or to {@link FetchResults}.
  *
  * @author jwhite
  */
@@ -82,6 +82,50 @@ public class FilterEngine {
         }
     }
 
+    /**
+     * Successively applies all of the filters to the results.
+     *
+     * Filters implementing {@link ColumnFilter} are applied to the columns directly. The results
+     * are only converted to a table for the other filters.
+     *
+     * @return the filtered results, which may or may not be the given instance
+     */
+    public FetchResults filter(final List<FilterDef> filterDefinitions, final FetchResults results) throws FilterException {
+        Preconditions.checkNotNull(filterDefinitions, "filterDefinitions argument");
+        Preconditions.checkNotNull(results, "results argument");
+
+        FetchResults filteredResults = results;
+        // Consecutive filters which don't support columns share the same table
+        RowSortedTable<Long, String, Double> table = null;
+        for (FilterDef filterDef : filterDefinitions) {
+            Filter filter = getFilter(filterDef);
+            if (filter == null) {
+                throw new FilterException("No filter implementation found for {}", filterDef.getName());
+            }
+            try {
+                if (filter instanceof ColumnFilter) {
+                    if (table != null) {
+                        filteredResults = toFetchResults(table, results);
+                        table = null;
+                    }
+                    ((ColumnFilter)filter).filter(filteredResults);
+                } else {
+                    if (table == null) {
+                        table = filteredResults.asRowSortedTable();
+                    }
+                    filter.filter(table);
+                }
+            } catch (Throwable t) {
+                throw new FilterException(t, "An error occurred while applying filter {}", t.getMessage());
+            }
+        }
+        return table != null ? toFetchResults(table, results) : filteredResults;
+    }
+
+    private static FetchResults toFetchResults(RowSortedTable<Long, String, Double> table, FetchResults results) {
+        return new FetchResults(table, results.getStep(), results.getConstants(), results.getMetadata());
+    }
+
     /**
      * Retrieves a {@link Filter} that supports the given filter definition.
      *
@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.measurements.api;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.opennms.netmgt.measurements.model.QueryRequest;
+import org.opennms.netmgt.measurements.model.Source;
+
+import com.google.common.collect.Maps;
+
+public class FetchResultsCacheTest {
+
+    private static final long STEP = 300 * 1000;
+
+    private final AtomicLong now = new AtomicLong(1000 * STEP);
+
+    private final List<long[]> fetches = new ArrayList<>();
+
+    @Test
+    public void canServeIdenticalFetches() throws Exception {
+        final FetchResultsCache cache = new FetchResultsCache(1000, STEP, 3 * STEP, now::get);
+        final QueryRequest request = request(now.get() - 10 * STEP - 1234, now.get());
+
+        final FetchResults first = cache.fetch(request, this::fetch);
+        now.addAndGet(STEP / 2);
+        final FetchResults second = cache.fetch(request, this::fetch);
+
+        assertEquals(1, fetches.size());
+        assertEquals(first.getStep(), second.getStep());
+        assertArrayEquals(first.getTimestamps(), second.getTimestamps());
+        assertArrayEquals(first.getColumns().get("x"), second.getColumns().get("x"), 0);
+
+        // The cached results are not modified by the caller
+        second.getColumns().get("x")[0] = -1;
+        assertEquals(first.getColumns().get("x")[0], cache.fetch(request, this::fetch).getColumns().get("x")[0], 0);
+        assertEquals(1, fetches.size());
+    }
+
+    @Test
+    public void canMergeSlidingWindows() throws Exception {
+        final FetchResultsCache cache = new FetchResultsCache(1000, STEP, 3 * STEP, now::get);
+        cache.fetch(request(now.get() - 10 * STEP, now.get()), this::fetch);
+
+        // The window moved by two steps, only the end is fetched again
+        now.addAndGet(2 * STEP + 1000);
+        final QueryRequest request = request(now.get() - 10 * STEP, now.get());
+        final FetchResults merged = cache.fetch(request, this::fetch);
+
+        assertEquals(2, fetches.size());
+        assertEquals(now.get() - 2 * STEP - 1000 - STEP, fetches.get(1)[0]);
+        assertEquals(now.get(), fetches.get(1)[1]);
+
+        final FetchResults expected = fetch(request.getStart(), request.getEnd(), STEP, 0);
+        assertArrayEquals(expected.getTimestamps(), merged.getTimestamps());
+        assertArrayEquals(expected.getColumns().get("x"), merged.getColumns().get("x"), 0);
+    }
+
+    @Test
+    public void canFetchWindowsNotCovered() throws Exception {
+        final FetchResultsCache cache = new FetchResultsCache(1000, STEP, 3 * STEP, now::get);
+        cache.fetch(request(now.get() - 10 * STEP, now.get()), this::fetch);
+        cache.fetch(request(now.get() - 20 * STEP, now.get()), this::fetch);
+
+        assertEquals(2, fetches.size());
+        assertEquals(now.get() - 20 * STEP, fetches.get(1)[0]);
+    }
+
+    @Test
+    public void canEvictBySize() throws Exception {
+        final FetchResultsCache cache = new FetchResultsCache(30, STEP, 3 * STEP, now::get);
+        cache.fetch(request(now.get() - 100 * STEP, now.get()), this::fetch);
+        assertEquals(0, cache.size());
+
+        final FetchResultsCache disabled = new FetchResultsCache(0, STEP, 3 * STEP, now::get);
+        disabled.fetch(request(now.get() - 10 * STEP, now.get()), this::fetch);
+        disabled.fetch(request(now.get() - 10 * STEP, now.get()), this::fetch);
+        assertEquals(3, fetches.size());
+    }
+
+    private static QueryRequest request(long start, long end) {
+        final QueryRequest request = new QueryRequest();
+        request.setStart(start);
+        request.setEnd(end);
+        request.setStep(STEP);
+        request.setSources(Collections.singletonList(new Source("x", "node[1].nodeSnmp[]", "x", null, false)));
+        return request;
+    }
+
+    /**
+     * Returns the rows aligned on the step which cover the window, the values
+     * of rows which are not complete yet differ from the final values.
+     */
+    private FetchResults fetch(long start, long end, long step, int maxrows) {
+        fetches.add(new long[] { start, end });
+        final long first = start - Math.floorMod(start, step);
+        final long last = end + Math.floorMod(-end, step);
+        final int rows = (int) ((last - first) / step) + 1;
+        final long[] timestamps = new long[rows];
+        final double[] values = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            timestamps[i] = first + i * step;
+            values[i] = timestamps[i] + step <= now.get() ? timestamps[i] / step : Double.NaN;
+        }
+        final Map<String, double[]> columns = Maps.newHashMap();
+        columns.put("x", values);
+        return new FetchResults(timestamps, columns, step, Maps.newHashMap(), null);
+    }
+}
@@ -30,7 +30,8 @@ package org.opennms.netmgt.measurements.filters.impl;
 
 import java.util.Map.Entry;
 
-import org.opennms.netmgt.measurements.api.Filter;
+import org.opennms.netmgt.measurements.api.ColumnFilter;
+import org.opennms.netmgt.measurements.api.FetchResults;
 import org.opennms.netmgt.measurements.api.FilterInfo;
 import org.opennms.netmgt.measurements.api.FilterParam;
 
@@ -42,7 +43,7 @@ import com.google.common.collect.RowSortedTable;
  * @author jwhite
  */
 @FilterInfo(name="Derivative", description="Calculates the derivative (rate of change) between rows.")
-public class Derivative implements Filter {
+public class Derivative implements ColumnFilter {
 
     @FilterParam(key="inputColumn", required=true, displayName="Input", description="Input column.")
     private String m_inputColumn;
@@ -72,4 +73,17 @@ public class Derivative implements Filter {
             lastEntry = entry;
         }
     }
+
+    @Override
+    public void filter(FetchResults results) {
+        final double[] values = results.getColumns().get(m_inputColumn);
+        if (values == null) {
+            return;
+        }
+        final double[] slopes = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            slopes[i] = i > 0 ? values[i] - values[i - 1] : Double.NaN;
+        }
+        results.getColumns().put(m_outputColumn, slopes);
+    }
 }
@@ -28,9 +28,11 @@
 
 package org.opennms.netmgt.measurements.filters.impl;
 
+import java.util.Arrays;
 import java.util.Map;
 
-import org.opennms.netmgt.measurements.api.Filter;
+import org.opennms.netmgt.measurements.api.ColumnFilter;
+import org.opennms.netmgt.measurements.api.FetchResults;
 import org.opennms.netmgt.measurements.api.FilterInfo;
 import org.opennms.netmgt.measurements.api.FilterParam;
 
@@ -42,7 +44,7 @@ import com.google.common.collect.RowSortedTable;
  * @author jwhite
  */
 @FilterInfo(name="Percentile", description="Calculates percentiles")
-public class Percentile implements Filter {
+public class Percentile implements ColumnFilter {
 
     @FilterParam(key="inputColumn", required=true, displayName="Input", description="Input column.")
     private String m_inputColumn;
@@ -73,12 +75,27 @@ public class Percentile implements Filter {
         }
 
         // Calculate the percentile
-        org.apache.commons.math3.stat.descriptive.rank.Percentile percentileCalculator = new org.apache.commons.math3.stat.descriptive.rank.Percentile();
-        Double nthPercentile = percentileCalculator.evaluate(values, 100 * m_quantile);
+        Double nthPercentile = evaluate(values);
 
         // Set the values of the output column to the calculated statistics
         for (Long rowKey : column.keySet()) {
             qrAsTable.put(rowKey, m_outputColumn, nthPercentile);
         }
     }
+
+    @Override
+    public void filter(FetchResults results) {
+        final double[] values = results.getColumns().get(m_inputColumn);
+        if (values == null || values.length < 1) {
+            return;
+        }
+        final double[] output = new double[values.length];
+        Arrays.fill(output, evaluate(values));
+        results.getColumns().put(m_outputColumn, output);
+    }
+
+    private double evaluate(double[] values) {
+        org.apache.commons.math3.stat.descriptive.rank.Percentile percentileCalculator = new org.apache.commons.math3.stat.descriptive.rank.Percentile();
+        return percentileCalculator.evaluate(values, 100 * m_quantile);
+    }
 }
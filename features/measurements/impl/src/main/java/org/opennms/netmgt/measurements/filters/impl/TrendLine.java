@@ -28,34 +28,33 @@
 
 package org.opennms.netmgt.measurements.filters.impl;
 
-import java.util.Date;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Map;
 
-import org.opennms.netmgt.integrations.R.RScriptException;
-import org.opennms.netmgt.integrations.R.RScriptExecutor;
-import org.opennms.netmgt.integrations.R.RScriptInput;
-import org.opennms.netmgt.integrations.R.RScriptOutput;
+import org.apache.commons.math3.stat.regression.OLSMultipleLinearRegression;
+import org.opennms.netmgt.measurements.api.ColumnFilter;
+import org.opennms.netmgt.measurements.api.FetchResults;
 import org.opennms.netmgt.measurements.api.Filter;
 import org.opennms.netmgt.measurements.api.FilterInfo;
 import org.opennms.netmgt.measurements.api.FilterParam;
-import org.opennms.netmgt.measurements.filters.impl.Utils.TableLimits;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.ImmutableTable;
-import com.google.common.collect.Maps;
 import com.google.common.collect.RowSortedTable;
 
 /**
- * Fits a trend line to the samples in a column using R.
+ * Fits a trend line to the samples in a column.
+ *
+ * The polynomial is fitted using least squares, ignoring NaNs, like R's
+ * <code>lm(y ~ poly(x, polynomialOrder))</code> which was previously used.
  *
  * @author jwhite
  */
-@FilterInfo(name="Trend", description="Fits a trend line or polynomial to a given column.", backend="R")
-public class TrendLine implements Filter {
+@FilterInfo(name="Trend", description="Fits a trend line or polynomial to a given column.")
+public class TrendLine implements ColumnFilter {
     private static final Logger LOG = LoggerFactory.getLogger(TrendLine.class);
-    private static final String PATH_TO_R_SCRIPT = "/org/opennms/netmgt/measurements/filters/impl/trendLine.R";
 
     @FilterParam(key="inputColumn", required=true, displayName="Input", description="Input column.")
     private String m_inputColumn;
@@ -79,51 +78,112 @@ public class TrendLine implements Filter {
     }
 
     @Override
-    public void filter(RowSortedTable<Long, String, Double> table) throws RScriptException {
+    public void filter(RowSortedTable<Long, String, Double> table) {
         Preconditions.checkArgument(table.containsColumn(TIMESTAMP_COLUMN_NAME), String.format("Data source must have a '%s' column.", Filter.TIMESTAMP_COLUMN_NAME));
 
+        final FetchResults results = new FetchResults(table, 0, Collections.emptyMap(), null);
+        filter(results);
+
+        final long[] timestamps = results.getTimestamps();
+        final double[] trend = results.getColumns().get(m_outputColumn);
+        if (trend == null) {
+            return;
+        }
+        for (int i = 0; i < timestamps.length; i++) {
+            table.put((long)i, TIMESTAMP_COLUMN_NAME, (double)timestamps[i]);
+            if (!Double.isNaN(trend[i])) {
+                table.put((long)i, m_outputColumn, trend[i]);
+            }
+        }
+    }
+
+    @Override
+    public void filter(FetchResults results) {
+        final long[] timestamps = results.getTimestamps();
+        final Map<String, double[]> columns = results.getColumns();
+        final double[] values = columns.get(m_inputColumn);
+
         // Determine the index of the first and last non-NaN values
         // Assume the values between these are contiguous
-        TableLimits limits = Utils.getRowsWithValues(table, m_inputColumn);
+        int firstRowWithValues = -1;
+        int lastRowWithValues = -1;
+        int numSamples = 0;
+        for (int i = 0; values != null && i < values.length; i++) {
+            if (!Double.isNaN(values[i])) {
+                if (firstRowWithValues < 0) {
+                    firstRowWithValues = i;
+                }
+                lastRowWithValues = i;
+                numSamples++;
+            }
+        }
 
         // Make sure we have some samples
-        long numSampleRows = limits.lastRowWithValues - limits.firstRowWithValues;
-        if (numSampleRows < 1) {
+        if (lastRowWithValues - firstRowWithValues < 1) {
             LOG.error("Insufficient values in column for trending. Excluding trend from data source.");
             return;
         }
 
         // Determine the step size
-        Date lastTimestamp = new Date(table.get(limits.lastRowWithValues, TIMESTAMP_COLUMN_NAME).longValue());
-        long stepInMs = (long)(table.get(limits.lastRowWithValues, TIMESTAMP_COLUMN_NAME) - table.get(limits.lastRowWithValues-1, Filter.TIMESTAMP_COLUMN_NAME));
+        final long lastTimestamp = timestamps[lastRowWithValues];
+        final long stepInMs = lastTimestamp - timestamps[lastRowWithValues - 1];
 
         // Num steps ahead
         int numStepsAhead = (int)Math.floor(m_secondsAhead * 1000d / stepInMs);
         numStepsAhead = Math.max(1, numStepsAhead);
 
-        // Script arguments
-        Map<String, Object> arguments = Maps.newHashMap();
-        arguments.put("inputColumn", m_inputColumn);
-        arguments.put("polynomialOrder", m_polynomialOrder);
-        // Array indices in R start at 1
-        arguments.put("firstIndex", limits.firstRowWithValues+1);
-        arguments.put("lastIndex", limits.lastRowWithValues+1);
-        arguments.put("numStepsAhead", numStepsAhead);
-        arguments.put("stepInMs", stepInMs);
-
-        // Calculate the trend line/curve
-        RScriptExecutor executor = new RScriptExecutor();
-        RScriptOutput output = executor.exec(PATH_TO_R_SCRIPT, new RScriptInput(table, arguments));
-        ImmutableTable<Long, String, Double> outputTable = output.getTable();
+        // Timestamps are centered and scaled to keep the powers of the polynomial well conditioned
+        final double center = (timestamps[firstRowWithValues] + lastTimestamp) / 2d;
+        final double scale = Math.max(1d, (lastTimestamp - timestamps[firstRowWithValues]) / 2d);
+
+        // Least-square fit
+        final double[] y = new double[numSamples];
+        final double[][] x = new double[numSamples][];
+        for (int i = firstRowWithValues, k = 0; i <= lastRowWithValues; i++) {
+            if (!Double.isNaN(values[i])) {
+                y[k] = values[i];
+                x[k++] = powers((timestamps[i] - center) / scale);
+            }
+        }
+        final OLSMultipleLinearRegression regression = new OLSMultipleLinearRegression();
+        regression.newSampleData(y, x);
+        final double[] coefficients = regression.estimateRegressionParameters();
+
+        final int lastRow = lastRowWithValues + numStepsAhead;
+        if (lastRow >= timestamps.length) {
+            results.appendRows(lastRow - timestamps.length + 1);
+        }
 
         // Calculate the value of the polynomial for all of the samples
         // and the requested number of steps ahead
-        long j = 0;
-        for (long i = limits.firstRowWithValues; i <= (limits.lastRowWithValues + numStepsAhead); i++) {
-            if (i >= limits.lastRowWithValues) {
-                table.put(i, TIMESTAMP_COLUMN_NAME, (double)new Date(lastTimestamp.getTime() + stepInMs * (i-limits.lastRowWithValues)).getTime());
+        final long[] outputTimestamps = results.getTimestamps();
+        final double[] trend = new double[outputTimestamps.length];
+        Arrays.fill(trend, Double.NaN);
+        for (int i = firstRowWithValues; i <= lastRow; i++) {
+            if (i >= lastRowWithValues) {
+                outputTimestamps[i] = lastTimestamp + stepInMs * (i - lastRowWithValues);
             }
-            table.put(i, m_outputColumn, outputTable.get(j++, "x"));
+            trend[i] = evaluate(coefficients, (timestamps[firstRowWithValues] + stepInMs * (i - firstRowWithValues) - center) / scale);
+        }
+        results.getColumns().put(m_outputColumn, trend);
+    }
+
+    private double[] powers(double x) {
+        final double[] powers = new double[m_polynomialOrder];
+        double power = 1;
+        for (int k = 0; k < m_polynomialOrder; k++) {
+            power *= x;
+            powers[k] = power;
+        }
+        return powers;
+    }
+
+    private static double evaluate(double[] coefficients, double x) {
+        // Horner's method, the first coefficient is the intercept
+        double value = 0;
+        for (int k = coefficients.length - 1; k >= 0; k--) {
+            value = value * x + coefficients[k];
         }
+        return value;
     }
 }
@@ -30,9 +30,17 @@ package org.opennms.netmgt.measurements.impl;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.jrobin.core.RrdException;
 import org.opennms.netmgt.dao.api.ResourceDao;
@@ -54,7 +62,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.orm.ObjectRetrievalFailureException;
 
 import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Used to fetch measurements from RRD files.
@@ -65,6 +75,17 @@ public abstract class AbstractRrdBasedFetchStrategy implements MeasurementFetchS
 
     private static final Logger LOG = LoggerFactory.getLogger(AbstractRrdBasedFetchStrategy.class);
 
+    /**
+     * Maximum number of threads used to load the attributes of the resources and to read the files of a fetch.
+     */
+    public static final String FETCH_THREADS_PROPERTY = "org.opennms.measurements.fetch.threads";
+
+    private static final int FETCH_THREADS = Math.max(1, Integer.getInteger(FETCH_THREADS_PROPERTY,
+            Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()))));
+
+    // Shared by all fetches, the caller runs the task once the queue is full
+    private static final ExecutorService FETCH_EXECUTOR = createExecutor(FETCH_THREADS);
+
     @Autowired
     private ResourceDao m_resourceDao;
 
@@ -81,7 +102,7 @@ public abstract class AbstractRrdBasedFetchStrategy implements MeasurementFetchS
 
         final Map<Source, String> rrdsBySource = Maps.newHashMap();
         
-        final Map<ResourceId, OnmsResource> resourceCache = new HashMap<>();
+        final Map<ResourceId, OnmsResource> resourceCache = getResources(sources);
 
         for (final Source source : sources) {
             final ResourceId resourceId;
@@ -95,7 +116,7 @@ public abstract class AbstractRrdBasedFetchStrategy implements MeasurementFetchS
             }
 
             // Grab the resource
-            final OnmsResource resource = resourceCache.computeIfAbsent(resourceId, r -> m_resourceDao.getResourceById(r));
+            final OnmsResource resource = resourceCache.get(resourceId);
 
             if (resource == null) {
                 if (relaxed) continue;
@@ -154,13 +175,126 @@ public abstract class AbstractRrdBasedFetchStrategy implements MeasurementFetchS
             return Utils.createEmtpyFetchResults(step, constants);
         }
 
-        FetchResults fetchResults = fetchMeasurements(start, end, step, maxrows, rrdsBySource, constants, metadata);
+        FetchResults fetchResults = fetchConcurrently(start, end, step, maxrows, rrdsBySource, constants, metadata);
         if (relaxed) {
             Utils.fillMissingValues(fetchResults, sources);
         }
         return fetchResults;
     }
 
+    /**
+     * Splits the files into groups which are fetched concurrently. The columns of the groups
+     * are combined as long as all of them end up with the same timestamps, which is the case
+     * when the files share the same archives. Otherwise all files are fetched at once, so that
+     * the values are consolidated to a common step.
+     */
+    private FetchResults fetchConcurrently(long start, long end, long step, int maxrows,
+                                           Map<Source, String> rrdsBySource, Map<String, Object> constants,
+                                           QueryMetadata metadata) throws RrdException {
+        final Map<String, List<Source>> sourcesByRrd = new LinkedHashMap<>();
+        for (final Map.Entry<Source, String> entry : rrdsBySource.entrySet()) {
+            sourcesByRrd.computeIfAbsent(entry.getValue(), rrd -> new ArrayList<>()).add(entry.getKey());
+        }
+        final int groupCount = Math.min(sourcesByRrd.size(), FETCH_THREADS);
+        if (!isConcurrentFetchSupported() || groupCount < 2) {
+            return fetchMeasurements(start, end, step, maxrows, rrdsBySource, constants, metadata);
+        }
+
+        final List<Map<Source, String>> groups = new ArrayList<>(groupCount);
+        for (int i = 0; i < groupCount; i++) {
+            groups.add(new LinkedHashMap<>());
+        }
+        int k = 0;
+        for (final Map.Entry<String, List<Source>> entry : sourcesByRrd.entrySet()) {
+            final Map<Source, String> group = groups.get(k++ % groupCount);
+            for (final Source source : entry.getValue()) {
+                group.put(source, entry.getKey());
+            }
+        }
+
+        final List<Future<FetchResults>> futures = new ArrayList<>(groupCount - 1);
+        for (final Map<Source, String> group : groups.subList(1, groupCount)) {
+            futures.add(FETCH_EXECUTOR.submit(() -> fetchMeasurements(start, end, step, maxrows, group, constants, metadata)));
+        }
+        final FetchResults first = fetchMeasurements(start, end, step, maxrows, groups.get(0), constants, metadata);
+
+        final Map<String, double[]> columns = new HashMap<>(first.getColumns());
+        boolean aligned = true;
+        for (final Future<FetchResults> future : futures) {
+            final FetchResults results = getUnchecked(future, RrdException.class);
+            aligned &= results.getStep() == first.getStep() && Arrays.equals(results.getTimestamps(), first.getTimestamps());
+            columns.putAll(results.getColumns());
+        }
+        if (!aligned) {
+            LOG.debug("The files of the sources have different steps, fetching them at once.");
+            return fetchMeasurements(start, end, step, maxrows, rrdsBySource, constants, metadata);
+        }
+        return new FetchResults(first.getTimestamps(), columns, first.getStep(), constants, metadata);
+    }
+
+    /**
+     * Resolves the distinct resources of the sources and loads their attributes, which requires
+     * scanning their directories, concurrently. The resources are resolved by the calling thread,
+     * which may be bound to a session. Sources with ill-formed resource ids are skipped and must
+     * be handled by the caller.
+     */
+    private Map<ResourceId, OnmsResource> getResources(List<Source> sources) throws Exception {
+        final Map<ResourceId, OnmsResource> resources = new LinkedHashMap<>();
+        for (final Source source : sources) {
+            try {
+                resources.computeIfAbsent(ResourceId.fromString(source.getResourceId()), r -> m_resourceDao.getResourceById(r));
+            } catch (final IllegalArgumentException ex) {
+                // Reported when iterating over the sources
+            }
+        }
+        if (resources.size() < 2 || FETCH_THREADS < 2) {
+            return resources;
+        }
+
+        final List<Future<?>> futures = new ArrayList<>(resources.size());
+        for (final OnmsResource resource : resources.values()) {
+            if (resource != null) {
+                futures.add(FETCH_EXECUTOR.submit(() -> {
+                    resource.getRrdGraphAttributes();
+                    resource.getStringPropertyAttributes();
+                }));
+            }
+        }
+        for (final Future<?> future : futures) {
+            getUnchecked(future, Exception.class);
+        }
+        return resources;
+    }
+
+    private static <T, E extends Exception> T getUnchecked(Future<T> future, Class<E> exceptionType) throws E {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while fetching the measurements.", e);
+        } catch (final ExecutionException e) {
+            Throwables.propagateIfInstanceOf(e.getCause(), exceptionType);
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private static ExecutorService createExecutor(int threads) {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<>(threads * 64),
+                new ThreadFactoryBuilder().setNameFormat("measurements-fetch-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Whether {@link #fetchMeasurements(long, long, long, int, Map, Map, QueryMetadata)} may be
+     * invoked concurrently with distinct files.
+     */
+    protected boolean isConcurrentFetchSupported() {
+        return false;
+    }
+
     /**
      * Performs the actual retrieval of the values from the RRD/JRB files.
      */
@@ -0,0 +1,1011 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.measurements.impl;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.apache.commons.jexl2.parser.ASTAdditiveNode;
+import org.apache.commons.jexl2.parser.ASTAndNode;
+import org.apache.commons.jexl2.parser.ASTAssignment;
+import org.apache.commons.jexl2.parser.ASTDivNode;
+import org.apache.commons.jexl2.parser.ASTEQNode;
+import org.apache.commons.jexl2.parser.ASTFalseNode;
+import org.apache.commons.jexl2.parser.ASTFunctionNode;
+import org.apache.commons.jexl2.parser.ASTGENode;
+import org.apache.commons.jexl2.parser.ASTGTNode;
+import org.apache.commons.jexl2.parser.ASTIdentifier;
+import org.apache.commons.jexl2.parser.ASTJexlScript;
+import org.apache.commons.jexl2.parser.ASTLENode;
+import org.apache.commons.jexl2.parser.ASTLTNode;
+import org.apache.commons.jexl2.parser.ASTModNode;
+import org.apache.commons.jexl2.parser.ASTMulNode;
+import org.apache.commons.jexl2.parser.ASTNENode;
+import org.apache.commons.jexl2.parser.ASTNotNode;
+import org.apache.commons.jexl2.parser.ASTNumberLiteral;
+import org.apache.commons.jexl2.parser.ASTOrNode;
+import org.apache.commons.jexl2.parser.ASTReference;
+import org.apache.commons.jexl2.parser.ASTReferenceExpression;
+import org.apache.commons.jexl2.parser.ASTTernaryNode;
+import org.apache.commons.jexl2.parser.ASTTrueNode;
+import org.apache.commons.jexl2.parser.ASTUnaryMinusNode;
+import org.apache.commons.jexl2.parser.ASTVar;
+import org.apache.commons.jexl2.parser.JexlNode;
+
+/**
+ * An expression compiled to operate on whole columns of primitive values, rather
+ * than on the boxed values of a single row.
+ *
+ * Only a subset of the JEXL syntax is supported: numeric literals, variables, arithmetic,
+ * comparisons, logical operators, the ternary operator and the functions of {@link Math}
+ * and {@link StrictMath} taking and returning doubles. Within this subset, the results are the
+ * same as the ones JEXL computes row by row, including the way JEXL switches between integer and
+ * floating point arithmetic, returns 0 when dividing by 0 and orders NaN before all other numbers.
+ * Expressions using anything else are not compiled and must be evaluated by JEXL.
+ */
+final class CompiledExpression {
+
+    private enum Kind {
+        DOUBLE,
+        LONG,
+        // Integer or floating point, depending on the row
+        MIXED,
+        BOOLEAN
+    }
+
+    private enum Operator {
+        ADD,
+        SUBTRACT,
+        MULTIPLY,
+        DIVIDE,
+        MOD,
+        EQ,
+        NE,
+        LT,
+        LE,
+        GT,
+        GE
+    }
+
+    private final Node root;
+    private final int numRows;
+
+    private CompiledExpression(Node root, int numRows) {
+        this.root = root;
+        this.numRows = numRows;
+    }
+
+    /**
+     * Compiles the first statement of the script, which is the one JEXL evaluates.
+     *
+     * @param script the parsed expression
+     * @param functions the function namespaces of the engine
+     * @param variables resolves a variable to its column, either a double[] or a long[] with one value
+     *                  per row, or to a constant {@link Number}, and to null otherwise
+     * @param numRows the number of rows
+     * @return the compiled expression or null if the expression cannot be compiled
+     */
+    static CompiledExpression compile(ASTJexlScript script, Map<String, Object> functions, Function<String, Object> variables, int numRows) {
+        if (script.jjtGetNumChildren() < 1) {
+            return null;
+        }
+        final Node root = new Compiler(functions, variables).compile(script.jjtGetChild(0));
+        // Booleans cannot be converted to doubles, leave it to JEXL to fail
+        if (root == null || root.kind == Kind.BOOLEAN) {
+            return null;
+        }
+        return new CompiledExpression(root, numRows);
+    }
+
+    /**
+     * Evaluates the expression for all rows.
+     *
+     * @return the values of the expression, converted to doubles
+     * @throws ArithmeticException if the integer arithmetic overflows, where JEXL would continue
+     *         using BigIntegers, the expression must then be evaluated by JEXL
+     */
+    double[] evaluate() {
+        final double[] values = root.toDoubles(numRows);
+        // Don't share the column of the variable
+        return root instanceof DoubleColumn ? values.clone() : values;
+    }
+
+    /**
+     * Collects the names of the variables and of the function namespaces referenced by the expression.
+     *
+     * @return false if the expression assigns variables
+     */
+    static boolean collectReferences(JexlNode node, Set<String> variables, Set<String> namespaces) {
+        if (node instanceof ASTAssignment || node instanceof ASTVar) {
+            return false;
+        }
+        int first = 0;
+        if (node instanceof ASTFunctionNode) {
+            namespaces.add(node.jjtGetChild(0).image);
+            // Skip the namespace and the name of the function
+            first = 2;
+        } else if (node instanceof ASTIdentifier) {
+            variables.add(node.image);
+        }
+        for (int i = first; i < node.jjtGetNumChildren(); i++) {
+            if (!collectReferences(node.jjtGetChild(i), variables, namespaces)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Compiler {
+        private final Map<String, Object> functions;
+        private final Function<String, Object> variables;
+
+        private Compiler(Map<String, Object> functions, Function<String, Object> variables) {
+            this.functions = functions;
+            this.variables = variables;
+        }
+
+        private Node compile(JexlNode node) {
+            if (node instanceof ASTReference || node instanceof ASTReferenceExpression) {
+                return node.jjtGetNumChildren() == 1 ? compile(node.jjtGetChild(0)) : null;
+            } else if (node instanceof ASTIdentifier) {
+                return variable(node.image);
+            } else if (node instanceof ASTNumberLiteral) {
+                return constant(((ASTNumberLiteral) node).getLiteral());
+            } else if (node instanceof ASTTrueNode) {
+                return new BooleanConstant(true);
+            } else if (node instanceof ASTFalseNode) {
+                return new BooleanConstant(false);
+            } else if (node instanceof ASTAdditiveNode) {
+                Node left = compile(node.jjtGetChild(0));
+                for (int i = 2; i < node.jjtGetNumChildren() && left != null; i += 2) {
+                    final String operator = node.jjtGetChild(i - 1).image;
+                    if ("+".equals(operator)) {
+                        left = arithmetic(Operator.ADD, left, compile(node.jjtGetChild(i)));
+                    } else if ("-".equals(operator)) {
+                        left = arithmetic(Operator.SUBTRACT, left, compile(node.jjtGetChild(i)));
+                    } else {
+                        return null;
+                    }
+                }
+                return left;
+            } else if (node instanceof ASTMulNode) {
+                return arithmetic(Operator.MULTIPLY, node);
+            } else if (node instanceof ASTDivNode) {
+                return arithmetic(Operator.DIVIDE, node);
+            } else if (node instanceof ASTModNode) {
+                return arithmetic(Operator.MOD, node);
+            } else if (node instanceof ASTUnaryMinusNode) {
+                return negate(compile(node.jjtGetChild(0)));
+            } else if (node instanceof ASTEQNode) {
+                return comparison(Operator.EQ, node);
+            } else if (node instanceof ASTNENode) {
+                return comparison(Operator.NE, node);
+            } else if (node instanceof ASTLTNode) {
+                return comparison(Operator.LT, node);
+            } else if (node instanceof ASTLENode) {
+                return comparison(Operator.LE, node);
+            } else if (node instanceof ASTGTNode) {
+                return comparison(Operator.GT, node);
+            } else if (node instanceof ASTGENode) {
+                return comparison(Operator.GE, node);
+            } else if (node instanceof ASTAndNode || node instanceof ASTOrNode) {
+                final Node left = compile(node.jjtGetChild(0));
+                final Node right = compile(node.jjtGetChild(1));
+                return left == null || right == null ? null : new Logical(node instanceof ASTAndNode, left, right);
+            } else if (node instanceof ASTNotNode) {
+                final Node operand = compile(node.jjtGetChild(0));
+                return operand == null ? null : new Not(operand);
+            } else if (node instanceof ASTTernaryNode) {
+                return ternary(node);
+            } else if (node instanceof ASTFunctionNode) {
+                return function(node);
+            }
+            return null;
+        }
+
+        private Node variable(String name) {
+            final Object value = variables.apply(name);
+            if (value instanceof double[]) {
+                return new DoubleColumn((double[]) value);
+            } else if (value instanceof long[]) {
+                return new LongColumn((long[]) value);
+            }
+            return constant(value);
+        }
+
+        private static Node constant(Object value) {
+            if (value instanceof Double) {
+                return new DoubleConstant((Double) value);
+            } else if (value instanceof Float) {
+                return new DoubleConstant((Float) value);
+            } else if (value instanceof Integer || value instanceof Long) {
+                return new LongConstant(((Number) value).longValue());
+            }
+            // BigIntegers and BigDecimals use their own arithmetic, strings are coerced on each evaluation
+            return null;
+        }
+
+        private Node arithmetic(Operator operator, JexlNode node) {
+            if (node.jjtGetNumChildren() != 2) {
+                return null;
+            }
+            return arithmetic(operator, compile(node.jjtGetChild(0)), compile(node.jjtGetChild(1)));
+        }
+
+        private static Node arithmetic(Operator operator, Node left, Node right) {
+            if (left == null || right == null || left.kind == Kind.BOOLEAN || right.kind == Kind.BOOLEAN) {
+                return null;
+            }
+            return new Arithmetic(operator, left, right);
+        }
+
+        private static Node negate(Node operand) {
+            if (operand == null || operand.kind == Kind.BOOLEAN) {
+                return null;
+            }
+            // Fold negative literals, so that negative float literals can still be passed to functions
+            if (operand instanceof DoubleConstant) {
+                return ((DoubleConstant) operand).negate();
+            } else if (operand instanceof LongConstant) {
+                final long value = ((LongConstant) operand).value;
+                return isNegationExact(value) ? new LongConstant(-value) : null;
+            }
+            return new Negate(operand);
+        }
+
+        private Node comparison(Operator operator, JexlNode node) {
+            final Node left = compile(node.jjtGetChild(0));
+            final Node right = compile(node.jjtGetChild(1));
+            if (left == null || right == null) {
+                return null;
+            }
+            // Booleans can only be compared for equality
+            if ((left.kind == Kind.BOOLEAN || right.kind == Kind.BOOLEAN) && operator != Operator.EQ && operator != Operator.NE) {
+                return null;
+            }
+            return new Comparison(operator, left, right);
+        }
+
+        private Node ternary(JexlNode node) {
+            // The elvis operator returns the condition itself
+            if (node.jjtGetNumChildren() != 3) {
+                return null;
+            }
+            final Node condition = compile(node.jjtGetChild(0));
+            final Node ifTrue = compile(node.jjtGetChild(1));
+            final Node ifFalse = compile(node.jjtGetChild(2));
+            if (condition == null || ifTrue == null || ifFalse == null
+                    || (ifTrue.kind == Kind.BOOLEAN) != (ifFalse.kind == Kind.BOOLEAN)) {
+                return null;
+            }
+            return new Ternary(condition, ifTrue, ifFalse);
+        }
+
+        private Node function(JexlNode node) {
+            final Object namespace = functions.get(node.jjtGetChild(0).image);
+            if (namespace != Math.class && namespace != StrictMath.class) {
+                return null;
+            }
+            final String name = node.jjtGetChild(1).image;
+            final int arity = node.jjtGetNumChildren() - 2;
+            if (arity != 1 && arity != 2) {
+                return null;
+            }
+
+            Method method = null;
+            int overloads = 0;
+            for (Method candidate : ((Class<?>) namespace).getMethods()) {
+                if (!candidate.getName().equals(name) || candidate.getParameterCount() != arity || !Modifier.isStatic(candidate.getModifiers())) {
+                    continue;
+                }
+                overloads++;
+                if (candidate.getReturnType() == double.class
+                        && Arrays.stream(candidate.getParameterTypes()).allMatch(type -> type == double.class)) {
+                    method = candidate;
+                }
+            }
+            if (method == null) {
+                return null;
+            }
+
+            final Node[] arguments = new Node[arity];
+            for (int i = 0; i < arity; i++) {
+                Node argument = compile(node.jjtGetChild(i + 2));
+                if (argument == null || argument.kind == Kind.BOOLEAN) {
+                    return null;
+                }
+                // JEXL selects the most specific overload, which only is the one taking doubles for doubles
+                if (overloads > 1 && (argument.kind != Kind.DOUBLE || argument.isFloat)) {
+                    return null;
+                }
+                // Floats are widened when passed to a method, rather than converted using their string representation
+                if (argument.isFloat) {
+                    if (!(argument instanceof DoubleConstant)) {
+                        return null;
+                    }
+                    argument = ((DoubleConstant) argument).widen();
+                }
+                arguments[i] = argument;
+            }
+
+            try {
+                return new Call(MethodHandles.publicLookup().unreflect(method), arguments);
+            } catch (IllegalAccessException e) {
+                return null;
+            }
+        }
+    }
+
+    private static boolean isNegationExact(long value) {
+        // JEXL negates Integers as ints, which wraps for Integer.MIN_VALUE
+        return value != Long.MIN_VALUE && value != Integer.MIN_VALUE;
+    }
+
+    /**
+     * Compares two numbers the same way JEXL does, NaN is equal to itself and less than any other number.
+     */
+    private static int compare(double left, double right) {
+        if (Double.isNaN(left)) {
+            return Double.isNaN(right) ? 0 : -1;
+        } else if (Double.isNaN(right)) {
+            return 1;
+        } else if (left < right) {
+            return -1;
+        } else if (left > right) {
+            return 1;
+        }
+        return 0;
+    }
+
+    private static boolean test(Operator operator, int comparison) {
+        switch (operator) {
+            case EQ:
+                return comparison == 0;
+            case NE:
+                return comparison != 0;
+            case LT:
+                return comparison < 0;
+            case LE:
+                return comparison <= 0;
+            case GT:
+                return comparison > 0;
+            case GE:
+                return comparison >= 0;
+            default:
+                throw new IllegalArgumentException(operator.name());
+        }
+    }
+
+    private static double apply(Operator operator, double left, double right) {
+        switch (operator) {
+            case ADD:
+                return left + right;
+            case SUBTRACT:
+                return left - right;
+            case MULTIPLY:
+                return left * right;
+            case DIVIDE:
+                // JEXL returns 0 rather than failing
+                return right == 0d ? 0d : left / right;
+            case MOD:
+                return right == 0d ? 0d : left % right;
+            default:
+                throw new IllegalArgumentException(operator.name());
+        }
+    }
+
+    private static long applyExact(Operator operator, long left, long right) {
+        switch (operator) {
+            case ADD:
+                return Math.addExact(left, right);
+            case SUBTRACT:
+                return Math.subtractExact(left, right);
+            case MULTIPLY:
+                return Math.multiplyExact(left, right);
+            default:
+                throw new IllegalArgumentException(operator.name());
+        }
+    }
+
+    /**
+     * Applies the operator to two integers, the result is a floating point number when JEXL returns one.
+     */
+    private static void apply(Operator operator, long left, long right, Mixed result, int i) {
+        switch (operator) {
+            case DIVIDE:
+                if (right == 0) {
+                    result.setDouble(i, 0d);
+                } else if (left == Long.MIN_VALUE && right == -1) {
+                    throw new ArithmeticException("long overflow");
+                } else {
+                    result.setLong(i, left / right);
+                }
+                break;
+            case MOD:
+                // Integers are reduced using BigInteger#mod(), which fails for non-positive moduli
+                if (right <= 0) {
+                    result.setDouble(i, 0d);
+                } else {
+                    result.setLong(i, Math.floorMod(left, right));
+                }
+                break;
+            default:
+                result.setLong(i, applyExact(operator, left, right));
+        }
+    }
+
+    /**
+     * Values of which some are integers and others are floating point numbers.
+     */
+    private static final class Mixed {
+        private final double[] doubles;
+        private final long[] longs;
+        // Null if either all values are integers, or all are floating point numbers
+        private final boolean[] floating;
+
+        private Mixed(int numRows) {
+            doubles = new double[numRows];
+            longs = new long[numRows];
+            floating = new boolean[numRows];
+        }
+
+        private Mixed(double[] doubles, long[] longs) {
+            this.doubles = doubles;
+            this.longs = longs;
+            this.floating = null;
+        }
+
+        private boolean isFloating(int i) {
+            return floating == null ? longs == null : floating[i];
+        }
+
+        private double getDouble(int i) {
+            return isFloating(i) ? doubles[i] : longs[i];
+        }
+
+        private long getLong(int i) {
+            return longs[i];
+        }
+
+        private void setDouble(int i, double value) {
+            floating[i] = true;
+            doubles[i] = value;
+        }
+
+        private void setLong(int i, long value) {
+            floating[i] = false;
+            longs[i] = value;
+        }
+
+        private void set(int i, Mixed values) {
+            if (values.isFloating(i)) {
+                setDouble(i, values.doubles[i]);
+            } else {
+                setLong(i, values.longs[i]);
+            }
+        }
+    }
+
+    private abstract static class Node {
+        final Kind kind;
+        // The node may evaluate to a Float, which JEXL converts differently when calling methods
+        final boolean isFloat;
+
+        private Node(Kind kind) {
+            this(kind, false);
+        }
+
+        private Node(Kind kind, boolean isFloat) {
+            this.kind = kind;
+            this.isFloat = isFloat;
+        }
+
+        double[] doubles(int numRows) {
+            throw new UnsupportedOperationException();
+        }
+
+        long[] longs(int numRows) {
+            throw new UnsupportedOperationException();
+        }
+
+        Mixed mixed(int numRows) {
+            throw new UnsupportedOperationException();
+        }
+
+        boolean[] booleans(int numRows) {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Converts the values to doubles, the same way JexlArithmetic#toDouble(Object) does.
+         */
+        final double[] toDoubles(int numRows) {
+            switch (kind) {
+                case DOUBLE:
+                    return doubles(numRows);
+                case LONG:
+                    final long[] longs = longs(numRows);
+                    final double[] doubles = new double[numRows];
+                    for (int i = 0; i < numRows; i++) {
+                        doubles[i] = longs[i];
+                    }
+                    return doubles;
+                case MIXED:
+                    final Mixed mixed = mixed(numRows);
+                    final double[] values = new double[numRows];
+                    for (int i = 0; i < numRows; i++) {
+                        values[i] = mixed.getDouble(i);
+                    }
+                    return values;
+                default:
+                    throw new IllegalStateException("Booleans are not numbers.");
+            }
+        }
+
+        /**
+         * Converts the values to booleans, the same way JexlArithmetic#toBoolean(Object) does.
+         */
+        final boolean[] toBooleans(int numRows) {
+            if (kind == Kind.BOOLEAN) {
+                return booleans(numRows);
+            }
+            final double[] values = toDoubles(numRows);
+            final boolean[] booleans = new boolean[numRows];
+            for (int i = 0; i < numRows; i++) {
+                booleans[i] = !Double.isNaN(values[i]) && values[i] != 0d;
+            }
+            return booleans;
+        }
+
+        final Mixed toMixed(int numRows) {
+            switch (kind) {
+                case DOUBLE:
+                    return new Mixed(doubles(numRows), null);
+                case LONG:
+                    return new Mixed(null, longs(numRows));
+                case MIXED:
+                    return mixed(numRows);
+                default:
+                    throw new IllegalStateException("Booleans are not numbers.");
+            }
+        }
+    }
+
+    private static final class DoubleColumn extends Node {
+        private final double[] values;
+
+        private DoubleColumn(double[] values) {
+            super(Kind.DOUBLE);
+            this.values = values;
+        }
+
+        @Override
+        double[] doubles(int numRows) {
+            return values;
+        }
+    }
+
+    private static final class LongColumn extends Node {
+        private final long[] values;
+
+        private LongColumn(long[] values) {
+            super(Kind.LONG);
+            this.values = values;
+        }
+
+        @Override
+        long[] longs(int numRows) {
+            return values;
+        }
+    }
+
+    private static final class DoubleConstant extends Node {
+        private final double value;
+        // The value of a Float when widened to a double
+        private final double widened;
+
+        private DoubleConstant(double value) {
+            super(Kind.DOUBLE);
+            this.value = value;
+            this.widened = value;
+        }
+
+        private DoubleConstant(Float value) {
+            super(Kind.DOUBLE, true);
+            // JEXL converts Floats using their string representation
+            this.value = Double.parseDouble(value.toString());
+            this.widened = value.doubleValue();
+        }
+
+        private DoubleConstant(DoubleConstant constant, double value, double widened) {
+            super(Kind.DOUBLE, constant.isFloat);
+            this.value = value;
+            this.widened = widened;
+        }
+
+        private DoubleConstant negate() {
+            return new DoubleConstant(this, -value, -widened);
+        }
+
+        private DoubleConstant widen() {
+            return new DoubleConstant(widened);
+        }
+
+        @Override
+        double[] doubles(int numRows) {
+            final double[] values = new double[numRows];
+            Arrays.fill(values, value);
+            return values;
+        }
+    }
+
+    private static final class LongConstant extends Node {
+        private final long value;
+
+        private LongConstant(long value) {
+            super(Kind.LONG);
+            this.value = value;
+        }
+
+        @Override
+        long[] longs(int numRows) {
+            final long[] values = new long[numRows];
+            Arrays.fill(values, value);
+            return values;
+        }
+    }
+
+    private static final class BooleanConstant extends Node {
+        private final boolean value;
+
+        private BooleanConstant(boolean value) {
+            super(Kind.BOOLEAN);
+            this.value = value;
+        }
+
+        @Override
+        boolean[] booleans(int numRows) {
+            final boolean[] values = new boolean[numRows];
+            Arrays.fill(values, value);
+            return values;
+        }
+    }
+
+    private static final class Arithmetic extends Node {
+        private final Operator operator;
+        private final Node left;
+        private final Node right;
+
+        private Arithmetic(Operator operator, Node left, Node right) {
+            super(kindOf(operator, left, right));
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        private static Kind kindOf(Operator operator, Node left, Node right) {
+            // JEXL uses floating point arithmetic as soon as one of the operands is a floating point number
+            if (left.kind == Kind.DOUBLE || right.kind == Kind.DOUBLE) {
+                return Kind.DOUBLE;
+            } else if (left.kind == Kind.LONG && right.kind == Kind.LONG && operator != Operator.DIVIDE && operator != Operator.MOD) {
+                return Kind.LONG;
+            }
+            return Kind.MIXED;
+        }
+
+        @Override
+        double[] doubles(int numRows) {
+            final double[] l = left.toDoubles(numRows);
+            final double[] r = right.toDoubles(numRows);
+            final double[] values = new double[numRows];
+            switch (operator) {
+                case ADD:
+                    for (int i = 0; i < numRows; i++) {
+                        values[i] = l[i] + r[i];
+                    }
+                    break;
+                case SUBTRACT:
+                    for (int i = 0; i < numRows; i++) {
+                        values[i] = l[i] - r[i];
+                    }
+                    break;
+                case MULTIPLY:
+                    for (int i = 0; i < numRows; i++) {
+                        values[i] = l[i] * r[i];
+                    }
+                    break;
+                default:
+                    for (int i = 0; i < numRows; i++) {
+                        values[i] = apply(operator, l[i], r[i]);
+                    }
+            }
+            return values;
+        }
+
+        @Override
+        long[] longs(int numRows) {
+            final long[] l = left.longs(numRows);
+            final long[] r = right.longs(numRows);
+            final long[] values = new long[numRows];
+            for (int i = 0; i < numRows; i++) {
+                values[i] = applyExact(operator, l[i], r[i]);
+            }
+            return values;
+        }
+
+        @Override
+        Mixed mixed(int numRows) {
+            final Mixed l = left.toMixed(numRows);
+            final Mixed r = right.toMixed(numRows);
+            final Mixed values = new Mixed(numRows);
+            for (int i = 0; i < numRows; i++) {
+                if (l.isFloating(i) || r.isFloating(i)) {
+                    values.setDouble(i, apply(operator, l.getDouble(i), r.getDouble(i)));
+                } else {
+                    apply(operator, l.getLong(i), r.getLong(i), values, i);
+                }
+            }
+            return values;
+        }
+    }
+
+    private static final class Negate extends Node {
+        private final Node operand;
+
+        private Negate(Node operand) {
+            super(operand.kind, operand.isFloat);
+            this.operand = operand;
+        }
+
+        @Override
+        double[] doubles(int numRows) {
+            final double[] values = operand.doubles(numRows).clone();
+            for (int i = 0; i < numRows; i++) {
+                values[i] = -values[i];
+            }
+            return values;
+        }
+
+        @Override
+        long[] longs(int numRows) {
+            final long[] values = operand.longs(numRows).clone();
+            for (int i = 0; i < numRows; i++) {
+                values[i] = negateExact(values[i]);
+            }
+            return values;
+        }
+
+        @Override
+        Mixed mixed(int numRows) {
+            final Mixed operandValues = operand.mixed(numRows);
+            final Mixed values = new Mixed(numRows);
+            for (int i = 0; i < numRows; i++) {
+                if (operandValues.isFloating(i)) {
+                    values.setDouble(i, -operandValues.getDouble(i));
+                } else {
+                    values.setLong(i, negateExact(operandValues.getLong(i)));
+                }
+            }
+            return values;
+        }
+
+        private static long negateExact(long value) {
+            if (!isNegationExact(value)) {
+                throw new ArithmeticException("integer overflow");
+            }
+            return -value;
+        }
+    }
+
+    private static final class Comparison extends Node {
+        private final Operator operator;
+        private final Node left;
+        private final Node right;
+
+        private Comparison(Operator operator, Node left, Node right) {
+            super(Kind.BOOLEAN);
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean[] booleans(int numRows) {
+            final boolean[] values = new boolean[numRows];
+            if (left.kind == Kind.BOOLEAN || right.kind == Kind.BOOLEAN) {
+                final boolean[] l = left.toBooleans(numRows);
+                final boolean[] r = right.toBooleans(numRows);
+                for (int i = 0; i < numRows; i++) {
+                    values[i] = (l[i] == r[i]) == (operator == Operator.EQ);
+                }
+            } else if (left.kind == Kind.DOUBLE || right.kind == Kind.DOUBLE) {
+                final double[] l = left.toDoubles(numRows);
+                final double[] r = right.toDoubles(numRows);
+                for (int i = 0; i < numRows; i++) {
+                    values[i] = test(operator, compare(l[i], r[i]));
+                }
+            } else {
+                final Mixed l = left.toMixed(numRows);
+                final Mixed r = right.toMixed(numRows);
+                for (int i = 0; i < numRows; i++) {
+                    if (l.isFloating(i) || r.isFloating(i)) {
+                        values[i] = test(operator, compare(l.getDouble(i), r.getDouble(i)));
+                    } else {
+                        values[i] = test(operator, Long.compare(l.getLong(i), r.getLong(i)));
+                    }
+                }
+            }
+            return values;
+        }
+    }
+
+    private static final class Logical extends Node {
+        private final boolean and;
+        private final Node left;
+        private final Node right;
+
+        private Logical(boolean and, Node left, Node right) {
+            super(Kind.BOOLEAN);
+            this.and = and;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean[] booleans(int numRows) {
+            final boolean[] values = left.toBooleans(numRows).clone();
+            final boolean[] r = right.toBooleans(numRows);
+            for (int i = 0; i < numRows; i++) {
+                values[i] = and ? values[i] && r[i] : values[i] || r[i];
+            }
+            return values;
+        }
+    }
+
+    private static final class Not extends Node {
+        private final Node operand;
+
+        private Not(Node operand) {
+            super(Kind.BOOLEAN);
+            this.operand = operand;
+        }
+
+        @Override
+        boolean[] booleans(int numRows) {
+            final boolean[] values = operand.toBooleans(numRows).clone();
+            for (int i = 0; i < numRows; i++) {
+                values[i] = !values[i];
+            }
+            return values;
+        }
+    }
+
+    private static final class Ternary extends Node {
+        private final Node condition;
+        private final Node ifTrue;
+        private final Node ifFalse;
+
+        private Ternary(Node condition, Node ifTrue, Node ifFalse) {
+            super(ifTrue.kind == ifFalse.kind ? ifTrue.kind : Kind.MIXED, ifTrue.isFloat || ifFalse.isFloat);
+            this.condition = condition;
+            this.ifTrue = ifTrue;
+            this.ifFalse = ifFalse;
+        }
+
+        @Override
+        double[] doubles(int numRows) {
+            final boolean[] conditions = condition.toBooleans(numRows);
+            final double[] t = ifTrue.doubles(numRows);
+            final double[] f = ifFalse.doubles(numRows);
+            final double[] values = new double[numRows];
+            for (int i = 0; i < numRows; i++) {
+                values[i] = conditions[i] ? t[i] : f[i];
+            }
+            return values;
+        }
+
+        @Override
+        long[] longs(int numRows) {
+            final boolean[] conditions = condition.toBooleans(numRows);
+            final long[] t = ifTrue.longs(numRows);
+            final long[] f = ifFalse.longs(numRows);
+            final long[] values = new long[numRows];
+            for (int i = 0; i < numRows; i++) {
+                values[i] = conditions[i] ? t[i] : f[i];
+            }
+            return values;
+        }
+
+        @Override
+        Mixed mixed(int numRows) {
+            final boolean[] conditions = condition.toBooleans(numRows);
+            final Mixed t = ifTrue.toMixed(numRows);
+            final Mixed f = ifFalse.toMixed(numRows);
+            final Mixed values = new Mixed(numRows);
+            for (int i = 0; i < numRows; i++) {
+                values.set(i, conditions[i] ? t : f);
+            }
+            return values;
+        }
+
+        @Override
+        boolean[] booleans(int numRows) {
+            final boolean[] conditions = condition.toBooleans(numRows);
+            final boolean[] t = ifTrue.booleans(numRows);
+            final boolean[] f = ifFalse.booleans(numRows);
+            final boolean[] values = new boolean[numRows];
+            for (int i = 0; i < numRows; i++) {
+                values[i] = conditions[i] ? t[i] : f[i];
+            }
+            return values;
+        }
+    }
+
+    private static final class Call extends Node {
+        private final MethodHandle method;
+        private final Node[] arguments;
+
+        private Call(MethodHandle method, Node[] arguments) {
+            super(Kind.DOUBLE);
+            this.method = method;
+            this.arguments = arguments;
+        }
+
+        @Override
+        double[] doubles(int numRows) {
+            final double[] values = new double[numRows];
+            try {
+                if (arguments.length == 1) {
+                    final double[] a = arguments[0].toDoubles(numRows);
+                    for (int i = 0; i < numRows; i++) {
+                        values[i] = (double) method.invokeExact(a[i]);
+                    }
+                } else {
+                    final double[] a = arguments[0].toDoubles(numRows);
+                    final double[] b = arguments[1].toDoubles(numRows);
+                    for (int i = 0; i < numRows; i++) {
+                        values[i] = (double) method.invokeExact(a[i], b[i]);
+                    }
+                }
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                // The methods of Math don't throw checked exceptions
+                throw new IllegalStateException(t);
+            }
+            return values;
+        }
+    }
+}
@@ -29,15 +29,21 @@
 package org.opennms.netmgt.measurements.impl;
 
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 import org.apache.commons.jexl2.JexlContext;
 import org.apache.commons.jexl2.JexlEngine;
 import org.apache.commons.jexl2.JexlException;
 import org.apache.commons.jexl2.MapContext;
+import org.apache.commons.jexl2.parser.ASTJexlScript;
 import org.opennms.netmgt.measurements.api.ExpressionEngine;
 import org.opennms.netmgt.measurements.api.FetchResults;
 import org.opennms.netmgt.measurements.api.exceptions.ExpressionException;
@@ -51,6 +57,10 @@ import org.slf4j.LoggerFactory;
 /**
  * An expression engine implemented using JEXL.
  *
+ * When possible, expressions are evaluated a column at a time using {@link CompiledExpression}s
+ * instead of evaluating them row by row, since JEXL boxes every value and resolves every
+ * variable, operator and function on each evaluation.
+ *
  * @author jwhite
  */
 @Component("expressionEngine")
@@ -58,10 +68,12 @@ public class JEXLExpressionEngine implements ExpressionEngine {
 
     private static final Logger LOG = LoggerFactory.getLogger(JEXLExpressionEngine.class);
 
+    private static final int PARSED_EXPRESSION_CACHE_SIZE = 512;
+
     /**
      * Use a single instance of the JEXL engine, which is thread-safe.
      */
-    private final JexlEngine jexl = new JexlEngine();
+    private final Engine jexl = new Engine();
 
     public JEXLExpressionEngine() {
         // Add additional functions to the engine
@@ -73,6 +85,9 @@ public class JEXLExpressionEngine implements ExpressionEngine {
         functions.put("fn", SampleArrayFunctions.class);
         
         jexl.setFunctions(functions);
+
+        // The same expressions are used by every rendering of a graph, only parse them once
+        jexl.setCache(PARSED_EXPRESSION_CACHE_SIZE);
     }
 
     /**
@@ -98,6 +113,7 @@ public class JEXLExpressionEngine implements ExpressionEngine {
         // Compile the expressions
         int j, k = 0;
         final LinkedHashMap<String, org.apache.commons.jexl2.Expression> expressions = Maps.newLinkedHashMap();
+        final List<ASTJexlScript> scripts = Lists.newArrayListWithCapacity(numExpressions);
         for (final Expression e : request.getExpressions()) {
 
             // Populate the transientFlags array
@@ -108,7 +124,9 @@ public class JEXLExpressionEngine implements ExpressionEngine {
             k++;
 
             try {
-                expressions.put(e.getLabel(), jexl.createExpression(e.getExpression()));
+                final ASTJexlScript script = jexl.parse(e.getExpression());
+                scripts.add(script);
+                expressions.put(e.getLabel(), jexl.toExpression(script, e.getExpression()));
             } catch (JexlException ex) {
                 throw new ExpressionException(ex, "Failed to parse expression label '{}'.", e.getLabel());
             }
@@ -129,10 +147,6 @@ public class JEXLExpressionEngine implements ExpressionEngine {
         jexlValues.put("__E", java.lang.Math.E);
         jexlValues.put("__PI", java.lang.Math.PI);
 
-        // Add JexlEvaluateFunctions with current context and jexl engine to allow string constants to be evaluated.
-        JexlEvaluateFunctions jexlEvaluateFunctions = new JexlEvaluateFunctions(context, jexl) ;
-        jexl.getFunctions().put("jexl", jexlEvaluateFunctions);
-        
         final long timestamps[] = results.getTimestamps();
         final Map<String, double[]> columns = results.getColumns();
         final int numRows = timestamps.length;
@@ -141,9 +155,153 @@ public class JEXLExpressionEngine implements ExpressionEngine {
         jexlValues.put("__diff_time", numRows < 1 ? 0d : timestamps[numRows-1] - timestamps[0]);
         jexlValues.put("__step", results.getStep());
 
-        final double expressionValues[][] = new double[numNonTransientExpression][numRows];
+        final double expressionValues[][] = new double[numNonTransientExpression][];
+        if (canEvaluateByColumn(request.getExpressions(), scripts, columns.keySet(), jexlValues.keySet())) {
+            evaluateByColumn(request.getExpressions(), scripts, expressions, jexlValues, context, timestamps, columns, transientFlags, expressionValues);
+        } else {
+            evaluateByRow(expressions, jexlValues, context, timestamps, columns, transientFlags, expressionValues);
+        }
+
+        // Store the results
+        j = k = 0;
+        for (final String expressionLabel : expressions.keySet()) {
+            if (!transientFlags[j++]) {
+                columns.put(expressionLabel, expressionValues[k++]);
+            }
+        }
+    }
+
+    /**
+     * Expressions can be evaluated a column at a time, if the value of every variable they reference
+     * is known before they are evaluated. Hence, the labels of the sources and of the expressions may not
+     * shadow any other variable, an expression may only reference the expressions preceding it, and
+     * expressions may neither assign variables nor evaluate strings using jexl:evaluate().
+     */
+    private static boolean canEvaluateByColumn(final List<Expression> expressions, final List<ASTJexlScript> scripts,
+                                               final Set<String> sourceLabels, final Set<String> constants) {
+        final Set<String> reserved = Sets.newHashSet(constants);
+        reserved.add("timestamp");
+        reserved.add("__i");
+        for (final String sourceLabel : sourceLabels) {
+            reserved.add("__" + sourceLabel);
+        }
+        for (final String sourceLabel : sourceLabels) {
+            if (reserved.contains(sourceLabel)) {
+                return false;
+            }
+        }
+        reserved.addAll(sourceLabels);
+
+        final Set<String> pending = Sets.newHashSet();
+        for (final Expression e : expressions) {
+            pending.add(e.getLabel());
+        }
+        if (pending.size() != expressions.size()) {
+            return false;
+        }
+
+        for (int k = 0; k < expressions.size(); k++) {
+            final String label = expressions.get(k).getLabel();
+            // Dotted names may be resolved as attributes of other variables
+            if (label.contains(".") || reserved.contains(label)) {
+                return false;
+            }
+            final Set<String> variables = Sets.newHashSet();
+            final Set<String> namespaces = Sets.newHashSet();
+            if (!CompiledExpression.collectReferences(scripts.get(k), variables, namespaces)
+                    || namespaces.contains("jexl")
+                    || !Sets.intersection(variables, pending).isEmpty()) {
+                return false;
+            }
+            pending.remove(label);
+            reserved.add(label);
+        }
+        return true;
+    }
+
+    private void evaluateByColumn(final List<Expression> expressionDefinitions, final List<ASTJexlScript> scripts,
+                                  final Map<String, org.apache.commons.jexl2.Expression> expressions,
+                                  final Map<String, Object> jexlValues, final JexlContext context,
+                                  final long timestamps[], final Map<String, double[]> columns,
+                                  final boolean transientFlags[], final double expressionValues[][]) throws ExpressionException {
+        final int numRows = timestamps.length;
+        final long rowIndices[] = new long[numRows];
+        for (int i = 0; i < numRows; i++) {
+            rowIndices[i] = i;
+        }
+
+        // Columns of the sources and of the expressions evaluated so far
+        final Map<String, double[]> values = Maps.newHashMap(columns);
+        final Function<String, Object> variables = name -> {
+            if (values.containsKey(name)) {
+                return values.get(name);
+            } else if ("timestamp".equals(name)) {
+                return timestamps;
+            } else if ("__i".equals(name)) {
+                return rowIndices;
+            }
+            final Object constant = jexlValues.get(name);
+            return constant instanceof Number ? constant : null;
+        };
+
+        // Expressions which cannot be compiled are evaluated by JEXL, which may access the complete columns
+        for (final String sourceLabel : columns.keySet()) {
+            jexlValues.put("__" + sourceLabel, columns.get(sourceLabel));
+        }
+
+        int k = 0;
+        for (int j = 0; j < expressionDefinitions.size(); j++) {
+            final String label = expressionDefinitions.get(j).getLabel();
+            double derived[] = null;
+
+            final CompiledExpression compiled = CompiledExpression.compile(scripts.get(j), jexl.getFunctions(), variables, numRows);
+            if (compiled != null) {
+                try {
+                    derived = compiled.evaluate();
+                } catch (ArithmeticException e) {
+                    LOG.debug("Integer overflow in expression with label '{}', evaluating it using JEXL.", label);
+                }
+            }
+
+            if (derived == null) {
+                // Only the variables referenced by the expression need to be updated for every row
+                final Set<String> referenced = Sets.newHashSet();
+                CompiledExpression.collectReferences(scripts.get(j), referenced, Sets.newHashSet());
+                referenced.retainAll(values.keySet());
+
+                derived = new double[numRows];
+                for (int i = 0; i < numRows; i++) {
+                    jexlValues.put("timestamp", timestamps[i]);
+                    jexlValues.put("__i", Integer.valueOf(i));
+                    for (final String variable : referenced) {
+                        jexlValues.put(variable, values.get(variable)[i]);
+                    }
+                    derived[i] = evaluate(label, expressions.get(label), context);
+                }
+            }
+
+            values.put(label, derived);
+            if (!transientFlags[j]) {
+                expressionValues[k++] = derived;
+            }
+        }
+    }
+
+    private void evaluateByRow(final Map<String, org.apache.commons.jexl2.Expression> expressions,
+                               final Map<String, Object> jexlValues, final JexlContext context,
+                               final long timestamps[], final Map<String, double[]> columns,
+                               final boolean transientFlags[], final double expressionValues[][]) throws ExpressionException {
+        // Add JexlEvaluateFunctions with current context and jexl engine to allow string constants to be evaluated.
+        JexlEvaluateFunctions jexlEvaluateFunctions = new JexlEvaluateFunctions(context, jexl) ;
+        jexl.getFunctions().put("jexl", jexlEvaluateFunctions);
+
+        final int numRows = timestamps.length;
+        for (int k = 0; k < expressionValues.length; k++) {
+            expressionValues[k] = new double[numRows];
+        }
 
         // Iterate through all of the rows, apply the expressions
+        int j, k;
         for (int i = 0; i < numRows; i++) {
             // Evaluate every expression, in the same order as which they appeared in the query
             j = k = 0;
@@ -164,34 +322,43 @@ public class JEXLExpressionEngine implements ExpressionEngine {
                 }
 
                 // Evaluate the expression
-                try {
-                    Object derived = expressionEntry.getValue().evaluate(context);
-                    double derivedAsDouble = Utils.toDouble(derived);
+                double derivedAsDouble = evaluate(expressionEntry.getKey(), expressionEntry.getValue(), context);
 
-                    // Only store the values for non-transient expressions
-                    if (!transientFlags[j++]) {
-                        expressionValues[k++][i] = derivedAsDouble;
-                    }
-
-                    // Store the result back in the context, so that it can be referenced
-                    // by subsequent expression in the row
-                    jexlValues.put(expressionEntry.getKey(), derivedAsDouble);
-                } catch (NullPointerException|NumberFormatException e) {
-                    throw new ExpressionException(e, "The return value from expression with label '" +
-                            expressionEntry.getKey() + "' could not be cast to a Double.");
-                } catch (JexlException e) {
-                    throw new ExpressionException(e, "Failed to evaluate expression with label '" +
-                            expressionEntry.getKey() + "'.");
+                // Only store the values for non-transient expressions
+                if (!transientFlags[j++]) {
+                    expressionValues[k++][i] = derivedAsDouble;
                 }
+
+                // Store the result back in the context, so that it can be referenced
+                // by subsequent expression in the row
+                jexlValues.put(expressionEntry.getKey(), derivedAsDouble);
             }
         }
+    }
 
-        // Store the results
-        j = k = 0;
-        for (final String expressionLabel : expressions.keySet()) {
-            if (!transientFlags[j++]) {
-                columns.put(expressionLabel, expressionValues[k++]);
-            }
+    private static double evaluate(final String label, final org.apache.commons.jexl2.Expression expression, final JexlContext context) throws ExpressionException {
+        try {
+            Object derived = expression.evaluate(context);
+            return Utils.toDouble(derived);
+        } catch (NullPointerException|NumberFormatException e) {
+            throw new ExpressionException(e, "The return value from expression with label '" +
+                    label + "' could not be cast to a Double.");
+        } catch (JexlException e) {
+            throw new ExpressionException(e, "Failed to evaluate expression with label '" +
+                    label + "'.");
+        }
+    }
+
+    /**
+     * Exposes the syntax trees of the expressions, so that they can be compiled.
+     */
+    private static class Engine extends JexlEngine {
+        private ASTJexlScript parse(String expression) {
+            return parse(expression, null, null);
+        }
+
+        private org.apache.commons.jexl2.Expression toExpression(ASTJexlScript script, String expression) {
+            return createExpression(script, expression);
         }
     }
 }
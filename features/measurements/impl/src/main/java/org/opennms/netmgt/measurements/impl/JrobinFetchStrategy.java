@@ -31,7 +31,9 @@ package org.opennms.netmgt.measurements.impl;
 import java.io.IOException;
 import java.util.Map;
 
+import org.jrobin.core.RrdBackendFactory;
 import org.jrobin.core.RrdException;
+import org.jrobin.core.RrdFileBackendFactory;
 import org.jrobin.data.DataProcessor;
 import org.opennms.netmgt.measurements.api.FetchResults;
 import org.opennms.netmgt.measurements.model.QueryMetadata;
@@ -47,6 +49,14 @@ import com.google.common.collect.Maps;
  */
 public class JrobinFetchStrategy extends AbstractRrdBasedFetchStrategy {
 
+    /**
+     * The handles of the files are shared through the pool of JRobin, which synchronizes the access to them.
+     */
+    @Override
+    protected boolean isConcurrentFetchSupported() {
+        return true;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -68,6 +78,8 @@ public class JrobinFetchStrategy extends AbstractRrdBasedFetchStrategy {
             dproc.setPixelCount(maxrows);
         }
         dproc.setFetchRequestResolution(stepInSeconds);
+        // Use the handles kept open for the files being updated, the pool requires a file based backend
+        dproc.setPoolUsed(RrdBackendFactory.getDefaultFactory() instanceof RrdFileBackendFactory);
 
         for (final Map.Entry<Source, String> entry : rrdsBySource.entrySet()) {
             final Source source = entry.getKey();
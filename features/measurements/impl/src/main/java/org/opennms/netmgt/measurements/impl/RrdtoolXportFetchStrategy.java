@@ -78,6 +78,14 @@ public class RrdtoolXportFetchStrategy extends AbstractRrdBasedFetchStrategy {
      */
     public static final long XPORT_TIMEOUT_MS = 120000;
 
+    /**
+     * Each fetch runs its own process.
+     */
+    @Override
+    protected boolean isConcurrentFetchSupported() {
+        return true;
+    }
+
     /**
      * {@inheritDoc}
      */
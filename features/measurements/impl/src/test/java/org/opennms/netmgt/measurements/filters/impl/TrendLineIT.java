@@ -28,11 +28,16 @@
 
 package org.opennms.netmgt.measurements.filters.impl;
 
+import java.util.Collections;
+import java.util.Map;
+
 import org.junit.Assert;
 import org.junit.Test;
+import org.opennms.netmgt.measurements.api.FetchResults;
 import org.opennms.netmgt.measurements.api.Filter;
 import org.opennms.netmgt.measurements.model.FilterDef;
 
+import com.google.common.collect.Maps;
 import com.google.common.collect.RowSortedTable;
 import com.google.common.collect.TreeBasedTable;
 
@@ -61,4 +66,35 @@ public class TrendLineIT extends AnalyticsFilterTest {
             Assert.assertEquals(1.0d, table.get(i, "Z"), 0.0001);
         }
     }
+
+    @Test
+    public void canForecastColumns() throws Exception {
+        FilterDef filterDef = new FilterDef("Trend",
+                "outputColumn", "Z",
+                "inputColumn", "Y",
+                "secondsAhead", "3",
+                "polynomialOrder", "1");
+
+        // Use a line for the Y column
+        long timestamps[] = new long[10];
+        double values[] = new double[10];
+        for (int i = 0; i < 10; i++) {
+            timestamps[i] = i * 1000;
+            values[i] = 2 * i + 3;
+        }
+        Map<String, double[]> columns = Maps.newHashMap();
+        columns.put("Y", values);
+
+        // Apply the filter
+        FetchResults results = getFilterEngine().filter(Collections.singletonList(filterDef),
+                new FetchResults(timestamps, columns, 1000, Maps.newHashMap(), null));
+
+        // Rows are added for the forecast
+        Assert.assertEquals(13, results.getTimestamps().length);
+        Assert.assertTrue(Double.isNaN(results.getColumns().get("Y")[12]));
+        for (int i = 0; i < 13; i++) {
+            Assert.assertEquals(i * 1000, results.getTimestamps()[i]);
+            Assert.assertEquals(2 * i + 3, results.getColumns().get("Z")[i], 0.0001);
+        }
+    }
 }
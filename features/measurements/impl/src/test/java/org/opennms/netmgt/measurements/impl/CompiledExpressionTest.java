@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.measurements.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.Map;
+
+import org.apache.commons.jexl2.Expression;
+import org.apache.commons.jexl2.JexlEngine;
+import org.apache.commons.jexl2.MapContext;
+import org.apache.commons.jexl2.parser.ASTJexlScript;
+import org.junit.Test;
+import org.opennms.netmgt.measurements.utils.Utils;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * Verifies that compiled expressions return the same values as JEXL.
+ */
+public class CompiledExpressionTest {
+
+    private static final double[] X = new double[] { 1, 0, -0d, -2.5, Double.NaN, 7, Double.POSITIVE_INFINITY, 3 };
+    private static final double[] Y = new double[] { 2, 0, 1, Double.NaN, Double.NaN, -7, 3, 0.1 };
+    private static final long[] TIMESTAMPS = new long[] { 1000, 2000, -3000, 4000, 5000, 6000, 7000, 1L << 53 + 1 };
+    private static final long[] ROWS = new long[] { 0, 1, 2, 3, 4, 5, 6, 7 };
+    private static final Map<String, Object> CONSTANTS = ImmutableMap.of("C", 3, "D", 0.25d, "F", 0.1f, "__step", 300L);
+
+    private final Parser jexl = new Parser();
+
+    @Test
+    public void canEvaluateArithmetic() {
+        verify("x * 5 + 7");
+        verify("x - y - 1");
+        verify("x / y");
+        verify("x % y");
+        verify("x / 0");
+        verify("-x * C");
+        verify("1.1 * x");
+        verify("F + D");
+        verify("-F");
+        verify("(x + 1) * (y - 1) / 2");
+    }
+
+    @Test
+    public void canEvaluateIntegerArithmetic() {
+        verify("timestamp / 1000");
+        verify("timestamp % 7");
+        verify("__i / 2");
+        verify("__i / 0");
+        verify("__i % -3");
+        verify("__i % 3 - 1");
+        verify("-__i");
+        verify("__i - 5 * 2");
+        verify("timestamp + __step * __i");
+        verify("(__i / 2) / 2");
+        verify("(__i > 3 ? __i : x) / 3");
+        verify("(__i > 3 ? __i : 0.5) * 3");
+    }
+
+    @Test
+    public void canEvaluateComparisons() {
+        verify("x > y ? x : y");
+        verify("x == NaN ? 1 : 0");
+        verify("x < y ? 1 : 0");
+        verify("y >= x ? 1 : 0");
+        verify("x != y ? 1 : 0");
+        verify("__i <= 3 ? 1 : 0");
+        verify("timestamp > 2000 ? __i : -__i");
+        verify("(x > 0) == true ? 1 : 0");
+    }
+
+    @Test
+    public void canEvaluateLogicalOperators() {
+        verify("!(x > 1) || y ? 1 : 0");
+        verify("x && y ? 1 : 0.5");
+        verify("!x ? NaN : x");
+        verify("__i && !(__i % 2 == 0) ? x : y");
+    }
+
+    @Test
+    public void canEvaluateFunctions() {
+        verify("math:max(x, y)");
+        verify("math:abs(x)");
+        verify("math:pow(__i, 2)");
+        verify("strictmath:sqrt(0.1)");
+        verify("math:pow(x, -0.1)");
+        verify("math:log(timestamp)");
+        verify("math:pow(x, F)");
+        verify("math:sin(x) * __PI");
+    }
+
+    @Test
+    public void doesNotCompileUnsupportedExpressions() {
+        // Overloaded for integers
+        assertNull(compile("math:max(__i, 2)"));
+        // Overloaded for floats
+        assertNull(compile("math:abs(0.5)"));
+        assertNull(compile("fn:arrayNaN(\"x\", 1)"));
+        assertNull(compile("x.y"));
+        assertNull(compile("'a'"));
+        assertNull(compile("undefined + 1"));
+        assertNull(compile("x > 1"));
+        assertNull(compile("1h + x"));
+        assertNull(compile("x ?: y"));
+    }
+
+    @Test
+    public void failsOnIntegerOverflow() {
+        final CompiledExpression compiled = compile("timestamp * 4611686018427387904");
+        assertNotNull(compiled);
+        try {
+            compiled.evaluate();
+            fail("JEXL uses BigIntegers for results which don't fit into a long");
+        } catch (ArithmeticException e) {
+            // expected
+        }
+    }
+
+    private void verify(String expression) {
+        final CompiledExpression compiled = compile(expression);
+        assertNotNull(expression, compiled);
+        final double[] actual = compiled.evaluate();
+
+        final Expression jexlExpression = jexl.createExpression(expression);
+        for (int i = 0; i < X.length; i++) {
+            final Map<String, Object> values = Maps.newHashMap(CONSTANTS);
+            values.put("x", X[i]);
+            values.put("y", Y[i]);
+            values.put("timestamp", TIMESTAMPS[i]);
+            values.put("__i", i);
+            values.put("NaN", Double.NaN);
+            values.put("__PI", Math.PI);
+            final double expected = Utils.toDouble(jexlExpression.evaluate(new MapContext(values)));
+            assertEquals(expression + " at row " + i, expected, actual[i], 0d);
+        }
+    }
+
+    private CompiledExpression compile(String expression) {
+        return CompiledExpression.compile(jexl.parse(expression), jexl.getFunctions(), name -> {
+            switch (name) {
+                case "x":
+                    return X;
+                case "y":
+                    return Y;
+                case "timestamp":
+                    return TIMESTAMPS;
+                case "__i":
+                    return ROWS;
+                case "NaN":
+                    return Double.NaN;
+                case "__PI":
+                    return Math.PI;
+                default:
+                    return CONSTANTS.get(name);
+            }
+        }, X.length);
+    }
+
+    private static class Parser extends JexlEngine {
+        private Parser() {
+            setFunctions(ImmutableMap.of("math", Math.class, "strictmath", StrictMath.class, "fn", SampleArrayFunctions.class));
+        }
+
+        private ASTJexlScript parse(String expression) {
+            return parse(expression, null, null);
+        }
+    }
+}
@@ -390,6 +390,31 @@ public class JEXLExpressionEngineTest {
         assertEquals(1.0, results[0], 0.0001);
     }
 
+    @Test
+    public void canReferencePreviousExpressions() throws ExpressionException {
+        // "z" is compiled, while "w" uses a function which is only available to JEXL
+        final Map<String, double[]> columns = performExpressions(
+                expression("z", "x * 2", true),
+                expression("w", "z + fn:arrayZero(\"x\", 1)", false),
+                expression("v", "w - z", false));
+
+        assertEquals(null, columns.get("z"));
+        assertEquals(0.0, columns.get("w")[0], DELTA);
+        assertEquals(2 * 50 + 49, columns.get("w")[50], DELTA);
+        assertEquals(49, columns.get("v")[50], DELTA);
+    }
+
+    @Test
+    public void canShadowSources() throws ExpressionException {
+        // Subsequent expressions still reference the source
+        final Map<String, double[]> columns = performExpressions(
+                expression("x", "x * 2", false),
+                expression("w", "x + 1", false));
+
+        assertEquals(100, columns.get("x")[50], DELTA);
+        assertEquals(51, columns.get("w")[50], DELTA);
+    }
+
     private double[] performExpression(String expression) throws ExpressionException {
         Map<String, Object> constants = Maps.newHashMap();
         return performExpression(expression, constants);
@@ -426,4 +451,35 @@ public class JEXLExpressionEngineTest {
         // Retrieve the results
         return results.getColumns().get("y");
     }
+
+    private static Expression expression(String label, String expression, boolean transientFlag) {
+        Expression exp = new Expression();
+        exp.setLabel(label);
+        exp.setExpression(expression);
+        exp.setTransient(transientFlag);
+        return exp;
+    }
+
+    private Map<String, double[]> performExpressions(Expression... expressions) throws ExpressionException {
+        QueryRequest request = new QueryRequest();
+
+        Source constant = new Source();
+        constant.setLabel("x");
+        request.setSources(Lists.newArrayList(constant));
+        request.setExpressions(Lists.newArrayList(expressions));
+
+        final int N = 100;
+        long timestamps[] = new long[N];
+        double xValues[] = new double[N];
+        for (int i = 0; i < N; i++) {
+            timestamps[i] = i * 1000;
+            xValues[i] = Double.valueOf(i);
+        }
+        Map<String, double[]> values = Maps.newHashMap();
+        values.put("x", xValues);
+        FetchResults results = new FetchResults(timestamps, values, 1, Maps.newHashMap(), null);
+
+        jexlExpressionEngine.applyExpressions(request, results);
+        return results.getColumns();
+    }
 }
@@ -28,11 +28,16 @@
 
 package org.opennms.netmgt.newts;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.stream.Collectors;
 
 import javax.inject.Inject;
@@ -70,6 +75,13 @@ import com.swrve.ratelimitedlogger.RateLimitedLog;
  * Calls to {@link #insert()} publish the samples to a ring buffer so
  * that they don't block while the data is being persisted.
  *
+ * When the ring buffer is full, callers are blocked for up to ring_buffer_max_wait_ms
+ * before the samples are dropped, so that a slow cluster throttles the collectors
+ * instead of silently losing data.
+ *
+ * Samples are grouped by resource before being split into batches, so that the
+ * samples of a resource, which share the same partition key, are written together.
+ *
  * @author jwhite
  */
 public class NewtsWriter implements WorkHandler<SampleBatchEvent>, DisposableBean {
@@ -97,26 +109,37 @@ public class NewtsWriter implements WorkHandler<SampleBatchEvent>, DisposableBea
 
     private final int m_numWriterThreads;
 
+    private final long m_maxWaitNanos;
+
     private final Meter m_droppedSamples;
 
+    private final Meter m_delayedInserts;
+
     /**
      * The {@link RingBuffer} doesn't appear to expose any methods that indicate the number
      * of elements that are currently "queued", so we keep track of them with this atomic counter.
      */
     private final AtomicLong m_numEntriesOnRingBuffer = new AtomicLong();
 
+    public NewtsWriter(Integer maxBatchSize, Integer ringBufferSize, Integer numWriterThreads, MetricRegistry registry) {
+        this(maxBatchSize, ringBufferSize, numWriterThreads, 0L, registry);
+    }
+
     @Inject
     public NewtsWriter(@Named("newts.max_batch_size") Integer maxBatchSize, @Named("newts.ring_buffer_size") Integer ringBufferSize,
-            @Named("newts.writer_threads") Integer numWriterThreads, @Named("newtsMetricRegistry") MetricRegistry registry) {
+            @Named("newts.writer_threads") Integer numWriterThreads, @Named("newts.ring_buffer_max_wait_ms") Long maxWaitMs,
+            @Named("newtsMetricRegistry") MetricRegistry registry) {
         Preconditions.checkArgument(maxBatchSize > 0, "maxBatchSize must be strictly positive");
         Preconditions.checkArgument(ringBufferSize > 0, "ringBufferSize must be positive");
         Preconditions.checkArgument(DoubleMath.isMathematicalInteger(Math.log(ringBufferSize) / Math.log(2)), "ringBufferSize must be a power of two");
         Preconditions.checkArgument(numWriterThreads > 0, "numWriterThreads must be positive");
+        Preconditions.checkArgument(maxWaitMs >= 0, "maxWaitMs must not be negative");
         Preconditions.checkNotNull(registry, "metric registry");
 
         m_maxBatchSize = maxBatchSize;
         m_ringBufferSize = ringBufferSize;
         m_numWriterThreads = numWriterThreads;
+        m_maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
         m_numEntriesOnRingBuffer.set(0L);
 
         registry.register(MetricRegistry.name("ring-buffer", "size"),
@@ -135,8 +158,9 @@ public class NewtsWriter implements WorkHandler<SampleBatchEvent>, DisposableBea
                 });
 
         m_droppedSamples = registry.meter(MetricRegistry.name("ring-buffer", "dropped-samples"));
+        m_delayedInserts = registry.meter(MetricRegistry.name("ring-buffer", "delayed-inserts"));
 
-        LOG.debug("Using max_batch_size: {} and ring_buffer_size: {}", maxBatchSize, m_ringBufferSize);
+        LOG.debug("Using max_batch_size: {}, ring_buffer_size: {} and ring_buffer_max_wait_ms: {}", maxBatchSize, m_ringBufferSize, maxWaitMs);
         setUpWorkerPool();
     }
 
@@ -180,7 +204,7 @@ public class NewtsWriter implements WorkHandler<SampleBatchEvent>, DisposableBea
 
     private void pushToRingBuffer(List<Sample> samples, EventTranslatorOneArg<SampleBatchEvent, List<Sample>> translator) {
         // Add the samples to the ring buffer
-        if (!m_ringBuffer.tryPublishEvent(translator, samples)) {
+        if (!m_ringBuffer.tryPublishEvent(translator, samples) && !waitAndPublish(samples, translator)) {
             RATE_LIMITED_LOGGER.error("The ring buffer is full. {} samples associated with resource ids {} will be dropped.",
                     samples.size(), new Object() {
                         @Override
@@ -200,6 +224,32 @@ public class NewtsWriter implements WorkHandler<SampleBatchEvent>, DisposableBea
         m_numEntriesOnRingBuffer.incrementAndGet();
     }
 
+    /**
+     * Blocks the calling thread until the ring buffer has room for the samples or
+     * ring_buffer_max_wait_ms elapsed.
+     *
+     * @return true if the samples were published
+     */
+    private boolean waitAndPublish(List<Sample> samples, EventTranslatorOneArg<SampleBatchEvent, List<Sample>> translator) {
+        if (m_maxWaitNanos <= 0) {
+            return false;
+        }
+        m_delayedInserts.mark();
+        final long deadline = System.nanoTime() + m_maxWaitNanos;
+        long parkNanos = TimeUnit.MICROSECONDS.toNanos(50);
+        while (System.nanoTime() - deadline < 0) {
+            LockSupport.parkNanos(parkNanos);
+            if (m_ringBuffer.tryPublishEvent(translator, samples)) {
+                return true;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            parkNanos = Math.min(parkNanos * 2, TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        return false;
+    }
+
     @Override
     public void onEvent(SampleBatchEvent event) throws Exception {
         // We'd expect the logs from this thread to be in collectd.log
@@ -210,7 +260,7 @@ public class NewtsWriter implements WorkHandler<SampleBatchEvent>, DisposableBea
         m_numEntriesOnRingBuffer.decrementAndGet();
 
         // Partition the samples into collections smaller then max_batch_size
-        for (List<Sample> batch : Lists.partition(samples, m_maxBatchSize)) {
+        for (List<Sample> batch : partitionByResource(samples, m_maxBatchSize)) {
             try {
                 if (event.isIndexOnly() && !NewtsUtils.DISABLE_INDEXING) {
                     LOG.debug("Indexing {} samples", batch.size());
@@ -233,6 +283,41 @@ public class NewtsWriter implements WorkHandler<SampleBatchEvent>, DisposableBea
         }
     }
 
+    /**
+     * Splits the samples into batches of at most maxBatchSize samples, keeping
+     * the samples of a resource together unless they don't fit in a single batch.
+     */
+    @VisibleForTesting
+    static List<List<Sample>> partitionByResource(List<Sample> samples, int maxBatchSize) {
+        final Map<String, List<Sample>> samplesByResource = new LinkedHashMap<>();
+        for (Sample sample : samples) {
+            samplesByResource.computeIfAbsent(sample.getResource().getId(), id -> new ArrayList<>()).add(sample);
+        }
+        if (samplesByResource.size() == 1) {
+            return Lists.partition(samples, maxBatchSize);
+        }
+
+        final List<List<Sample>> batches = new ArrayList<>();
+        List<Sample> batch = new ArrayList<>(maxBatchSize);
+        for (List<Sample> resourceSamples : samplesByResource.values()) {
+            if (!batch.isEmpty() && batch.size() + resourceSamples.size() > maxBatchSize) {
+                batches.add(batch);
+                batch = new ArrayList<>(maxBatchSize);
+            }
+            for (List<Sample> chunk : Lists.partition(resourceSamples, maxBatchSize)) {
+                if (chunk.size() == maxBatchSize) {
+                    batches.add(chunk);
+                } else {
+                    batch.addAll(chunk);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
     private static final EventTranslatorOneArg<SampleBatchEvent, List<Sample>> TRANSLATOR =
             new EventTranslatorOneArg<SampleBatchEvent, List<Sample>>() {
                 public void translateTo(SampleBatchEvent event, long sequence, List<Sample> samples) {
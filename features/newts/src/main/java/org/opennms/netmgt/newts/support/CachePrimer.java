@@ -56,21 +56,24 @@ public class CachePrimer implements InitializingBean, Runnable {
     private final long blockWhilePrimingMs;
     private final int fetchSize;
     private final int fetchMoreThreshold;
+    private final int numThreads;
 
     @Inject
     public CachePrimer(@Named("cache.priming.disable") boolean primingDisabled,
                        @Named("cache.priming.block_ms") long blockWhilePrimingMs,
                        @Named("cache.priming.fetch_size") int fetchSize,
-                       @Named("cache.priming.fetch_more_threshold") int fetchMoreThreshold) {
+                       @Named("cache.priming.fetch_more_threshold") int fetchMoreThreshold,
+                       @Named("cache.priming.threads") int numThreads) {
         this.primingDisabled = primingDisabled;
         this.blockWhilePrimingMs = blockWhilePrimingMs;
         this.fetchSize = fetchSize;
         this.fetchMoreThreshold = fetchMoreThreshold;
+        this.numThreads = numThreads;
     }
 
     @Override
     public void afterPropertiesSet() {
-        if (!primingDisabled) {
+        if (primingDisabled) {
             LOG.debug("Cache priming disabled. Skipping cache priming.");
             return;
         }
@@ -106,10 +109,21 @@ public class CachePrimer implements InitializingBean, Runnable {
 
     @Override
     public void run() {
+        LOG.info("Starting to prime the cache.");
+        if (numThreads > 1) {
+            try {
+                new TokenRangeCachePrimer(session, numThreads, fetchSize, fetchMoreThreshold).prime(resourceMetadataCache, context);
+                LOG.info("Done priming cache. Cache size: {}", resourceMetadataCache.getSize());
+                return;
+            } catch (RuntimeException e) {
+                // The entries merged so far are kept, merging them again is harmless
+                LOG.warn("Failed to prime the cache using {} threads. Falling back to a sequential scan.", numThreads, e);
+            }
+        }
+
         final CassandraCachePrimer primer = new CassandraCachePrimer(session);
         primer.setFetchSize(fetchSize);
         primer.setFetchMoreThreshold(fetchMoreThreshold);
-        LOG.info("Starting to prime the cache.");
         primer.prime(resourceMetadataCache, context);
         LOG.info("Done priming cache. Cache size: {}", resourceMetadataCache.getSize());
     }
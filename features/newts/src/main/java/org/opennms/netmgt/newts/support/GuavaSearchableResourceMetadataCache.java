@@ -30,6 +30,7 @@ package org.opennms.netmgt.newts.support;
 
 import static com.codahale.metrics.MetricRegistry.name;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -48,6 +49,7 @@ import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.RemovalListener;
@@ -66,6 +68,10 @@ import com.googlecode.concurrenttrees.radix.node.concrete.DefaultCharArrayNodeFa
  *
  * Both structures are kept in synch via a {@link RemovalListener}.
  *
+ * Since the Radix Tree serializes all of its writes, the keys are spread over several trees
+ * by hash, and the Guava Cache uses the same number of segments. This avoids contention when the
+ * cache is primed or filled by many writer threads. Searching by prefix queries all of the trees.
+ *
  * @author jwhite
  */
 public class GuavaSearchableResourceMetadataCache implements SearchableResourceMetadataCache, RemovalListener<String, ResourceMetadata> {
@@ -74,19 +80,31 @@ public class GuavaSearchableResourceMetadataCache implements SearchableResourceM
 
     private static final Joiner m_keyJoiner = Joiner.on(':');
 
+    public static final int DEFAULT_SHARDS = 16;
+
     private final Cache<String, ResourceMetadata> m_cache;
-    private final ConcurrentRadixTree<ResourceMetadata> m_radixTree;
+    private final ConcurrentRadixTree<ResourceMetadata>[] m_radixTrees;
     private final Meter m_metricReqs;
     private final Meter m_attributeReqs;
     private final Meter m_metricMisses;
     private final Meter m_attributeMisses;
 
+    public GuavaSearchableResourceMetadataCache(long maxSize, MetricRegistry registry) {
+        this(maxSize, DEFAULT_SHARDS, registry);
+    }
+
     @Inject
-    public GuavaSearchableResourceMetadataCache(@Named("search.resourceMetadata.maxCacheEntries") long maxSize, @Named("newtsMetricRegistry") MetricRegistry registry) {
-        m_radixTree = new ConcurrentRadixTree<>(new DefaultCharArrayNodeFactory());
+    @SuppressWarnings("unchecked")
+    public GuavaSearchableResourceMetadataCache(@Named("search.resourceMetadata.maxCacheEntries") long maxSize, @Named("search.resourceMetadata.cacheShards") int shards,
+            @Named("newtsMetricRegistry") MetricRegistry registry) {
+        Preconditions.checkArgument(shards > 0, "shards must be positive");
+        m_radixTrees = new ConcurrentRadixTree[shards];
+        for (int i = 0; i < shards; i++) {
+            m_radixTrees[i] = new ConcurrentRadixTree<>(new DefaultCharArrayNodeFactory());
+        }
 
-        LOG.info("Initializing resource metadata cache ({} max entries)", maxSize);
-        m_cache = CacheBuilder.newBuilder().maximumSize(maxSize).removalListener(this).build();
+        LOG.info("Initializing resource metadata cache ({} max entries, {} shards)", maxSize, shards);
+        m_cache = CacheBuilder.newBuilder().maximumSize(maxSize).concurrencyLevel(shards).removalListener(this).build();
 
         m_metricReqs = registry.meter(name("cache", "metric-reqs"));
         m_metricMisses = registry.meter(name("cache", "metric-misses"));
@@ -138,7 +156,7 @@ public class GuavaSearchableResourceMetadataCache implements SearchableResourceM
             newMetadata.merge(metadata);
             String key = key(context, resource.getId());
             m_cache.put(key, newMetadata);
-            m_radixTree.put(key, newMetadata);
+            radixTree(key).put(key, newMetadata);
             return;
         }
 
@@ -148,14 +166,22 @@ public class GuavaSearchableResourceMetadataCache implements SearchableResourceM
 
     @Override
     public List<String> getResourceIdsWithPrefix(Context context, String resourceIdPrefix) {
-        return StreamSupport.stream(m_radixTree.getKeysStartingWith(key(context, resourceIdPrefix)).spliterator(), false)
+        final String keyPrefix = key(context, resourceIdPrefix);
+        // Each tree returns its keys in lexical order, sort them to keep that order across trees
+        return Arrays.stream(m_radixTrees)
+                .flatMap(radixTree -> StreamSupport.stream(radixTree.getKeysStartingWith(keyPrefix).spliterator(), false))
                 .map(cs -> resourceId(context, cs.toString()))
+                .sorted()
                 .collect(Collectors.toList());
     }
 
     @Override
     public void onRemoval(RemovalNotification<String, ResourceMetadata> notification) {
-        m_radixTree.remove(notification.getKey());
+        radixTree(notification.getKey()).remove(notification.getKey());
+    }
+
+    private ConcurrentRadixTree<ResourceMetadata> radixTree(String key) {
+        return m_radixTrees[(key.hashCode() & Integer.MAX_VALUE) % m_radixTrees.length];
     }
 
     public long getSize() {
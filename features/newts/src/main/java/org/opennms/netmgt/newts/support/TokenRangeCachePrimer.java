@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.newts.support;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+
+import org.opennms.newts.api.Context;
+import org.opennms.newts.api.Resource;
+import org.opennms.newts.cassandra.CassandraSession;
+import org.opennms.newts.cassandra.search.ResourceMetadata;
+import org.opennms.newts.cassandra.search.ResourceMetadataCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Primes a {@link ResourceMetadataCache} by scanning the resource_metrics and
+ * resource_attributes tables in parallel.
+ *
+ * The token ring of the Murmur3Partitioner is split into ranges which are scanned
+ * concurrently, instead of paging through the whole tables with a single query
+ * like {@link org.opennms.newts.cassandra.search.CassandraCachePrimer} does.
+ */
+public class TokenRangeCachePrimer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TokenRangeCachePrimer.class);
+
+    /**
+     * Number of token ranges scanned by each thread, so that threads finishing early
+     * can pick up the remaining ranges.
+     */
+    private static final int RANGES_PER_THREAD = 4;
+
+    private final CassandraSession m_session;
+    private final PreparedStatement m_selectMetricsStatement;
+    private final PreparedStatement m_selectAttributesStatement;
+    private final int m_numThreads;
+    private final int m_fetchSize;
+    private final int m_fetchMoreThreshold;
+
+    public TokenRangeCachePrimer(CassandraSession session, int numThreads, int fetchSize, int fetchMoreThreshold) {
+        Preconditions.checkArgument(numThreads > 0, "numThreads must be positive");
+        m_session = Objects.requireNonNull(session);
+        m_numThreads = numThreads;
+        m_fetchSize = fetchSize;
+        m_fetchMoreThreshold = fetchMoreThreshold;
+        m_selectMetricsStatement = session.prepare("SELECT context, resource, metric_name FROM resource_metrics"
+                + " WHERE token(context, resource) > ? AND token(context, resource) <= ?");
+        m_selectAttributesStatement = session.prepare("SELECT context, resource, attribute, value FROM resource_attributes"
+                + " WHERE token(context, resource) > ? AND token(context, resource) <= ?");
+    }
+
+    /**
+     * Merges all of the resources in the given context into the cache.
+     *
+     * @throws RuntimeException if any of the token ranges could not be scanned, i.e. if
+     *         the cluster does not use the Murmur3Partitioner
+     */
+    public void prime(ResourceMetadataCache cache, Context context) {
+        final ExecutorService executor = Executors.newFixedThreadPool(m_numThreads, new ThreadFactoryBuilder()
+                .setNameFormat("Newts-CachePrimer-%d")
+                .build());
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (long[] range : splitTokenRing(m_numThreads * RANGES_PER_THREAD)) {
+                futures.add(executor.submit(() -> scan(m_selectMetricsStatement, range, context, (resource, row) ->
+                        cache.merge(context, resource, new ResourceMetadata().putMetric(row.getString("metric_name"))))));
+                futures.add(executor.submit(() -> scan(m_selectAttributesStatement, range, context, (resource, row) ->
+                        cache.merge(context, resource, new ResourceMetadata().putAttribute(row.getString("attribute"), row.getString("value"))))));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while priming the cache.", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to scan a token range.", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void scan(PreparedStatement statement, long[] range, Context context, BiConsumer<Resource, Row> consumer) {
+        LOG.debug("Scanning token range ({}, {}] with {}", range[0], range[1], statement.getQueryString());
+        final ResultSet rs = m_session.execute(statement.bind(range[0], range[1]).setFetchSize(m_fetchSize));
+        for (Row row : rs) {
+            // Prefetch the next page before the current one is exhausted
+            if (rs.getAvailableWithoutFetching() == m_fetchMoreThreshold && !rs.isFullyFetched()) {
+                rs.fetchMoreResults();
+            }
+            if (context != null && !context.equals(new Context(row.getString("context")))) {
+                continue;
+            }
+            consumer.accept(new Resource(row.getString("resource")), row);
+        }
+    }
+
+    /**
+     * Splits the token ring of the Murmur3Partitioner, [Long.MIN_VALUE, Long.MAX_VALUE],
+     * into ranges of equal size. Each range is given by its exclusive start and its inclusive end.
+     * No key is ever assigned the token Long.MIN_VALUE, so the ranges cover all keys.
+     */
+    @VisibleForTesting
+    static List<long[]> splitTokenRing(int numRanges) {
+        final BigInteger min = BigInteger.valueOf(Long.MIN_VALUE);
+        final BigInteger size = BigInteger.valueOf(Long.MAX_VALUE).subtract(min);
+        final List<long[]> ranges = new ArrayList<>(numRanges);
+        long start = Long.MIN_VALUE;
+        for (int i = 1; i <= numRanges; i++) {
+            final long end = i == numRanges ? Long.MAX_VALUE
+                    : min.add(size.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(numRanges))).longValueExact();
+            ranges.add(new long[] { start, end });
+            start = end;
+        }
+        return ranges;
+    }
+}
@@ -37,10 +37,16 @@ import com.codahale.metrics.MetricRegistry;
 public class GuavaCacheFactory implements CacheFactory<GuavaSearchableResourceMetadataCache> {
 
     private final long cacheSize;
+    private final int shards;
     private final MetricRegistry metricRegistry;
 
     public GuavaCacheFactory(long cacheSize, MetricRegistry metricRegistry) {
+        this(cacheSize, GuavaSearchableResourceMetadataCache.DEFAULT_SHARDS, metricRegistry);
+    }
+
+    public GuavaCacheFactory(long cacheSize, int shards, MetricRegistry metricRegistry) {
         this.cacheSize = cacheSize;
+        this.shards = shards;
         this.metricRegistry = Objects.requireNonNull(metricRegistry);
     }
 
@@ -51,6 +57,6 @@ public class GuavaCacheFactory implements CacheFactory<GuavaSearchableResourceMe
 
     @Override
     public GuavaSearchableResourceMetadataCache createCache() {
-        return new GuavaSearchableResourceMetadataCache(cacheSize, metricRegistry);
+        return new GuavaSearchableResourceMetadataCache(cacheSize, shards, metricRegistry);
     }
 }
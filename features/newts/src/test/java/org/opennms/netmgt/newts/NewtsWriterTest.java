@@ -31,6 +31,8 @@ package org.opennms.netmgt.newts;
 import static org.junit.Assert.assertEquals;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
@@ -119,6 +121,72 @@ public class NewtsWriterTest {
         assertEquals(ringBufferSize, sampleRepo.getNumSamplesInserted());
     }
 
+    /**
+     * Fills the ring buffer and locks all of the writer threads to verify
+     * that additional inserts block until there is room in the ring buffer.
+     */
+    @Test
+    public void insertsAreDelayedWhenRingBufferIsFull() throws Exception {
+        Resource x = new Resource("x");
+        int ringBufferSize = 1024;
+        int numWriterThreads = 8;
+
+        Lock lock = new ReentrantLock();
+        LockedSampleRepository sampleRepo = new LockedSampleRepository(lock);
+        MetricRegistry registry = new MetricRegistry();
+        NewtsWriter writer = new NewtsWriter(1, ringBufferSize, numWriterThreads, 60000L, registry);
+        writer.setSampleRepository(sampleRepo);
+
+        lock.lock();
+        for (int i = 0; i < ringBufferSize; i++) {
+            Sample s = new Sample(Timestamp.now(), x, "y", MetricType.COUNTER, new Counter(i));
+            writer.insert(Lists.newArrayList(s));
+        }
+
+        // The ring buffer should be full, and all of the threads should be locked
+        Thread.sleep(250);
+        assertEquals(numWriterThreads, sampleRepo.getNumThreadsLocked());
+
+        // Attempt to insert another batch of samples from another thread, which should block
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < 8; i++) {
+                Sample s = new Sample(Timestamp.now(), x, "y", MetricType.COUNTER, new Counter(i));
+                writer.insert(Lists.newArrayList(s));
+            }
+        });
+        producer.start();
+        Thread.sleep(250);
+        assertEquals(true, producer.isAlive());
+
+        // Unlock the writer threads, the producer should complete and the ring buffer drain
+        lock.unlock();
+        producer.join();
+        writer.destroy();
+
+        // None of the samples should have been dropped
+        assertEquals(ringBufferSize + 8, sampleRepo.getNumSamplesInserted());
+        assertEquals(0, registry.meter(MetricRegistry.name("ring-buffer", "dropped-samples")).getCount());
+    }
+
+    @Test
+    public void samplesAreBatchedByResource() {
+        List<Sample> samples = Lists.newArrayList(
+                sample("a", 0), sample("b", 0), sample("a", 1), sample("c", 0),
+                sample("b", 1), sample("a", 2), sample("d", 0), sample("d", 1),
+                sample("d", 2), sample("d", 3), sample("d", 4));
+
+        assertEquals(Lists.newArrayList("a:0 a:1 a:2", "b:0 b:1 c:0", "d:0 d:1 d:2", "d:3 d:4"),
+                NewtsWriter.partitionByResource(samples, 3).stream()
+                    .map(batch -> batch.stream()
+                            .map(s -> s.getResource().getId() + ":" + s.getValue().longValue())
+                            .collect(Collectors.joining(" ")))
+                    .collect(Collectors.toList()));
+    }
+
+    private static Sample sample(String resourceId, long value) {
+        return new Sample(Timestamp.now(), new Resource(resourceId), "y", MetricType.COUNTER, new Counter(value));
+    }
+
     private static class LatchedSampleRepository extends MockSampleRepository {
         private final CountDownLatch latch;
 
@@ -31,6 +31,8 @@ package org.opennms.netmgt.newts.support;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
+
 import org.junit.Test;
 import org.opennms.newts.api.Context;
 import org.opennms.newts.api.Resource;
@@ -60,6 +62,22 @@ public class GuavaSearchableResourceMetadataCacheTest {
         assertTrue(cache.getResourceIdsWithPrefix(ctx, "a:b:c:d").isEmpty());
     }
 
+    @Test
+    public void canGetEntriesWithPrefixAcrossShards() {
+        Context ctx = Context.DEFAULT_CONTEXT;
+        GuavaSearchableResourceMetadataCache cache = new GuavaSearchableResourceMetadataCache(2048, 8, m_registry);
+
+        for (String resourceId : Arrays.asList("a:d", "a:b:c", "a:c", "a:b", "b:a")) {
+            cache.merge(ctx, new Resource(resourceId), new ResourceMetadata());
+        }
+
+        // Results are sorted, regardless of the shard holding the keys
+        assertEquals(Arrays.asList("a:b", "a:b:c", "a:c", "a:d"), cache.getResourceIdsWithPrefix(ctx, "a:"));
+
+        cache.delete(ctx, new Resource("a:c"));
+        assertEquals(Arrays.asList("a:b", "a:b:c", "a:d"), cache.getResourceIdsWithPrefix(ctx, "a:"));
+    }
+
     @Test
     @IfProfileValue(name="runBenchmarkTests", value="true")
     public void getResourceIdsWithPrefixPerftTest() {
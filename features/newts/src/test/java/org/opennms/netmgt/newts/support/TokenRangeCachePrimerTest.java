@@ -1,8 +1,8 @@
 /*******************************************************************************
  * This file is part of OpenNMS(R).
  *
- * Copyright (C) 2017-2017 The OpenNMS Group, Inc.
- * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
  *
  * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
  *
@@ -26,28 +26,31 @@
  *     http://www.opennms.com/
  *******************************************************************************/
 
-package org.opennms.netmgt.flows.classification.internal.matcher;
+package org.opennms.netmgt.newts.support;
 
-import java.util.Objects;
+import static org.junit.Assert.assertEquals;
 
-import org.opennms.netmgt.flows.classification.ClassificationRequest;
-import org.opennms.netmgt.flows.classification.internal.value.PortValue;
+import java.util.List;
 
-import com.google.common.base.Function;
+import org.junit.Test;
 
-class PortMatcher implements Matcher {
+public class TokenRangeCachePrimerTest {
 
-    // Extracts the value from the ClassificationRequest. Allows to easily distinguish between srcPort and dstPort
-    private final Function<ClassificationRequest, Integer> valueExtractor;
-    private final PortValue value;
+    @Test
+    public void canSplitTokenRing() {
+        List<long[]> ranges = TokenRangeCachePrimer.splitTokenRing(7);
+        assertEquals(7, ranges.size());
+        assertEquals(Long.MIN_VALUE, ranges.get(0)[0]);
+        assertEquals(Long.MAX_VALUE, ranges.get(6)[1]);
+        for (int i = 1; i < ranges.size(); i++) {
+            // Ranges are contiguous and of roughly equal size
+            assertEquals(ranges.get(i - 1)[1], ranges.get(i)[0]);
+            assertEquals((double) (-1L >>> 1) / 7 * 2, (double) ranges.get(i)[1] - ranges.get(i)[0], 2.0e5);
+        }
 
-    protected PortMatcher(String ports, Function<ClassificationRequest, Integer> valueExtractor) {
-        this.value = new PortValue(ports);
-        this.valueExtractor = Objects.requireNonNull(valueExtractor);
-    }
-
-    @Override
-    public boolean matches(ClassificationRequest request) {
-        return this.value.getPorts().contains(valueExtractor.apply(request));
+        ranges = TokenRangeCachePrimer.splitTokenRing(1);
+        assertEquals(1, ranges.size());
+        assertEquals(Long.MIN_VALUE, ranges.get(0)[0]);
+        assertEquals(Long.MAX_VALUE, ranges.get(0)[1]);
     }
 }
@@ -69,6 +69,14 @@ public interface QueueDefinition {
      */
     Optional<Integer> getBatchIntervalMs();
 
+    /**
+     * Maximum number of queued messages a dispatching thread
+     * takes from the queue at once.
+     *
+     * @return the dispatch batch size
+     */
+    Optional<Integer> getDispatchBatchSize();
+
     /**
      * Maximum number of messages to keep in memory while waiting
      * to be dispatched.
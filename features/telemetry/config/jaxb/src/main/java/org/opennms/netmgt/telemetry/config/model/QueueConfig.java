@@ -60,6 +60,9 @@ public class QueueConfig implements QueueDefinition {
     @XmlAttribute(name="batch-interval")
     private Integer batchIntervalMs;
 
+    @XmlAttribute(name="dispatch-batch-size")
+    private Integer dispatchBatchSize;
+
     @XmlAttribute(name="queue-size")
     private Integer queueSize;
 
@@ -105,6 +108,15 @@ public class QueueConfig implements QueueDefinition {
         this.batchIntervalMs = batchIntervalMs;
     }
 
+    @Override
+    public Optional<Integer> getDispatchBatchSize() {
+        return Optional.ofNullable(this.dispatchBatchSize);
+    }
+
+    public void setDispatchBatchSize(final Integer dispatchBatchSize) {
+        this.dispatchBatchSize = dispatchBatchSize;
+    }
+
     @Override
     public Optional<Integer> getQueueSize() {
         return Optional.ofNullable(this.queueSize);
@@ -140,6 +152,7 @@ public class QueueConfig implements QueueDefinition {
                 Objects.equals(this.numThreads, that.numThreads) &&
                 Objects.equals(this.batchSize, that.batchSize) &&
                 Objects.equals(this.batchIntervalMs, that.batchIntervalMs) &&
+                Objects.equals(this.dispatchBatchSize, that.dispatchBatchSize) &&
                 Objects.equals(this.queueSize, that.queueSize) &&
                 Objects.equals(this.useRoutingKey, that.useRoutingKey) &&
                 Objects.equals(this.adapters, that.adapters);
@@ -152,6 +165,7 @@ public class QueueConfig implements QueueDefinition {
                 this.numThreads,
                 this.batchSize,
                 this.batchIntervalMs,
+                this.dispatchBatchSize,
                 this.queueSize,
                 this.useRoutingKey,
                 this.adapters);
@@ -164,6 +178,7 @@ public class QueueConfig implements QueueDefinition {
                 .add("num-threads", this.numThreads)
                 .add("batch-size", this.batchSize)
                 .add("batch-interval-ms", this.batchIntervalMs)
+                .add("dispatch-batch-size", this.dispatchBatchSize)
                 .add("queue-size", this.queueSize)
                 .add("use-routing-key", this.useRoutingKey)
                 .addValue(this.adapters)
@@ -38,6 +38,7 @@ public class MapBasedQueueDef implements QueueDefinition {
     private final Optional<Integer> queueSize;
     private final Optional<Integer> batchSize;
     private final Optional<Integer> batchInterval;
+    private final Optional<Integer> dispatchBatchSize;
     private final Optional<Boolean> useRoutingKey;
 
     public MapBasedQueueDef(final PropertyTree definition) {
@@ -46,6 +47,7 @@ public class MapBasedQueueDef implements QueueDefinition {
         this.queueSize = definition.getOptionalInteger("queue", "size");
         this.batchSize = definition.getOptionalInteger("batch", "size");
         this.batchInterval = definition.getOptionalInteger("batch", "interval");
+        this.dispatchBatchSize = definition.getOptionalInteger("queue", "dispatch-batch-size");
         this.useRoutingKey = definition.getOptionalBoolean("queue", "use-routing-key");
     }
 
@@ -69,6 +71,11 @@ public class MapBasedQueueDef implements QueueDefinition {
         return batchInterval;
     }
 
+    @Override
+    public Optional<Integer> getDispatchBatchSize() {
+        return dispatchBatchSize;
+    }
+
     @Override
     public Optional<Integer> getQueueSize() {
         return queueSize;
@@ -0,0 +1,436 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.telemetry.protocols.common.compact;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.bson.BsonArray;
+import org.bson.BsonBinary;
+import org.bson.BsonBoolean;
+import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonNull;
+import org.bson.BsonSerializationException;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+
+/**
+ * Immutable {@link BsonDocument} view on a document written by {@link CompactDocumentWriter}.
+ *
+ * The elements are indexed on first access by walking the encoded document once, without decoding any values. Values
+ * are decoded when looked up and nested documents are decoded lazily as well, so consumers only pay for the fields
+ * they actually read.
+ */
+public class CompactDocument extends BsonDocument {
+    private static final long serialVersionUID = 1L;
+
+    static final byte[] MAGIC = new byte[] { (byte) 0xFF, 'O', 'C', 'D' };
+    static final byte VERSION = 1;
+    private static final int HEADER_SIZE = MAGIC.length + 1;
+
+    static final byte TYPE_NULL = 0;
+    static final byte TYPE_FALSE = 1;
+    static final byte TYPE_TRUE = 2;
+    static final byte TYPE_INT32 = 3;
+    static final byte TYPE_INT64 = 4;
+    static final byte TYPE_DOUBLE = 5;
+    static final byte TYPE_STRING = 6;
+    static final byte TYPE_BINARY = 7;
+    static final byte TYPE_DOCUMENT = 8;
+    static final byte TYPE_ARRAY = 9;
+
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+
+    private transient Index index;
+
+    private CompactDocument(final byte[] bytes, final int offset, final int length) {
+        this.bytes = Objects.requireNonNull(bytes);
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Checks if the given message uses the compact encoding.
+     *
+     * A BSON document starts with its total size which can never match the magic bytes for any reasonable message.
+     */
+    public static boolean isCompact(final byte[] bytes) {
+        if (bytes.length < HEADER_SIZE) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (bytes[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates a view on a document written by {@link CompactDocumentWriter}.
+     */
+    public static CompactDocument parse(final byte[] bytes) {
+        if (!isCompact(bytes)) {
+            throw new BsonSerializationException("Not a compact document");
+        }
+        if (bytes[MAGIC.length] != VERSION) {
+            throw new BsonSerializationException("Unsupported compact document version: " + bytes[MAGIC.length]);
+        }
+        return new CompactDocument(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE);
+    }
+
+    /**
+     * Creates a document for the given message which can be either encoded as BSON or using the compact encoding.
+     */
+    public static BsonDocument fromBytes(final byte[] bytes) {
+        if (isCompact(bytes)) {
+            return parse(bytes);
+        }
+        return new RawBsonDocument(bytes);
+    }
+
+    @Override
+    public BsonValue get(final Object key) {
+        if (key == null) {
+            throw new IllegalArgumentException("key can not be null");
+        }
+
+        final Index index = this.index();
+        final Integer element = index.elements.get(key);
+        if (element == null) {
+            return null;
+        }
+
+        BsonValue value = index.values[element];
+        if (value == null) {
+            value = readValue(new Cursor(this.bytes, index.positions[element], this.offset + this.length), index.types[element]);
+            index.values[element] = value;
+        }
+        return value;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        if (key == null) {
+            throw new IllegalArgumentException("key can not be null");
+        }
+        return this.index().elements.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(final Object value) {
+        return this.toBsonDocument().containsValue(value);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.index().elements.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        return this.index().elements.size();
+    }
+
+    @Override
+    public Set<Entry<String, BsonValue>> entrySet() {
+        return this.toBsonDocument().entrySet();
+    }
+
+    @Override
+    public Collection<BsonValue> values() {
+        return this.toBsonDocument().values();
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return this.toBsonDocument().keySet();
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("CompactDocument instances are immutable");
+    }
+
+    @Override
+    public BsonValue put(final String key, final BsonValue value) {
+        throw new UnsupportedOperationException("CompactDocument instances are immutable");
+    }
+
+    @Override
+    public BsonDocument append(final String key, final BsonValue value) {
+        throw new UnsupportedOperationException("CompactDocument instances are immutable");
+    }
+
+    @Override
+    public void putAll(final Map<? extends String, ? extends BsonValue> m) {
+        throw new UnsupportedOperationException("CompactDocument instances are immutable");
+    }
+
+    @Override
+    public BsonValue remove(final Object key) {
+        throw new UnsupportedOperationException("CompactDocument instances are immutable");
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        return this.toBsonDocument().equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.toBsonDocument().hashCode();
+    }
+
+    @Override
+    public BsonDocument clone() {
+        return new CompactDocument(Arrays.copyOfRange(this.bytes, this.offset, this.offset + this.length), 0, this.length);
+    }
+
+    private BsonDocument toBsonDocument() {
+        final Index index = this.index();
+        final BsonDocument document = new BsonDocument();
+        for (int i = 0; i < index.names.length; i++) {
+            if (index.names[i] != null) {
+                document.put(index.names[i], this.get(index.names[i]));
+            }
+        }
+        return document;
+    }
+
+    private Index index() {
+        if (this.index == null) {
+            this.index = new Index(this.bytes, this.offset, this.length);
+        }
+        return this.index;
+    }
+
+    private static BsonValue readValue(final Cursor cursor, final byte type) {
+        switch (type) {
+            case TYPE_NULL:
+                return BsonNull.VALUE;
+            case TYPE_FALSE:
+                return BsonBoolean.FALSE;
+            case TYPE_TRUE:
+                return BsonBoolean.TRUE;
+            case TYPE_INT32: {
+                final long value = cursor.readVarint();
+                return new BsonInt32((int) ((value >>> 1) ^ -(value & 1)));
+            }
+            case TYPE_INT64: {
+                final long value = cursor.readVarint();
+                return new BsonInt64((value >>> 1) ^ -(value & 1));
+            }
+            case TYPE_DOUBLE: {
+                long bits = 0;
+                for (int i = 0; i < 8; i++) {
+                    bits |= (cursor.readByte() & 0xFFL) << (i * 8);
+                }
+                return new BsonDouble(Double.longBitsToDouble(bits));
+            }
+            case TYPE_STRING:
+                return new BsonString(cursor.readString());
+            case TYPE_BINARY: {
+                final int size = cursor.readSize();
+                final byte subType = cursor.readByte();
+                return new BsonBinary(subType, cursor.readBytes(size));
+            }
+            case TYPE_DOCUMENT: {
+                final int size = cursor.readSize();
+                final CompactDocument document = new CompactDocument(cursor.bytes, cursor.position, size);
+                cursor.skip(size);
+                return document;
+            }
+            case TYPE_ARRAY: {
+                final int size = cursor.readSize();
+                final Cursor elements = new Cursor(cursor.bytes, cursor.position, cursor.position + size);
+                cursor.skip(size);
+
+                final BsonArray array = new BsonArray();
+                while (elements.hasRemaining()) {
+                    array.add(readValue(elements, elements.readByte()));
+                }
+                return array;
+            }
+            default:
+                throw new BsonSerializationException("Unknown compact document type: " + type);
+        }
+    }
+
+    private static void skipValue(final Cursor cursor, final byte type) {
+        switch (type) {
+            case TYPE_NULL:
+            case TYPE_FALSE:
+            case TYPE_TRUE:
+                break;
+            case TYPE_INT32:
+            case TYPE_INT64:
+                cursor.readVarint();
+                break;
+            case TYPE_DOUBLE:
+                cursor.skip(8);
+                break;
+            case TYPE_BINARY:
+                // Size does not include the sub type
+                cursor.skip(cursor.readSize() + 1);
+                break;
+            case TYPE_STRING:
+            case TYPE_DOCUMENT:
+            case TYPE_ARRAY:
+                cursor.skip(cursor.readSize());
+                break;
+            default:
+                throw new BsonSerializationException("Unknown compact document type: " + type);
+        }
+    }
+
+    private static final class Index {
+        private final String[] names;
+        private final byte[] types;
+        private final int[] positions;
+        private final BsonValue[] values;
+        private final Map<String, Integer> elements;
+
+        private Index(final byte[] bytes, final int offset, final int length) {
+            String[] names = new String[16];
+            byte[] types = new byte[16];
+            int[] positions = new int[16];
+            int count = 0;
+
+            final Cursor cursor = new Cursor(bytes, offset, offset + length);
+            while (cursor.hasRemaining()) {
+                if (count == names.length) {
+                    names = Arrays.copyOf(names, count * 2);
+                    types = Arrays.copyOf(types, count * 2);
+                    positions = Arrays.copyOf(positions, count * 2);
+                }
+
+                types[count] = cursor.readByte();
+
+                final int id = (int) cursor.readVarint();
+                // Fields unknown to this version of the dictionary are ignored
+                names[count] = id == 0 ? cursor.readString() : CompactDocumentFields.nameOf(id - 1);
+
+                positions[count] = cursor.position;
+                skipValue(cursor, types[count]);
+                count++;
+            }
+
+            this.names = Arrays.copyOf(names, count);
+            this.types = Arrays.copyOf(types, count);
+            this.positions = Arrays.copyOf(positions, count);
+            this.values = new BsonValue[count];
+
+            this.elements = new HashMap<>(Math.max(4, count * 2));
+            for (int i = 0; i < count; i++) {
+                if (this.names[i] != null) {
+                    this.elements.putIfAbsent(this.names[i], i);
+                }
+            }
+        }
+    }
+
+    private static final class Cursor {
+        private final byte[] bytes;
+        private final int limit;
+        private int position;
+
+        private Cursor(final byte[] bytes, final int position, final int limit) {
+            this.bytes = bytes;
+            this.position = position;
+            this.limit = limit;
+        }
+
+        private boolean hasRemaining() {
+            return this.position < this.limit;
+        }
+
+        private byte readByte() {
+            if (this.position >= this.limit) {
+                throw new BsonSerializationException("Unexpected end of compact document");
+            }
+            return this.bytes[this.position++];
+        }
+
+        private long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                final byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new BsonSerializationException("Malformed variable length integer in compact document");
+        }
+
+        private int readSize() {
+            final long size = readVarint();
+            if (size < 0 || size > this.limit - this.position) {
+                throw new BsonSerializationException("Invalid size in compact document: " + size);
+            }
+            return (int) size;
+        }
+
+        private byte[] readBytes(final int size) {
+            if (size > this.limit - this.position) {
+                throw new BsonSerializationException("Unexpected end of compact document");
+            }
+            final byte[] result = Arrays.copyOfRange(this.bytes, this.position, this.position + size);
+            this.position += size;
+            return result;
+        }
+
+        private String readString() {
+            final int size = readSize();
+            final String result = new String(this.bytes, this.position, size, StandardCharsets.UTF_8);
+            this.position += size;
+            return result;
+        }
+
+        private void skip(final int size) {
+            if (size > this.limit - this.position) {
+                throw new BsonSerializationException("Unexpected end of compact document");
+            }
+            this.position += size;
+        }
+    }
+}
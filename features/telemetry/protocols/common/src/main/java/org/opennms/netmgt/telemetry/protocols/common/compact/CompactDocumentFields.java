@@ -0,0 +1,271 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.telemetry.protocols.common.compact;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionary of the field names which are encoded by reference in compact documents.
+ *
+ * The position of a name in this list is its identifier on the wire. Names must therefore only ever be appended
+ * to the end of the list. Names which are not part of the dictionary are still supported, but are written inline.
+ */
+public final class CompactDocumentFields {
+
+    public static final List<String> FIELDS = Collections.unmodifiableList(Arrays.asList(
+            // Document structure
+            "@version",
+            "address",
+            "hostname",
+            "epoch",
+            "nanos",
+            "s",
+            "v",
+            "semantic",
+            "values",
+
+            // Packet header fields
+            "@count",
+            "@engineId",
+            "@engineType",
+            "@exportTime",
+            "@flowSequence",
+            "@observationDomainId",
+            "@recordCount",
+            "@samplingAlgorithm",
+            "@samplingInterval",
+            "@sequenceNumber",
+            "@sourceId",
+            "@sysUpTime",
+            "@sysUptime",
+            "@unixNSecs",
+            "@unixSecs",
+            "@versionNumber",
+
+            // Netflow v5
+            "dOctets",
+            "dPkts",
+            "dstAddr",
+            "dstAs",
+            "dstMask",
+            "dstPort",
+            "egress",
+            "engineId",
+            "engineType",
+            "first",
+            "input",
+            "last",
+            "nextHop",
+            "output",
+            "proto",
+            "samplingAlgorithm",
+            "samplingInterval",
+            "srcAddr",
+            "srcAs",
+            "srcMask",
+            "srcPort",
+            "tcpFlags",
+            "tos",
+
+            // Netflow v9
+            "BPG_IPV4_NEXT_HOP",
+            "BPG_IPV6_NEXT_HOP",
+            "DIRECTION",
+            "DST_AS",
+            "DST_MASK",
+            "DST_VLAN",
+            "ENGINE_ID",
+            "ENGINE_TYPE",
+            "FIRST_SWITCHED",
+            "FLOW_ACTIVE_TIMEOUT",
+            "FLOW_INACTIVE_TIMEOUT",
+            "INPUT_SNMP",
+            "IN_BYTES",
+            "IN_PKTS",
+            "IPV4_DST_ADDR",
+            "IPV4_NEXT_HOP",
+            "IPV4_SRC_ADDR",
+            "IPV6_DST_ADDR",
+            "IPV6_DST_MASK",
+            "IPV6_NEXT_HOP",
+            "IPV6_SRC_ADDR",
+            "IPV6_SRC_MASK",
+            "IP_PROTOCOL_VERSION",
+            "L4_DST_PORT",
+            "L4_SRC_PORT",
+            "LAST_SWITCHED",
+            "OUTPUT_SNMP",
+            "PROTOCOL",
+            "SAMPLING_ALGORITHM",
+            "SAMPLING_INTERVAL",
+            "SRC_AS",
+            "SRC_MASK",
+            "SRC_VLAN",
+            "TCP_FLAGS",
+            "TOS",
+            "SRC_TOS",
+            "FLOWS",
+            "OUT_BYTES",
+            "OUT_PKTS",
+            "FLOW_SAMPLER_ID",
+            "IN_SRC_MAC",
+            "OUT_DST_MAC",
+            "ICMP_TYPE",
+            "MIN_TTL",
+            "MAX_TTL",
+            "IPV6_FLOW_LABEL",
+            "FORWARDING_STATUS",
+            "APPLICATION_ID",
+
+            // IPFIX
+            "bgpDestinationAsNumber",
+            "bgpNextHopIPv4Address",
+            "bgpNextHopIPv6Address",
+            "bgpSourceAsNumber",
+            "destinationIPv4Address",
+            "destinationIPv4PrefixLength",
+            "destinationIPv6Address",
+            "destinationIPv6PrefixLength",
+            "destinationTransportPort",
+            "dot1qCustomerVlanId",
+            "dot1qVlanId",
+            "egressInterface",
+            "flowActiveTimeout",
+            "flowDirection",
+            "flowEndDeltaMicroseconds",
+            "flowEndMicroseconds",
+            "flowEndMilliseconds",
+            "flowEndNanoseconds",
+            "flowEndSeconds",
+            "flowEndSysUpTime",
+            "flowInactiveTimeout",
+            "flowSamplingTimeInterval",
+            "flowSamplingTimeSpacing",
+            "flowStartDeltaMicroseconds",
+            "flowStartMicroseconds",
+            "flowStartMilliseconds",
+            "flowStartNanoseconds",
+            "flowStartSeconds",
+            "flowStartSysUpTime",
+            "hashOutputRangeMax",
+            "hashOutputRangeMin",
+            "hashSelectedRangeMax",
+            "hashSelectedRangeMin",
+            "ingressInterface",
+            "ipClassOfService",
+            "ipNextHopIPv4Address",
+            "ipNextHopIPv6Address",
+            "ipVersion",
+            "layer2OctetDeltaCount",
+            "octetDeltaCount",
+            "packetDeltaCount",
+            "postDot1qCustomerVlanId",
+            "postDot1qVlanId",
+            "postLayer2OctetDeltaCount",
+            "postOctetDeltaCount",
+            "postPacketDeltaCount",
+            "postVlanId",
+            "protocolIdentifier",
+            "samplerMode",
+            "samplerRandomInterval",
+            "samplingFlowInterval",
+            "samplingFlowSpacing",
+            "samplingPopulation",
+            "samplingProbability",
+            "samplingSize",
+            "selectorAlgorithm",
+            "sourceIPv4Address",
+            "sourceIPv4PrefixLength",
+            "sourceIPv6Address",
+            "sourceIPv6PrefixLength",
+            "sourceTransportPort",
+            "systemInitTimeMilliseconds",
+            "tcpControlBits",
+            "transportOctetDeltaCount",
+            "transportPacketDeltaCount",
+            "vlanId",
+            "octetTotalCount",
+            "packetTotalCount",
+            "ipDiffServCodePoint",
+            "ipPrecedence",
+            "icmpTypeCodeIPv4",
+            "icmpTypeCodeIPv6",
+            "flowEndReason",
+            "minimumTTL",
+            "maximumTTL",
+            "applicationId",
+            "applicationName",
+            "exporterIPv4Address",
+            "exporterIPv6Address",
+            "flowId",
+            "sourceMacAddress",
+            "destinationMacAddress",
+            "paddingOctets",
+            "samplerId",
+            "selectorId",
+            "flowLabelIPv6",
+            "fragmentIdentification",
+            "observationDomainId",
+            "interfaceName",
+            "interfaceDescription"
+    ));
+
+    private static final Map<String, Integer> IDS = new HashMap<>();
+
+    static {
+        for (int i = 0; i < FIELDS.size(); i++) {
+            if (IDS.put(FIELDS.get(i), i) != null) {
+                throw new IllegalStateException("Duplicate field in dictionary: " + FIELDS.get(i));
+            }
+        }
+    }
+
+    private CompactDocumentFields() {
+    }
+
+    /**
+     * @return the identifier of the given field name or -1 if the name is not part of the dictionary
+     */
+    public static int idOf(final String name) {
+        final Integer id = IDS.get(name);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * @return the field name for the given identifier or null if the identifier is unknown to this version
+     */
+    public static String nameOf(final int id) {
+        return id >= 0 && id < FIELDS.size() ? FIELDS.get(id) : null;
+    }
+}
@@ -0,0 +1,354 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.telemetry.protocols.common.compact;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.bson.AbstractBsonWriter;
+import org.bson.BsonBinary;
+import org.bson.BsonContextType;
+import org.bson.BsonDbPointer;
+import org.bson.BsonRegularExpression;
+import org.bson.BsonTimestamp;
+import org.bson.BsonWriterSettings;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+
+/**
+ * {@link org.bson.BsonWriter} emitting the compact document encoding read by {@link CompactDocument}.
+ *
+ * Compared to BSON, field names found in {@link CompactDocumentFields} are replaced by their identifier, integers are
+ * written as variable length quantities and nested documents are prefixed by a variable length size. Only the value
+ * types used for flow records are supported.
+ */
+public class CompactDocumentWriter extends AbstractBsonWriter {
+
+    private byte[] buffer;
+    private int position;
+
+    public CompactDocumentWriter() {
+        this(256);
+    }
+
+    public CompactDocumentWriter(final int initialCapacity) {
+        super(new BsonWriterSettings());
+        this.buffer = new byte[Math.max(16, initialCapacity)];
+    }
+
+    /**
+     * @return a copy of the encoded document
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(this.buffer, this.position);
+    }
+
+    /**
+     * @return a buffer wrapping the encoded document without copying it
+     */
+    public ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(this.buffer, 0, this.position);
+    }
+
+    @Override
+    protected Context getContext() {
+        return (Context) super.getContext();
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    protected void doWriteStartDocument() {
+        if (getState() == State.VALUE) {
+            writeType(CompactDocument.TYPE_DOCUMENT);
+            writeCurrentName();
+            setContext(new Context(getContext(), BsonContextType.DOCUMENT, reserveSize()));
+        } else {
+            writeBytes(CompactDocument.MAGIC);
+            writeByte(CompactDocument.VERSION);
+            setContext(new Context(getContext(), BsonContextType.DOCUMENT, -1));
+        }
+    }
+
+    @Override
+    protected void doWriteEndDocument() {
+        backpatchSize();
+        setContext(getContext().getParentContext());
+    }
+
+    @Override
+    protected void doWriteStartArray() {
+        writeType(CompactDocument.TYPE_ARRAY);
+        writeCurrentName();
+        setContext(new Context(getContext(), BsonContextType.ARRAY, reserveSize()));
+    }
+
+    @Override
+    protected void doWriteEndArray() {
+        backpatchSize();
+        setContext(getContext().getParentContext());
+    }
+
+    @Override
+    protected void doWriteBinaryData(final BsonBinary value) {
+        writeType(CompactDocument.TYPE_BINARY);
+        writeCurrentName();
+        writeVarint(value.getData().length);
+        writeByte(value.getType());
+        writeBytes(value.getData());
+    }
+
+    @Override
+    protected void doWriteBoolean(final boolean value) {
+        writeType(value ? CompactDocument.TYPE_TRUE : CompactDocument.TYPE_FALSE);
+        writeCurrentName();
+    }
+
+    @Override
+    protected void doWriteDouble(final double value) {
+        writeType(CompactDocument.TYPE_DOUBLE);
+        writeCurrentName();
+        final long bits = Double.doubleToRawLongBits(value);
+        ensureCapacity(8);
+        for (int i = 0; i < 8; i++) {
+            this.buffer[this.position++] = (byte) (bits >>> (i * 8));
+        }
+    }
+
+    @Override
+    protected void doWriteInt32(final int value) {
+        writeType(CompactDocument.TYPE_INT32);
+        writeCurrentName();
+        writeVarint(((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL);
+    }
+
+    @Override
+    protected void doWriteInt64(final long value) {
+        writeType(CompactDocument.TYPE_INT64);
+        writeCurrentName();
+        writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    @Override
+    protected void doWriteNull() {
+        writeType(CompactDocument.TYPE_NULL);
+        writeCurrentName();
+    }
+
+    @Override
+    protected void doWriteString(final String value) {
+        writeType(CompactDocument.TYPE_STRING);
+        writeCurrentName();
+        writeUtf8(value);
+    }
+
+    @Override
+    protected void doWriteDateTime(final long value) {
+        throw unsupported("date time");
+    }
+
+    @Override
+    protected void doWriteDBPointer(final BsonDbPointer value) {
+        throw unsupported("DB pointer");
+    }
+
+    @Override
+    protected void doWriteDecimal128(final Decimal128 value) {
+        throw unsupported("decimal128");
+    }
+
+    @Override
+    protected void doWriteJavaScript(final String value) {
+        throw unsupported("JavaScript");
+    }
+
+    @Override
+    protected void doWriteJavaScriptWithScope(final String value) {
+        throw unsupported("JavaScript");
+    }
+
+    @Override
+    protected void doWriteMaxKey() {
+        throw unsupported("max key");
+    }
+
+    @Override
+    protected void doWriteMinKey() {
+        throw unsupported("min key");
+    }
+
+    @Override
+    protected void doWriteObjectId(final ObjectId value) {
+        throw unsupported("object id");
+    }
+
+    @Override
+    protected void doWriteRegularExpression(final BsonRegularExpression value) {
+        throw unsupported("regular expression");
+    }
+
+    @Override
+    protected void doWriteSymbol(final String value) {
+        throw unsupported("symbol");
+    }
+
+    @Override
+    protected void doWriteTimestamp(final BsonTimestamp value) {
+        throw unsupported("timestamp");
+    }
+
+    @Override
+    protected void doWriteUndefined() {
+        throw unsupported("undefined");
+    }
+
+    private static UnsupportedOperationException unsupported(final String type) {
+        return new UnsupportedOperationException("Values of type " + type + " are not supported by the compact encoding");
+    }
+
+    private void writeCurrentName() {
+        // Elements of an array are identified by their position
+        if (getContext().getContextType() == BsonContextType.ARRAY) {
+            return;
+        }
+
+        final String name = getName();
+        final int id = CompactDocumentFields.idOf(name);
+        if (id >= 0) {
+            writeVarint(id + 1);
+        } else {
+            writeVarint(0);
+            writeUtf8(name);
+        }
+    }
+
+    private void writeType(final byte type) {
+        writeByte(type);
+    }
+
+    private void writeUtf8(final String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length);
+        writeBytes(bytes);
+    }
+
+    private int reserveSize() {
+        // Most nested documents are small enough for their size to fit into a single byte
+        final int sizePosition = this.position;
+        writeByte((byte) 0);
+        return sizePosition;
+    }
+
+    private void backpatchSize() {
+        final int sizePosition = getContext().sizePosition;
+        if (sizePosition < 0) {
+            return;
+        }
+
+        final int size = this.position - sizePosition - 1;
+        final int sizeLength = varintLength(size);
+        if (sizeLength > 1) {
+            // Make room for the larger size
+            ensureCapacity(sizeLength - 1);
+            System.arraycopy(this.buffer, sizePosition + 1, this.buffer, sizePosition + sizeLength, size);
+            this.position += sizeLength - 1;
+        }
+
+        int value = size;
+        int p = sizePosition;
+        while ((value & ~0x7F) != 0) {
+            this.buffer[p++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        this.buffer[p] = (byte) value;
+    }
+
+    private static int varintLength(long value) {
+        int length = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    private void writeVarint(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            this.buffer[this.position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        this.buffer[this.position++] = (byte) value;
+    }
+
+    private void writeByte(final byte value) {
+        ensureCapacity(1);
+        this.buffer[this.position++] = value;
+    }
+
+    private void writeBytes(final byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, this.buffer, this.position, bytes.length);
+        this.position += bytes.length;
+    }
+
+    private void ensureCapacity(final int length) {
+        if (this.position + length > this.buffer.length) {
+            this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.position + length));
+        }
+    }
+
+    protected class Context extends AbstractBsonWriter.Context {
+        private final int sizePosition;
+
+        public Context(final Context parentContext, final BsonContextType contextType, final int sizePosition) {
+            super(parentContext, contextType);
+            this.sizePosition = sizePosition;
+        }
+
+        public Context(final Context from) {
+            super(from);
+            this.sizePosition = from.sizePosition;
+        }
+
+        @Override
+        public Context getParentContext() {
+            return (Context) super.getParentContext();
+        }
+
+        @Override
+        public Context copy() {
+            return new Context(this);
+        }
+    }
+}
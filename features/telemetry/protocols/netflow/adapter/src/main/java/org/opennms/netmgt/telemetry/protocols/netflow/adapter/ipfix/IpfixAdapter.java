@@ -29,9 +29,9 @@
 package org.opennms.netmgt.telemetry.protocols.netflow.adapter.ipfix;
 
 import org.bson.BsonDocument;
-import org.bson.RawBsonDocument;
 import org.opennms.netmgt.flows.api.FlowRepository;
 import org.opennms.netmgt.telemetry.api.adapter.TelemetryMessageLogEntry;
+import org.opennms.netmgt.telemetry.protocols.common.compact.CompactDocument;
 import org.opennms.netmgt.telemetry.protocols.flows.AbstractFlowAdapter;
 
 import com.codahale.metrics.MetricRegistry;
@@ -46,6 +46,6 @@ public class IpfixAdapter extends AbstractFlowAdapter<BsonDocument> {
 
     @Override
     protected BsonDocument parse(TelemetryMessageLogEntry message) {
-        return new RawBsonDocument(message.getByteArray());
+        return CompactDocument.fromBytes(message.getByteArray());
     }
 }
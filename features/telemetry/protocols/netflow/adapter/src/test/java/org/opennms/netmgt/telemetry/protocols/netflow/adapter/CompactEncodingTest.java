@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.telemetry.protocols.netflow.adapter;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bson.BsonBinary;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonNull;
+import org.bson.BsonString;
+import org.bson.RawBsonDocument;
+import org.junit.Test;
+import org.opennms.netmgt.flows.api.Converter;
+import org.opennms.netmgt.flows.api.Flow;
+import org.opennms.netmgt.telemetry.protocols.common.compact.CompactDocument;
+import org.opennms.netmgt.telemetry.protocols.common.compact.CompactDocumentWriter;
+import org.opennms.netmgt.telemetry.protocols.netflow.adapter.ipfix.IpfixConverter;
+import org.opennms.netmgt.telemetry.protocols.netflow.adapter.netflow5.Netflow5Converter;
+import org.opennms.netmgt.telemetry.protocols.netflow.adapter.netflow9.Netflow9Converter;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ParserBase;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.Protocol;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
+
+public class CompactEncodingTest {
+
+    @Test
+    public void canRoundTripValues() {
+        final CompactDocumentWriter writer = new CompactDocumentWriter(16);
+        writer.writeStartDocument();
+        writer.writeInt32("@version", 10);
+        writer.writeInt32("negative", Integer.MIN_VALUE);
+        writer.writeInt64("octetDeltaCount", Long.MAX_VALUE);
+        writer.writeInt64("notInDictionary", -1L);
+        writer.writeDouble("samplingProbability", 0.25);
+        writer.writeBoolean("flag", true);
+        writer.writeNull("nothing");
+        writer.writeBinaryData("paddingOctets", new BsonBinary(new byte[] { 1, 2, 3 }));
+        writer.writeStartDocument("sourceIPv4Address");
+        writer.writeString("address", "10.0.0.1");
+        writer.writeString("hostname", "h\u00f6st");
+        writer.writeEndDocument();
+        // Nested document requiring a multi-byte size
+        writer.writeStartDocument("large");
+        for (int i = 0; i < 50; i++) {
+            writer.writeInt64("field" + i, i);
+        }
+        writer.writeEndDocument();
+        writer.writeStartArray("values");
+        writer.writeStartDocument();
+        writer.writeInt64("vlanId", 42);
+        writer.writeEndDocument();
+        writer.writeString("second");
+        writer.writeEndArray();
+        writer.writeInt64("after", 7);
+        writer.writeEndDocument();
+
+        final byte[] bytes = writer.toByteArray();
+        assertThat(CompactDocument.isCompact(bytes), equalTo(true));
+
+        final BsonDocument document = CompactDocument.fromBytes(bytes);
+        assertThat(document, instanceOf(CompactDocument.class));
+        assertThat(document.size(), equalTo(12));
+        assertThat(document.getInt32("@version").getValue(), equalTo(10));
+        assertThat(document.getInt32("negative").getValue(), equalTo(Integer.MIN_VALUE));
+        assertThat(document.getInt64("octetDeltaCount").getValue(), equalTo(Long.MAX_VALUE));
+        assertThat(document.getInt64("notInDictionary").getValue(), equalTo(-1L));
+        assertThat(document.getDouble("samplingProbability").getValue(), equalTo(0.25));
+        assertThat(document.getBoolean("flag").getValue(), equalTo(true));
+        assertThat(document.get("nothing"), equalTo(BsonNull.VALUE));
+        assertThat(document.getBinary("paddingOctets").getData(), equalTo(new byte[] { 1, 2, 3 }));
+        assertThat(document.getDocument("sourceIPv4Address").getString("address").getValue(), equalTo("10.0.0.1"));
+        assertThat(document.getDocument("sourceIPv4Address").getString("hostname").getValue(), equalTo("h\u00f6st"));
+        assertThat(document.getDocument("large").size(), equalTo(50));
+        assertThat(document.getDocument("large").getInt64("field49").getValue(), equalTo(49L));
+        assertThat(document.getArray("values").get(0).asDocument().getInt64("vlanId").getValue(), equalTo(42L));
+        assertThat(document.getArray("values").get(1), equalTo(new BsonString("second")));
+        assertThat(document.getInt64("after").getValue(), equalTo(7L));
+        assertThat(document.get("missing"), nullValue());
+
+        // Materialized documents are equal regardless of the encoding
+        final BsonDocument expected = new BsonDocument()
+                .append("@version", new BsonInt32(10))
+                .append("after", new BsonInt64(7));
+        assertThat(new BsonDocument().append("@version", document.get("@version")).append("after", document.get("after")), equalTo(expected));
+    }
+
+    @Test
+    public void canDetectBson() {
+        final ByteBuffer buffer = ParserBase.serialize(Protocol.NETFLOW9, FlowPayloads.records(Protocol.NETFLOW9, "/flows/netflow9_template.dat", "/flows/netflow9_records.dat").get(0));
+        final byte[] bytes = Arrays.copyOfRange(buffer.array(), buffer.position(), buffer.limit());
+        assertThat(CompactDocument.isCompact(bytes), equalTo(false));
+        assertThat(CompactDocument.fromBytes(bytes), instanceOf(RawBsonDocument.class));
+    }
+
+    @Test
+    public void compactFlowsMatchBsonFlows() throws Exception {
+        verify(Protocol.NETFLOW5, new Netflow5Converter(), "/flows/netflow5.dat");
+        verify(Protocol.NETFLOW5, new Netflow5Converter(), "/flows/netflow5_test_juniper_mx80.dat");
+        verify(Protocol.NETFLOW9, new Netflow9Converter(), "/flows/netflow9_template.dat", "/flows/netflow9_records.dat");
+        verify(Protocol.NETFLOW9, new Netflow9Converter(), "/flows/netflow9_test_cisco_asr9k_tpl260.dat", "/flows/netflow9_test_cisco_asr9k_data260.dat");
+        verify(Protocol.NETFLOW9, new Netflow9Converter(), "/flows/netflow9_test_macaddr_tpl.dat", "/flows/netflow9_test_macaddr_data.dat");
+        verify(Protocol.IPFIX, new IpfixConverter(), "/flows/ipfix.dat");
+        verify(Protocol.IPFIX, new IpfixConverter(), "/flows/ipfix_test_barracuda_tpl.dat", "/flows/ipfix_test_barracuda_data256.dat");
+        verify(Protocol.IPFIX, new IpfixConverter(), "/flows/ipfix_test_vmware_vds_tpl.dat", "/flows/ipfix_test_vmware_vds_data264.dat");
+    }
+
+    private static void verify(final Protocol protocol, final Converter<BsonDocument> converter, final String... resources) throws Exception {
+        final List<Iterable<Value<?>>> records = FlowPayloads.records(protocol, resources);
+        assertThat(records.size(), greaterThan(0));
+
+        for (final Iterable<Value<?>> record : records) {
+            final ByteBuffer bson = ParserBase.serialize(protocol, record);
+            final ByteBuffer compact = ParserBase.serializeCompact(protocol, record);
+            assertThat(compact.remaining(), lessThan(bson.remaining()));
+
+            final BsonDocument bsonDocument = new RawBsonDocument(bson.array(), bson.position(), bson.remaining());
+            final BsonDocument compactDocument = CompactDocument.fromBytes(Arrays.copyOfRange(compact.array(), compact.position(), compact.limit()));
+            assertThat(compactDocument, equalTo(bsonDocument));
+
+            final List<Flow> bsonFlows = converter.convert(bsonDocument);
+            final List<Flow> compactFlows = converter.convert(compactDocument);
+            assertThat(compactFlows.size(), equalTo(bsonFlows.size()));
+            for (int i = 0; i < bsonFlows.size(); i++) {
+                for (final Method method : Flow.class.getMethods()) {
+                    if (method.getParameterCount() == 0) {
+                        assertThat(method.getName(), invoke(method, compactFlows.get(i)), equalTo(invoke(method, bsonFlows.get(i))));
+                    }
+                }
+            }
+        }
+    }
+
+    private static Object invoke(final Method method, final Flow flow) throws IllegalAccessException {
+        try {
+            return method.invoke(flow);
+        } catch (InvocationTargetException e) {
+            // Some getters fail on incomplete flows, this must happen for both encodings
+            return e.getCause().getClass();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.protocols.netflow.adapter;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.bson.BsonDocument;
+import org.bson.RawBsonDocument;
+import org.opennms.netmgt.flows.api.Flow;
+import org.opennms.netmgt.telemetry.protocols.common.compact.CompactDocument;
+import org.opennms.netmgt.telemetry.protocols.netflow.adapter.ipfix.IpfixConverter;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ParserBase;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.Protocol;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the BSON and the compact encoding of captured IPFIX records, from the
+ * serialization on the parser side to the conversion into flows on the adapter side.
+ *
+ * Run with <code>mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=...FlowEncodingBenchmark</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FlowEncodingBenchmark {
+
+    private final IpfixConverter converter = new IpfixConverter();
+
+    private List<Iterable<Value<?>>> records;
+    private List<byte[]> bsonPayloads;
+    private List<byte[]> compactPayloads;
+
+    @Setup
+    public void setUp() {
+        records = FlowPayloads.records(Protocol.IPFIX,
+                "/flows/ipfix_test_mikrotik_tpl.dat", "/flows/ipfix_test_mikrotik_data258.dat");
+        bsonPayloads = records.stream()
+                .map(record -> toBytes(ParserBase.serialize(Protocol.IPFIX, record)))
+                .collect(Collectors.toList());
+        compactPayloads = records.stream()
+                .map(record -> toBytes(ParserBase.serializeCompact(Protocol.IPFIX, record)))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public void encodeBson(final Blackhole blackhole) {
+        for (final Iterable<Value<?>> record : records) {
+            blackhole.consume(ParserBase.serialize(Protocol.IPFIX, record));
+        }
+    }
+
+    @Benchmark
+    public void encodeCompact(final Blackhole blackhole) {
+        for (final Iterable<Value<?>> record : records) {
+            blackhole.consume(ParserBase.serializeCompact(Protocol.IPFIX, record));
+        }
+    }
+
+    @Benchmark
+    public void decodeBson(final Blackhole blackhole) {
+        for (final byte[] payload : bsonPayloads) {
+            consume(blackhole, new RawBsonDocument(payload));
+        }
+    }
+
+    @Benchmark
+    public void decodeCompact(final Blackhole blackhole) {
+        for (final byte[] payload : compactPayloads) {
+            consume(blackhole, CompactDocument.fromBytes(payload));
+        }
+    }
+
+    private void consume(final Blackhole blackhole, final BsonDocument document) {
+        for (final Flow flow : converter.convert(document)) {
+            // Touch the fields the repository reads when persisting the flow
+            blackhole.consume(flow.getTimestamp());
+            blackhole.consume(flow.getBytes());
+            blackhole.consume(flow.getPackets());
+            blackhole.consume(flow.getSrcAddr());
+            blackhole.consume(flow.getDstAddr());
+            blackhole.consume(flow.getSrcPort());
+            blackhole.consume(flow.getDstPort());
+            blackhole.consume(flow.getProtocol());
+            blackhole.consume(flow.getInputSnmp());
+            blackhole.consume(flow.getOutputSnmp());
+            blackhole.consume(flow.getFirstSwitched());
+            blackhole.consume(flow.getLastSwitched());
+            blackhole.consume(flow.getNextHop());
+            blackhole.consume(flow.getVlan());
+        }
+    }
+
+    private static byte[] toBytes(final ByteBuffer buffer) {
+        return Arrays.copyOfRange(buffer.array(), buffer.position(), buffer.limit());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(FlowEncodingBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.telemetry.protocols.netflow.adapter;
+
+import static org.opennms.netmgt.telemetry.listeners.utils.BufferUtils.slice;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.Protocol;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.RecordProvider;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Session;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.TcpSession;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * Parses captured flow packets into the records handed to the serialization by the parsers.
+ */
+public class FlowPayloads {
+
+    private FlowPayloads() {
+    }
+
+    public static List<Iterable<Value<?>>> records(final Protocol protocol, final String... resources) {
+        final Session session = new TcpSession(InetAddress.getLoopbackAddress());
+        final List<Iterable<Value<?>>> records = new ArrayList<>();
+        for (final String resource : resources) {
+            final ByteBuf buffer;
+            try {
+                buffer = Unpooled.wrappedBuffer(Files.readAllBytes(Paths.get(FlowPayloads.class.getResource(resource).toURI())));
+            } catch (IOException | URISyntaxException e) {
+                throw new RuntimeException(e);
+            }
+
+            try {
+                while (buffer.isReadable()) {
+                    final RecordProvider packet;
+                    switch (protocol) {
+                        case NETFLOW5: {
+                            final org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow5.proto.Header header =
+                                    new org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow5.proto.Header(slice(buffer, org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow5.proto.Header.SIZE));
+                            packet = new org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow5.proto.Packet(header, buffer);
+                            // Captures contain a single packet
+                            buffer.skipBytes(buffer.readableBytes());
+                            break;
+                        }
+                        case NETFLOW9: {
+                            final org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow9.proto.Header header =
+                                    new org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow9.proto.Header(slice(buffer, org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow9.proto.Header.SIZE));
+                            packet = new org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow9.proto.Packet(session, header, buffer);
+                            // Captures contain a single packet
+                            buffer.skipBytes(buffer.readableBytes());
+                            break;
+                        }
+                        case IPFIX: {
+                            final org.opennms.netmgt.telemetry.protocols.netflow.parser.ipfix.proto.Header header =
+                                    new org.opennms.netmgt.telemetry.protocols.netflow.parser.ipfix.proto.Header(slice(buffer, org.opennms.netmgt.telemetry.protocols.netflow.parser.ipfix.proto.Header.SIZE));
+                            packet = new org.opennms.netmgt.telemetry.protocols.netflow.parser.ipfix.proto.Packet(session, header, slice(buffer, header.payloadLength()));
+                            break;
+                        }
+                        default:
+                            throw new IllegalArgumentException("Unsupported protocol: " + protocol);
+                    }
+                    packet.getRecords().forEach(records::add);
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return records;
+    }
+}
@@ -57,6 +57,7 @@ import org.opennms.netmgt.events.api.EventForwarder;
 import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.telemetry.api.receiver.Parser;
 import org.opennms.netmgt.telemetry.api.receiver.TelemetryMessage;
+import org.opennms.netmgt.telemetry.protocols.common.compact.CompactDocumentWriter;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.RecordProvider;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.values.BooleanValue;
@@ -88,6 +89,8 @@ public class ParserBase implements Parser {
 
     private static final int DEFAULT_NUM_THREADS = Runtime.getRuntime().availableProcessors() * 2;
 
+    private static final RecordEnrichment NO_ENRICHMENT = address -> Optional.empty();
+
     private static final long DEFAULT_CLOCK_SKEW_EVENT_RATE_SECONDS = TimeUnit.HOURS.toSeconds(1);
 
     public static final String CLOCK_SKEW_EVENT_UEI = "uei.opennms.org/internal/telemetry/clockSkewDetected";
@@ -120,6 +123,8 @@ public class ParserBase implements Parser {
 
     private boolean dnsLookupsEnabled = true;
 
+    private boolean compactEncoding = true;
+
     private LoadingCache<InetAddress, Optional<Instant>> eventCache;
 
     private ExecutorService executor;
@@ -223,6 +228,14 @@ public class ParserBase implements Parser {
         this.dnsLookupsEnabled = dnsLookupsEnabled;
     }
 
+    public boolean getCompactEncoding() {
+        return compactEncoding;
+    }
+
+    public void setCompactEncoding(boolean compactEncoding) {
+        this.compactEncoding = compactEncoding;
+    }
+
     public int getThreads() {
         return threads;
     }
@@ -313,33 +326,48 @@ public class ParserBase implements Parser {
 
     @VisibleForTesting
     public static ByteBuffer serialize(final Protocol protocol, final Iterable<Value<?>> record) {
-        return serialize(protocol, record, new RecordEnrichment() {
-            @Override
-            public Optional<String> getHostnameFor(InetAddress srcAddress) {
-                return Optional.empty();
-            }
-        });
+        return serialize(protocol, record, NO_ENRICHMENT);
+    }
+
+    @VisibleForTesting
+    public static ByteBuffer serializeCompact(final Protocol protocol, final Iterable<Value<?>> record) {
+        return serializeCompact(protocol, record, NO_ENRICHMENT);
     }
 
     private static ByteBuffer serialize(final Protocol protocol, final Iterable<Value<?>> record, final RecordEnrichment enrichment) {
         // Build BSON document from flow
         final BasicOutputBuffer output = new BasicOutputBuffer();
         try (final BsonBinaryWriter writer = new BsonBinaryWriter(output)) {
-            writer.writeStartDocument();
-            writer.writeInt32("@version", protocol.version);
+            writeDocument(writer, protocol, record, enrichment);
+        }
 
-            final FlowBuilderVisitor visitor = new FlowBuilderVisitor(writer, enrichment);
-            for (final Value<?> value : record) {
-                value.visit(visitor);
-            }
+        return output.getByteBuffers().get(0).asNIO();
+    }
 
-            writer.writeEndDocument();
+    private static ByteBuffer serializeCompact(final Protocol protocol, final Iterable<Value<?>> record, final RecordEnrichment enrichment) {
+        // Build the same document, but using the compact encoding which avoids repeating the field names
+        try (final CompactDocumentWriter writer = new CompactDocumentWriter()) {
+            writeDocument(writer, protocol, record, enrichment);
+            return writer.toByteBuffer();
         }
+    }
 
-        return output.getByteBuffers().get(0).asNIO();
+    private static void writeDocument(final BsonWriter writer, final Protocol protocol, final Iterable<Value<?>> record, final RecordEnrichment enrichment) {
+        writer.writeStartDocument();
+        writer.writeInt32("@version", protocol.version);
+
+        final FlowBuilderVisitor visitor = new FlowBuilderVisitor(writer, enrichment);
+        for (final Value<?> value : record) {
+            value.visit(visitor);
+        }
+
+        writer.writeEndDocument();
     }
 
     private ByteBuffer serializeRecords(final Protocol protocol, final Iterable<Value<?>> record, final RecordEnrichment enrichment) {
+        if (compactEncoding) {
+            return serializeCompact(protocol, record, enrichment);
+        }
         return serialize(protocol, record, enrichment);
     }
 
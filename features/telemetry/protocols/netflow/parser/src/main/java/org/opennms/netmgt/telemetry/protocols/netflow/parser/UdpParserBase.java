@@ -31,10 +31,16 @@ package org.opennms.netmgt.telemetry.protocols.netflow.parser;
 import java.net.InetSocketAddress;
 import java.time.Duration;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
 import org.opennms.core.ipc.sink.api.AsyncDispatcher;
 import org.opennms.distributed.core.api.Identity;
 import org.opennms.netmgt.dnsresolver.api.DnsResolver;
@@ -52,11 +58,23 @@ import io.netty.buffer.ByteBuf;
 public abstract class UdpParserBase extends ParserBase implements UdpParser {
     public final static long HOUSEKEEPING_INTERVAL = 60000;
 
+    private static final int DEFAULT_PARSER_THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static final int DEFAULT_PARSER_QUEUE_SIZE = 1000;
+
+    private final Protocol protocol;
+
     private UdpSessionManager sessionManager;
 
     private ScheduledFuture<?> housekeepingFuture;
     private Duration templateTimeout = Duration.ofMinutes(30);
 
+    private int parserThreads = DEFAULT_PARSER_THREADS;
+    private int parserQueueSize = DEFAULT_PARSER_QUEUE_SIZE;
+
+    // Each exporter is pinned to a single-threaded worker, so packets of one exporter are parsed in order
+    private ExecutorService[] parserExecutors;
+
     public UdpParserBase(final Protocol protocol,
                          final String name,
                          final AsyncDispatcher<TelemetryMessage> dispatcher,
@@ -65,6 +83,7 @@ public abstract class UdpParserBase extends ParserBase implements UdpParser {
                          final DnsResolver dnsResolver,
                          final MetricRegistry metricRegistry) {
         super(protocol, name, dispatcher, eventForwarder, identity, dnsResolver, metricRegistry);
+        this.protocol = protocol;
     }
 
     protected abstract RecordProvider parse(final Session session, final ByteBuf buffer) throws Exception;
@@ -77,18 +96,56 @@ public abstract class UdpParserBase extends ParserBase implements UdpParser {
         final UdpSessionManager.SessionKey sessionKey = this.buildSessionKey(remoteAddress, localAddress);
         final Session session = this.sessionManager.getSession(sessionKey);
 
+        // Parsing updates the template state of the session and must therefore happen in the order the packets were
+        // received. Packets of different exporters are independent and can be parsed concurrently.
         try {
-            return this.transmit(this.parse(session, buffer), remoteAddress);
-        } catch (Exception e) {
-            this.sessionManager.drop(sessionKey);
-            throw e;
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return this.transmit(this.parse(session, buffer), remoteAddress);
+                } catch (Exception e) {
+                    this.sessionManager.drop(sessionKey);
+                    throw new CompletionException(e);
+                }
+            }, this.executorFor(sessionKey)).thenCompose(f -> f);
+        } catch (final RejectedExecutionException e) {
+            // Fail the future, so the caller releases the buffer
+            final CompletableFuture<?> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
         }
     }
 
+    private ExecutorService executorFor(final UdpSessionManager.SessionKey sessionKey) {
+        // Spread the hash so that keys differing in the upper bits only do not end up on the same worker
+        final int hash = sessionKey.hashCode();
+        return this.parserExecutors[Math.floorMod(hash ^ (hash >>> 16), this.parserExecutors.length)];
+    }
+
     @Override
     public void start(final ScheduledExecutorService executorService) {
         super.start(executorService);
         this.sessionManager = new UdpSessionManager(this.templateTimeout);
+        this.parserExecutors = new ExecutorService[this.parserThreads];
+        final LogPreservingThreadFactory threadFactory = new LogPreservingThreadFactory("Telemetryd-" + this.protocol + "-" + this.getName() + "-parser", this.parserThreads);
+        for (int i = 0; i < this.parserThreads; i++) {
+            this.parserExecutors[i] = new ThreadPoolExecutor(
+                    1, 1,
+                    0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(this.parserQueueSize),
+                    threadFactory,
+                    (r, executor) -> {
+                        if (executor.isShutdown()) {
+                            throw new RejectedExecutionException("Parser " + this.getName() + " is stopped.");
+                        }
+                        // Block the listener until the worker catches up, rather than dropping packets
+                        try {
+                            executor.getQueue().put(r);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new RejectedExecutionException("Executor interrupted while waiting for capacity in the work queue.", e);
+                        }
+                    });
+        }
         this.housekeepingFuture = executorService.scheduleAtFixedRate(this.sessionManager::doHousekeeping,
                 HOUSEKEEPING_INTERVAL,
                 HOUSEKEEPING_INTERVAL,
@@ -98,6 +155,9 @@ public abstract class UdpParserBase extends ParserBase implements UdpParser {
     @Override
     public void stop() {
         this.housekeepingFuture.cancel(false);
+        for (final ExecutorService parserExecutor : this.parserExecutors) {
+            parserExecutor.shutdown();
+        }
         super.stop();
     }
 
@@ -108,4 +168,26 @@ public abstract class UdpParserBase extends ParserBase implements UdpParser {
     public void setTemplateTimeout(final Duration templateTimeout) {
         this.templateTimeout = templateTimeout;
     }
+
+    public int getParserThreads() {
+        return this.parserThreads;
+    }
+
+    public void setParserThreads(final int parserThreads) {
+        if (parserThreads < 1) {
+            throw new IllegalArgumentException("Parser threads must be >= 1");
+        }
+        this.parserThreads = parserThreads;
+    }
+
+    public int getParserQueueSize() {
+        return this.parserQueueSize;
+    }
+
+    public void setParserQueueSize(final int parserQueueSize) {
+        if (parserQueueSize < 1) {
+            throw new IllegalArgumentException("Parser queue size must be >= 1");
+        }
+        this.parserQueueSize = parserQueueSize;
+    }
 }
@@ -34,21 +34,26 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.MissingTemplateException;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
 
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Maps;
-
+/**
+ * Keeps track of the templates and options announced by UDP exporters.
+ *
+ * The state is sharded by session and observation domain: every domain owns its own concurrent template and option
+ * tables, so lookups for one exporter never have to scan or lock the state of any other exporter. This allows packets
+ * from different exporters to be parsed in parallel while sharing a single session manager.
+ */
 public class UdpSessionManager {
     public interface SessionKey {
         InetAddress getRemoteAddress();
@@ -62,13 +67,10 @@ public class UdpSessionManager {
                 this.observationDomainId = observationDomainId;
             }
 
-            private Key key(final int templateId) {
-                return new Key(UdpSession.this.sessionKey, this.observationDomainId, templateId);
-            }
-
             @Override
             public Template lookupTemplate(final int templateId) throws MissingTemplateException {
-                final TemplateWrapper templateWrapper = UdpSessionManager.this.templates.get(key(templateId));
+                final Domain domain = existingDomain(this.observationDomainId);
+                final TemplateWrapper templateWrapper = domain != null ? domain.templates.get(templateId) : null;
                 if (templateWrapper != null) {
                     return templateWrapper.template;
                 } else {
@@ -78,16 +80,23 @@ public class UdpSessionManager {
 
             @Override
             public List<Value<?>> lookupOptions(final List<Value<?>> values) {
+                final Domain domain = existingDomain(this.observationDomainId);
+                if (domain == null || domain.options.isEmpty()) {
+                    return Collections.emptyList();
+                }
+
                 final LinkedHashMap<String, Value<?>> options = new LinkedHashMap<>();
 
                 final Set<String> scoped = values.stream().map(Value::getName).collect(Collectors.toSet());
 
-                for (final Map.Entry<Key, Map<Set<Value<?>>, List<Value<?>>>> e : Iterables.filter(UdpSessionManager.this.options.entrySet(),
-                                                                                                   e -> Objects.equals(e.getKey().sessionKey, UdpSession.this.sessionKey) &&
-                                                                                                        Objects.equals(e.getKey().observationDomainId, this.observationDomainId))) {
-                    final Template template = UdpSessionManager.this.templates.get(e.getKey()).template;
+                for (final Map.Entry<Integer, Map<Set<Value<?>>, List<Value<?>>>> e : domain.options.entrySet()) {
+                    final TemplateWrapper templateWrapper = domain.templates.get(e.getKey());
+                    if (templateWrapper == null) {
+                        // The options template has expired or was withdrawn
+                        continue;
+                    }
 
-                    final Set<String> scopes = template.scopes.stream().map(Scope::getName).collect(Collectors.toSet());
+                    final Set<String> scopes = templateWrapper.template.scopes.stream().map(Scope::getName).collect(Collectors.toSet());
 
                     if (scoped.containsAll(scopes)) {
                         // Found option template where scoped fields is subset of actual data fields
@@ -112,21 +121,40 @@ public class UdpSessionManager {
             this.sessionKey = sessionKey;
         }
 
+        private void update(final long observationDomainId, final Consumer<Domain> update) {
+            // Updates are applied atomically with regard to the housekeeping which may remove the domain when empty
+            UdpSessionManager.this.domains.compute(new DomainKey(this.sessionKey, observationDomainId), (k, domain) -> {
+                if (domain == null) {
+                    domain = new Domain();
+                }
+                update.accept(domain);
+                return domain;
+            });
+        }
+
+        private Domain existingDomain(final long observationDomainId) {
+            return UdpSessionManager.this.domains.get(new DomainKey(this.sessionKey, observationDomainId));
+        }
+
         @Override
         public void addTemplate(final long observationDomainId, final Template template) {
-            final Key key = new Key(this.sessionKey, observationDomainId, template.id);
-            UdpSessionManager.this.templates.put(key, new TemplateWrapper(template));
+            update(observationDomainId, domain -> domain.templates.put(template.id, new TemplateWrapper(template)));
         }
 
         @Override
         public void removeTemplate(final long observationDomainId, final int templateId) {
-            final Key key = new Key(this.sessionKey, observationDomainId, templateId);
-            UdpSessionManager.this.templates.remove(key);
+            final Domain domain = existingDomain(observationDomainId);
+            if (domain != null) {
+                domain.templates.remove(templateId);
+            }
         }
 
         @Override
         public void removeAllTemplate(final long observationDomainId, final Template.Type type) {
-            UdpSessionManager.this.templates.entrySet().removeIf(e -> e.getKey().observationDomainId == observationDomainId && e.getValue().template.type == type);
+            final Domain domain = existingDomain(observationDomainId);
+            if (domain != null) {
+                domain.templates.values().removeIf(w -> w.template.type == type);
+            }
         }
 
         @Override
@@ -134,8 +162,7 @@ public class UdpSessionManager {
                                final int templateId,
                                final Collection<Value<?>> scopes,
                                final List<Value<?>> values) {
-            final Key key = new Key(this.sessionKey, observationDomainId, templateId);
-            UdpSessionManager.this.options.computeIfAbsent(key, (k) -> new HashMap<>()).put(new HashSet<>(scopes), values);
+            update(observationDomainId, domain -> domain.options.computeIfAbsent(templateId, (k) -> new ConcurrentHashMap<>()).put(new HashSet<>(scopes), values));
         }
 
         @Override
@@ -149,36 +176,37 @@ public class UdpSessionManager {
         }
     }
 
-    private final static class Key {
+    private final static class DomainKey {
         private final SessionKey sessionKey;
         public final long observationDomainId;
-        public final int templateId;
 
-        Key(final SessionKey sessionKey,
-            final long observationDomainId,
-            final int templateId) {
+        DomainKey(final SessionKey sessionKey,
+                  final long observationDomainId) {
             this.sessionKey = Objects.requireNonNull(sessionKey);
             this.observationDomainId = observationDomainId;
-            this.templateId = templateId;
         }
 
         @Override
         public boolean equals(final Object o) {
             if (this == o) return true;
-            if (!(o instanceof Key)) return false;
+            if (!(o instanceof DomainKey)) return false;
 
-            final Key that = (Key) o;
+            final DomainKey that = (DomainKey) o;
             return this.observationDomainId == that.observationDomainId &&
-                    this.templateId == that.templateId &&
                     Objects.equals(this.sessionKey, that.sessionKey);
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(this.sessionKey, this.observationDomainId, this.templateId);
+            return Objects.hash(this.sessionKey, this.observationDomainId);
         }
     }
 
+    private final static class Domain {
+        private final Map<Integer, TemplateWrapper> templates = new ConcurrentHashMap<>();
+        private final Map<Integer, Map<Set<Value<?>>, List<Value<?>>>> options = new ConcurrentHashMap<>();
+    }
+
     private final static class TemplateWrapper {
         public final Instant insertionTime;
         public final Template template;
@@ -189,8 +217,7 @@ public class UdpSessionManager {
         }
     }
 
-    private final Map<Key, TemplateWrapper> templates = Maps.newHashMap();
-    private final Map<Key, Map<Set<Value<?>>, List<Value<?>>>> options = Maps.newHashMap();
+    private final Map<DomainKey, Domain> domains = new ConcurrentHashMap<>();
 
     private final Duration timeout;
 
@@ -200,7 +227,13 @@ public class UdpSessionManager {
 
     public void doHousekeeping() {
         final Instant timeout = Instant.now().minus(this.timeout);
-        UdpSessionManager.this.templates.entrySet().removeIf(e -> e.getValue().insertionTime.isBefore(timeout));
+        for (final DomainKey key : this.domains.keySet()) {
+            this.domains.computeIfPresent(key, (k, domain) -> {
+                domain.templates.values().removeIf(w -> w.insertionTime.isBefore(timeout));
+                domain.options.keySet().removeIf(templateId -> !domain.templates.containsKey(templateId));
+                return domain.templates.isEmpty() ? null : domain;
+            });
+        }
     }
 
     public Session getSession(final SessionKey sessionKey) {
@@ -208,6 +241,10 @@ public class UdpSessionManager {
     }
 
     public void drop(final SessionKey sessionKey) {
-        this.templates.entrySet().removeIf(e -> Objects.equals(e.getKey().sessionKey, sessionKey));
+        this.domains.keySet().removeIf(k -> Objects.equals(k.sessionKey, sessionKey));
+    }
+
+    public int getTemplateCount() {
+        return this.domains.values().stream().mapToInt(d -> d.templates.size()).sum();
     }
 }
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.protocols.netflow.parser;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.Test;
+import org.opennms.core.ipc.sink.api.AsyncDispatcher;
+import org.opennms.distributed.core.api.Identity;
+import org.opennms.netmgt.dnsresolver.api.DnsResolver;
+import org.opennms.netmgt.events.api.EventForwarder;
+import org.opennms.netmgt.telemetry.api.receiver.TelemetryMessage;
+
+import com.codahale.metrics.MetricRegistry;
+
+import io.netty.buffer.Unpooled;
+
+public class UdpParserBaseTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void verifyParseFailsOnceStopped() throws Exception {
+        final Netflow5UdpParser parser = new Netflow5UdpParser("netflow5", mock(AsyncDispatcher.class), mock(EventForwarder.class),
+                mock(Identity.class), mock(DnsResolver.class), new MetricRegistry());
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            parser.start(executor);
+            parser.stop();
+
+            // The future must complete, so the listener releases the buffer
+            final InetSocketAddress address = InetSocketAddress.createUnresolved("localhost", 2055);
+            final CompletableFuture<?> future = parser.parse(Unpooled.buffer(), address, address);
+            try {
+                future.get();
+                fail("parsing must fail once the parser is stopped");
+            } catch (final ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
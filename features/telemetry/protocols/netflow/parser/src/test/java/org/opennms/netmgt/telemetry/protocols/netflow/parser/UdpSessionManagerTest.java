@@ -33,6 +33,9 @@ import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -182,4 +185,75 @@ public class UdpSessionManagerTest {
         testIpFixSessionKeys(remoteAddress1, localAddress1, remoteAddress4, localAddress1, false);
         testIpFixSessionKeys(remoteAddress1, localAddress1, remoteAddress4, localAddress2, false);
     }
+
+    @Test
+    public void testRemoveAllTemplateIsScopedToSession() throws Exception {
+        final UdpSessionManager udpSessionManager = new UdpSessionManager(Duration.ofMinutes(30));
+        final Session session1 = udpSessionManager.getSession(new IpfixUdpParser.SessionKey(remoteAddress1, localAddress1));
+        final Session session2 = udpSessionManager.getSession(new IpfixUdpParser.SessionKey(remoteAddress3, localAddress1));
+
+        session1.addTemplate(observationId1, Template.builder(templateId1, Template.Type.TEMPLATE).withFields(new ArrayList<>()).build());
+        session2.addTemplate(observationId1, Template.builder(templateId1, Template.Type.TEMPLATE).withFields(new ArrayList<>()).build());
+
+        session1.removeAllTemplate(observationId1, Template.Type.TEMPLATE);
+
+        try {
+            session1.getResolver(observationId1).lookupTemplate(templateId1);
+            Assert.fail("Template should have been removed");
+        } catch (MissingTemplateException e) {
+            // expected
+        }
+        Assert.assertEquals(templateId1, session2.getResolver(observationId1).lookupTemplate(templateId1).id);
+        Assert.assertEquals(1, udpSessionManager.getTemplateCount());
+    }
+
+    @Test
+    public void testHousekeepingAndDrop() throws Exception {
+        final UdpSessionManager udpSessionManager = new UdpSessionManager(Duration.ZERO);
+        final UdpSessionManager.SessionKey sessionKey = new IpfixUdpParser.SessionKey(remoteAddress1, localAddress1);
+        final Session session = udpSessionManager.getSession(sessionKey);
+
+        session.addTemplate(observationId1, Template.builder(templateId1, Template.Type.TEMPLATE).withFields(new ArrayList<>()).build());
+        session.addTemplate(observationId2, Template.builder(templateId1, Template.Type.TEMPLATE).withFields(new ArrayList<>()).build());
+        Assert.assertEquals(2, udpSessionManager.getTemplateCount());
+
+        udpSessionManager.drop(sessionKey);
+        Assert.assertEquals(0, udpSessionManager.getTemplateCount());
+
+        session.addTemplate(observationId1, Template.builder(templateId1, Template.Type.TEMPLATE).withFields(new ArrayList<>()).build());
+        Thread.sleep(10);
+        udpSessionManager.doHousekeeping();
+        Assert.assertEquals(0, udpSessionManager.getTemplateCount());
+    }
+
+    @Test
+    public void testConcurrentSessions() throws Exception {
+        final UdpSessionManager udpSessionManager = new UdpSessionManager(Duration.ofMinutes(30));
+        final int numExporters = 64;
+        final int numTemplates = 100;
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < numExporters; i++) {
+                final InetSocketAddress remoteAddress = new InetSocketAddress("10.10.11." + i, 51001);
+                final long observationDomainId = i;
+                futures.add(executor.submit(() -> {
+                    final Session session = udpSessionManager.getSession(new IpfixUdpParser.SessionKey(remoteAddress, localAddress1));
+                    for (int templateId = 256; templateId < 256 + numTemplates; templateId++) {
+                        session.addTemplate(observationDomainId, Template.builder(templateId, Template.Type.TEMPLATE).withFields(new ArrayList<>()).build());
+                        Assert.assertEquals(templateId, session.getResolver(observationDomainId).lookupTemplate(templateId).id);
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Assert.assertEquals(numExporters * numTemplates, udpSessionManager.getTemplateCount());
+    }
 }
@@ -28,7 +28,12 @@
 
 package org.opennms.netmgt.topologies.service.api;
 
-import java.util.HashSet;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 
 public class OnmsTopology {
@@ -41,21 +46,75 @@ public class OnmsTopology {
     public final static String TARGET_IFINDEX= "targetifindex";
     public static final String TOPOLOGY_NAMESPACE_LINKD = "nodes";
     
-    private Set<OnmsTopologyVertex> m_vertices;
-    private Set<OnmsTopologyEdge> m_edges;
+    /**
+     * A set of topology refs indexed by id. Refs are equal if they have the same id,
+     * so the set behaves like a {@link java.util.HashSet} and allows to look up refs by id
+     * in constant time, which keeps building and comparing large topologies linear.
+     */
+    private static class IndexedSet<T extends OnmsTopologyAbstractRef> extends AbstractSet<T> {
+        private final Map<String, T> m_index = new HashMap<>();
+
+        private IndexedSet(Collection<? extends T> refs) {
+            addAll(refs);
+        }
+
+        private T get(String id) {
+            return m_index.get(id);
+        }
+
+        @Override
+        public boolean add(T ref) {
+            return m_index.putIfAbsent(ref.getId(), ref) == null;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof OnmsTopologyAbstractRef)) {
+                return false;
+            }
+            return o.equals(m_index.get(((OnmsTopologyAbstractRef) o).getId()));
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!contains(o)) {
+                return false;
+            }
+            m_index.remove(((OnmsTopologyAbstractRef) o).getId());
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            m_index.clear();
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return m_index.values().iterator();
+        }
+
+        @Override
+        public int size() {
+            return m_index.size();
+        }
+    }
+
+    private IndexedSet<OnmsTopologyVertex> m_vertices;
+    private IndexedSet<OnmsTopologyEdge> m_edges;
     private OnmsTopologyVertex m_defaultVertex;
 
     public OnmsTopology() {
-        m_vertices = new HashSet<OnmsTopologyVertex>();
-        m_edges = new HashSet<OnmsTopologyEdge>();
+        m_vertices = new IndexedSet<>(Collections.emptySet());
+        m_edges = new IndexedSet<>(Collections.emptySet());
     }
 
     public OnmsTopologyVertex getVertex(String id) {
-        return m_vertices.stream().filter(vertex -> id.equals(vertex.getId())).findAny().orElse(null);
+        return m_vertices.get(id);
     }
 
     public OnmsTopologyEdge getEdge(String id) {
-        return m_edges.stream().filter(edge -> id.equals(edge.getId())).findAny().orElse(null);
+        return m_edges.get(id);
     }
 
     public Set<OnmsTopologyVertex> getVertices() {
@@ -67,7 +126,7 @@ public class OnmsTopology {
     }
 
     public void setVertices(Set<OnmsTopologyVertex> vertices) {
-        m_vertices = vertices;
+        m_vertices = new IndexedSet<>(vertices);
     }
 
     public Set<OnmsTopologyEdge> getEdges() {
@@ -79,7 +138,7 @@ public class OnmsTopology {
     }
 
     public void setEdges(Set<OnmsTopologyEdge> edges) {
-        m_edges = edges;
+        m_edges = new IndexedSet<>(edges);
     }    
 
     public boolean hasVertex(String id) {
@@ -92,8 +151,8 @@ public class OnmsTopology {
     
     public OnmsTopology clone() {
         OnmsTopology topo = new OnmsTopology();
-        topo.setVertices(new HashSet<>(m_vertices));
-        topo.setEdges(new HashSet<>(m_edges));
+        topo.setVertices(m_vertices);
+        topo.setEdges(m_edges);
         topo.setDefaultVertex(m_defaultVertex);
         return topo;
     }
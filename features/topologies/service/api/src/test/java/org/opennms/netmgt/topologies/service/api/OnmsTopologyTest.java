@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.topologies.service.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+
+import org.junit.Test;
+
+public class OnmsTopologyTest {
+
+    @Test
+    public void testLookupById() {
+        OnmsTopology topology = new OnmsTopology();
+        OnmsTopologyVertex source = OnmsTopologyVertex.create("1", "source", "10.0.0.1", "switch");
+        OnmsTopologyVertex target = OnmsTopologyVertex.create("2", "target", "10.0.0.2", "switch");
+        topology.getVertices().add(source);
+        topology.addVertex(target);
+        topology.getEdges().add(OnmsTopologyEdge.create("1|2",
+                OnmsTopologyPort.create("1:1", source, 1),
+                OnmsTopologyPort.create("2:1", target, 1)));
+
+        assertSame(source, topology.getVertex("1"));
+        assertSame(target, topology.getVertex("2"));
+        assertNull(topology.getVertex("3"));
+        assertTrue(topology.hasEdge("1|2"));
+        assertFalse(topology.hasEdge("2|1"));
+
+        // Vertices with the same id are equal, the first one is kept
+        assertFalse(topology.getVertices().add(OnmsTopologyVertex.create("1", "other", "10.0.0.3", "switch")));
+        assertEquals(2, topology.getVertices().size());
+        assertSame(source, topology.getVertex("1"));
+    }
+
+    @Test
+    public void testRemoveAndClone() {
+        OnmsTopology topology = new OnmsTopology();
+        for (int i = 0; i < 10; i++) {
+            topology.addVertex(OnmsTopologyVertex.create(Integer.toString(i), "node" + i, null, null));
+        }
+        OnmsTopology clone = topology.clone();
+
+        assertTrue(topology.getVertices().remove(OnmsTopologyVertex.create("0", "node0", null, null)));
+        assertFalse(topology.hasVertex("0"));
+        for (Iterator<OnmsTopologyVertex> it = topology.getVertices().iterator(); it.hasNext();) {
+            if (it.next().getId().equals("1")) {
+                it.remove();
+            }
+        }
+        assertFalse(topology.hasVertex("1"));
+        assertEquals(8, topology.getVertices().size());
+
+        // The clone does not share the vertices with the topology
+        assertEquals(10, clone.getVertices().size());
+        assertTrue(clone.hasVertex("0"));
+        assertTrue(clone.hasVertex("1"));
+    }
+}
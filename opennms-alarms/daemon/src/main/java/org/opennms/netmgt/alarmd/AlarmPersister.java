@@ -28,6 +28,8 @@
 
 package org.opennms.netmgt.alarmd;
 
+import java.util.List;
+
 import org.opennms.netmgt.model.OnmsAlarm;
 import org.opennms.netmgt.xml.event.Event;
 
@@ -47,4 +49,15 @@ public interface AlarmPersister {
      */
     OnmsAlarm persist(Event event);
 
+    /**
+     * Persists the alarms of the given events using a single transaction.
+     *
+     * The events are processed in the given order. Each alarm is looked up once and
+     * written once, no matter how many of the events are reduced onto it.
+     *
+     * @param events the events, in the order in which they were received
+     * @return the new/updated alarms of the events which were processed
+     */
+    List<OnmsAlarm> persistAll(List<Event> events);
+
 }
@@ -29,15 +29,20 @@
 package org.opennms.netmgt.alarmd;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import org.opennms.core.sysprops.SystemProperties;
@@ -119,7 +124,7 @@ public class AlarmPersisterImpl implements AlarmPersister {
         try {
             locks.forEach(Lock::lock);
             // Process the alarm inside a transaction
-            alarm = m_transactionOperations.execute((action) -> addOrReduceEventAsAlarm(event));
+            alarm = m_transactionOperations.execute((action) -> addOrReduceEventAsAlarm(event, new Reductions(false)));
         } finally {
             locks.forEach(Lock::unlock);
         }
@@ -127,7 +132,50 @@ public class AlarmPersisterImpl implements AlarmPersister {
         return alarm;
     }
 
-    private OnmsAlarm addOrReduceEventAsAlarm(Event event) throws IllegalStateException {
+    @Override
+    public List<OnmsAlarm> persistAll(List<Event> events) {
+        final List<Event> eventsToProcess = new ArrayList<>(events.size());
+        for (Event event : events) {
+            try {
+                if (event != null && checkEventSanityAndDoWeProcess(event)) {
+                    eventsToProcess.add(event);
+                }
+            } catch (IllegalArgumentException e) {
+                LOG.warn("persistAll: skipping event: {}", e.getMessage());
+            }
+        }
+        if (eventsToProcess.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        // Lock the keys of all events, the stripes are always acquired in the same order
+        final Set<String> keys = new LinkedHashSet<>();
+        eventsToProcess.forEach(event -> keys.addAll(getLockKeys(event)));
+        final Iterable<Lock> locks = lockStripes.bulkGet(keys);
+        try {
+            locks.forEach(Lock::lock);
+            // Process the events in order, so that events sharing a key are applied in the order they arrived
+            final Reductions reductions = new Reductions(true);
+            final List<OnmsAlarm> alarms = m_transactionOperations.execute((action) -> {
+                final List<OnmsAlarm> reduced = new ArrayList<>(eventsToProcess.size());
+                for (Event event : eventsToProcess) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("process: {}; nodeid: {}; ipaddr: {}; serviceid: {}", event.getUei(), event.getNodeid(), event.getInterface(), event.getService());
+                    }
+                    reduced.add(addOrReduceEventAsAlarm(event, reductions));
+                }
+                reductions.autoCleanAll();
+                return reduced;
+            });
+            // Only notify once the batch was committed, a failed batch is persisted again event by event
+            reductions.sendNotifications(m_alarmEntityNotifier);
+            return alarms;
+        } finally {
+            locks.forEach(Lock::unlock);
+        }
+    }
+
+    private OnmsAlarm addOrReduceEventAsAlarm(Event event, Reductions reductions) throws IllegalStateException {
         
         final OnmsEvent persistedEvent = m_eventDao.get(event.getDbid());
         if (persistedEvent == null) {
@@ -146,11 +194,11 @@ public class AlarmPersisterImpl implements AlarmPersister {
             didSwapReductionKeyWithClearKey = true;
         }
 
-        OnmsAlarm alarm = m_alarmDao.findByReductionKey(key);
+        OnmsAlarm alarm = reductions.findByReductionKey(key);
 
         if (alarm == null && didSwapReductionKeyWithClearKey) {
             // if the clearKey returns null, still need to check the reductionKey
-            alarm = m_alarmDao.findByReductionKey(reductionKey);
+            alarm = reductions.findByReductionKey(reductionKey);
         }
 
         if (alarm == null || (m_createNewAlarmIfClearedAlarmExists && OnmsSeverity.CLEARED.equals(alarm.getSeverity()))) {
@@ -161,11 +209,13 @@ public class AlarmPersisterImpl implements AlarmPersister {
             if (alarm != null) {
                 LOG.debug("addOrReduceEventAsAlarm: \"archiving\" cleared Alarm for problem: {}; " +
                         "A new alarm will be instantiated to manage the problem.", reductionKey);
+                reductions.autoClean(alarm);
                 alarm.archive();
                 m_alarmDao.save(alarm);
                 m_alarmDao.flush();
 
-                m_alarmEntityNotifier.didArchiveAlarm(alarm, reductionKey);
+                final OnmsAlarm archivedAlarm = alarm;
+                reductions.notifyListeners(notifier -> notifier.didArchiveAlarm(archivedAlarm, reductionKey));
             }
 
             alarm = createNewAlarm(persistedEvent, event);
@@ -180,10 +230,16 @@ public class AlarmPersisterImpl implements AlarmPersister {
 
             m_alarmDao.save(alarm);
             m_eventDao.saveOrUpdate(persistedEvent);
+            reductions.add(alarm);
 
-            m_alarmEntityNotifier.didCreateAlarm(alarm);
+            final OnmsAlarm createdAlarm = alarm;
+            reductions.notifyListeners(notifier -> notifier.didCreateAlarm(createdAlarm));
         } else {
             LOG.debug("addOrReduceEventAsAlarm: reductionKey:{} found, reducing event to existing alarm: {}", reductionKey, alarm.getId());
+            // Previous events must be cleaned up before the next event is reduced, unless it cleans them up as well
+            if (!event.getAlarmData().isAutoClean()) {
+                reductions.autoClean(alarm);
+            }
             reduceEvent(persistedEvent, alarm, event);
 
             // Trigger extensions, allowing them to mangle the alarm
@@ -198,10 +254,11 @@ public class AlarmPersisterImpl implements AlarmPersister {
             m_eventDao.update(persistedEvent);
 
             if (event.getAlarmData().isAutoClean()) {
-                m_eventDao.deletePreviousEventsForAlarm(alarm.getId(), persistedEvent);
+                reductions.autoCleanLater(alarm, persistedEvent);
             }
 
-            m_alarmEntityNotifier.didUpdateAlarmWithReducedEvent(alarm);
+            final OnmsAlarm reducedAlarm = alarm;
+            reductions.notifyListeners(notifier -> notifier.didUpdateAlarmWithReducedEvent(reducedAlarm));
         }
         return alarm;
     }
@@ -425,6 +482,88 @@ public class AlarmPersisterImpl implements AlarmPersister {
         return true;
     }
 
+    /**
+     * State shared by the events reduced in the same transaction.
+     *
+     * Alarms are looked up by reduction key once per transaction. Looking them up again
+     * would flush the pending changes of the alarm, so the alarm would be written once per
+     * event instead of once when the transaction commits.
+     *
+     * When deferred, deleting the previous events of an alarm reduced by an auto-clean
+     * event is delayed until the next event is reduced onto the alarm, or until the end of
+     * the transaction, so that a series of auto-clean events only deletes them once.
+     * The listeners are notified once the transaction was committed, so that they are not
+     * told about alarms which were rolled back.
+     */
+    private class Reductions {
+        private final boolean deferred;
+        private final Map<String, OnmsAlarm> alarmsByReductionKey = new HashMap<>();
+        private final Map<OnmsAlarm, OnmsEvent> autoCleanEventsByAlarm = new LinkedHashMap<>();
+        private final List<Consumer<AlarmEntityNotifier>> notifications = new ArrayList<>();
+
+        private Reductions(boolean deferred) {
+            this.deferred = deferred;
+        }
+
+        private OnmsAlarm findByReductionKey(String reductionKey) {
+            OnmsAlarm alarm = alarmsByReductionKey.get(reductionKey);
+            // Extensions may have changed the reduction key of the alarm since
+            if (alarm != null && reductionKey.equals(alarm.getReductionKey())) {
+                return alarm;
+            }
+            alarm = m_alarmDao.findByReductionKey(reductionKey);
+            if (alarm != null) {
+                alarmsByReductionKey.put(reductionKey, alarm);
+            }
+            return alarm;
+        }
+
+        private void add(OnmsAlarm alarm) {
+            if (alarm.getReductionKey() != null) {
+                alarmsByReductionKey.put(alarm.getReductionKey(), alarm);
+            }
+        }
+
+        private void autoCleanLater(OnmsAlarm alarm, OnmsEvent lastEvent) {
+            if (deferred) {
+                autoCleanEventsByAlarm.put(alarm, lastEvent);
+            } else {
+                m_eventDao.deletePreviousEventsForAlarm(alarm.getId(), lastEvent);
+            }
+        }
+
+        private void autoClean(OnmsAlarm alarm) {
+            final OnmsEvent lastEvent = autoCleanEventsByAlarm.remove(alarm);
+            if (lastEvent != null) {
+                // The bulk delete bypasses the session, write the events reduced so far first
+                m_eventDao.flush();
+                m_eventDao.deletePreviousEventsForAlarm(alarm.getId(), lastEvent);
+            }
+        }
+
+        private void autoCleanAll() {
+            if (autoCleanEventsByAlarm.isEmpty()) {
+                return;
+            }
+            m_eventDao.flush();
+            autoCleanEventsByAlarm.forEach((alarm, lastEvent) -> m_eventDao.deletePreviousEventsForAlarm(alarm.getId(), lastEvent));
+            autoCleanEventsByAlarm.clear();
+        }
+
+        private void notifyListeners(Consumer<AlarmEntityNotifier> notification) {
+            if (deferred) {
+                notifications.add(notification);
+            } else {
+                notification.accept(m_alarmEntityNotifier);
+            }
+        }
+
+        private void sendNotifications(AlarmEntityNotifier notifier) {
+            notifications.forEach(notification -> notification.accept(notifier));
+            notifications.clear();
+        }
+    }
+
     private static Collection<String> getLockKeys(Event event) {
         if (event.getAlarmData().getClearKey() == null) {
             return Collections.singletonList(event.getAlarmData().getReductionKey());
@@ -28,6 +28,9 @@
 
 package org.opennms.netmgt.alarmd;
 
+import java.util.List;
+
+import org.opennms.core.concurrent.GroupCommitQueue;
 import org.opennms.core.sysprops.SystemProperties;
 import org.opennms.netmgt.alarmd.drools.DroolsAlarmContext;
 import org.opennms.netmgt.daemon.AbstractServiceDaemon;
@@ -56,8 +59,17 @@ public class Alarmd extends AbstractServiceDaemon implements ThreadAwareEventLis
 
     protected static final Integer THREADS = SystemProperties.getInteger("org.opennms.alarmd.threads", 4);
 
+    /**
+     * When greater than zero, events received within this many milliseconds are
+     * persisted together using a single transaction.
+     */
+    protected static final Long BATCH_WINDOW_MS = SystemProperties.getLong("org.opennms.alarmd.batchWindowMs", 0L);
+    protected static final Integer MAX_BATCH_SIZE = SystemProperties.getInteger("org.opennms.alarmd.maxBatchSize", 500);
+
     private AlarmPersister m_persister;
 
+    private volatile GroupCommitQueue<Event> m_batches;
+
     @Autowired
     private AlarmLifecycleListenerManager m_alm;
 
@@ -84,9 +96,35 @@ public class Alarmd extends AbstractServiceDaemon implements ThreadAwareEventLis
            handleReloadEvent(e);
            return;
     	}
+    	if (m_batches != null) {
+    	    try {
+    	        m_batches.add(Event.copyFrom(e));
+    	    } catch (InterruptedException ex) {
+    	        Thread.currentThread().interrupt();
+    	        LOG.warn("Interrupted while queuing event: {}", e);
+    	    } catch (IllegalStateException ex) {
+    	        LOG.warn("Alarmd is stopped, not persisting the alarm of event: {}", e);
+    	    }
+    	    return;
+    	}
     	m_persister.persist(Event.copyFrom(e));
     }
 
+    private void persistBatch(List<Event> events) {
+        try {
+            m_persister.persistAll(events);
+        } catch (RuntimeException e) {
+            LOG.warn("Failed to persist the alarms of a batch of {} events, persisting them one by one.", events.size(), e);
+            for (Event event : events) {
+                try {
+                    m_persister.persist(event);
+                } catch (RuntimeException ex) {
+                    LOG.error("Failed to persist the alarm of event: {}", event, ex);
+                }
+            }
+        }
+    }
+
     private synchronized void handleReloadEvent(IEvent e) {
         m_northbounderManager.handleReloadEvent(e);
         DaemonTools.handleReloadEvent(e, Alarmd.NAME, (event) -> onAlarmReload());
@@ -116,17 +154,31 @@ public class Alarmd extends AbstractServiceDaemon implements ThreadAwareEventLis
 
     @Override
     protected synchronized void onInit() {
-        // pass
+        if (BATCH_WINDOW_MS > 0) {
+            // Events are only queued, so allow for some more events than a single batch
+            m_batches = new GroupCommitQueue<>("alarmd-batch", BATCH_WINDOW_MS, MAX_BATCH_SIZE, MAX_BATCH_SIZE * 4, this::persistBatch);
+        }
     }
 
     @Override
     public synchronized void onStart() {
         // Start the Drools context
         m_droolsAlarmContext.start();
+        if (m_batches != null) {
+            m_batches.start();
+        }
     }
 
     @Override
     public synchronized void onStop() {
+        // Persist the events which have already been queued
+        if (m_batches != null) {
+            try {
+                m_batches.stop();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
         // Stop the northbound interfaces
         m_northbounderManager.stop();
         // Stop the Drools context
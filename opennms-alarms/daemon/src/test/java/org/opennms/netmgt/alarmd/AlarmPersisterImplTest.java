@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.alarmd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.dao.api.AlarmDao;
+import org.opennms.netmgt.dao.api.AlarmEntityNotifier;
+import org.opennms.netmgt.dao.api.EventDao;
+import org.opennms.netmgt.model.OnmsAlarm;
+import org.opennms.netmgt.model.OnmsEvent;
+import org.opennms.netmgt.model.OnmsSeverity;
+import org.opennms.netmgt.xml.event.AlarmData;
+import org.opennms.netmgt.xml.event.Event;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionOperations;
+
+/**
+ * Verifies how {@link AlarmPersisterImpl#persistAll(List)} reduces a batch of events in one transaction.
+ */
+public class AlarmPersisterImplTest {
+
+    private static final String REDUCTION_KEY = "uei.opennms.org/test:1";
+
+    private final AlarmDao alarmDao = mock(AlarmDao.class);
+
+    private final EventDao eventDao = mock(EventDao.class);
+
+    private final AlarmEntityNotifier notifier = mock(AlarmEntityNotifier.class);
+
+    private final Map<Integer, OnmsEvent> persistedEvents = new HashMap<>();
+
+    private final AlarmPersisterImpl persister = new AlarmPersisterImpl();
+
+    private boolean commitFails = false;
+
+    private boolean notifiedAfterCommit = true;
+
+    @Before
+    public void setUp() {
+        when(eventDao.get(anyInt())).then(invocation -> persistedEvents.get(invocation.getArguments()[0]));
+        persister.setAlarmDao(alarmDao);
+        persister.setEventDao(eventDao);
+        persister.setAlarmChangeListener(notifier);
+        persister.setTransactionOperations(new TransactionOperations() {
+            @Override
+            public <T> T execute(TransactionCallback<T> action) {
+                final T result = action.doInTransaction(null);
+                if (notifiedAfterCommit) {
+                    // Nothing is notified before the transaction was committed
+                    verifyZeroInteractions(notifier);
+                }
+                if (commitFails) {
+                    throw new IllegalStateException("commit failed");
+                }
+                return result;
+            }
+        });
+    }
+
+    @Test
+    public void canReduceEventsOfABatchOntoTheSameAlarm() {
+        final List<OnmsAlarm> alarms = persister.persistAll(Arrays.asList(event(1, false), event(2, false), event(3, false)));
+
+        assertEquals(3, alarms.size());
+        final OnmsAlarm alarm = alarms.get(0);
+        assertEquals(alarm, alarms.get(1));
+        assertEquals(alarm, alarms.get(2));
+        assertEquals(3, (int) alarm.getCounter());
+        assertEquals(persistedEvents.get(3), alarm.getLastEvent());
+
+        // The alarm is only looked up once, the following events are reduced onto the cached alarm
+        verify(alarmDao, times(1)).findByReductionKey(REDUCTION_KEY);
+        verify(alarmDao, times(1)).save(alarm);
+        verify(alarmDao, times(2)).update(alarm);
+
+        verify(notifier, times(1)).didCreateAlarm(alarm);
+        verify(notifier, times(2)).didUpdateAlarmWithReducedEvent(alarm);
+    }
+
+    @Test
+    public void canDeferAutoCleanUntilEndOfBatch() {
+        final OnmsAlarm alarm = existingAlarm();
+
+        persister.persistAll(Arrays.asList(event(1, true), event(2, true), event(3, true)));
+
+        // Only the events before the last reduced event are deleted, once
+        verify(eventDao, times(1)).deletePreviousEventsForAlarm(any(), any());
+        verify(eventDao, times(1)).deletePreviousEventsForAlarm(alarm.getId(), persistedEvents.get(3));
+        verify(notifier, times(3)).didUpdateAlarmWithReducedEvent(alarm);
+    }
+
+    @Test
+    public void canAutoCleanBeforeReducingEventWithoutAutoClean() {
+        final OnmsAlarm alarm = existingAlarm();
+
+        persister.persistAll(Arrays.asList(event(1, true), event(2, true), event(3, false), event(4, true)));
+
+        // The non auto-clean event must not delete the events reduced before it
+        verify(eventDao, times(2)).deletePreviousEventsForAlarm(any(), any());
+        verify(eventDao, times(1)).deletePreviousEventsForAlarm(alarm.getId(), persistedEvents.get(2));
+        verify(eventDao, times(1)).deletePreviousEventsForAlarm(alarm.getId(), persistedEvents.get(4));
+        verify(eventDao, never()).deletePreviousEventsForAlarm(alarm.getId(), persistedEvents.get(3));
+    }
+
+    @Test
+    public void doesNotNotifyWhenBatchIsRolledBack() {
+        commitFails = true;
+        try {
+            persister.persistAll(Arrays.asList(event(1, false), event(2, false)));
+            fail("Expected the batch to fail");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        verifyZeroInteractions(notifier);
+    }
+
+    @Test
+    public void notifiesImmediatelyWhenPersistingSingleEvent() {
+        notifiedAfterCommit = false;
+        final OnmsAlarm alarm = persister.persist(event(1, false));
+        verify(notifier, times(1)).didCreateAlarm(eq(alarm));
+    }
+
+    private OnmsAlarm existingAlarm() {
+        final OnmsAlarm alarm = new OnmsAlarm();
+        alarm.setId(42);
+        alarm.setReductionKey(REDUCTION_KEY);
+        alarm.setAlarmType(OnmsAlarm.PROBLEM_TYPE);
+        alarm.setSeverity(OnmsSeverity.MAJOR);
+        alarm.setCounter(1);
+        when(alarmDao.findByReductionKey(REDUCTION_KEY)).thenReturn(alarm);
+        return alarm;
+    }
+
+    private Event event(int dbid, boolean autoClean) {
+        final OnmsEvent persistedEvent = new OnmsEvent();
+        persistedEvent.setId(dbid);
+        persistedEvent.setEventUei("uei.opennms.org/test");
+        persistedEvent.setEventTime(new Date(dbid * 1000L));
+        persistedEvent.setEventSeverity(OnmsSeverity.MAJOR.getId());
+        persistedEvent.setEventLogMsg("test " + dbid);
+        persistedEvents.put(dbid, persistedEvent);
+
+        final AlarmData alarmData = new AlarmData();
+        alarmData.setReductionKey(REDUCTION_KEY);
+        alarmData.setAlarmType(OnmsAlarm.PROBLEM_TYPE);
+        alarmData.setAutoClean(autoClean);
+
+        final Event event = new Event();
+        event.setDbid(dbid);
+        event.setUei("uei.opennms.org/test");
+        event.setTime(persistedEvent.getEventTime());
+        event.setAlarmData(alarmData);
+        return event;
+    }
+}
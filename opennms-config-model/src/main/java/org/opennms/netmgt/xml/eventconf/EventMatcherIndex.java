@@ -0,0 +1,553 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.netmgt.xml.eventconf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.opennms.netmgt.xml.event.Snmp;
+
+/**
+ * Lookup structure compiled from the masks of all event definitions.
+ *
+ * Each event definition is identified by its rank, the order in which the definitions used to be tried.
+ * For the partition key and every field used by a mask (the enterprise id, generic, specific, varbinds, ...)
+ * the definitions which may match the value of an event are found using a hash lookup of the value,
+ * a table of the numeric generic and specific values and a trie of the prefixes of <code>%</code> values
+ * and of regular expressions starting with a literal. These candidates are combined as bitmaps and the
+ * remaining definitions are verified in rank order using their matchers, hence the first definition
+ * matching the event wins as before. Apart from reading the values of the event and verifying the
+ * candidates, a lookup does not allocate.
+ *
+ * Every event file used to return the definition of a UEI it defines without checking its mask, before
+ * trying the masks of its definitions. For an event which carries such a UEI, only the definitions ranked
+ * before the first file defining the UEI are searched, and the definition of that file is returned if
+ * none of them matches.
+ */
+final class EventMatcherIndex {
+
+    private final Event[] events;
+    private final int words;
+    // The partition comes first, followed by the fields constrained by most definitions
+    private final FieldIndex[] fields;
+    private final Map<String, UeiDefinition> definitionsByUei;
+    private final ThreadLocal<Scratch> scratch;
+
+    private EventMatcherIndex(Event[] events, FieldIndex[] fields, Map<String, UeiDefinition> definitionsByUei) {
+        this.events = events;
+        this.words = words(events.length);
+        this.fields = fields;
+        this.definitionsByUei = definitionsByUei;
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(fields.length, words));
+    }
+
+    int size() {
+        return events.length;
+    }
+
+    /**
+     * @param partitionKey the key of the event as returned by {@link Partition#group(org.opennms.netmgt.xml.event.Event)}
+     * @return the first event definition matching the event or null if no definition matches
+     */
+    Event findFirstMatchingEvent(final org.opennms.netmgt.xml.event.Event matchingEvent, final String partitionKey) {
+        final UeiDefinition byUei = matchingEvent.getUei() == null ? null : definitionsByUei.get(matchingEvent.getUei());
+        if (byUei == null) {
+            return findFirstMatchingEvent(matchingEvent, partitionKey, events.length);
+        }
+        final Event event = findFirstMatchingEvent(matchingEvent, partitionKey, byUei.rank);
+        return event != null ? event : byUei.event;
+    }
+
+    /**
+     * @param limit only the definitions ranked before are tried
+     */
+    private Event findFirstMatchingEvent(final org.opennms.netmgt.xml.event.Event matchingEvent, final String partitionKey, final int limit) {
+        final Scratch s = scratch.get();
+        try {
+            final int limitWords = words(limit);
+            for (int word = 0; word < limitWords; word++) {
+                long candidates = -1L;
+                // The values of a field are only looked up once a word has candidates left for it
+                for (int i = 0; i < fields.length && candidates != 0; i++) {
+                    if (!s.prepared[i]) {
+                        fields[i].collect(i, matchingEvent, partitionKey, s);
+                    }
+                    long matching = fields[i].any[word] | s.bits[i][word];
+                    for (int j = 0; j < s.bitmapCount[i]; j++) {
+                        matching |= s.bitmaps[i][j][word];
+                    }
+                    candidates &= matching;
+                }
+                while (candidates != 0) {
+                    final int rank = (word << 6) + Long.numberOfTrailingZeros(candidates);
+                    if (rank >= limit) {
+                        return null;
+                    }
+                    final Event event = events[rank];
+                    if (event.matches(matchingEvent).matched()) {
+                        return event;
+                    }
+                    candidates &= candidates - 1;
+                }
+            }
+            return null;
+        } finally {
+            s.reset();
+        }
+    }
+
+    private static int words(int count) {
+        return (count + 63) >>> 6;
+    }
+
+    /**
+     * Returns the literal characters every string matching the given regular expression starts with.
+     * The prefix may be shorter than possible but it is never wrong.
+     */
+    static String literalPrefix(final String regex) {
+        if (regex.indexOf('|') >= 0) {
+            return "";
+        }
+        final StringBuilder prefix = new StringBuilder();
+        int i = regex.startsWith("^") ? 1 : 0;
+        while (i < regex.length()) {
+            final char c = regex.charAt(i);
+            if (c == '\\' && i + 1 < regex.length() && !Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                prefix.append(regex.charAt(i + 1));
+                i += 2;
+            } else if ("\\[](){}.*+?^$".indexOf(c) < 0) {
+                prefix.append(c);
+                i++;
+            } else {
+                if ((c == '*' || c == '?' || c == '{') && prefix.length() > 0) {
+                    // The last literal is optional
+                    prefix.setLength(prefix.length() - 1);
+                }
+                break;
+            }
+        }
+        return prefix.toString();
+    }
+
+    /**
+     * The definitions which may match the values of a single field.
+     */
+    private static final class FieldIndex {
+        private final String name;
+        // null for the partition key
+        private final Field field;
+        // Definitions which do not constrain the field
+        private final long[] any;
+        private final Map<String, RankSet> ranksByValue;
+        // Sorted canonical numbers of the generic and specific fields
+        private final int[] numbers;
+        private final RankSet[] ranksByNumber;
+        private final TrieNode prefixes;
+
+        private FieldIndex(FieldIndexBuilder builder) {
+            this.name = builder.name;
+            this.field = builder.field;
+            this.any = builder.any;
+            this.ranksByValue = new HashMap<>();
+            final int words = builder.any.length;
+            builder.ranksByValue.forEach((value, ranks) -> ranksByValue.put(value, RankSet.of(ranks, words)));
+            this.numbers = new int[builder.ranksByNumber.size()];
+            this.ranksByNumber = new RankSet[numbers.length];
+            int i = 0;
+            for (Map.Entry<Integer, List<Integer>> entry : builder.ranksByNumber.entrySet()) {
+                numbers[i] = entry.getKey();
+                ranksByNumber[i] = RankSet.of(entry.getValue(), words);
+                i++;
+            }
+            this.prefixes = builder.prefixes == null ? null : builder.prefixes.build(words);
+        }
+
+        private void collect(int index, org.opennms.netmgt.xml.event.Event event, String partitionKey, Scratch s) {
+            s.prepared[index] = true;
+            if (field == null) {
+                collect(index, partitionKey, s);
+                return;
+            }
+            if (isNumeric(name)) {
+                final Integer number = getNumber(name, event);
+                if (number == null) {
+                    return;
+                }
+                final int i = Arrays.binarySearch(numbers, number);
+                if (i >= 0) {
+                    s.add(index, ranksByNumber[i]);
+                }
+                if (ranksByValue.isEmpty() && prefixes == null) {
+                    return;
+                }
+            }
+            collect(index, field.get(event), s);
+        }
+
+        private void collect(int index, String value, Scratch s) {
+            if (value == null) {
+                return;
+            }
+            final RankSet ranks = ranksByValue.get(value);
+            if (ranks != null) {
+                s.add(index, ranks);
+            }
+            TrieNode node = prefixes;
+            for (int i = 0; node != null; i++) {
+                if (node.ranks != null) {
+                    s.add(index, node.ranks);
+                }
+                node = i < value.length() ? node.child(value.charAt(i)) : null;
+            }
+        }
+    }
+
+    private static boolean isNumeric(String name) {
+        return Maskelement.TAG_SNMP_GENERIC.equals(name) || Maskelement.TAG_SNMP_SPECIFIC.equals(name);
+    }
+
+    private static Integer getNumber(String name, org.opennms.netmgt.xml.event.Event event) {
+        final Snmp snmp = event.getSnmp();
+        if (snmp == null) {
+            return null;
+        }
+        if (Maskelement.TAG_SNMP_GENERIC.equals(name)) {
+            return snmp.hasGeneric() ? snmp.getGeneric() : null;
+        }
+        return snmp.hasSpecific() ? snmp.getSpecific() : null;
+    }
+
+    /**
+     * The ranks of the definitions matching a value. Small sets are stored as ranks which are copied
+     * into the bitmap of the lookup, large sets as bitmaps which are combined word by word.
+     */
+    private static final class RankSet {
+        private final int[] ranks;
+        private final long[] bitmap;
+
+        private RankSet(int[] ranks, long[] bitmap) {
+            this.ranks = ranks;
+            this.bitmap = bitmap;
+        }
+
+        private static RankSet of(List<Integer> ranks, int words) {
+            if (ranks.size() < words) {
+                return new RankSet(ranks.stream().mapToInt(Integer::intValue).toArray(), null);
+            }
+            final long[] bitmap = new long[words];
+            for (final int rank : ranks) {
+                bitmap[rank >>> 6] |= 1L << rank;
+            }
+            return new RankSet(null, bitmap);
+        }
+    }
+
+    /**
+     * A definition returned by UEI once the definitions ranked before were tried.
+     */
+    private static final class UeiDefinition {
+        private final int rank;
+        private final Event event;
+
+        private UeiDefinition(int rank, Event event) {
+            this.rank = rank;
+            this.event = event;
+        }
+    }
+
+    private static final class TrieNode {
+        private final char[] labels;
+        private final TrieNode[] children;
+        // Definitions using the path to this node as prefix, null if there are none
+        private final RankSet ranks;
+
+        private TrieNode(char[] labels, TrieNode[] children, RankSet ranks) {
+            this.labels = labels;
+            this.children = children;
+            this.ranks = ranks;
+        }
+
+        private TrieNode child(char label) {
+            final int i = Arrays.binarySearch(labels, label);
+            return i < 0 ? null : children[i];
+        }
+    }
+
+    private static final class TrieNodeBuilder {
+        private final TreeMap<Character, TrieNodeBuilder> children = new TreeMap<>();
+        private final List<Integer> ranks = new ArrayList<>();
+
+        private void add(String prefix, int rank) {
+            TrieNodeBuilder node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), c -> new TrieNodeBuilder());
+            }
+            node.ranks.add(rank);
+        }
+
+        private TrieNode build(int words) {
+            final char[] labels = new char[children.size()];
+            final TrieNode[] nodes = new TrieNode[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, TrieNodeBuilder> entry : children.entrySet()) {
+                labels[i] = entry.getKey();
+                nodes[i] = entry.getValue().build(words);
+                i++;
+            }
+            return new TrieNode(labels, nodes, ranks.isEmpty() ? null : RankSet.of(ranks, words));
+        }
+    }
+
+    private static final class FieldIndexBuilder {
+        private final String name;
+        private final Field field;
+        private final long[] any;
+        private final Map<String, List<Integer>> ranksByValue = new HashMap<>();
+        private final TreeMap<Integer, List<Integer>> ranksByNumber = new TreeMap<>();
+        private TrieNodeBuilder prefixes;
+        private int constrained;
+
+        private FieldIndexBuilder(String name, Field field, int count) {
+            this.name = name;
+            this.field = field;
+            this.any = new long[words(count)];
+        }
+
+        private void setAny(int rank) {
+            any[rank >>> 6] |= 1L << rank;
+        }
+
+        private void add(int rank, List<String> values) {
+            constrained++;
+            for (final String value : values) {
+                // Values are matched the same way as by EventMatchers
+                if (value == null) {
+                    continue;
+                }
+                if (value.startsWith("~")) {
+                    addValue(rank, value);
+                    addPrefix(rank, literalPrefix(value.substring(1)));
+                } else if (value.endsWith("%")) {
+                    addValue(rank, value);
+                    addPrefix(rank, value.substring(0, value.length() - 1));
+                } else if (isNumeric(name) && isCanonicalNumber(value)) {
+                    ranksByNumber.computeIfAbsent(Integer.parseInt(value), k -> new ArrayList<>()).add(rank);
+                } else {
+                    addValue(rank, value);
+                }
+            }
+        }
+
+        private void addValue(int rank, String value) {
+            ranksByValue.computeIfAbsent(value, k -> new ArrayList<>()).add(rank);
+        }
+
+        private void addPrefix(int rank, String prefix) {
+            if (prefixes == null) {
+                prefixes = new TrieNodeBuilder();
+            }
+            prefixes.add(prefix, rank);
+        }
+
+        private static boolean isCanonicalNumber(String value) {
+            try {
+                return Integer.toString(Integer.parseInt(value)).equals(value);
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+    }
+
+    private static final class Scratch {
+        private final long[][] bits;
+        // Words of the bitmaps which are not zero
+        private final int[][] touched;
+        private final int[] touchedCount;
+        // Large sets of ranks matching the values of the fields
+        private final long[][][] bitmaps;
+        private final int[] bitmapCount;
+        private final boolean[] prepared;
+
+        private Scratch(int fields, int words) {
+            this.bits = new long[fields][words];
+            this.touched = new int[fields][words];
+            this.touchedCount = new int[fields];
+            this.bitmaps = new long[fields][4][];
+            this.bitmapCount = new int[fields];
+            this.prepared = new boolean[fields];
+        }
+
+        private void add(int field, RankSet ranks) {
+            if (ranks.bitmap != null) {
+                if (bitmapCount[field] == bitmaps[field].length) {
+                    bitmaps[field] = Arrays.copyOf(bitmaps[field], bitmapCount[field] * 2);
+                }
+                bitmaps[field][bitmapCount[field]++] = ranks.bitmap;
+                return;
+            }
+            final long[] b = bits[field];
+            for (final int rank : ranks.ranks) {
+                final int word = rank >>> 6;
+                if (b[word] == 0) {
+                    touched[field][touchedCount[field]++] = word;
+                }
+                b[word] |= 1L << rank;
+            }
+        }
+
+        private void reset() {
+            for (int field = 0; field < bits.length; field++) {
+                for (int i = 0; i < touchedCount[field]; i++) {
+                    bits[field][touched[field][i]] = 0;
+                }
+                touchedCount[field] = 0;
+                for (int i = 0; i < bitmapCount[field]; i++) {
+                    bitmaps[field][i] = null;
+                }
+                bitmapCount[field] = 0;
+                prepared[field] = false;
+            }
+        }
+    }
+
+    /**
+     * Event definitions must be added in the order they used to be tried.
+     */
+    static final class Builder {
+        private final List<Event> events = new ArrayList<>();
+        private final List<List<String>> partitionKeys = new ArrayList<>();
+        private final Map<Event, Integer> ranks = new IdentityHashMap<>();
+        private final Map<String, UeiDefinition> definitionsByUei = new HashMap<>();
+
+        /**
+         * @param keys the partition keys of the definition or null if the definition must be tried for all events
+         */
+        Builder add(final Event event, final List<String> keys) {
+            final Integer rank = ranks.get(event);
+            // A definition tried before for the same events will not match the second time
+            if (rank != null && (partitionKeys.get(rank) == null || (keys != null && partitionKeys.get(rank).containsAll(keys)))) {
+                return this;
+            }
+            ranks.put(event, events.size());
+            events.add(event);
+            partitionKeys.add(keys);
+            return this;
+        }
+
+        /**
+         * @param eventsByUei the definitions returned by UEI before the definitions added next are tried,
+         * a UEI keeps the definition it was added with first
+         */
+        Builder addByUei(final Map<String, Event> eventsByUei) {
+            final int rank = events.size();
+            eventsByUei.forEach((uei, event) -> definitionsByUei.putIfAbsent(uei, new UeiDefinition(rank, event)));
+            return this;
+        }
+
+        EventMatcherIndex build() {
+            final int count = events.size();
+
+            final FieldIndexBuilder partition = new FieldIndexBuilder("partition", null, count);
+            final Map<String, FieldIndexBuilder> fields = new LinkedHashMap<>();
+            final List<Map<String, List<String>>> constraints = new ArrayList<>(count);
+            for (int rank = 0; rank < count; rank++) {
+                final List<String> keys = partitionKeys.get(rank);
+                if (keys == null) {
+                    partition.setAny(rank);
+                } else {
+                    // Keys are compared literally
+                    for (final String key : keys) {
+                        partition.addValue(rank, key);
+                    }
+                }
+                final Map<String, List<String>> constraint = getConstraints(events.get(rank));
+                for (final String name : constraint.keySet()) {
+                    fields.computeIfAbsent(name, n -> new FieldIndexBuilder(n, getField(n), count));
+                }
+                constraints.add(constraint);
+            }
+
+            for (int rank = 0; rank < count; rank++) {
+                final Map<String, List<String>> constraint = constraints.get(rank);
+                for (final FieldIndexBuilder field : fields.values()) {
+                    final List<String> values = constraint.get(field.name);
+                    if (values == null) {
+                        field.setAny(rank);
+                    } else {
+                        field.add(rank, values);
+                    }
+                }
+            }
+
+            final List<FieldIndexBuilder> sortedFields = new ArrayList<>(fields.values());
+            sortedFields.sort((a, b) -> Integer.compare(b.constrained, a.constrained));
+            final FieldIndex[] indices = new FieldIndex[sortedFields.size() + 1];
+            indices[0] = new FieldIndex(partition);
+            for (int i = 0; i < sortedFields.size(); i++) {
+                indices[i + 1] = new FieldIndex(sortedFields.get(i));
+            }
+            return new EventMatcherIndex(events.toArray(new Event[count]), indices, new HashMap<>(definitionsByUei));
+        }
+
+        /**
+         * Returns the values each field must match, as the matcher built by {@link Event#initialize(EventOrdering.EventOrderIndex)}.
+         * Only the first element of a field is indexed, others are left to the verification using the matcher.
+         */
+        private static Map<String, List<String>> getConstraints(Event event) {
+            final Mask mask = event.getMask();
+            if (mask == null || mask.getMaskelements().isEmpty()) {
+                return Collections.singletonMap(Maskelement.TAG_UEI,
+                        event.getUei() == null ? Collections.emptyList() : Collections.singletonList(event.getUei()));
+            }
+            final Map<String, List<String>> constraints = new LinkedHashMap<>();
+            for (final Maskelement element : mask.getMaskelements()) {
+                constraints.putIfAbsent(element.getMename(), element.getMevalues());
+            }
+            for (final Varbind varbind : mask.getVarbinds()) {
+                if (varbind.getVbnumber() != null) {
+                    constraints.putIfAbsent("varbind#" + varbind.getVbnumber(), varbind.getVbvalues());
+                }
+            }
+            return constraints;
+        }
+
+        private static Field getField(String name) {
+            if (name.startsWith("varbind#")) {
+                return EventMatchers.varbind(Integer.parseInt(name.substring("varbind#".length())));
+            }
+            return EventMatchers.field(name);
+        }
+    }
+}
@@ -43,6 +43,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -120,6 +121,12 @@ public class Events implements Serializable {
     @XmlTransient
     private EventOrdering m_ordering;
 
+    /**
+     * Index over the event definitions of this and all loaded files, only built for the root configuration.
+     */
+    @XmlTransient
+    private EventMatcherIndex m_index;
+
     public Global getGlobal() {
         return m_global;
     }
@@ -244,6 +251,7 @@ public class Events implements Serializable {
 			}
 		}
 		m_loadedEventFiles = orderedAndLoadedEventFiles;
+		m_index = null;
 	}
 
     public boolean isSecureTag(final String tag) {
@@ -286,6 +294,11 @@ public class Events implements Serializable {
 
         // If the UEI match failed, fallback to searching with the matchers through the partitions
         final String key = m_partition.group(matchingEvent);
+        final EventMatcherIndex index = m_index;
+        if (index != null) {
+            return index.findFirstMatchingEvent(matchingEvent, key);
+        }
+
         Collection<Event> potentialMatches = m_nullPartitionedEvents;
         if (key != null) {
             final List<Event> events = m_partitionedEvents.get(key);
@@ -347,6 +360,15 @@ public class Events implements Serializable {
     }
 
     public void initialize(final Partition partition, final EventOrdering eventOrdering) {
+        initializeEvents(partition, eventOrdering);
+
+        final EventMatcherIndex.Builder index = new EventMatcherIndex.Builder();
+        addToIndex(index);
+        m_index = index.build();
+    }
+
+    private void initializeEvents(final Partition partition, final EventOrdering eventOrdering) {
+        m_index = null;
         m_ordering = eventOrdering;
 
         for (final Event event : m_events) {
@@ -356,7 +378,7 @@ public class Events implements Serializable {
         partitionEvents(partition);
 
         for (final Events events : m_loadedEventFiles.values()) {
-            events.initialize(partition, m_ordering.subsequence());
+            events.initializeEvents(partition, m_ordering.subsequence());
         }
 
         // roll up all prioritized events and sort all events by priority
@@ -371,6 +393,37 @@ public class Events implements Serializable {
         indexEventsByUei();
     }
 
+    // Add the event definitions in the order findFirstMatchingEvent() tries them without an index
+    private void addToIndex(final EventMatcherIndex.Builder index) {
+        // Matched by UEI before the masks of this file are tried
+        index.addByUei(m_eventsByUei);
+
+        final Map<Event, List<String>> keysByEvent = new IdentityHashMap<>();
+        for (final Event event : m_nullPartitionedEvents) {
+            keysByEvent.put(event, null);
+        }
+        for (final Entry<String, List<Event>> entry : m_partitionedEvents.entrySet()) {
+            for (final Event event : entry.getValue()) {
+                if (!keysByEvent.containsKey(event)) {
+                    keysByEvent.put(event, new ArrayList<>());
+                }
+                final List<String> keys = keysByEvent.get(event);
+                if (keys != null) {
+                    keys.add(entry.getKey());
+                }
+            }
+        }
+        final List<Event> events = new ArrayList<>(keysByEvent.keySet());
+        events.sort(Comparator.naturalOrder());
+        for (final Event event : events) {
+            index.add(event, keysByEvent.get(event));
+        }
+
+        for (final Events subEvents : m_loadedEventFiles.values()) {
+            subEvents.addToIndex(index);
+        }
+    }
+
     // Recurse through the configuration and return Event Definitions with priority > 0
     private List<Event> getPrioritizedEvents() {
         List<Event> prioritizedEvents = new ArrayList<Event>();
@@ -455,11 +508,13 @@ public class Events implements Serializable {
             m_eventFiles.add(relativePath);
         }
         m_loadedEventFiles.put(relativePath, events);
+        m_index = null;
     }
 
     public void removeLoadedEventFile(final String relativePath) {
         m_eventFiles.remove(relativePath);
         m_loadedEventFiles.remove(relativePath);
+        m_index = null;
     }
 
     public void saveEvents(final Resource resource) {
@@ -37,8 +37,8 @@ import java.util.Map;
  *
  */
 public class MatchResult {
-    public static final MatchResult FALSE = MatchResult.of(false);
-    public static final MatchResult TRUE = MatchResult.of(true);
+    public static final MatchResult FALSE = new MatchResult(false);
+    public static final MatchResult TRUE = new MatchResult(true);
 
     private final boolean matched;
     private final Map<String, String> eventParameters;
@@ -54,7 +54,8 @@ public class MatchResult {
     }
 
     public static MatchResult of(boolean matches) {
-        return new MatchResult(matches);
+        // Results without parameters are immutable, so they can be shared
+        return matches ? TRUE : FALSE;
     }
 
     public static MatchResult of(boolean matches, Map<String, String> eventParameters) {
@@ -69,7 +70,14 @@ public class MatchResult {
         if (!other.matched) {
             return other;
         }
-        // Both results are truthy, let's merge the event parameters
+        // Both results are truthy, avoid the merge if there is nothing to merge
+        if (other.eventParameters.isEmpty()) {
+            return this;
+        }
+        if (eventParameters.isEmpty()) {
+            return other;
+        }
+        // Let's merge the event parameters
         final Map<String, String> allEventParameters = new HashMap<>();
         allEventParameters.putAll(eventParameters);
         allEventParameters.putAll(other.eventParameters);
@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.netmgt.xml.eventconf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.opennms.netmgt.xml.event.Parm;
+import org.opennms.netmgt.xml.event.Snmp;
+import org.opennms.netmgt.xml.event.Value;
+
+public class EventMatcherIndexTest {
+
+    @Test
+    public void verifyLiteralPrefix() {
+        assertEquals(".1.3.6.1.4.1.9.", EventMatcherIndex.literalPrefix("^\\.1\\.3\\.6\\.1\\.4\\.1\\.9\\..*"));
+        assertEquals("abc", EventMatcherIndex.literalPrefix("abc+d"));
+        assertEquals("ab", EventMatcherIndex.literalPrefix("abc?d"));
+        assertEquals("ab", EventMatcherIndex.literalPrefix("abc{2}"));
+        assertEquals("", EventMatcherIndex.literalPrefix(".1.3"));
+        assertEquals("", EventMatcherIndex.literalPrefix("abc|def"));
+        assertEquals("", EventMatcherIndex.literalPrefix("(?i)abc"));
+        assertEquals("", EventMatcherIndex.literalPrefix("\\d+"));
+    }
+
+    @Test
+    public void verifyFirstMatchingEvent() {
+        final Events root = new Events();
+        root.addEvent(event("root-prefix", null, "id", ".1.3.6.1.4.1.5813%"));
+        root.addEvent(event("root-exact", null, "id", ".1.3.6.1.4.1.9"));
+
+        final Events file = new Events();
+        file.addEvent(event("file-specific", null, "id", ".1.3.6.1.4.1.9", "generic", "6", "specific", "1"));
+        file.addEvent(event("file-regex", null, "id", ".1.3.6.1.4.1.2636", "specific", "~^1[0-9]$"));
+        file.addEvent(event("file-prioritized", 100, "id", ".1.3.6.1.4.1.2636", "generic", "6"));
+        file.addEvent(event("file-varbind", null, "id", ".1.3.6.1.4.1.2636", "varbind#2", "up%"));
+        root.addLoadedEventFile("file.xml", file);
+
+        root.initialize(new WildcardIdPartition(), new EventOrdering());
+
+        assertEquals("root-prefix", findUei(root, trap(".1.3.6.1.4.1.5813.1", 6, 1)));
+        assertEquals("root-exact", findUei(root, trap(".1.3.6.1.4.1.9", 6, 1)));
+        // Prioritized events are tried before all others
+        assertEquals("file-prioritized", findUei(root, trap(".1.3.6.1.4.1.2636", 6, 12)));
+        assertEquals("file-regex", findUei(root, trap(".1.3.6.1.4.1.2636", 5, 12)));
+        assertEquals("file-varbind", findUei(root, trap(".1.3.6.1.4.1.2636", 5, 2, "x", "up-and-running")));
+        assertNull(findUei(root, trap(".1.3.6.1.4.1.2636", 5, 2, "up-and-running")));
+        assertNull(findUei(root, trap(".1.3.6.1.4.1.2637", 6, 1)));
+    }
+
+    @Test
+    public void verifyUeiDefinedInManyFiles() {
+        final Events root = new Events();
+        root.addEvent(event("root-exact", null, "id", ".1.3.6.1.4.1.9"));
+
+        final Events first = new Events();
+        final Event firstDefinition = event("duplicate", null, "id", ".1.3.6.1.4.1.5813", "specific", "1");
+        first.addEvent(firstDefinition);
+        root.addLoadedEventFile("first.xml", first);
+
+        final Events second = new Events();
+        second.addEvent(event("duplicate", null, "id", ".1.3.6.1.4.1.2636", "specific", "1"));
+        second.addEvent(event("second-exact", null, "id", ".1.3.6.1.4.1.2636"));
+        root.addLoadedEventFile("second.xml", second);
+
+        root.initialize(new WildcardIdPartition(), new EventOrdering());
+
+        // Definitions of the files tried before the first file defining the UEI still win
+        final org.opennms.netmgt.xml.event.Event rootMatch = trap(".1.3.6.1.4.1.9", 6, 1);
+        rootMatch.setUei("duplicate");
+        assertEquals("root-exact", findUei(root, rootMatch));
+
+        // The first file returns its definition of the UEI before the masks of the second file are tried
+        final org.opennms.netmgt.xml.event.Event secondMatch = trap(".1.3.6.1.4.1.2636", 6, 1);
+        secondMatch.setUei("duplicate");
+        assertSame(firstDefinition, root.findFirstMatchingEvent(secondMatch));
+
+        final org.opennms.netmgt.xml.event.Event noMatch = trap(".1.3.6.1.4.1.2637", 6, 1);
+        noMatch.setUei("duplicate");
+        assertSame(firstDefinition, root.findFirstMatchingEvent(noMatch));
+
+        // Without the UEI the masks decide
+        assertEquals("second-exact", findUei(root, trap(".1.3.6.1.4.1.2636", 6, 2)));
+    }
+
+    /**
+     * Partitions events by their enterprise id, but tries events with wildcard ids for all events.
+     */
+    private static class WildcardIdPartition extends EnterpriseIdPartition {
+        @Override
+        public List<String> group(Event eventConf) {
+            final List<String> keys = super.group(eventConf);
+            if (keys != null && keys.stream().anyMatch(key -> key.endsWith("%") || key.startsWith("~"))) {
+                return null;
+            }
+            return keys;
+        }
+    }
+
+    private static String findUei(Events events, org.opennms.netmgt.xml.event.Event matchingEvent) {
+        final Event event = events.findFirstMatchingEvent(matchingEvent);
+        return event == null ? null : event.getUei();
+    }
+
+    // Varbinds are given as "varbind#<number>"
+    private static Event event(String uei, Integer priority, String... maskElements) {
+        final Event event = new Event();
+        event.setUei(uei);
+        event.setPriority(priority);
+        final Mask mask = new Mask();
+        for (int i = 0; i < maskElements.length; i += 2) {
+            if (maskElements[i].startsWith("varbind#")) {
+                final Varbind varbind = new Varbind();
+                varbind.setVbnumber(Integer.parseInt(maskElements[i].substring("varbind#".length())));
+                varbind.addVbvalue(maskElements[i + 1]);
+                mask.addVarbind(varbind);
+            } else {
+                final Maskelement element = new Maskelement();
+                element.setMename(maskElements[i]);
+                element.addMevalue(maskElements[i + 1]);
+                mask.addMaskelement(element);
+            }
+        }
+        event.setMask(mask);
+        return event;
+    }
+
+    private static org.opennms.netmgt.xml.event.Event trap(String id, int generic, int specific, String... varbinds) {
+        final Snmp snmp = new Snmp();
+        snmp.setId(id);
+        snmp.setGeneric(generic);
+        snmp.setSpecific(specific);
+        final org.opennms.netmgt.xml.event.Event event = new org.opennms.netmgt.xml.event.Event();
+        event.setSnmp(snmp);
+        for (int i = 0; i < varbinds.length; i++) {
+            final Parm parm = new Parm();
+            parm.setParmName(".1.3.6.1." + i);
+            final Value value = new Value();
+            value.setContent(varbinds[i]);
+            parm.setValue(value);
+            event.addParm(parm);
+        }
+        return event;
+    }
+}
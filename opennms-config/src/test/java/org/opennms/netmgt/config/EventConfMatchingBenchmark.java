@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.netmgt.config;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.core.test.ConfigurationTestUtils;
+import org.opennms.netmgt.xml.event.Parm;
+import org.opennms.netmgt.xml.event.Snmp;
+import org.opennms.netmgt.xml.event.Value;
+import org.opennms.netmgt.xml.eventconf.Event;
+import org.opennms.netmgt.xml.eventconf.Maskelement;
+import org.opennms.netmgt.xml.eventconf.Varbind;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.FileSystemResource;
+
+/**
+ * Matches traps against the event definitions shipped in etc/events. A trap is generated from the
+ * mask of every definition, using the first value of each mask element and varbind, so every lookup
+ * exercises the mask matchers instead of the UEI index.
+ *
+ * Run with <code>mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=...EventConfMatchingBenchmark</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class EventConfMatchingBenchmark {
+
+    private DefaultEventConfDao eventConfDao;
+    private List<org.opennms.netmgt.xml.event.Event> traps;
+    private org.opennms.netmgt.xml.event.Event unknownTrap;
+
+    @Setup
+    public void setUp() throws IOException {
+        eventConfDao = new DefaultEventConfDao();
+        eventConfDao.setConfigResource(new FileSystemResource(ConfigurationTestUtils.getFileForConfigFile("eventconf.xml")));
+        eventConfDao.afterPropertiesSet();
+
+        traps = new ArrayList<>();
+        for (final Event event : eventConfDao.getAllEvents()) {
+            if (event.getMask() != null && !event.getMask().getMaskelements().isEmpty()) {
+                traps.add(toTrap(event));
+            }
+        }
+        unknownTrap = trap(".1.3.6.1.4.1.5813.99.99", 6, 99);
+    }
+
+    @Benchmark
+    public void findByEvent(final Blackhole blackhole) {
+        for (final org.opennms.netmgt.xml.event.Event trap : traps) {
+            blackhole.consume(eventConfDao.findByEvent(trap));
+        }
+    }
+
+    @Benchmark
+    public Event findUnknownTrap() {
+        return eventConfDao.findByEvent(unknownTrap);
+    }
+
+    private static org.opennms.netmgt.xml.event.Event toTrap(final Event event) {
+        final org.opennms.netmgt.xml.event.Event trap = trap(null, 6, 0);
+        for (final Maskelement element : event.getMask().getMaskelements()) {
+            final String value = toValue(element.getMevalues());
+            if (value == null) {
+                continue;
+            }
+            try {
+                switch (element.getMename()) {
+                    case Maskelement.TAG_SNMP_EID:
+                        trap.getSnmp().setId(value);
+                        break;
+                    case Maskelement.TAG_SNMP_GENERIC:
+                        trap.getSnmp().setGeneric(Integer.parseInt(value));
+                        break;
+                    case Maskelement.TAG_SNMP_SPECIFIC:
+                        trap.getSnmp().setSpecific(Integer.parseInt(value));
+                        break;
+                    default:
+                        break;
+                }
+            } catch (NumberFormatException e) {
+                // Leave the field as it is
+            }
+        }
+        int varbindCount = 0;
+        for (final Varbind varbind : event.getMask().getVarbinds()) {
+            if (varbind.getVbnumber() != null) {
+                varbindCount = Math.max(varbindCount, varbind.getVbnumber());
+            }
+        }
+        final String[] varbinds = new String[varbindCount];
+        for (final Varbind varbind : event.getMask().getVarbinds()) {
+            if (varbind.getVbnumber() != null) {
+                varbinds[varbind.getVbnumber() - 1] = toValue(varbind.getVbvalues());
+            }
+        }
+        for (int i = 0; i < varbinds.length; i++) {
+            final Parm parm = new Parm();
+            parm.setParmName(".1.3.6.1.4.1.5813.20." + (i + 1));
+            final Value value = new Value();
+            value.setContent(varbinds[i] == null ? "0" : varbinds[i]);
+            parm.setValue(value);
+            trap.addParm(parm);
+        }
+        return trap;
+    }
+
+    // Turns the first value of a mask into a value it matches, regular expressions are kept as they are
+    private static String toValue(final List<String> values) {
+        if (values.isEmpty() || values.get(0) == null) {
+            return null;
+        }
+        final String value = values.get(0);
+        return !value.startsWith("~") && value.endsWith("%") ? value.substring(0, value.length() - 1) : value;
+    }
+
+    private static org.opennms.netmgt.xml.event.Event trap(final String id, final int generic, final int specific) {
+        final Snmp snmp = new Snmp();
+        snmp.setId(id);
+        snmp.setGeneric(generic);
+        snmp.setSpecific(specific);
+        final org.opennms.netmgt.xml.event.Event trap = new org.opennms.netmgt.xml.event.Event();
+        trap.setSnmp(snmp);
+        return trap;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(EventConfMatchingBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -28,6 +28,7 @@
 
 package org.opennms.netmgt.dao.api;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -51,4 +52,15 @@ public interface EventDao extends LegacyOnmsDao<OnmsEvent, Integer> {
 
     List<OnmsEvent> getEventsForEventParameters(final Map<String, String> eventParameters);
 
+    /**
+     * Inserts the given new events and their parameters using batched statements
+     * and assigns the generated ids to the events.
+     *
+     * The events are not attached to the current session, use <code>get()</code>
+     * to load them afterwards.
+     *
+     * @param events events which have not been saved yet
+     */
+    void saveAll(final Collection<OnmsEvent> events);
+
 }
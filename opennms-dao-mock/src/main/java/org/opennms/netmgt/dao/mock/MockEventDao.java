@@ -29,6 +29,7 @@
 package org.opennms.netmgt.dao.mock;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -105,4 +106,9 @@ public class MockEventDao extends AbstractMockDao<OnmsEvent, Integer> implements
 
         return stream.distinct().collect(Collectors.toList());
     }
+
+    @Override
+    public void saveAll(final Collection<OnmsEvent> events) {
+        events.forEach(this::save);
+    }
 }
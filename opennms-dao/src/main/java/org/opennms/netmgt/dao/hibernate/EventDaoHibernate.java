@@ -28,21 +28,42 @@
 
 package org.opennms.netmgt.dao.hibernate;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 import org.hibernate.HibernateException;
 import org.hibernate.Query;
 import org.hibernate.Session;
+import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.dao.api.EventDao;
 import org.opennms.netmgt.model.OnmsEvent;
+import org.opennms.netmgt.model.OnmsEventParameter;
 import org.springframework.dao.DataAccessException;
 import org.springframework.orm.hibernate3.HibernateCallback;
 
 public class EventDaoHibernate extends AbstractDaoHibernate<OnmsEvent, Integer> implements EventDao {
 
+    private static final String NEXT_IDS = "SELECT nextval('eventsNxtId') FROM generate_series(1, ?)";
+
+    private static final String INSERT_EVENT = "INSERT INTO events (eventId, eventUei, nodeId, eventTime, eventHost, eventSource, ipAddr, "
+            + "systemId, eventSnmpHost, serviceId, eventSnmp, eventCreateTime, eventDescr, eventLogGroup, eventLogMsg, eventSeverity, "
+            + "eventPathOutage, eventCorrelation, eventSuppressedCount, eventOperInstruct, eventAutoAction, eventOperAction, "
+            + "eventOperActionMenuText, eventNotification, eventTTicket, eventTTicketState, eventForward, eventMouseOverText, "
+            + "eventLog, eventDisplay, ifIndex, eventAckUser, eventAckTime, alarmId) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_PARAMETER = "INSERT INTO event_parameters (eventId, name, value, type, position) VALUES (?, ?, ?, ?, ?)";
+
 	public EventDaoHibernate() {
 		super(OnmsEvent.class);
 	}
@@ -93,4 +114,133 @@ public class EventDaoHibernate extends AbstractDaoHibernate<OnmsEvent, Integer>
             }
         });
     }
+
+    /**
+     * Hibernate is configured without JDBC batching, so the events are written
+     * using plain batched statements on the connection of the current session.
+     */
+    @Override
+    public void saveAll(final Collection<OnmsEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        getHibernateTemplate().execute(new HibernateCallback<Void>() {
+            @Override
+            public Void doInHibernate(Session session) throws HibernateException, SQLException {
+                // Write pending changes first, so the inserts see the same state as Session.save() would
+                session.flush();
+                session.doWork(connection -> {
+                    final Iterator<Integer> ids = nextIds(connection, events.size()).iterator();
+                    for (final OnmsEvent event : events) {
+                        event.setId(ids.next());
+                    }
+                    insertEvents(connection, events);
+                    insertParameters(connection, events);
+                });
+                return null;
+            }
+        });
+    }
+
+    private static List<Integer> nextIds(final Connection connection, final int count) throws SQLException {
+        final List<Integer> ids = new ArrayList<>(count);
+        try (PreparedStatement stmt = connection.prepareStatement(NEXT_IDS)) {
+            stmt.setInt(1, count);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+            }
+        }
+        if (ids.size() != count) {
+            throw new SQLException("Expected " + count + " event ids from sequence eventsNxtId, got " + ids.size());
+        }
+        return ids;
+    }
+
+    private static void insertEvents(final Connection connection, final Collection<OnmsEvent> events) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(INSERT_EVENT)) {
+            for (final OnmsEvent e : events) {
+                int i = 1;
+                stmt.setInt(i++, e.getId());
+                stmt.setString(i++, e.getEventUei());
+                setInteger(stmt, i++, e.getNode() == null ? null : e.getNode().getId());
+                setTimestamp(stmt, i++, e.getEventTime());
+                stmt.setString(i++, e.getEventHost());
+                stmt.setString(i++, e.getEventSource());
+                stmt.setString(i++, e.getIpAddr() == null ? null : InetAddressUtils.str(e.getIpAddr()));
+                stmt.setString(i++, e.getDistPoller() == null ? null : e.getDistPoller().getId());
+                stmt.setString(i++, e.getEventSnmpHost());
+                setInteger(stmt, i++, e.getServiceType() == null ? null : e.getServiceType().getId());
+                stmt.setString(i++, e.getEventSnmp());
+                setTimestamp(stmt, i++, e.getEventCreateTime());
+                stmt.setString(i++, e.getEventDescr());
+                stmt.setString(i++, e.getEventLogGroup());
+                stmt.setString(i++, e.getEventLogMsg());
+                setInteger(stmt, i++, e.getEventSeverity());
+                stmt.setString(i++, e.getEventPathOutage());
+                stmt.setString(i++, e.getEventCorrelation());
+                setInteger(stmt, i++, e.getEventSuppressedCount());
+                stmt.setString(i++, e.getEventOperInstruct());
+                stmt.setString(i++, e.getEventAutoAction());
+                stmt.setString(i++, e.getEventOperAction());
+                stmt.setString(i++, e.getEventOperActionMenuText());
+                stmt.setString(i++, e.getEventNotification());
+                stmt.setString(i++, e.getEventTTicket());
+                setInteger(stmt, i++, e.getEventTTicketState());
+                stmt.setString(i++, e.getEventForward());
+                stmt.setString(i++, e.getEventMouseOverText());
+                stmt.setString(i++, e.getEventLog());
+                stmt.setString(i++, e.getEventDisplay());
+                setInteger(stmt, i++, e.getIfIndex());
+                stmt.setString(i++, e.getEventAckUser());
+                setTimestamp(stmt, i++, e.getEventAckTime());
+                setInteger(stmt, i++, e.getAlarm() == null ? null : e.getAlarm().getId());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    private static void insertParameters(final Connection connection, final Collection<OnmsEvent> events) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(INSERT_PARAMETER)) {
+            boolean empty = true;
+            for (final OnmsEvent e : events) {
+                final List<OnmsEventParameter> parameters = e.getEventParameters();
+                if (parameters == null) {
+                    continue;
+                }
+                // The parameters are sorted by position, which is their index
+                for (int position = 0; position < parameters.size(); position++) {
+                    final OnmsEventParameter parameter = parameters.get(position);
+                    stmt.setInt(1, e.getId());
+                    stmt.setString(2, parameter.getName());
+                    stmt.setString(3, parameter.getValue());
+                    stmt.setString(4, parameter.getType());
+                    stmt.setInt(5, position);
+                    stmt.addBatch();
+                    empty = false;
+                }
+            }
+            if (!empty) {
+                stmt.executeBatch();
+            }
+        }
+    }
+
+    private static void setInteger(final PreparedStatement stmt, final int index, final Integer value) throws SQLException {
+        if (value == null) {
+            stmt.setNull(index, Types.INTEGER);
+        } else {
+            stmt.setInt(index, value);
+        }
+    }
+
+    private static void setTimestamp(final PreparedStatement stmt, final int index, final Date value) throws SQLException {
+        if (value == null) {
+            stmt.setNull(index, Types.TIMESTAMP);
+        } else {
+            stmt.setTimestamp(index, new Timestamp(value.getTime()));
+        }
+    }
 }
@@ -35,6 +35,8 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.SortedSet;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.TreeSet;
@@ -62,6 +64,7 @@ import org.springframework.transaction.support.TransactionOperations;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.google.common.collect.ComparisonChain;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimaps;
@@ -306,15 +309,32 @@ public class InterfaceToNodeCacheDaoImpl extends AbstractInterfaceToNodeCache im
      * @return The node ID of the IP Address if known.
      */
     @Override
-    public synchronized Iterable<Integer> getNodeId(final String location, final InetAddress address) {
+    public Iterable<Integer> getNodeId(final String location, final InetAddress address) {
         if (address == null) {
             return Collections.emptySet();
         }
 
+        // The read lock is sufficient here, lookups must not block each other.
+        // The result is copied as the set of values must not be iterated without the lock.
         m_lock.readLock().lock();
         try {
-            return Iterables.transform(m_managedAddresses.get(new Key(location, address)),
-                    Value::getNodeId);
+            return ImmutableList.copyOf(Iterables.transform(m_managedAddresses.get(new Key(location, address)),
+                    Value::getNodeId));
+        } finally {
+            m_lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<Integer> getFirstNodeId(final String location, final InetAddress address) {
+        if (address == null) {
+            return Optional.empty();
+        }
+
+        m_lock.readLock().lock();
+        try {
+            final SortedSet<Value> values = m_managedAddresses.get(new Key(location, address));
+            return values.isEmpty() ? Optional.empty() : Optional.of(values.first().getNodeId());
         } finally {
             m_lock.readLock().unlock();
         }
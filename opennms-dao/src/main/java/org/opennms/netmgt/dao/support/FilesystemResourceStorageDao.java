@@ -147,7 +147,10 @@ public class FilesystemResourceStorageDao implements ResourceStorageDao, Initial
 
     @Override
     public boolean delete(ResourcePath path) {
-        return FileUtils.deleteQuietly(toPath(path).toFile());
+        final File file = toPath(path).toFile();
+        final boolean deleted = FileUtils.deleteQuietly(file);
+        m_rrdStrategy.filesDeleted(file.getAbsolutePath());
+        return deleted;
     }
 
     private boolean exists(Path root, int depth) {
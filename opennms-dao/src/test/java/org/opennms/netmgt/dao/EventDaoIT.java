@@ -29,9 +29,11 @@
 package org.opennms.netmgt.dao;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
@@ -41,6 +43,7 @@ import org.opennms.core.spring.BeanUtils;
 import org.opennms.core.test.OpenNMSJUnit4ClassRunner;
 import org.opennms.core.test.db.annotations.JUnitTemporaryDatabase;
 import org.opennms.core.xml.JaxbUtils;
+import org.opennms.netmgt.dao.api.AlarmDao;
 import org.opennms.netmgt.dao.api.DistPollerDao;
 import org.opennms.netmgt.dao.api.EventDao;
 import org.opennms.netmgt.dao.api.NodeDao;
@@ -72,6 +75,9 @@ import com.google.common.collect.Lists;
 @JUnitConfigurationEnvironment
 @JUnitTemporaryDatabase
 public class EventDaoIT implements InitializingBean {
+    @Autowired
+    private AlarmDao m_alarmDao;
+
     @Autowired
     private DistPollerDao m_distPollerDao;
     
@@ -145,6 +151,124 @@ public class EventDaoIT implements InitializingBean {
         System.err.println(JaxbUtils.marshal(event));
     }
 
+    @Test
+    @Transactional
+    public void testSaveAllMatchesSave() {
+        final OnmsEvent saved = createEventWithAllColumns("uei://org/opennms/test/EventDaoTest/save");
+        final OnmsEvent first = createEventWithAllColumns("uei://org/opennms/test/EventDaoTest/saveAll");
+        final OnmsEvent second = createEventWithAllColumns("uei://org/opennms/test/EventDaoTest/saveAll");
+        second.setEventParameters(new ArrayList<>());
+
+        m_eventDao.save(saved);
+        m_eventDao.saveAll(Arrays.asList(first, second));
+        assertNotNull(first.getId());
+        assertNotNull(second.getId());
+        assertNotEquals(first.getId(), second.getId());
+        assertNotEquals(saved.getId(), first.getId());
+
+        // Load all events from the database
+        m_eventDao.flush();
+        m_eventDao.clear();
+        final OnmsEvent expected = m_eventDao.get(saved.getId());
+        assertSameColumns(expected, m_eventDao.get(first.getId()));
+        assertEquals(0, m_eventDao.get(second.getId()).getEventParameters().size());
+
+        // Events written with saveAll() are assigned the next ids of the same sequence
+        final OnmsEvent third = createEventWithAllColumns("uei://org/opennms/test/EventDaoTest/save");
+        m_eventDao.save(third);
+        assertNotEquals(first.getId(), third.getId());
+        assertNotEquals(second.getId(), third.getId());
+    }
+
+    private OnmsEvent createEventWithAllColumns(String uei) {
+        final OnmsNode node = m_nodeDao.findAll().iterator().next();
+        final OnmsIpInterface iface = node.getIpInterfaces().iterator().next();
+        final OnmsMonitoredService service = iface.getMonitoredServices().iterator().next();
+        final OnmsEvent event = new OnmsEvent();
+        event.setEventUei(uei);
+        event.setNode(node);
+        event.setEventTime(new Date(1000000000000L));
+        event.setEventHost("localhost");
+        event.setEventSource("EventDaoTest");
+        event.setIpAddr(iface.getIpAddress());
+        event.setDistPoller(m_distPollerDao.whoami());
+        event.setEventSnmpHost("snmp host");
+        event.setServiceType(service.getServiceType());
+        event.setEventSnmp(".1.3.6.1.4.1.5813,text,6,1");
+        event.setEventCreateTime(new Date(1000000001000L));
+        event.setEventDescr("event dao test");
+        event.setEventLogGroup("event dao test log group");
+        event.setEventLogMsg("event dao test log msg");
+        event.setEventSeverity(OnmsSeverity.CRITICAL.getId());
+        event.setEventPathOutage("path outage");
+        event.setEventCorrelation("correlation");
+        event.setEventSuppressedCount(3);
+        event.setEventOperInstruct("oper instruct");
+        event.setEventAutoAction("auto action");
+        event.setEventOperAction("oper action");
+        event.setEventOperActionMenuText("oper action menu text");
+        event.setEventNotification("notification");
+        event.setEventTTicket("ticket");
+        event.setEventTTicketState(1);
+        event.setEventForward("forward");
+        event.setEventMouseOverText("mouse over text");
+        event.setEventLog("Y");
+        event.setEventDisplay("Y");
+        event.setIfIndex(42);
+        event.setEventAckUser("admin");
+        event.setEventAckTime(new Date(1000000002000L));
+        event.setAlarm(m_alarmDao.findAll().iterator().next());
+        event.setEventParameters(Lists.newArrayList(
+                new OnmsEventParameter(event, "label", "node", "string"),
+                new OnmsEventParameter(event, "value", "4.7", "string"),
+                new OnmsEventParameter(event, "trigger", "2", "string")));
+        return event;
+    }
+
+    private static void assertSameColumns(OnmsEvent expected, OnmsEvent actual) {
+        assertEquals(expected.getNode().getId(), actual.getNode().getId());
+        assertEquals(expected.getEventTime().getTime(), actual.getEventTime().getTime());
+        assertEquals(expected.getEventHost(), actual.getEventHost());
+        assertEquals(expected.getEventSource(), actual.getEventSource());
+        assertEquals(expected.getIpAddr(), actual.getIpAddr());
+        assertEquals(expected.getDistPoller().getId(), actual.getDistPoller().getId());
+        assertEquals(expected.getEventSnmpHost(), actual.getEventSnmpHost());
+        assertEquals(expected.getServiceType().getId(), actual.getServiceType().getId());
+        assertEquals(expected.getEventSnmp(), actual.getEventSnmp());
+        assertEquals(expected.getEventCreateTime().getTime(), actual.getEventCreateTime().getTime());
+        assertEquals(expected.getEventDescr(), actual.getEventDescr());
+        assertEquals(expected.getEventLogGroup(), actual.getEventLogGroup());
+        assertEquals(expected.getEventLogMsg(), actual.getEventLogMsg());
+        assertEquals(expected.getEventSeverity(), actual.getEventSeverity());
+        assertEquals(expected.getEventPathOutage(), actual.getEventPathOutage());
+        assertEquals(expected.getEventCorrelation(), actual.getEventCorrelation());
+        assertEquals(expected.getEventSuppressedCount(), actual.getEventSuppressedCount());
+        assertEquals(expected.getEventOperInstruct(), actual.getEventOperInstruct());
+        assertEquals(expected.getEventAutoAction(), actual.getEventAutoAction());
+        assertEquals(expected.getEventOperAction(), actual.getEventOperAction());
+        assertEquals(expected.getEventOperActionMenuText(), actual.getEventOperActionMenuText());
+        assertEquals(expected.getEventNotification(), actual.getEventNotification());
+        assertEquals(expected.getEventTTicket(), actual.getEventTTicket());
+        assertEquals(expected.getEventTTicketState(), actual.getEventTTicketState());
+        assertEquals(expected.getEventForward(), actual.getEventForward());
+        assertEquals(expected.getEventMouseOverText(), actual.getEventMouseOverText());
+        assertEquals(expected.getEventLog(), actual.getEventLog());
+        assertEquals(expected.getEventDisplay(), actual.getEventDisplay());
+        assertEquals(expected.getIfIndex(), actual.getIfIndex());
+        assertEquals(expected.getEventAckUser(), actual.getEventAckUser());
+        assertEquals(expected.getEventAckTime().getTime(), actual.getEventAckTime().getTime());
+        assertEquals(expected.getAlarm().getId(), actual.getAlarm().getId());
+
+        assertEquals(expected.getEventParameters().size(), actual.getEventParameters().size());
+        for (int i = 0; i < expected.getEventParameters().size(); i++) {
+            final OnmsEventParameter expectedParameter = expected.getEventParameters().get(i);
+            final OnmsEventParameter actualParameter = actual.getEventParameters().get(i);
+            assertEquals(expectedParameter.getName(), actualParameter.getName());
+            assertEquals(expectedParameter.getValue(), actualParameter.getValue());
+            assertEquals(expectedParameter.getType(), actualParameter.getType());
+        }
+    }
+
     @Test
     @Transactional
     public void testGetEventsAfterDate() {
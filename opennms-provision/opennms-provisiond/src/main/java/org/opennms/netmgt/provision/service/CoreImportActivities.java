@@ -29,6 +29,8 @@
 package org.opennms.netmgt.provision.service;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import org.opennms.core.tasks.BatchTask;
@@ -46,9 +48,12 @@ import org.opennms.netmgt.provision.service.lifecycle.annotations.Activity;
 import org.opennms.netmgt.provision.service.lifecycle.annotations.ActivityProvider;
 import org.opennms.netmgt.provision.service.operations.ImportOperation;
 import org.opennms.netmgt.provision.service.operations.ImportOperationsManager;
+import org.opennms.netmgt.provision.service.operations.ProvisionMonitor;
 import org.opennms.netmgt.provision.service.operations.RequisitionImport;
 import org.springframework.core.io.Resource;
 
+import com.google.common.collect.Lists;
+
 /**
  * CoreImportActivities
  *
@@ -58,7 +63,9 @@ import org.springframework.core.io.Resource;
 @ActivityProvider
 public class CoreImportActivities {
     private static final Logger LOG = LoggerFactory.getLogger(CoreImportActivities.class);
-    
+
+    private static final String IMPORT_BATCH_SIZE = "org.opennms.provisiond.importBatchSize";
+
     private final ProvisionService m_provisionService;
     
     public CoreImportActivities(final ProvisionService provisionService) {
@@ -66,23 +73,26 @@ public class CoreImportActivities {
     }
 
     @Activity( lifecycle = "import", phase = "validate", schedulingHint="import")
-    public RequisitionImport loadSpecFile(final Resource resource) {
+    public RequisitionImport loadSpecFile(final Resource resource, final ProvisionMonitor monitor) {
         final RequisitionImport ri = new RequisitionImport();
 
         info("Loading requisition from resource {}", resource);
+        monitor.beginLoadingResource(resource);
         try {
             final Requisition specFile = m_provisionService.loadRequisition(resource);
             ri.setRequisition(specFile);
             debug("Finished loading requisition.");
         } catch (final Throwable t) {
             ri.abort(t);
+        } finally {
+            monitor.finishLoadingResource(resource);
         }
 
         return ri;
     }
     
     @Activity( lifecycle = "import", phase = "audit", schedulingHint="import" )
-    public ImportOperationsManager auditNodes(final RequisitionImport ri, final String rescanExisting) {
+    public ImportOperationsManager auditNodes(final RequisitionImport ri, final String rescanExisting, final ProvisionMonitor monitor) {
         if (ri.isAborted()) {
             info("The import has been aborted, skipping audit phase import.");
             return null;
@@ -91,6 +101,7 @@ public class CoreImportActivities {
         final Requisition specFile = ri.getRequisition();
 
         info("Auditing nodes for requisition {}. The parameter {} was set to {} during import.", specFile, EventConstants.PARM_IMPORT_RESCAN_EXISTING, rescanExisting);
+        monitor.beginAuditNodes();
 
         final String foreignSource = specFile.getForeignSource();
         final Map<String, Integer> foreignIdsToNodes = m_provisionService.getForeignIdToNodeIdMap(foreignSource);
@@ -100,19 +111,21 @@ public class CoreImportActivities {
         opsMgr.setForeignSource(foreignSource);
         opsMgr.auditNodes(specFile);
 
+        monitor.finishAuditNodes();
         debug("Finished auditing nodes.");
         
         return opsMgr;
     }
     
     @Activity( lifecycle = "import", phase = "scan", schedulingHint="import" )
-    public static void scanNodes(final Phase currentPhase, final ImportOperationsManager opsMgr, final RequisitionImport ri, final String rescanExisting) {
+    public static void scanNodes(final Phase currentPhase, final ImportOperationsManager opsMgr, final RequisitionImport ri, final String rescanExisting, final ProvisionMonitor monitor) {
         if (ri.isAborted()) {
             info("The import has been aborted, skipping scan phase import.");
             return;
         }
 
         info("Scheduling nodes for phase {}", currentPhase);
+        monitor.beginPreprocessingOps();
         
         final Collection<ImportOperation> operations = opsMgr.getOperations();
         
@@ -124,6 +137,7 @@ public class CoreImportActivities {
             nodeScan.setAttribute("operation", op);
             nodeScan.setAttribute("requisitionImport", ri);
             nodeScan.setAttribute("rescanExisting", rescanExisting);
+            nodeScan.setAttribute("monitor", monitor);
             nodeScan.trigger();
         }
 
@@ -132,7 +146,7 @@ public class CoreImportActivities {
     
     
     @Activity( lifecycle = "nodeImport", phase = "scan", schedulingHint="import" )
-    public static void scanNode(final ImportOperation operation, final RequisitionImport ri, final String rescanExisting) {
+    public static void scanNode(final ImportOperation operation, final RequisitionImport ri, final String rescanExisting, final ProvisionMonitor monitor) {
         if (ri.isAborted()) {
             info("The import has been aborted, skipping scan phase nodeImport.");
             return;
@@ -140,35 +154,106 @@ public class CoreImportActivities {
 
         if (rescanExisting == null || Boolean.valueOf(rescanExisting)) {
             info("Running scan phase of {}, the parameter {} was set to {} during import.", operation, EventConstants.PARM_IMPORT_RESCAN_EXISTING, rescanExisting);
-            operation.scan();
+            monitor.beginPreprocessing(operation);
+            try {
+                operation.scan();
+            } finally {
+                monitor.finishPreprocessing(operation);
+            }
     
             info("Finished Running scan phase of {}", operation);
         } else {
             info("Skipping scan phase of {}, because the parameter {} was set to {} during import.", operation, EventConstants.PARM_IMPORT_RESCAN_EXISTING, rescanExisting);
         }
     }
-    
-    @Activity( lifecycle = "nodeImport", phase = "persist" , schedulingHint = "import" )
-    public static void persistNode(final ImportOperation operation, final RequisitionImport ri) {
+
+    @Activity( lifecycle = "import", phase = "delete", schedulingHint = "import" )
+    public void deleteNodes(final BatchTask currentPhase, final ImportOperationsManager opsMgr, final RequisitionImport ri, final ProvisionMonitor monitor) {
+        if (ri.isAborted()) {
+            info("The import has been aborted, skipping delete phase.");
+            return;
+        }
+
+        monitor.finishPreprocessingOps();
+        monitor.beginProcessingOps(opsMgr.getDeleteCount(), opsMgr.getUpdateCount(), opsMgr.getInsertCount());
+        persistNodes(currentPhase, opsMgr, opsMgr.getDeleteOperations());
+    }
+
+    @Activity( lifecycle = "import", phase = "update", schedulingHint = "import" )
+    public void updateNodes(final BatchTask currentPhase, final ImportOperationsManager opsMgr, final RequisitionImport ri) {
+        if (ri.isAborted()) {
+            info("The import has been aborted, skipping update phase.");
+            return;
+        }
+
+        persistNodes(currentPhase, opsMgr, opsMgr.getUpdateOperations());
+    }
+
+    @Activity( lifecycle = "import", phase = "insert", schedulingHint = "import" )
+    public void insertNodes(final BatchTask currentPhase, final ImportOperationsManager opsMgr, final RequisitionImport ri) {
         if (ri.isAborted()) {
-            info("The import has been aborted, skipping persist phase.");
+            info("The import has been aborted, skipping insert phase.");
             return;
         }
 
-        info("Running persist phase of {}", operation);
-        operation.persist();
-        info("Finished Running persist phase of {}", operation);
+        persistNodes(currentPhase, opsMgr, opsMgr.getInsertOperations());
+    }
+
+    /**
+     * Persists the operations in batches, each of them in a single transaction. The batches
+     * are persisted in parallel using the write executor.
+     */
+    private void persistNodes(final BatchTask currentPhase, final ImportOperationsManager opsMgr, final List<ImportOperation> operations) {
+        final int batchSize = Math.max(1, Integer.getInteger(IMPORT_BATCH_SIZE, 100));
+        for (final List<ImportOperation> batch : Lists.partition(operations, batchSize)) {
+            currentPhase.add(persister(m_provisionService, opsMgr, batch), "write");
+        }
+    }
+
+    /**
+     * The events of the nodes are only sent once their batch is committed. If the batch
+     * is rolled back, the identifiers it assigned are cleared and each operation is
+     * persisted, and its events sent, in a transaction of its own.
+     */
+    static Runnable persister(final ProvisionService provisionService, final ImportOperationsManager opsMgr, final List<ImportOperation> batch) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                info("Running persist phase of {} operations starting with {}", batch.size(), batch.get(0));
+                try {
+                    provisionService.persistOperations(batch);
+                } catch (final Throwable t) {
+                    // Persist the operations one by one, so a single broken node does not affect the others
+                    warn("Failed to persist {} operations starting with {}, persisting them one by one.", batch.size(), batch.get(0), t);
+                    for (final ImportOperation operation : batch) {
+                        operation.rollback();
+                        try {
+                            provisionService.persistOperations(Collections.singletonList(operation));
+                        } catch (final Throwable e) {
+                            LOG.error("Failed to persist {}", operation, e);
+                        }
+                    }
+                }
+                info("Finished persisting {} of {} operations for foreign source {}", opsMgr.persisted(batch.size()), opsMgr.getOperationCount(), opsMgr.getForeignSource());
+            }
 
+            @Override
+            public String toString() {
+                return "persist " + batch.size() + " operations starting with " + batch.get(0);
+            }
+        };
     }
     
     @Activity( lifecycle = "import", phase = "relate" , schedulingHint = "import" )
-    public void relateNodes(final BatchTask currentPhase, final RequisitionImport ri) {
+    public void relateNodes(final BatchTask currentPhase, final RequisitionImport ri, final ProvisionMonitor monitor) {
         if (ri.isAborted()) {
             info("The import has been aborted, skipping relate phase.");
             return;
         }
 
+        monitor.finishProcessingOps();
         info("Running relate phase");
+        monitor.beginRelateNodes();
         
         final Requisition requisition = ri.getRequisition();
         RequisitionVisitor visitor = new AbstractRequisitionVisitor() {
@@ -98,6 +98,7 @@ import org.opennms.netmgt.provision.persist.requisition.RequisitionCategory;
 import org.opennms.netmgt.provision.persist.requisition.RequisitionInterface;
 import org.opennms.netmgt.provision.persist.requisition.RequisitionInterfaceCollection;
 import org.opennms.netmgt.provision.persist.requisition.RequisitionNode;
+import org.opennms.netmgt.provision.service.operations.ImportOperation;
 import org.opennms.netmgt.snmp.SnmpProfileMapper;
 import org.opennms.netmgt.snmp.proxy.LocationAwareSnmpClient;
 import org.slf4j.Logger;
@@ -108,7 +109,10 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.Assert;
 
 import com.google.common.base.Strings;
@@ -200,6 +204,8 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
 
     private final ThreadLocal<Map<String, OnmsServiceType>> m_typeCache = new ThreadLocal<Map<String, OnmsServiceType>>();
     private final ThreadLocal<Map<String, OnmsCategory>> m_categoryCache = new ThreadLocal<Map<String, OnmsCategory>>();
+    // Collects the node events of the batch persisted by persistOperations() on this thread
+    private final ThreadLocal<EventAccumulator> m_batchEvents = new ThreadLocal<EventAccumulator>();
 
     @Override
     public void afterPropertiesSet() throws Exception {
@@ -234,7 +240,7 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
         m_nodeDao.save(node);
         m_nodeDao.flush();
 
-        final EntityVisitor visitor = new AddEventVisitor(m_eventForwarder);
+        final EntityVisitor visitor = new AddEventVisitor(getNodeEventForwarder());
         node.visit(visitor);
     }
 
@@ -250,7 +256,7 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
         // on an update, leave categories alone, let the NodeScan handle applying requisitioned categories
         node.setCategories(dbNode.getCategories());
 
-        final EventAccumulator accumulator = new EventAccumulator(m_eventForwarder);
+        final EventAccumulator accumulator = new EventAccumulator(getNodeEventForwarder());
         dbNode.mergeNode(node, accumulator, false);
 
         updateNodeHostname(dbNode);
@@ -261,10 +267,36 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
             accumulator.sendNow(EventUtils.createNodeLocationChangedEvent(PROVISIOND, dbNode.getId(), dbNode.getLabel(), prevLocation, currentLocation));
         }
         accumulator.flush();
-        final EntityVisitor eventAccumlator = new UpdateEventVisitor(m_eventForwarder, rescanExisting);
+        final EntityVisitor eventAccumlator = new UpdateEventVisitor(getNodeEventForwarder(), rescanExisting);
         dbNode.visit(eventAccumlator);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void persistOperations(final Collection<? extends ImportOperation> operations) {
+        final EventAccumulator accumulator = new EventAccumulator(m_eventForwarder);
+        new TransactionTemplate(m_transactionManager).execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                m_batchEvents.set(accumulator);
+                try {
+                    for (final ImportOperation operation : operations) {
+                        operation.persist();
+                    }
+                } finally {
+                    m_batchEvents.remove();
+                }
+            }
+        });
+        // The batch has been committed, the events of a rolled back batch are dropped with the accumulator
+        accumulator.flush();
+    }
+
+    private EventForwarder getNodeEventForwarder() {
+        final EventAccumulator batchEvents = m_batchEvents.get();
+        return batchEvents != null ? batchEvents : m_eventForwarder;
+    }
+
     private void updateNodeHostname(final OnmsNode node) {
         if (NodeLabelSource.HOSTNAME.equals(node.getLabelSource()) || NodeLabelSource.ADDRESS.equals(node.getLabelSource())) {
             OnmsIpInterface primary = node.getPrimaryInterface();
@@ -315,7 +347,7 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
 
         final OnmsNode node = m_nodeDao.get(nodeId);
         if (node != null) {
-            final DeleteEventVisitor visitor = new DeleteEventVisitor(m_eventForwarder);
+            final DeleteEventVisitor visitor = new DeleteEventVisitor(getNodeEventForwarder());
 
             m_nodeDao.delete(node);
             m_nodeDao.flush();
@@ -1453,4 +1485,8 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
     public void setEventForwarder(final EventForwarder eventForwarder) {
         m_eventForwarder = eventForwarder;
     }
+
+    public void setTransactionManager(final PlatformTransactionManager transactionManager) {
+        m_transactionManager = transactionManager;
+    }
 }
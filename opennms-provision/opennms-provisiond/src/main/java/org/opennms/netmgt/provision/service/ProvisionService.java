@@ -29,6 +29,7 @@
 package org.opennms.netmgt.provision.service;
 
 import java.net.InetAddress;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -48,6 +49,7 @@ import org.opennms.netmgt.provision.SnmpInterfacePolicy;
 import org.opennms.netmgt.provision.persist.ForeignSourceRepository;
 import org.opennms.netmgt.provision.persist.foreignsource.PluginConfig;
 import org.opennms.netmgt.provision.persist.requisition.Requisition;
+import org.opennms.netmgt.provision.service.operations.ImportOperation;
 import org.opennms.netmgt.snmp.SnmpProfileMapper;
 import org.opennms.netmgt.snmp.proxy.LocationAwareSnmpClient;
 import org.springframework.core.io.Resource;
@@ -99,6 +101,17 @@ public interface ProvisionService {
      */
     @Transactional
     void updateNode(OnmsNode node, String rescanExisting);
+
+    /**
+     * Persists the given import operations within a single transaction. If
+     * any of the operations fails, none of them is persisted. The events of
+     * the persisted nodes are only sent once the transaction is committed,
+     * none are sent if it is rolled back.
+     *
+     * @param operations
+     *            The operations to persist
+     */
+    void persistOperations(Collection<? extends ImportOperation> operations);
     
     @Transactional
     OnmsNode updateNodeAttributes(OnmsNode node);
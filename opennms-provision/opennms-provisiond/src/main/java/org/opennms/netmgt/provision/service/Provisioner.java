@@ -46,7 +46,9 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.joda.time.Duration;
 import org.opennms.core.spring.BeanUtils;
 import org.opennms.core.tasks.Task;
 import org.opennms.core.tasks.TaskCoordinator;
@@ -92,6 +94,7 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
 public class Provisioner implements SpringServiceDaemon {
     private static final String SCHEDULE_RESCAN_FOR_UPDATED_NODES = "org.opennms.provisiond.scheduleRescanForUpdatedNodes";
     private static final String SCHEDULE_RESCAN_FOR_EXISTING_NODES = "org.opennms.provisiond.scheduleRescanForExistingNodes";
+    private static final String MAX_NODE_SCAN_RATE = "org.opennms.provisiond.maxNodeScanRate";
 
     private static final Logger LOG = LoggerFactory.getLogger(Provisioner.class);
     
@@ -110,6 +113,10 @@ public class Provisioner implements SpringServiceDaemon {
     
     private volatile TimeTrackingMonitor m_stats;
 
+    // Milliseconds between the starts of node scans which are due, zero if unlimited
+    private final long m_nodeScanSpacing = getNodeScanSpacing();
+    private final AtomicLong m_nextNodeScanStart = new AtomicLong();
+
     private final ThreadFactory newSuspectThreadFactory = new ThreadFactoryBuilder()
             .setNameFormat("newSuspectExecutor")
             .build();
@@ -342,7 +349,31 @@ public class Provisioner implements SpringServiceDaemon {
     private ScheduledFuture<?> scheduleNodeScan(NodeScanSchedule schedule) {
         NodeScan nodeScan = createNodeScan(schedule.getNodeId(), schedule.getForeignSource(), schedule.getForeignId(), schedule.getLocation());
         LOG.warn("nodeScan = {}", nodeScan);
-        return nodeScan.schedule(m_scheduledExecutor, schedule);
+        return nodeScan.schedule(m_scheduledExecutor, limitNodeScanRate(schedule));
+    }
+
+    /**
+     * Delays the scans which are due, such as the scans of the nodes of a large import,
+     * so that they start one after another at the configured rate. As the scans are
+     * rescheduled with a fixed delay, their rescans keep being spread. Scans scheduled
+     * for later were already spread by the time of their last scan and are left as is.
+     */
+    private NodeScanSchedule limitNodeScanRate(final NodeScanSchedule schedule) {
+        if (m_nodeScanSpacing == 0 || schedule.getInitialDelay().getMillis() > 0) {
+            return schedule;
+        }
+        final long now = System.currentTimeMillis();
+        final long start = m_nextNodeScanStart.accumulateAndGet(now, (next, n) -> Math.max(next, n) + m_nodeScanSpacing) - m_nodeScanSpacing;
+        if (start == now) {
+            return schedule;
+        }
+        return new NodeScanSchedule(schedule.getNodeId(), schedule.getForeignSource(), schedule.getForeignId(), schedule.getLocation(),
+                Duration.millis(start - now), schedule.getScanInterval());
+    }
+
+    private static long getNodeScanSpacing() {
+        final double maxNodeScanRate = Double.parseDouble(System.getProperty(MAX_NODE_SCAN_RATE, "0"));
+        return maxNodeScanRate > 0 ? Math.round(1000 / maxNodeScanRate) : 0;
     }
 
     /**
@@ -441,8 +472,12 @@ public class Provisioner implements SpringServiceDaemon {
         final LifeCycleInstance doImport = m_lifeCycleRepository.createLifeCycleInstance("import", m_importActivities);
         doImport.setAttribute("resource", resource);
         doImport.setAttribute("rescanExisting", rescanExisting);
+        doImport.setAttribute("monitor", monitor);
+        monitor.beginImporting();
         doImport.trigger();
         doImport.waitFor();
+        monitor.finishRelateNodes();
+        monitor.finishImporting();
         final RequisitionImport ri = doImport.findAttributeByType(RequisitionImport.class);
         if (ri.isAborted()) {
             throw new ModelImportException("Import failed for resource " + resource.toString(), ri.getError());
@@ -209,7 +209,11 @@ public class TimeTrackingMonitor implements ProvisionMonitor {
 		stats.append(m_loadingDuration).append(", ");
 		stats.append(m_auditDuration).append('\n');
 		stats.append(m_preprocessingDuration).append(", ");
-		stats.append(m_processingDuration).append(", ");
+		stats.append(m_processingDuration);
+		if (m_processingDuration.getLength() > 0) {
+			stats.append(" (").append((m_deleteCount + m_updateCount + m_insertCount) * 1000L / m_processingDuration.getLength()).append(" nodes per second)");
+		}
+		stats.append(", ");
 		stats.append(m_relateDuration).append("\n");
 		stats.append(m_preprocessingEffort).append(", ");
 		stats.append(m_processingEffort).append(", ");
@@ -67,6 +67,16 @@ public abstract class ImportOperation {
     protected abstract void doPersist();
 
 
+    /**
+     * <p>rollback</p>
+     *
+     * Called after the transaction persisting this operation has been rolled
+     * back, so the operation can be persisted again.
+     */
+    public void rollback() {
+        // nothing to reset by default
+    }
+
     /**
      * <p>persist</p>
      */
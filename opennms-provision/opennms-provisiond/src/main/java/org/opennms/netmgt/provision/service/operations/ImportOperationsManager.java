@@ -41,6 +41,7 @@ import java.util.Map.Entry;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.provision.persist.requisition.Requisition;
@@ -69,6 +70,7 @@ public class ImportOperationsManager {
     
     private final ProvisionService m_provisionService;
     private final Map<String, Integer> m_foreignIdToNodeMap;
+    private final AtomicInteger m_persistedCount = new AtomicInteger();
     private String m_rescanExisting;
     
     private String m_foreignSource;
@@ -270,6 +272,45 @@ public class ImportOperationsManager {
     public Collection<ImportOperation> getOperations() {
         return Collections.list(new OperationIterator());
     }
+
+    /**
+     * <p>getDeleteOperations</p>
+     *
+     * @return the operations deleting the nodes which are no longer part of the requisition
+     */
+    public List<ImportOperation> getDeleteOperations() {
+        final List<ImportOperation> deletes = new ArrayList<>(m_foreignIdToNodeMap.size());
+        new DeleteIterator().forEachRemaining(deletes::add);
+        return deletes;
+    }
+
+    /**
+     * <p>getUpdateOperations</p>
+     *
+     * @return the operations updating the nodes which are already part of the database
+     */
+    public List<ImportOperation> getUpdateOperations() {
+        return new ArrayList<>(m_updates);
+    }
+
+    /**
+     * <p>getInsertOperations</p>
+     *
+     * @return the operations inserting the nodes which are new to the requisition
+     */
+    public List<ImportOperation> getInsertOperations() {
+        return new ArrayList<>(m_inserts);
+    }
+
+    /**
+     * Records that the given number of operations has been persisted.
+     *
+     * @param count the number of operations persisted
+     * @return the total number of operations persisted so far
+     */
+    public int persisted(int count) {
+        return m_persistedCount.addAndGet(count);
+    }
     
     @SuppressWarnings("unused")
     private Runnable sequence(final Executor pool, final Runnable a, final Runnable b) {
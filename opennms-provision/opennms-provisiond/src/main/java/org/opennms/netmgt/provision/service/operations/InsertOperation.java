@@ -58,6 +58,13 @@ public class InsertOperation extends SaveOrUpdateOperation {
     }
 
     /** {@inheritDoc} */
+    @Override
+    public void rollback() {
+        super.rollback();
+        getNode().setId(null);
+        getNode().getAssetRecord().setId(null);
+    }
+
     @Override
     protected void doPersist() {
         getProvisionService().insertNode(getNode());
@@ -32,13 +32,16 @@ import java.net.InetAddress;
 
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.dao.api.MonitoringLocationDao;
+import org.opennms.netmgt.model.AbstractEntityVisitor;
 import org.opennms.netmgt.model.OnmsCategory;
+import org.opennms.netmgt.model.OnmsEntity;
 import org.opennms.netmgt.model.OnmsIpInterface;
 import org.opennms.netmgt.model.OnmsMonitoredService;
 import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.model.OnmsNode.NodeLabelSource;
 import org.opennms.netmgt.model.OnmsNode.NodeType;
 import org.opennms.netmgt.model.OnmsServiceType;
+import org.opennms.netmgt.model.OnmsSnmpInterface;
 import org.opennms.netmgt.model.PrimaryType;
 import org.opennms.netmgt.model.monitoringLocations.OnmsMonitoringLocation;
 import org.opennms.netmgt.provision.service.ProvisionService;
@@ -146,6 +149,30 @@ public abstract class SaveOrUpdateOperation extends ImportOperation {
         }
 	}
 
+    /**
+     * Clears the identifiers assigned to the interfaces and services of the
+     * node by the rolled back transaction, so they are inserted again.
+     */
+    @Override
+    public void rollback() {
+        m_node.visit(new AbstractEntityVisitor() {
+            @Override
+            public void visitIpInterface(final OnmsIpInterface iface) {
+                iface.setId(null);
+            }
+
+            @Override
+            public void visitMonitoredService(final OnmsMonitoredService monSvc) {
+                monSvc.setId(null);
+            }
+
+            @Override
+            public void visitSnmpInterface(final OnmsEntity snmpIface) {
+                ((OnmsSnmpInterface) snmpIface).setId(null);
+            }
+        });
+    }
+
     /**
      * <p>foundMonitoredService</p>
      *
@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.provision.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.dao.api.MonitoringLocationDao;
+import org.opennms.netmgt.dao.api.NodeDao;
+import org.opennms.netmgt.events.api.EventForwarder;
+import org.opennms.netmgt.model.OnmsIpInterface;
+import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.model.PrimaryType;
+import org.opennms.netmgt.model.monitoringLocations.OnmsMonitoringLocation;
+import org.opennms.netmgt.provision.service.operations.ImportOperation;
+import org.opennms.netmgt.provision.service.operations.ImportOperationsManager;
+import org.opennms.netmgt.provision.service.operations.InsertOperation;
+import org.opennms.netmgt.xml.event.Event;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+public class CoreImportActivitiesTest {
+    private final MonitoringLocationDao m_monitoringLocationDao = mock(MonitoringLocationDao.class);
+    private final NodeDao m_nodeDao = mock(NodeDao.class);
+    private final EventForwarder m_eventForwarder = mock(EventForwarder.class);
+
+    private final DefaultProvisionService m_provisionService = new DefaultProvisionService();
+
+    private final AtomicInteger m_nextId = new AtomicInteger(1);
+
+    // What happened to the database and the events, in order
+    private final List<String> m_log = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging();
+
+        final OnmsMonitoringLocation location = new OnmsMonitoringLocation(MonitoringLocationDao.DEFAULT_MONITORING_LOCATION_ID, MonitoringLocationDao.DEFAULT_MONITORING_LOCATION_ID);
+        when(m_monitoringLocationDao.get(MonitoringLocationDao.DEFAULT_MONITORING_LOCATION_ID)).thenReturn(location);
+
+        // Assigns identifiers like the database would, fails to save the nodes labeled "bad"
+        when(m_nodeDao.save(any(OnmsNode.class))).thenAnswer(invocation -> {
+            final OnmsNode node = (OnmsNode) invocation.getArguments()[0];
+            m_log.add("save " + node.getLabel() + " " + node.getId() + " " + node.getAssetRecord().getId() + " " + interfaceIds(node));
+            if ("bad".equals(node.getLabel())) {
+                throw new DataIntegrityViolationException("bad node");
+            }
+            node.setId(m_nextId.getAndIncrement());
+            node.getAssetRecord().setId(node.getId());
+            for (final OnmsIpInterface iface : node.getIpInterfaces()) {
+                iface.setId(m_nextId.getAndIncrement());
+            }
+            return node.getId();
+        });
+
+        doAnswer(invocation -> {
+            final Event event = (Event) invocation.getArguments()[0];
+            m_log.add("event " + event.getUei().substring(event.getUei().lastIndexOf('/') + 1) + " " + event.getNodeid());
+            return null;
+        }).when(m_eventForwarder).sendNow(any(Event.class));
+
+        m_provisionService.setMonitoringLocationDao(m_monitoringLocationDao);
+        m_provisionService.setNodeDao(m_nodeDao);
+        m_provisionService.setEventForwarder(m_eventForwarder);
+        m_provisionService.setHostnameResolver((addr, locationName) -> null);
+        m_provisionService.setTransactionManager(new LoggingTransactionManager());
+    }
+
+    @Test
+    public void canRetryBatchOneByOneAfterRollback() {
+        final InsertOperation node1 = insert("1", "node1");
+        node1.foundInterface("192.168.1.1", null, PrimaryType.NOT_ELIGIBLE, true, 1);
+        final InsertOperation bad = insert("2", "bad");
+        final InsertOperation node3 = insert("3", "node3");
+        final List<ImportOperation> batch = Arrays.asList(node1, bad, node3);
+
+        final ImportOperationsManager opsMgr = new ImportOperationsManager(Collections.emptyMap(), m_provisionService, Boolean.TRUE.toString());
+        opsMgr.setForeignSource("imported");
+        CoreImportActivities.persister(m_provisionService, opsMgr, batch).run();
+
+        assertEquals(Arrays.asList(
+                // The batch is rolled back, no events are sent for it
+                "begin",
+                "save node1 null null [null]",
+                "save bad null null []",
+                "rollback",
+                // The identifiers assigned by the batch are cleared before the nodes are persisted again
+                "begin",
+                "save node1 null null [null]",
+                "commit",
+                "event nodeAdded 3",
+                "event nodeGainedInterface 3",
+                "begin",
+                "save bad null null []",
+                "rollback",
+                "begin",
+                "save node3 null null []",
+                "commit",
+                "event nodeAdded 5"), m_log);
+        assertEquals(3, opsMgr.persisted(0));
+    }
+
+    private InsertOperation insert(final String foreignId, final String label) {
+        return new InsertOperation("imported", foreignId, label, null, null, null, m_provisionService);
+    }
+
+    private static List<Integer> interfaceIds(final OnmsNode node) {
+        final List<Integer> ids = new ArrayList<>();
+        for (final OnmsIpInterface iface : node.getIpInterfaces()) {
+            ids.add(iface.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Logs the transactions started, committed and rolled back. Nested transactions participate
+     * in the existing transaction, as with the real transaction managers.
+     */
+    private class LoggingTransactionManager extends AbstractPlatformTransactionManager {
+        private static final long serialVersionUID = 1L;
+
+        private boolean m_active = false;
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected boolean isExistingTransaction(final Object transaction) {
+            return m_active;
+        }
+
+        @Override
+        protected void doBegin(final Object transaction, final TransactionDefinition definition) {
+            m_active = true;
+            m_log.add("begin");
+        }
+
+        @Override
+        protected void doCommit(final DefaultTransactionStatus status) {
+            m_log.add("commit");
+        }
+
+        @Override
+        protected void doRollback(final DefaultTransactionStatus status) {
+            m_log.add("rollback");
+        }
+
+        @Override
+        protected void doSetRollbackOnly(final DefaultTransactionStatus status) {
+            // the outermost transaction rolls back anyway
+        }
+
+        @Override
+        protected void doCleanupAfterCompletion(final Object transaction) {
+            m_active = false;
+        }
+    }
+}
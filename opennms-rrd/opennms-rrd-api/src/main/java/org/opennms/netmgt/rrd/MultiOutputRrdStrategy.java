@@ -252,6 +252,14 @@ public class MultiOutputRrdStrategy implements RrdStrategy<List<Object>,List<Obj
         }
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void filesDeleted(String path) {
+        for (RrdStrategy<Object, Object> strategy : m_strategies) {
+            strategy.filesDeleted(path);
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     public void updateFile(List<Object> rrd, String owner, String data) throws Exception {
@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only file holding the updates spilled by the {@link QueuingRrdStrategy}
+ * once it holds too many operations in memory. Records are read back in the
+ * order they were written.
+ *
+ * Each file name is only written once, later records refer to it by number.
+ * The file is truncated whenever all records have been read, so it only grows
+ * while the queue is behind.
+ *
+ * The journal is not meant to survive a restart, whatever is left from a
+ * previous run is discarded when it is opened.
+ *
+ * This class is not thread safe, it is guarded by the lock of the strategy.
+ */
+class QueuingRrdJournal {
+
+    private static final byte FILE_NAME = 0;
+    private static final byte UPDATE = 1;
+    private static final byte ZERO_UPDATE = 2;
+
+    /**
+     * Receives the records read from the journal.
+     */
+    interface Visitor {
+        void update(String fileName, String data);
+
+        void zeroUpdate(String fileName, long timeStamp, long interval, int count);
+    }
+
+    private final File m_file;
+
+    private final Map<String, Integer> m_writtenFileNames = new HashMap<>();
+
+    private final List<String> m_readFileNames = new ArrayList<>();
+
+    private DataOutputStream m_out;
+
+    private DataInputStream m_in;
+
+    private long m_written = 0;
+
+    private long m_read = 0;
+
+    QueuingRrdJournal(final File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create journal directory " + directory);
+        }
+        m_file = new File(directory, "rrd-queue.journal");
+        reset();
+    }
+
+    File getFile() {
+        return m_file;
+    }
+
+    /**
+     * @return the number of bytes which have been written but not read yet
+     */
+    long size() {
+        return m_written - m_read;
+    }
+
+    boolean isEmpty() {
+        return m_written == m_read;
+    }
+
+    void writeUpdate(final String fileName, final String data) throws IOException {
+        final int id = writeFileName(fileName);
+        m_out.writeByte(UPDATE);
+        m_out.writeInt(id);
+        m_out.writeUTF(data);
+        m_written += 5 + utfLength(data);
+    }
+
+    void writeZeroUpdate(final String fileName, final long timeStamp, final long interval, final int count) throws IOException {
+        final int id = writeFileName(fileName);
+        m_out.writeByte(ZERO_UPDATE);
+        m_out.writeInt(id);
+        m_out.writeLong(timeStamp);
+        m_out.writeLong(interval);
+        m_out.writeInt(count);
+        m_written += 25;
+    }
+
+    private int writeFileName(final String fileName) throws IOException {
+        Integer id = m_writtenFileNames.get(fileName);
+        if (id == null) {
+            id = m_writtenFileNames.size();
+            m_writtenFileNames.put(fileName, id);
+            m_out.writeByte(FILE_NAME);
+            m_out.writeUTF(fileName);
+            m_written += 1 + utfLength(fileName);
+        }
+        return id;
+    }
+
+    /**
+     * Reads the next update from the journal.
+     *
+     * @return false if the journal is empty
+     */
+    boolean read(final Visitor visitor) throws IOException {
+        if (isEmpty()) {
+            return false;
+        }
+        m_out.flush();
+        if (m_in == null) {
+            m_in = new DataInputStream(new BufferedInputStream(new FileInputStream(m_file)));
+        }
+        byte type = m_in.readByte();
+        m_read++;
+        while (type == FILE_NAME) {
+            final String fileName = m_in.readUTF();
+            m_readFileNames.add(fileName);
+            m_read += utfLength(fileName);
+            type = m_in.readByte();
+            m_read++;
+        }
+        final String fileName = m_readFileNames.get(m_in.readInt());
+        m_read += 4;
+        if (type == UPDATE) {
+            final String data = m_in.readUTF();
+            m_read += utfLength(data);
+            visitor.update(fileName, data);
+        } else if (type == ZERO_UPDATE) {
+            final long timeStamp = m_in.readLong();
+            final long interval = m_in.readLong();
+            final int count = m_in.readInt();
+            m_read += 20;
+            visitor.zeroUpdate(fileName, timeStamp, interval, count);
+        } else {
+            throw new IOException("Corrupt journal " + m_file + ": unknown record type " + type);
+        }
+        if (isEmpty()) {
+            reset();
+        }
+        return true;
+    }
+
+    /**
+     * Number of bytes written by {@link DataOutputStream#writeUTF(String)}.
+     */
+    private static int utfLength(final String s) {
+        int length = 2;
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                length++;
+            } else if (c > 0x07FF) {
+                length += 3;
+            } else {
+                length += 2;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Discards all records and truncates the file.
+     */
+    void reset() throws IOException {
+        close();
+        m_writtenFileNames.clear();
+        m_readFileNames.clear();
+        m_written = 0;
+        m_read = 0;
+        m_out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(m_file, false)));
+    }
+
+    void close() throws IOException {
+        try {
+            if (m_in != null) {
+                m_in.close();
+            }
+        } finally {
+            m_in = null;
+            if (m_out != null) {
+                m_out.close();
+                m_out = null;
+            }
+        }
+    }
+}
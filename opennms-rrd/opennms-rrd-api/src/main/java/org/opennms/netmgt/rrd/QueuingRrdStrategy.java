@@ -69,6 +69,16 @@ import org.slf4j.LoggerFactory;
  * collected but will not be output to the rrd files until the next time the
  * file is processed by the write threads.
  *
+ * Files are handed to the write threads in the order they got pending work,
+ * so the file with the oldest pending update is written first.
+ *
+ * To bound the memory used by the queue, the updates of the files with the
+ * oldest pending work are spilled to a journal on disk once too many
+ * operations are held in memory. New updates for these files are appended to
+ * the journal as well, so the updates of a file stay in order. The journal is
+ * read back in order once the write threads have caught up, and the files read
+ * from it are written before any other file.
+ *
  * As another performance improving strategy. The queue distinguishes between
  * files with significant vs insignificant updates. Files with only insignificant
  * updates are put at the lowest priority and are only written when the highest
@@ -96,13 +106,18 @@ import org.slf4j.LoggerFactory;
  * org.opennms.rrd.queuing.category: (default "queued") the log routing prefix
  * to place the statistics output in
  *
+ * org.opennms.rrd.queuing.maxPendingOperations: (default 0) the number of
+ * operations held in memory before spilling updates to the journal, or
+ * discarding them if there is no journal. Zero means no limit.
+ *
+ * org.opennms.rrd.queuing.journalDirectory: (default none) the directory of the
+ * journal updates are spilled to
+ *
  *
  *
  * TODO: Promote files when ZeroUpdate operations can't be merged. This may be a
  * collection miss which we want to push thru. It should also help with memory.
  *
- * TODO: Set an upper bound on enqueued operations
- *
  * TODO: Provide an event that will write data for a particular file... Say
  * right before we try to graph it.
  *
@@ -157,6 +172,10 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 
     private long m_writeThreadExitDelay;
 
+    private long m_maxPendingOperations;
+
+    private String m_journalDirectory;
+
     /**
      * <p>getWriteThreads</p>
      *
@@ -357,6 +376,42 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         m_writeThreadExitDelay = writeThreadExitDelay;
     }
 
+    /**
+     * <p>getMaxPendingOperations</p>
+     *
+     * @return a long.
+     */
+    public long getMaxPendingOperations() {
+        return m_maxPendingOperations;
+    }
+
+    /**
+     * <p>setMaxPendingOperations</p>
+     *
+     * @param maxPendingOperations a long.
+     */
+    public void setMaxPendingOperations(long maxPendingOperations) {
+        m_maxPendingOperations = maxPendingOperations;
+    }
+
+    /**
+     * <p>getJournalDirectory</p>
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    public String getJournalDirectory() {
+        return m_journalDirectory;
+    }
+
+    /**
+     * <p>setJournalDirectory</p>
+     *
+     * @param journalDirectory a {@link java.lang.String} object.
+     */
+    public void setJournalDirectory(final String journalDirectory) {
+        m_journalDirectory = journalDirectory == null || journalDirectory.trim().isEmpty() ? null : journalDirectory.trim();
+    }
+
     LinkedList<String> filesWithSignificantWork = new LinkedList<String>();
 
     LinkedList<String> filesWithInsignificantWork = new LinkedList<String>();
@@ -367,6 +422,15 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 
     Set<String> reservedFiles = new HashSet<String>();
 
+    // files with updates in the journal -> number of journaled records
+    Map<String, Integer> journaledFiles = new HashMap<String, Integer>();
+
+    private QueuingRrdJournal m_journal;
+
+    private long m_journaledOperations = 0;
+
+    private long m_discardedOperations = 0;
+
     private long m_totalOperationsPending = 0;
 
     private long m_enqueuedOperations = 0;
@@ -525,6 +589,13 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 
         }
 
+        /**
+         * Appends this update to the journal, only updates are ever spilled.
+         */
+        void writeTo(QueuingRrdJournal journal) throws IOException {
+            journal.writeUpdate(getFileName(), (String) getData());
+        }
+
     }
 
     /**
@@ -571,6 +642,11 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
             return rrd;
         }
 
+        @Override
+        void writeTo(QueuingRrdJournal journal) throws IOException {
+            journal.writeZeroUpdate(getFileName(), getFirstTimeStamp(), getInterval(), getCount());
+        }
+
         @Override
         public int getCount() {
             return count;
@@ -698,7 +774,18 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
                 return;
             }
 
-            storeAssignment(op);
+            if (op.getType() == UPDATE && memoryIsFull() && !spillOperations()) {
+                m_log.error("RRD Data Queue is Full!! Discarding operation for file {}", op.getFileName());
+                return;
+            }
+
+            if (op instanceof UpdateOperation && journaledFiles.containsKey(op.getFileName()) && journal((UpdateOperation) op)) {
+                // older updates for the file are in the journal and must be written first
+                journaledFiles.put(op.getFileName(), journaledFiles.get(op.getFileName()) + 1);
+                m_journaledOperations += op.getCount();
+            } else {
+                storeAssignment(op);
+            }
 
             setTotalOperationsPending(getTotalOperationsPending() + 1);
             setEnqueuedOperations(getEnqueuedOperations() + 1);
@@ -717,6 +804,17 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
             return getTotalOperationsPending() >= m_queueHighWaterMark;
     }
 
+    private long getOperationsInMemory() {
+        return getTotalOperationsPending() - m_journaledOperations;
+    }
+
+    private boolean memoryIsFull() {
+        if (m_maxPendingOperations <= 0)
+            return false;
+        else
+            return getOperationsInMemory() >= m_maxPendingOperations;
+    }
+
     private boolean sigQueueIsFull() {
         if (m_sigHighWaterMark <= 0)
             return false;
@@ -731,6 +829,162 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
             return getTotalOperationsPending() >= m_inSigHighWaterMark;
     }
 
+    private QueuingRrdJournal getJournal() throws IOException {
+        if (m_journal == null && m_journalDirectory != null) {
+            m_journal = new QueuingRrdJournal(new File(m_journalDirectory));
+            m_log.info("Spilling RRD updates to {}", m_journal.getFile());
+        }
+        return m_journal;
+    }
+
+    /**
+     * Append an update to the journal.
+     *
+     * @return false if the journal could not be written and was discarded
+     */
+    private boolean journal(final UpdateOperation op) {
+        try {
+            op.writeTo(getJournal());
+            return true;
+        } catch (final IOException e) {
+            m_log.error("Unable to write to the RRD queue journal", e);
+            discardJournal();
+            return false;
+        }
+    }
+
+    /**
+     * Move the updates of the files with the oldest pending work to the journal,
+     * until a quarter of the memory bound is free again.
+     *
+     * @return false if no room could be made
+     */
+    private boolean spillOperations() {
+        try {
+            final QueuingRrdJournal journal = getJournal();
+            if (journal == null) {
+                return false;
+            }
+            final long target = m_maxPendingOperations * 3 / 4;
+            spillOperations(journal, filesWithSignificantWork, target);
+            spillOperations(journal, filesWithInsignificantWork, target);
+        } catch (final IOException e) {
+            m_log.error("Unable to write to the RRD queue journal", e);
+            discardJournal();
+            return false;
+        }
+        return !memoryIsFull();
+    }
+
+    private void spillOperations(final QueuingRrdJournal journal, final LinkedList<String> files, final long target) throws IOException {
+        for (Iterator<String> it = files.iterator(); it.hasNext() && getOperationsInMemory() > target;) {
+            final String fileName = it.next();
+            final LinkedList<Operation> pendingOperations = pendingFileOperations.get(fileName);
+            if (pendingOperations == null) {
+                // the file is listed as significant and insignificant and was already taken
+                it.remove();
+                continue;
+            }
+            if (hasCreate(pendingOperations) || journaledFiles.containsKey(fileName)) {
+                // newer updates of a file being replayed are still in the journal
+                continue;
+            }
+            int count = 0;
+            for (Operation op : pendingOperations) {
+                // files with a pending create were skipped, so only updates are left
+                ((UpdateOperation) op).writeTo(journal);
+                count += op.getCount();
+            }
+            pendingFileOperations.remove(fileName);
+            it.remove();
+            final Integer records = journaledFiles.get(fileName);
+            journaledFiles.put(fileName, (records == null ? 0 : records) + pendingOperations.size());
+            m_journaledOperations += count;
+        }
+    }
+
+    private boolean hasCreate(final List<Operation> pendingOps) {
+        for (Operation op : pendingOps) {
+            if (op.getType() == CREATE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Move updates from the journal back into memory once half of the memory
+     * bound is free.
+     */
+    private void replayJournal() {
+        if (m_journal == null || m_journal.isEmpty() || getOperationsInMemory() > m_maxPendingOperations / 2) {
+            return;
+        }
+        final long target = m_maxPendingOperations * 3 / 4;
+        final LinkedList<String> replayedFiles = new LinkedList<String>();
+        final QueuingRrdJournal.Visitor visitor = new QueuingRrdJournal.Visitor() {
+            @Override
+            public void update(String fileName, String data) {
+                replayOperation(new UpdateOperation(fileName, data), replayedFiles);
+            }
+
+            @Override
+            public void zeroUpdate(String fileName, long timeStamp, long interval, int count) {
+                final ZeroUpdateOperation op = new ZeroUpdateOperation(fileName, timeStamp);
+                op.setInterval(interval);
+                op.setCount(count);
+                replayOperation(op, replayedFiles);
+            }
+        };
+        try {
+            while (getOperationsInMemory() < target && m_journal.read(visitor)) {
+                // keep reading
+            }
+        } catch (final IOException e) {
+            m_log.error("Unable to read from the RRD queue journal", e);
+            discardJournal();
+        }
+        // the journaled updates are the oldest ones
+        filesWithSignificantWork.addAll(0, replayedFiles);
+    }
+
+    private void replayOperation(final Operation op, final List<String> replayedFiles) {
+        final int records = journaledFiles.get(op.getFileName());
+        if (records > 1) {
+            journaledFiles.put(op.getFileName(), records - 1);
+        } else {
+            journaledFiles.remove(op.getFileName());
+        }
+        m_journaledOperations -= op.getCount();
+
+        LinkedList<Operation> pendingOperations = pendingFileOperations.get(op.getFileName());
+        if (pendingOperations == null) {
+            pendingOperations = new LinkedList<Operation>();
+            pendingFileOperations.put(op.getFileName(), pendingOperations);
+            replayedFiles.add(op.getFileName());
+        }
+        op.addToPendingList(pendingOperations);
+    }
+
+    private void discardJournal() {
+        if (m_journaledOperations > 0) {
+            m_discardedOperations += m_journaledOperations;
+            m_log.error("Discarding {} journaled operations for {} files, {} journaled operations were lost so far",
+                    m_journaledOperations, journaledFiles.size(), m_discardedOperations);
+        }
+        setTotalOperationsPending(getTotalOperationsPending() - m_journaledOperations);
+        m_journaledOperations = 0;
+        journaledFiles.clear();
+        if (m_journal != null) {
+            try {
+                m_journal.close();
+            } catch (final IOException e) {
+                m_log.debug("Error closing the RRD queue journal", e);
+            }
+            m_journal = null;
+        }
+    }
+
     /**
      * Ensure that we have threads started to process the queue.
      */
@@ -753,6 +1007,9 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
             // turn in our previous assignment
             completeAssignment();
 
+            // make room for the journaled updates
+            replayJournal();
+
             String newAssignment;
             // wait until there is work to do
             while ((newAssignment = selectNewAssignment()) == null) {
@@ -760,6 +1017,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
                     wait();
                 } catch (InterruptedException e) {
                 }
+                replayJournal();
             }
 
             // initialize start time for stats
@@ -865,6 +1123,12 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         m_delegate.promoteEnqueuedFiles(rrdFiles);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void filesDeleted(String path) {
+        m_delegate.filesDeleted(path);
+    }
+
     /**
      * Return true if and only if all the operations in the list are
      * insignificant
@@ -1180,6 +1444,8 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         long overallItemDequeueRate = (long) (getDequeuedItems() * 1000.0 / totalElapsedMillis);
 
         String stats = "\nQS:\t" + "totalOperationsPending=" + getTotalOperationsPending() +
+                ", journaledOperations=" + getJournaledOperations() +
+                ", discardedOperations=" + getDiscardedOperations() +
                 ", significantOpsPending=" + (getSignificantOpsEnqueued() - getSignificantOpsCompleted()) +
                 ", filesWithSignificantWork=" + filesWithSignificantWork.size() +
                 ", filesWithInsignificantWork=" + filesWithInsignificantWork.size()
@@ -1291,6 +1557,37 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         return m_delegate.createGraphReturnDetails(command, workDir);
     }
 
+    /**
+     * @return the number of files with pending operations in memory or in the journal
+     */
+    public synchronized long getPendingFiles() {
+        long pendingFiles = pendingFileOperations.size();
+        for (String fileName : journaledFiles.keySet()) {
+            if (!pendingFileOperations.containsKey(fileName)) {
+                pendingFiles++;
+            }
+        }
+        return pendingFiles;
+    }
+
+    public synchronized long getJournaledOperations() {
+        return m_journaledOperations;
+    }
+
+    /**
+     * @return the number of bytes in the journal which have not been read back yet
+     */
+    public synchronized long getJournalSize() {
+        return m_journal == null ? 0 : m_journal.size();
+    }
+
+    /**
+     * @return the number of journaled operations which were lost because the journal could not be written or read
+     */
+    public synchronized long getDiscardedOperations() {
+        return m_discardedOperations;
+    }
+
     /**
      * <p>getTotalOperationsPending</p>
      *
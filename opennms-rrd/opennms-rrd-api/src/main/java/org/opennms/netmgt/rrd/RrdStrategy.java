@@ -274,4 +274,13 @@ public interface RrdStrategy<D extends Object,F extends Object> {
      * @param rrdFiles a {@link java.util.Collection} object.
      */
     public void promoteEnqueuedFiles(Collection<String> rrdFiles);
+
+    /**
+     * Called once the given file, or the files below the given directory, were deleted,
+     * so that implementations keeping files open close them.
+     *
+     * @param path a {@link java.lang.String} object.
+     */
+    public default void filesDeleted(String path) {
+    }
 }
@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class QueuingRrdJournalTest {
+
+    @Rule
+    public TemporaryFolder m_folder = new TemporaryFolder();
+
+    private QueuingRrdJournal m_journal;
+
+    private final List<String> m_records = new ArrayList<>();
+
+    private final QueuingRrdJournal.Visitor m_visitor = new QueuingRrdJournal.Visitor() {
+        @Override
+        public void update(String fileName, String data) {
+            m_records.add(fileName + "=" + data);
+        }
+
+        @Override
+        public void zeroUpdate(String fileName, long timeStamp, long interval, int count) {
+            m_records.add(fileName + "=0@" + timeStamp + "+" + interval + "x" + count);
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        m_journal = new QueuingRrdJournal(m_folder.getRoot());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        m_journal.close();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        m_journal.writeUpdate("a.jrb", "1000:1.5");
+        m_journal.writeZeroUpdate("b.jrb", 1000, 300, 3);
+        m_journal.writeUpdate("a.jrb", "1300:U");
+        m_journal.writeUpdate("d\u00efr/\u2102.jrb", "1600:\u00e9\u20ac");
+
+        readAll();
+        assertEquals(Arrays.asList("a.jrb=1000:1.5", "b.jrb=0@1000+300x3", "a.jrb=1300:U", "d\u00efr/\u2102.jrb=1600:\u00e9\u20ac"), m_records);
+        assertTrue(m_journal.isEmpty());
+        assertFalse(m_journal.read(m_visitor));
+    }
+
+    @Test
+    public void testByteAccounting() throws IOException {
+        // file name record: type + length + name, update record: type + file number + length + data
+        m_journal.writeUpdate("a.jrb", "1000:1");
+        assertEquals((1 + 2 + 5) + (1 + 4 + 2 + 6), m_journal.size());
+
+        // the file name is only written once, a zero update has a fixed size
+        m_journal.writeZeroUpdate("a.jrb", 1000, 300, 3);
+        assertEquals(8 + 13 + 25, m_journal.size());
+
+        // two bytes for the non ASCII characters below 0x800, three above
+        m_journal.writeUpdate("\u00ef.jrb", "\u2102");
+        final long written = 8 + 13 + 25 + (1 + 2 + 6) + (1 + 4 + 2 + 3);
+        assertEquals(written, m_journal.size());
+
+        // reading flushes the journal, the accounted size is what is on disk
+        assertTrue(m_journal.read(m_visitor));
+        assertEquals(written, m_journal.getFile().length());
+        assertEquals(written - 8 - 13, m_journal.size());
+
+        readAll();
+        assertEquals(0, m_journal.size());
+        assertEquals("the journal is truncated once read", 0, m_journal.getFile().length());
+    }
+
+    @Test
+    public void testWriteWhileReading() throws IOException {
+        m_journal.writeUpdate("a.jrb", "1000:1");
+        m_journal.writeUpdate("b.jrb", "1000:2");
+        assertTrue(m_journal.read(m_visitor));
+
+        m_journal.writeUpdate("c.jrb", "1000:3");
+        m_journal.writeUpdate("a.jrb", "1300:4");
+        readAll();
+        assertEquals(Arrays.asList("a.jrb=1000:1", "b.jrb=1000:2", "c.jrb=1000:3", "a.jrb=1300:4"), m_records);
+
+        // file numbers start over once the journal was truncated
+        m_records.clear();
+        m_journal.writeUpdate("c.jrb", "1600:5");
+        readAll();
+        assertEquals(Arrays.asList("c.jrb=1600:5"), m_records);
+    }
+
+    @Test
+    public void testPreviousJournalIsDiscarded() throws IOException {
+        m_journal.close();
+        try (FileOutputStream out = new FileOutputStream(m_journal.getFile())) {
+            out.write(new byte[] { 1, 2, 3 });
+        }
+        m_journal = new QueuingRrdJournal(m_folder.getRoot());
+        assertTrue(m_journal.isEmpty());
+        assertEquals(0, m_journal.getFile().length());
+    }
+
+    private void readAll() throws IOException {
+        while (m_journal.read(m_visitor)) {
+            // keep reading
+        }
+    }
+}
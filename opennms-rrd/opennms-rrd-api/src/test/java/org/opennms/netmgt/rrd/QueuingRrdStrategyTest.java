@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class QueuingRrdStrategyTest {
+
+    private static final int FILES = 5;
+
+    private static final int UPDATES_PER_FILE = 10;
+
+    @Rule
+    public TemporaryFolder m_folder = new TemporaryFolder();
+
+    private final CountDownLatch m_blocked = new CountDownLatch(1);
+
+    private final CountDownLatch m_unblock = new CountDownLatch(1);
+
+    // file name -> updates in the order they were written
+    private final Map<String, List<String>> m_updates = Collections.synchronizedMap(new TreeMap<String, List<String>>());
+
+    private QueuingRrdStrategy m_strategy;
+
+    @Before
+    public void setUp() {
+        m_strategy = new QueuingRrdStrategy(new NullRrdStrategy() {
+            @Override
+            public Object openFile(String fileName) {
+                if ("blocker".equals(fileName)) {
+                    m_blocked.countDown();
+                    try {
+                        m_unblock.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return fileName;
+            }
+
+            @Override
+            public void updateFile(Object rrd, String owner, String data) {
+                synchronized (m_updates) {
+                    List<String> updates = m_updates.get(rrd);
+                    if (updates == null) {
+                        updates = new ArrayList<>();
+                        m_updates.put((String) rrd, updates);
+                    }
+                    updates.add(data);
+                }
+            }
+        });
+        m_strategy.setWriteThreads(1);
+        m_strategy.setModulus(1000000);
+        m_strategy.setWriteThreadSleepTime(10);
+        m_strategy.setWriteThreadExitDelay(100);
+        m_strategy.setMaxPendingOperations(10);
+        m_strategy.setJournalDirectory(m_folder.getRoot().getAbsolutePath());
+    }
+
+    @After
+    public void tearDown() {
+        m_unblock.countDown();
+    }
+
+    @Test
+    public void testSpillAndReplay() throws Exception {
+        enqueueWhileBlocked();
+        assertTrue("updates are spilled", m_strategy.getJournaledOperations() > 0);
+        assertTrue("the journal holds the spilled updates", m_strategy.getJournalSize() > 0);
+        assertTrue("memory stays bounded", m_strategy.getTotalOperationsPending() - m_strategy.getJournaledOperations() <= 10);
+
+        m_unblock.countDown();
+        awaitProcessed();
+
+        assertEquals(0, m_strategy.getJournaledOperations());
+        assertEquals(0, m_strategy.getJournalSize());
+        assertEquals(0, m_strategy.getDiscardedOperations());
+        assertEquals(FILES + 1, m_updates.size());
+        for (int file = 0; file < FILES; file++) {
+            assertEquals("all updates are written in order", expectedUpdates(), m_updates.get("file" + file));
+        }
+    }
+
+    @Test
+    public void testLostJournalIsCounted() throws Exception {
+        enqueueWhileBlocked();
+        final long journaled = m_strategy.getJournaledOperations();
+        assertTrue("updates are spilled", journaled > 0);
+
+        // The journal can't be read back
+        assertTrue(m_folder.getRoot().listFiles()[0].delete());
+        m_unblock.countDown();
+        awaitProcessed();
+
+        assertEquals(journaled, m_strategy.getDiscardedOperations());
+        assertEquals(0, m_strategy.getJournaledOperations());
+        long written = 0;
+        for (List<String> updates : m_updates.values()) {
+            written += updates.size();
+        }
+        assertEquals(1 + FILES * UPDATES_PER_FILE - journaled, written);
+    }
+
+    /**
+     * Blocks the write thread and enqueues more updates than fit into memory.
+     */
+    private void enqueueWhileBlocked() throws Exception {
+        m_strategy.updateFile("blocker", "test", "1000:1");
+        assertTrue(m_blocked.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < UPDATES_PER_FILE; i++) {
+            for (int file = 0; file < FILES; file++) {
+                m_strategy.updateFile("file" + file, "test", update(i));
+            }
+        }
+        assertEquals(FILES * UPDATES_PER_FILE, m_strategy.getTotalOperationsPending());
+    }
+
+    private void awaitProcessed() throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (m_strategy.getTotalOperationsPending() > 0 || m_strategy.getUpdatesCompleted() < m_strategy.getDequeuedOperations()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("updates were not written: " + m_strategy.getStats());
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static List<String> expectedUpdates() {
+        final List<String> updates = new ArrayList<>();
+        for (int i = 0; i < UPDATES_PER_FILE; i++) {
+            updates.add(update(i));
+        }
+        return updates;
+    }
+
+    private static String update(int i) {
+        return (1000 + 300 * i) + ":" + (i + 1);
+    }
+}
@@ -71,6 +71,9 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
     private static final Logger LOG = LoggerFactory.getLogger(JRobinRrdStrategy.class);
     private static final String BACKEND_FACTORY_PROPERTY = "org.jrobin.core.RrdBackendFactory";
     private static final String DEFAULT_BACKEND_FACTORY = "FILE";
+    private static final String CACHE_SIZE_PROPERTY = "org.opennms.rrd.jrobin.cacheSize";
+    private static final String CACHE_IDLE_TIME_PROPERTY = "org.opennms.rrd.jrobin.cacheIdleTime";
+    private static final long DEFAULT_CACHE_IDLE_TIME = 300000;
 
     /*
      * Ensure that we only initialize certain things *once* per
@@ -78,6 +81,11 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
      */
     private static boolean s_initialized = false;
 
+    /*
+     * Shared by all instances, so there is at most one open handle per file.
+     */
+    private static final RrdDbCache s_cache = new RrdDbCache();
+
     private Properties m_configurationProperties;
 
     /**
@@ -136,17 +144,25 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
                 LOG.error("Could not set default JRobin RRD factory", e);
             }
         }
+        if (m_configurationProperties != null) {
+            try {
+                s_cache.setCapacity(Integer.parseInt(m_configurationProperties.getProperty(CACHE_SIZE_PROPERTY, "0")),
+                        Long.parseLong(m_configurationProperties.getProperty(CACHE_IDLE_TIME_PROPERTY, Long.toString(DEFAULT_CACHE_IDLE_TIME))));
+            } catch (RrdException e) {
+                LOG.error("Could not configure the JRobin RRD handle cache", e);
+            }
+        }
     }
 
     /**
-     * Closes the JRobin RrdDb.
+     * Releases the JRobin RrdDb, it is closed unless it is still in use or kept open by the handle cache.
      *
      * @param rrdFile a {@link org.jrobin.core.RrdDb} object.
      * @throws java.lang.Exception if any.
      */
     @Override
     public void closeFile(final RrdDb rrdFile) throws Exception {
-        rrdFile.close();
+        s_cache.release(rrdFile);
     }
 
     /** {@inheritDoc} */
@@ -201,18 +217,27 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
         }
         LOG.info("createRRD: creating RRD file {}", rrdDef.getPath());
 
-        RrdDb rrd = new RrdDb(rrdDef);
-        rrd.close();
+        s_cache.create(rrdDef);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Releases the handles kept open for the deleted files.
+     */
+    @Override
+    public void filesDeleted(final String path) {
+        s_cache.invalidate(path);
     }
 
     /**
      * {@inheritDoc}
      *
-     * Opens the JRobin RrdDb by name and returns it.
+     * Opens the JRobin RrdDb by name and returns it. It must be released using {@link #closeFile(RrdDb)}.
      */
     @Override
     public RrdDb openFile(final String fileName) throws Exception {
-        return new RrdDb(fileName);
+        return s_cache.acquire(fileName, false);
     }
 
     /**
@@ -255,7 +280,7 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
         try {
             long now = System.currentTimeMillis();
             long collectTime = (now - (now % interval)) / 1000L;
-            rrd = new RrdDb(fileName, true);
+            rrd = s_cache.acquire(fileName, true);
             FetchData data = rrd.createFetchRequest(consolidationFunction, collectTime, collectTime).fetchData();
             LOG.debug(data.toString());
             double[] vals = data.getValues(ds);
@@ -270,8 +295,8 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
         } finally {
             if (rrd != null) {
                 try {
-                    rrd.close();
-                } catch (IOException e) {
+                    s_cache.release(rrd);
+                } catch (IOException | RrdException e) {
                     LOG.error("Failed to close rrd file: {}", fileName, e);
                 }
             }
@@ -283,7 +308,7 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
     public Double fetchLastValueInRange(final String fileName, final String ds, final int interval, final int range) throws NumberFormatException, org.opennms.netmgt.rrd.RrdException {
         RrdDb rrd = null;
         try {
-        	rrd = new RrdDb(fileName, true);
+        	rrd = s_cache.acquire(fileName, true);
          	long now = System.currentTimeMillis();
             long latestUpdateTime = (now - (now % interval)) / 1000L;
             long earliestUpdateTime = ((now - (now % interval)) - range) / 1000L;
@@ -312,8 +337,8 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
         } finally {
             if (rrd != null) {
                 try {
-                    rrd.close();
-                } catch (IOException e) {
+                    s_cache.release(rrd);
+                } catch (IOException | RrdException e) {
                     LOG.error("Failed to close rrd file: {}", fileName, e);
                 }
             }
@@ -0,0 +1,267 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd.jrobin;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jrobin.core.RrdBackendFactory;
+import org.jrobin.core.RrdDb;
+import org.jrobin.core.RrdDbPool;
+import org.jrobin.core.RrdDef;
+import org.jrobin.core.RrdException;
+import org.jrobin.core.RrdFileBackendFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Opens {@link RrdDb} handles through the {@link RrdDbPool} of JRobin, so updates and fetches of the
+ * same file share one handle, and keeps recently used handles open, so updating or fetching from the
+ * same file again does not have to open the file and parse its header.
+ *
+ * The pool counts the references to a handle and closes it with the last one, hence the cache holds
+ * one reference to each of the <code>capacity</code> most recently used handles. The reference is
+ * released once the handle is no longer among them, or once it has not been used for
+ * <code>idleTime</code> milliseconds. Fetches using the pool, such as a {@link org.jrobin.data.DataProcessor}
+ * with {@link org.jrobin.data.DataProcessor#setPoolUsed(boolean)}, get the same handles.
+ *
+ * The cache is told about files which are about to be replaced or were deleted, see {@link #invalidate(String)}.
+ * The JRobin backends write through, so releasing a handle does not have to flush anything, it only
+ * releases the file descriptor.
+ *
+ * The pool requires a file based backend. With another backend, or with a capacity of zero, no handle
+ * is kept open once released. The metrics of the cache are only exposed over JMX while it is enabled.
+ */
+final class RrdDbCache {
+    private static final Logger LOG = LoggerFactory.getLogger(RrdDbCache.class);
+
+    private static final class Entry {
+        private final RrdDb rrdDb;
+        private long lastUsed;
+
+        private Entry(final RrdDb rrdDb) {
+            this.rrdDb = rrdDb;
+        }
+    }
+
+    // The handles the cache holds a reference to, ordered by access
+    private final Map<String, Entry> m_entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final MetricRegistry m_metrics = new MetricRegistry();
+    private final Counter m_hits = m_metrics.counter("cache.hits");
+    private final Counter m_misses = m_metrics.counter("cache.misses");
+    private final Counter m_evictions = m_metrics.counter("cache.evictions");
+
+    private JmxReporter m_reporter;
+
+    private int m_capacity;
+    private long m_idleTime;
+
+    RrdDbCache() {
+        m_metrics.register("cache.size", (Gauge<Integer>) this::size);
+    }
+
+    MetricRegistry getMetrics() {
+        return m_metrics;
+    }
+
+    synchronized void setCapacity(final int capacity, final long idleTime) throws RrdException {
+        m_capacity = Math.max(0, capacity);
+        m_idleTime = idleTime;
+        evict(System.currentTimeMillis());
+        final RrdDbPool pool = getPool();
+        if (pool != null && pool.getCapacity() < m_capacity + RrdDbPool.INITIAL_CAPACITY) {
+            // The pool blocks requests for other files while it is full, leave room besides the cached handles
+            pool.setCapacity(m_capacity + RrdDbPool.INITIAL_CAPACITY);
+        }
+        if (m_capacity > 0 && m_reporter == null) {
+            m_reporter = JmxReporter.forRegistry(m_metrics).inDomain("org.opennms.netmgt.rrd.jrobin").build();
+            m_reporter.start();
+        } else if (m_capacity == 0) {
+            stopReporter();
+        }
+    }
+
+    /**
+     * Disables the cache, releasing the handles it keeps open, and stops reporting its metrics.
+     */
+    synchronized void close() {
+        m_capacity = 0;
+        clear();
+        stopReporter();
+    }
+
+    private void stopReporter() {
+        if (m_reporter != null) {
+            m_reporter.stop();
+            m_reporter = null;
+        }
+    }
+
+    synchronized int size() {
+        return m_entries.size();
+    }
+
+    /**
+     * @return the pool of JRobin or null if the default backend is not file based
+     */
+    static RrdDbPool getPool() throws RrdException {
+        return RrdBackendFactory.getDefaultFactory() instanceof RrdFileBackendFactory ? RrdDbPool.getInstance() : null;
+    }
+
+    /**
+     * Returns a handle for the given file which must be passed to {@link #release(RrdDb)} once done.
+     * Handles of the pool are always opened read-write, so there is one handle per file.
+     */
+    RrdDb acquire(final String fileName, final boolean readOnly) throws IOException, RrdException {
+        final RrdDbPool pool = getPool();
+        if (pool == null) {
+            return new RrdDb(fileName, readOnly);
+        }
+        // Not holding the lock of the cache, the pool waits for handles to be released while it is full
+        final RrdDb rrdDb = pool.requestRrdDb(fileName);
+        try {
+            keep(pool, new File(fileName).getAbsolutePath(), rrdDb);
+        } catch (IOException | RrdException | RuntimeException e) {
+            pool.release(rrdDb);
+            throw e;
+        }
+        return rrdDb;
+    }
+
+    private synchronized void keep(final RrdDbPool pool, final String path, final RrdDb rrdDb) throws IOException, RrdException {
+        if (m_capacity == 0) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        Entry entry = m_entries.get(path);
+        if (entry != null && entry.rrdDb == rrdDb) {
+            m_hits.inc();
+        } else {
+            m_misses.inc();
+            if (entry != null) {
+                // Opened again after the file was replaced
+                release(entry);
+            }
+            // The file is open, so the pool does not wait
+            entry = new Entry(pool.requestRrdDb(path));
+            m_entries.put(path, entry);
+        }
+        entry.lastUsed = now;
+        evict(now);
+    }
+
+    /**
+     * Releases a handle returned by {@link #acquire(String, boolean)}.
+     */
+    void release(final RrdDb rrdDb) throws IOException, RrdException {
+        final RrdDbPool pool = getPool();
+        if (pool == null) {
+            rrdDb.close();
+            return;
+        }
+        pool.release(rrdDb);
+        synchronized (this) {
+            evict(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Creates the file of the given definition. The file of a cached handle was deleted since,
+     * so the handle is released first.
+     */
+    void create(final RrdDef rrdDef) throws IOException, RrdException {
+        invalidate(rrdDef.getPath());
+        final RrdDbPool pool = getPool();
+        if (pool == null) {
+            new RrdDb(rrdDef).close();
+        } else {
+            // Waits until the handles of the deleted file still in use are released
+            pool.release(pool.requestRrdDb(rrdDef));
+        }
+    }
+
+    /**
+     * Releases the cached handles for the given file, or for the files below the given directory,
+     * as they are about to be replaced or were deleted.
+     */
+    synchronized void invalidate(final String fileName) {
+        final String path = new File(fileName).getAbsolutePath();
+        final Iterator<Map.Entry<String, Entry>> it = m_entries.entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<String, Entry> entry = it.next();
+            if (entry.getKey().equals(path) || entry.getKey().startsWith(path + File.separator)) {
+                it.remove();
+                release(entry.getValue());
+            }
+        }
+    }
+
+    synchronized void clear() {
+        final Iterator<Entry> it = m_entries.values().iterator();
+        while (it.hasNext()) {
+            final Entry entry = it.next();
+            it.remove();
+            release(entry);
+        }
+    }
+
+    // Releases the least recently used handles first
+    private void evict(final long now) {
+        final Iterator<Entry> it = m_entries.values().iterator();
+        while (it.hasNext()) {
+            final Entry entry = it.next();
+            final boolean idle = m_idleTime > 0 && now - entry.lastUsed >= m_idleTime;
+            if (m_entries.size() <= m_capacity && !idle) {
+                // Entries are ordered by access, the remaining ones were used more recently
+                return;
+            }
+            it.remove();
+            release(entry);
+            m_evictions.inc();
+        }
+    }
+
+    // The handle is closed unless it is still in use
+    private static void release(final Entry entry) {
+        try {
+            RrdDbPool.getInstance().release(entry.rrdDb);
+        } catch (IOException | RrdException e) {
+            LOG.error("Failed to close rrd file: {}", entry.rrdDb.getPath(), e);
+        }
+    }
+}
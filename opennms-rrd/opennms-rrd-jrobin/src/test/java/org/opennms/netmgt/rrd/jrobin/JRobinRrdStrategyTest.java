@@ -31,15 +31,22 @@ package org.opennms.netmgt.rrd.jrobin;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
+import java.util.Properties;
+
+import javax.management.ObjectName;
 
 import org.jrobin.core.RrdDb;
+import org.jrobin.core.RrdDbPool;
 import org.jrobin.core.RrdDef;
 import org.jrobin.core.Sample;
 import org.jrobin.graph.RrdGraph;
@@ -175,6 +182,68 @@ public class JRobinRrdStrategyTest {
         m_strategy.closeFile(openedFile);
     }
 
+    @Test
+    public void testCachedHandles() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("org.jrobin.core.RrdBackendFactory", "FILE");
+        properties.setProperty("org.opennms.rrd.jrobin.cacheSize", "1");
+        m_strategy.setConfigurationProperties(properties);
+        try {
+            File foo = createRrdFile("foo");
+            File bar = createRrdFile("bar");
+
+            RrdDb fooDb = m_strategy.openFile(foo.getAbsolutePath());
+            m_strategy.updateFile(fooDb, "huh?", "N:1.234234");
+            m_strategy.closeFile(fooDb);
+            assertFalse("handle is kept open", fooDb.isClosed());
+
+            RrdDb reopened = m_strategy.openFile(foo.getAbsolutePath());
+            assertSame("cached handle", fooDb, reopened);
+
+            // The cached handle is in use and must not be evicted
+            RrdDb barDb = m_strategy.openFile(bar.getAbsolutePath());
+            assertFalse("handle in use", fooDb.isClosed());
+            m_strategy.closeFile(reopened);
+            assertTrue("least recently used handle is evicted", fooDb.isClosed());
+
+            m_strategy.closeFile(barDb);
+            assertEquals(Double.valueOf(Double.NaN), m_strategy.fetchLastValue(bar.getAbsolutePath(), "bar", 300000));
+            assertFalse("fetches share the handle", barDb.isClosed());
+            RrdDb pooled = RrdDbPool.getInstance().requestRrdDb(bar.getAbsolutePath());
+            assertSame("fetches using the pool share the handle", barDb, pooled);
+            RrdDbPool.getInstance().release(pooled);
+
+            m_strategy.filesDeleted(bar.getParentFile().getAbsolutePath());
+            assertTrue("handle of a deleted file is closed", barDb.isClosed());
+        } finally {
+            properties.setProperty("org.opennms.rrd.jrobin.cacheSize", "0");
+            m_strategy.setConfigurationProperties(properties);
+        }
+    }
+
+    @Test
+    public void testCacheMetricsAreReportedWhileEnabled() throws Exception {
+        final ObjectName cacheBeans = new ObjectName("org.opennms.netmgt.rrd.jrobin:*");
+        final RrdDbCache cache = new RrdDbCache();
+        // Each cache has its own metrics
+        final RrdDbCache other = new RrdDbCache();
+        assertNotSame(cache.getMetrics(), other.getMetrics());
+        assertTrue("disabled cache is not reported", ManagementFactory.getPlatformMBeanServer().queryNames(cacheBeans, null).isEmpty());
+
+        cache.setCapacity(1, 0);
+        assertFalse("enabled cache is reported", ManagementFactory.getPlatformMBeanServer().queryNames(cacheBeans, null).isEmpty());
+
+        File foo = createRrdFile("foo");
+        RrdDb fooDb = cache.acquire(foo.getAbsolutePath(), false);
+        cache.release(fooDb);
+        assertEquals(1, cache.getMetrics().getGauges().get("cache.size").getValue());
+
+        cache.close();
+        assertTrue("handle is closed", fooDb.isClosed());
+        assertEquals(0, cache.getMetrics().getGauges().get("cache.size").getValue());
+        assertTrue("closed cache is not reported", ManagementFactory.getPlatformMBeanServer().queryNames(cacheBeans, null).isEmpty());
+    }
+
     @Test
     public void testSampleSetFloatingPointValueGood() throws Exception {
         File rrdFile = createRrdFile();
@@ -519,9 +588,13 @@ public class JRobinRrdStrategyTest {
     }
 
     public File createRrdFile() throws Exception {
-        String rrdFileBase = "foo";
+        return createRrdFile("foo");
+    }
 
-        m_fileAnticipator.initialize();
+    public File createRrdFile(String rrdFileBase) throws Exception {
+        if (!m_fileAnticipator.isInitialized()) {
+            m_fileAnticipator.initialize();
+        }
         String rrdExtension = m_strategy.getDefaultFileExtension();
         
         List<RrdDataSource> dataSources = new ArrayList<>();
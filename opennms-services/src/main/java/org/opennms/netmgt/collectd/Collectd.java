@@ -80,9 +80,9 @@ import org.opennms.netmgt.model.OnmsMonitoredService;
 import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.model.events.EventUtils;
-import org.opennms.netmgt.scheduler.LegacyScheduler;
 import org.opennms.netmgt.scheduler.ReadyRunnable;
 import org.opennms.netmgt.scheduler.Scheduler;
+import org.opennms.netmgt.scheduler.TimingWheelScheduler;
 import org.opennms.netmgt.snmp.InetAddrUtils;
 import org.opennms.netmgt.threshd.api.ThresholdingService;
 import org.slf4j.Logger;
@@ -337,7 +337,7 @@ public class Collectd extends AbstractServiceDaemon implements
             // Create a scheduler
             try {
                 LOG.debug("init: Creating collectd scheduler");
-                setScheduler(new LegacyScheduler("Collectd", m_collectdConfigFactory.getCollectdConfig().getThreads()));
+                setScheduler(new TimingWheelScheduler("Collectd", m_collectdConfigFactory.getCollectdConfig().getThreads()));
             } catch (final RuntimeException e) {
                 LOG.error("init: Failed to create collectd scheduler", e);
                 throw e;
@@ -30,6 +30,8 @@ package org.opennms.netmgt.collectd.jmx;
 
 import java.util.concurrent.ThreadPoolExecutor;
 import org.opennms.netmgt.scheduler.LegacyScheduler;
+import org.opennms.netmgt.scheduler.Scheduler;
+import org.opennms.netmgt.scheduler.TimingWheelScheduler;
 
 import org.opennms.netmgt.daemon.AbstractSpringContextJmxServiceDaemon;
 
@@ -152,12 +154,34 @@ public class Collectd extends AbstractSpringContextJmxServiceDaemon<org.opennms.
     public long getCollectableServiceCount() {
         return getDaemon().getCollectableServiceCount();
     }
+
+    @Override
+    public double getScheduleLatenessMean() {
+        if (getDaemon().getScheduler() instanceof TimingWheelScheduler) {
+            return ((TimingWheelScheduler) getDaemon().getScheduler()).getLateness().getMean();
+        } else {
+            return 0d;
+        }
+    }
+
+    @Override
+    public double getScheduleLateness99thPercentile() {
+        if (getDaemon().getScheduler() instanceof TimingWheelScheduler) {
+            return ((TimingWheelScheduler) getDaemon().getScheduler()).getLateness().get99thPercentile();
+        } else {
+            return 0d;
+        }
+    }
     
     private ThreadPoolExecutor getExecutor() {
-        return (ThreadPoolExecutor) ((LegacyScheduler) getDaemon().getScheduler()).getRunner();
+        final Scheduler scheduler = getDaemon().getScheduler();
+        if (scheduler instanceof TimingWheelScheduler) {
+            return (ThreadPoolExecutor) ((TimingWheelScheduler) scheduler).getRunner();
+        }
+        return (ThreadPoolExecutor) ((LegacyScheduler) scheduler).getRunner();
     }
 
     private boolean getThreadPoolStatsStatus() {
-        return (getDaemon().getScheduler() instanceof LegacyScheduler);
+        return (getDaemon().getScheduler() instanceof LegacyScheduler || getDaemon().getScheduler() instanceof TimingWheelScheduler);
     }
 }
@@ -91,4 +91,14 @@ public interface CollectdMBean extends BaseOnmsMBean {
      * @return The number of pending tasks
      */
     public long getTaskQueueRemainingCapacity();
+
+    /**
+     * @return The mean number of milliseconds collection tasks started late during the last five minutes
+     */
+    public double getScheduleLatenessMean();
+
+    /**
+     * @return The 99th percentile of milliseconds collection tasks started late during the last five minutes
+     */
+    public double getScheduleLateness99thPercentile();
 }
@@ -60,9 +60,9 @@ import org.opennms.netmgt.poller.pollables.PollableService;
 import org.opennms.netmgt.poller.pollables.PollableServiceConfig;
 import org.opennms.netmgt.poller.pollables.PollableVisitor;
 import org.opennms.netmgt.poller.pollables.PollableVisitorAdaptor;
-import org.opennms.netmgt.scheduler.LegacyScheduler;
 import org.opennms.netmgt.scheduler.Schedule;
 import org.opennms.netmgt.scheduler.Scheduler;
+import org.opennms.netmgt.scheduler.TimingWheelScheduler;
 import org.opennms.netmgt.threshd.api.ThresholdingService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -88,7 +88,7 @@ public class Poller extends AbstractServiceDaemon {
 
     private boolean m_initialized = false;
 
-    private LegacyScheduler m_scheduler = null;
+    private Scheduler m_scheduler = null;
 
     private PollerEventProcessor m_eventProcessor;
 
@@ -270,9 +270,9 @@ public class Poller extends AbstractServiceDaemon {
     /**
      * <p>setScheduler</p>
      *
-     * @param scheduler a {@link org.opennms.netmgt.scheduler.LegacyScheduler} object.
+     * @param scheduler a {@link org.opennms.netmgt.scheduler.Scheduler} object.
      */
-    public void setScheduler(LegacyScheduler scheduler) {
+    public void setScheduler(Scheduler scheduler) {
         m_scheduler = scheduler;
     }
 
@@ -335,7 +335,7 @@ public class Poller extends AbstractServiceDaemon {
         try {
             LOG.debug("init: Creating poller scheduler");
 
-            setScheduler(new LegacyScheduler("Poller", getPollerConfig().getThreads()));
+            setScheduler(new TimingWheelScheduler("Poller", getPollerConfig().getThreads()));
         } catch (RuntimeException e) {
             LOG.error("init: Failed to create poller scheduler", e);
             throw e;
@@ -93,4 +93,14 @@ public interface PollerdMBean extends BaseOnmsMBean {
      * @return The number of open slots on our ExecutorService queue.
      */
     public long getTaskQueueRemainingCapacity();
+
+    /**
+     * @return The mean number of milliseconds polling tasks started late during the last five minutes
+     */
+    public double getScheduleLatenessMean();
+
+    /**
+     * @return The 99th percentile of milliseconds polling tasks started late during the last five minutes
+     */
+    public double getScheduleLateness99thPercentile();
 }
@@ -31,9 +31,9 @@ package org.opennms.netmgt.poller.pollables;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.opennms.netmgt.poller.PollStatus;
 
@@ -47,7 +47,8 @@ import org.opennms.netmgt.poller.PollStatus;
  */
 abstract public class PollableContainer extends PollableElement {
 
-    private final Map<Object, PollableElement> m_members = new HashMap<Object, PollableElement>();
+    // Concurrent, so members can be looked up without the tree lock while other services of the node are polled
+    private final Map<Object, PollableElement> m_members = new ConcurrentHashMap<Object, PollableElement>();
 
     /**
      * <p>Constructor for PollableContainer.</p>
@@ -65,8 +66,8 @@ abstract public class PollableContainer extends PollableElement {
      * @param key a {@link java.lang.Object} object.
      * @return a {@link org.opennms.netmgt.poller.pollables.PollableElement} object.
      */
-    protected synchronized PollableElement getMember(Object key) {
-        return m_members.get(key);
+    protected PollableElement getMember(Object key) {
+        return key == null ? null : m_members.get(key);
     }
 
     /**
@@ -74,7 +75,7 @@ abstract public class PollableContainer extends PollableElement {
      *
      * @return a int.
      */
-    protected synchronized int getMemberCount() {
+    protected int getMemberCount() {
         return m_members.size();
     }
     
@@ -83,7 +84,7 @@ abstract public class PollableContainer extends PollableElement {
      *
      * @return a {@link java.util.Collection} object.
      */
-    protected synchronized Collection<PollableElement> getMembers() {
+    protected Collection<PollableElement> getMembers() {
         return new ArrayList<PollableElement>(m_members.values());
     }
     
@@ -100,7 +101,7 @@ abstract public class PollableContainer extends PollableElement {
      *
      * @param member a {@link org.opennms.netmgt.poller.pollables.PollableElement} object.
      */
-    protected synchronized void addMember(PollableElement member) {
+    protected void addMember(PollableElement member) {
         Object key = createMemberKey(member);
         m_members.put(key, member);
     }
@@ -110,7 +111,7 @@ abstract public class PollableContainer extends PollableElement {
      *
      * @param member a {@link org.opennms.netmgt.poller.pollables.PollableElement} object.
      */
-    public synchronized void removeMember(PollableElement member) {
+    public void removeMember(PollableElement member) {
         Object key = createMemberKey(member);
         m_members.remove(key);
     }
@@ -31,6 +31,7 @@ package org.opennms.netmgt.poller.pollables;
 import java.util.Date;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.netmgt.xml.event.Event;
@@ -48,8 +49,7 @@ public abstract class PollableElement {
     private final Scope m_scope; 
 
     private volatile PollableContainer m_parent;
-    private volatile PollStatus m_status = PollStatus.unknown();
-    private volatile boolean m_statusChanged = false;
+    private final AtomicReference<StatusSnapshot> m_state = new AtomicReference<>(new StatusSnapshot(PollStatus.unknown(), false));
     private volatile PollEvent m_cause;
     private volatile boolean m_deleted;
 
@@ -113,16 +113,28 @@ public abstract class PollableElement {
         v.visitElement(this);
     }
     
+    /**
+     * The status of an element together with whether it changed since the
+     * last call to {@link PollableElement#resetStatusChanged()}. Snapshots are
+     * immutable, so both values are always read and replaced together.
+     */
+    private static final class StatusSnapshot {
+        private final PollStatus m_status;
+        private final boolean m_changed;
+
+        private StatusSnapshot(PollStatus status, boolean changed) {
+            m_status = status;
+            m_changed = changed;
+        }
+    }
+
     /**
      * <p>getStatus</p>
      *
      * @return a {@link org.opennms.netmgt.poller.PollStatus} object.
      */
     public PollStatus getStatus() {
-        return m_status;
-    }
-    private void setStatus(PollStatus status) {
-        m_status = status;
+        return m_state.get().m_status;
     }
     /**
      * <p>isStatusChanged</p>
@@ -130,10 +142,7 @@ public abstract class PollableElement {
      * @return a boolean.
      */
     public boolean isStatusChanged() {
-        return m_statusChanged;
-    }
-    private void setStatusChanged(boolean statusChanged) {
-        m_statusChanged = statusChanged;
+        return m_state.get().m_changed;
     }
     /**
      * <p>updateStatus</p>
@@ -141,19 +150,27 @@ public abstract class PollableElement {
      * @param newStatus a {@link org.opennms.netmgt.poller.PollStatus} object.
      */
     public void updateStatus(PollStatus newStatus) {
-        PollStatus oldStatus = getStatus();
-        if (!oldStatus.equals(newStatus)) {
-            
-            LOG.info("Changing status of PollableElement {} from {} to {}", this, oldStatus, newStatus);
-            setStatus(newStatus);
-            setStatusChanged(true);
+        for (;;) {
+            final StatusSnapshot current = m_state.get();
+            if (current.m_status.equals(newStatus)) {
+                return;
+            }
+            if (m_state.compareAndSet(current, new StatusSnapshot(newStatus, true))) {
+                LOG.info("Changing status of PollableElement {} from {} to {}", this, current.m_status, newStatus);
+                return;
+            }
         }
     }
     /**
      * <p>resetStatusChanged</p>
      */
     public void resetStatusChanged() {
-        setStatusChanged(false);
+        for (;;) {
+            final StatusSnapshot current = m_state.get();
+            if (!current.m_changed || m_state.compareAndSet(current, new StatusSnapshot(current.m_status, false))) {
+                return;
+            }
+        }
     }
     /**
      * <p>recalculateStatus</p>
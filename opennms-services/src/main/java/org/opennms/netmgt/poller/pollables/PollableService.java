@@ -55,10 +55,21 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
 
     private final class PollRunner implements Runnable {
     	
+    	private final PollStatus m_result;
     	private volatile PollStatus m_pollStatus;
+
+    	PollRunner(PollStatus result) {
+    	    m_result = result;
+    	}
+
             @Override
 		public void run() {
-		    doPoll();
+		    m_pendingResult = m_result;
+		    try {
+		        doPoll();
+		    } finally {
+		        m_pendingResult = null;
+		    }
 		    getNode().processStatusChange(new Date());
 		    m_pollStatus = getStatus();
 		}
@@ -73,6 +84,11 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
     private volatile PollStatus m_oldStatus;
     private volatile Schedule m_schedule;
     private volatile long m_statusChangeTime = 0L;
+    /**
+     * Result of the monitor, polled before the tree lock was obtained. Only
+     * set and consumed while holding the tree lock.
+     */
+    private PollStatus m_pendingResult;
     /**
      * <p>Constructor for PollableService.</p>
      *
@@ -188,7 +204,12 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
      */
     @Override
     public PollStatus poll() {
-        PollStatus newStatus = m_pollConfig.poll();
+        PollStatus newStatus = m_pendingResult;
+        if (newStatus != null) {
+            m_pendingResult = null;
+        } else {
+            newStatus = m_pollConfig.poll();
+        }
         if (!newStatus.isUnknown()) { 
             updateStatus(newStatus);
         }
@@ -400,7 +421,9 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
             LOG.debug("Start Scheduled Poll of service {}", this);
             PollStatus status;
             if (getContext().isNodeProcessingEnabled()) {
-                PollRunner r = new PollRunner();
+                // Poll the monitor without holding the tree lock so the services of a node are polled in
+                // parallel, only the status roll-up and the events it causes are serialized per node
+                PollRunner r = new PollRunner(isPolledFirst() ? m_pollConfig.poll() : null);
                 try {
                     withTreeLock(r, timeout);
                 } catch (LockUnavailable e) {
@@ -421,6 +444,19 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
         }
     }
 
+    /**
+     * A service on an interface which is down is only polled if it is the critical
+     * service, see {@link PollableInterface#poll(PollableElement)}.
+     */
+    private boolean isPolledFirst() {
+        final PollableInterface iface = getInterface();
+        if (iface.getStatus().isUp()) {
+            return true;
+        }
+        final PollableService critSvc = iface.getService(getContext().getCriticalServiceName());
+        return critSvc == null || critSvc == this;
+    }
+
 	/**
      * <p>delete</p>
      */
@@ -247,5 +247,59 @@ public class Queued extends AbstractSpringContextJmxServiceDaemon<org.opennms.ne
         }
     }
 
+    /**
+     * <p>getPendingFiles</p>
+     *
+     * @return a long.
+     */
+    @Override
+    public long getPendingFiles() {
+        if (getStatsStatus()) {
+            return getRrdStrategy().getPendingFiles();
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * <p>getJournaledOperations</p>
+     *
+     * @return a long.
+     */
+    @Override
+    public long getJournaledOperations() {
+        if (getStatsStatus()) {
+            return getRrdStrategy().getJournaledOperations();
+        } else {
+            return 0;
+        }
+    }
 
+    /**
+     * <p>getJournalSize</p>
+     *
+     * @return a long.
+     */
+    @Override
+    public long getJournalSize() {
+        if (getStatsStatus()) {
+            return getRrdStrategy().getJournalSize();
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * <p>getDiscardedOperations</p>
+     *
+     * @return a long.
+     */
+    @Override
+    public long getDiscardedOperations() {
+        if (getStatsStatus()) {
+            return getRrdStrategy().getDiscardedOperations();
+        } else {
+            return 0;
+        }
+    }
 }
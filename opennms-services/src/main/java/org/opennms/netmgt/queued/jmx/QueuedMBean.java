@@ -115,5 +115,29 @@ public interface QueuedMBean extends BaseOnmsMBean {
 	 * @return a long.
 	 */
 	public long getStartTime();
+	/**
+	 * <p>getPendingFiles</p>
+	 *
+	 * @return a long.
+	 */
+	public long getPendingFiles();
+	/**
+	 * <p>getJournaledOperations</p>
+	 *
+	 * @return a long.
+	 */
+	public long getJournaledOperations();
+	/**
+	 * <p>getJournalSize</p>
+	 *
+	 * @return a long.
+	 */
+	public long getJournalSize();
+	/**
+	 * <p>getDiscardedOperations</p>
+	 *
+	 * @return a long.
+	 */
+	public long getDiscardedOperations();
 
 }
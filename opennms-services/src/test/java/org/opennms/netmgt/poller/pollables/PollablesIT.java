@@ -921,6 +921,30 @@ public class PollablesIT {
         pSvc.recalculateStatus();
     }
 
+    @Test
+    public void testPollServiceWhileNodeIsLocked() throws Exception {
+        mDot1Icmp.resetPollCount();
+        final Thread poller = new Thread(pDot1Icmp::doRun);
+
+        pDot1Icmp.withTreeLock(new Runnable() {
+            @Override
+            public void run() {
+                poller.start();
+                // The monitor is polled while another thread holds the lock of the node
+                final long deadline = System.currentTimeMillis() + 5000;
+                while (mDot1Icmp.getPollCount() == 0 && System.currentTimeMillis() < deadline) {
+                    Thread.yield();
+                }
+                assertEquals(1, mDot1Icmp.getPollCount());
+            }
+        });
+
+        poller.join(5000);
+        assertFalse(poller.isAlive());
+        assertUp(pDot1Icmp);
+        assertEquals(1, mDot1Icmp.getPollCount());
+    }
+
     @Test
     public void testPollAllUp() throws Exception {
 
@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Accumulates items added by many threads and hands them over to a single
+ * committer thread in batches, so that they can be written using one transaction
+ * instead of one transaction per item.
+ *
+ * A batch is opened by the first item and closed once it holds <code>maxBatchSize</code>
+ * items or once <code>windowMs</code> have elapsed since the first item arrived.
+ * Items are committed in the order in which they were added.
+ *
+ * The committer thread is started by {@link #start()} or by the first item added.
+ * Once stopped, items are rejected until the queue is started again.
+ *
+ * @param <T> type of the items
+ */
+public class GroupCommitQueue<T> {
+    private static final Logger LOG = LoggerFactory.getLogger(GroupCommitQueue.class);
+
+    private final String name;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final BlockingQueue<T> queue;
+    private final Consumer<List<T>> committer;
+
+    private Thread thread;
+    private volatile boolean running;
+    private volatile boolean stopped;
+
+    /**
+     * @param name name of the committer thread
+     * @param windowMs how long to wait for more items after the first item of a batch arrived
+     * @param maxBatchSize maximum number of items in a batch
+     * @param capacity maximum number of queued items, {@link #add(Object)} blocks when exceeded
+     * @param committer called with each batch on the committer thread
+     */
+    public GroupCommitQueue(String name, long windowMs, int maxBatchSize, int capacity, Consumer<List<T>> committer) {
+        if (windowMs < 0 || maxBatchSize < 1) {
+            throw new IllegalArgumentException("Invalid window of " + windowMs + "ms or batch size of " + maxBatchSize);
+        }
+        this.name = Objects.requireNonNull(name);
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.maxBatchSize = maxBatchSize;
+        this.queue = new LinkedBlockingQueue<>(capacity);
+        this.committer = Objects.requireNonNull(committer);
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        stopped = false;
+        running = true;
+        thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the committer thread after committing the items which have already been added.
+     */
+    public synchronized void stop() throws InterruptedException {
+        stopped = true;
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        thread.interrupt();
+        thread.join();
+        thread = null;
+    }
+
+    /**
+     * Adds an item to the current batch, starting the committer thread if necessary.
+     * Blocks while the queue is full.
+     *
+     * @throws IllegalStateException if the queue has been stopped
+     */
+    public void add(T item) throws InterruptedException {
+        if (stopped) {
+            throw new IllegalStateException(name + " is stopped.");
+        }
+        if (!running) {
+            start();
+        }
+        queue.put(item);
+        // The committer thread may have exited before the item was queued
+        if (stopped && queue.remove(item)) {
+            throw new IllegalStateException(name + " is stopped.");
+        }
+    }
+
+    private void run() {
+        final List<T> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                fill(batch);
+            } catch (InterruptedException e) {
+                // Stopping, commit what we have got so far
+                queue.drainTo(batch, maxBatchSize - batch.size());
+            }
+            if (batch.isEmpty()) {
+                continue;
+            }
+            try {
+                committer.accept(batch);
+            } catch (RuntimeException e) {
+                LOG.error("{}: failed to commit batch of {} items.", name, batch.size(), e);
+            }
+            batch.clear();
+        }
+    }
+
+    private void fill(List<T> batch) throws InterruptedException {
+        batch.add(running ? queue.take() : queue.remove());
+        final long deadline = System.nanoTime() + windowNanos;
+        while (batch.size() < maxBatchSize) {
+            final long remaining = deadline - System.nanoTime();
+            final T next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+}
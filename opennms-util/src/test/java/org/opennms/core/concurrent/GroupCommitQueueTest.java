@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.concurrent;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class GroupCommitQueueTest {
+
+    private final List<List<Integer>> batches = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void canCloseBatchesBySize() throws InterruptedException {
+        final GroupCommitQueue<Integer> queue = new GroupCommitQueue<>("test", TimeUnit.MINUTES.toMillis(1), 2, 10,
+                batch -> batches.add(new ArrayList<>(batch)));
+        for (int i = 1; i <= 5; i++) {
+            queue.add(i);
+        }
+        await().atMost(10, TimeUnit.SECONDS).until(() -> batches.size() == 2);
+        assertThat(batches, contains(contains(1, 2), contains(3, 4)));
+
+        // Stopping commits the pending items
+        queue.stop();
+        assertThat(batches, hasSize(3));
+        assertThat(batches.get(2), contains(5));
+    }
+
+    @Test
+    public void canCloseBatchesByTime() throws InterruptedException {
+        final GroupCommitQueue<Integer> queue = new GroupCommitQueue<>("test", 50, 100, 100,
+                batch -> batches.add(new ArrayList<>(batch)));
+        queue.add(1);
+        queue.add(2);
+        await().atMost(10, TimeUnit.SECONDS).until(() -> batches.size() == 1);
+        assertThat(batches.get(0), contains(1, 2));
+
+        queue.add(3);
+        await().atMost(10, TimeUnit.SECONDS).until(() -> batches.size() == 2);
+        assertThat(batches.get(1), contains(3));
+        queue.stop();
+    }
+
+    @Test
+    public void rejectsItemsOnceStopped() throws InterruptedException {
+        final GroupCommitQueue<Integer> queue = new GroupCommitQueue<>("test", 50, 100, 100,
+                batch -> batches.add(new ArrayList<>(batch)));
+        queue.add(1);
+        queue.stop();
+        try {
+            queue.add(2);
+            fail("items must be rejected once the queue is stopped");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        assertThat(batches, contains(contains(1)));
+
+        // Until started again
+        queue.start();
+        queue.add(3);
+        queue.stop();
+        assertThat(batches, contains(contains(1), contains(3)));
+    }
+}